@@ -6,31 +6,101 @@ package zipkin2.reporter.activemq;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import javax.jms.DeliveryMode;
 import javax.jms.JMSException;
-import javax.jms.QueueSender;
+import javax.jms.Queue;
 import javax.jms.QueueSession;
+import javax.jms.Session;
 import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQMessageProducer;
 import org.apache.activemq.transport.TransportListener;
 import zipkin2.reporter.CheckResult;
 
+import static zipkin2.reporter.activemq.ActiveMQSender.ioException;
+
+/**
+ * Holds the connection and a pool of sessions, as a JMS session must not be used by multiple
+ * threads at the same time. Sessions are created on demand, up to the configured maximum.
+ */
 final class ActiveMQConn implements TransportListener, Closeable {
   static final CheckResult
     CLOSED = CheckResult.failed(new IllegalStateException("Collector intentionally closed")),
     INTERRUPTION = CheckResult.failed(new IOException("Recoverable error on ActiveMQ connection"));
 
   final ActiveMQConnection connection;
-  final QueueSession session;
-  final QueueSender sender;
+  final String queue;
+  final boolean persistent;
+  final Semaphore sessionPermits;
+  final ConcurrentLinkedQueue<PooledSession> idleSessions =
+    new ConcurrentLinkedQueue<PooledSession>();
 
   volatile CheckResult checkResult = CheckResult.OK;
 
-  ActiveMQConn(ActiveMQConnection connection, QueueSession session, QueueSender sender) {
+  ActiveMQConn(ActiveMQConnection connection, String queue, boolean persistent, int maxSessions) {
     this.connection = connection;
-    this.session = session;
-    this.sender = sender;
+    this.queue = queue;
+    this.persistent = persistent;
+    this.sessionPermits = new Semaphore(maxSessions);
     connection.addTransportListener(this);
   }
 
+  /** Blocks until a session is available. Call {@link #release} or {@link #discard} after. */
+  PooledSession acquire() throws IOException {
+    try {
+      sessionPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for an ActiveMQ session");
+    }
+    PooledSession result = idleSessions.poll();
+    if (result != null) return result;
+    try {
+      return result = newSession();
+    } finally {
+      if (result == null) sessionPermits.release(); // any failure, including unchecked ones
+    }
+  }
+
+  void release(PooledSession session) {
+    idleSessions.offer(session);
+    sessionPermits.release();
+  }
+
+  /** Call instead of {@link #release} when the session failed, so that it isn't reused. */
+  void discard(PooledSession session) {
+    try {
+      session.close();
+    } finally {
+      sessionPermits.release();
+    }
+  }
+
+  PooledSession newSession() throws IOException {
+    QueueSession session = null;
+    PooledSession result = null;
+    try {
+      // Pass redundant info as we can't use default method in activeMQ
+      session = connection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
+      // No need to do anything on ActiveMQ side as physical queues are created on demand
+      Queue destination = session.createQueue(queue);
+      ActiveMQMessageProducer sender = (ActiveMQMessageProducer) session.createSender(destination);
+      sender.setDeliveryMode(persistent ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT);
+      return result = new PooledSession(session, sender);
+    } catch (JMSException e) {
+      throw ioException("Unable to create queueSender(" + queue + "): ", e);
+    } finally {
+      if (result == null && session != null) {
+        try {
+          session.close();
+        } catch (Exception ignored) {
+        }
+      }
+    }
+  }
+
   @Override public void onCommand(Object o) {
   }
 
@@ -50,11 +120,32 @@ final class ActiveMQConn implements TransportListener, Closeable {
     if (checkResult == CLOSED) return;
     checkResult = CLOSED;
     connection.removeTransportListener(this);
+    PooledSession session;
+    while ((session = idleSessions.poll()) != null) session.close();
     try {
-      sender.close();
-      session.close();
-      connection.close();
+      connection.close(); // also closes any sessions in use
     } catch (JMSException ignored) {
     }
   }
+
+  static final class PooledSession {
+    final QueueSession session;
+    final ActiveMQMessageProducer sender;
+
+    PooledSession(QueueSession session, ActiveMQMessageProducer sender) {
+      this.session = session;
+      this.sender = sender;
+    }
+
+    void close() {
+      try {
+        sender.close();
+      } catch (Exception ignored) {
+      }
+      try {
+        session.close();
+      } catch (Exception ignored) {
+      }
+    }
+  }
 }
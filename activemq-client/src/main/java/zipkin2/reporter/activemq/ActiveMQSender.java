@@ -6,10 +6,15 @@ package zipkin2.reporter.activemq;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 import javax.jms.BytesMessage;
 import javax.jms.JMSException;
-import javax.jms.QueueSender;
+import javax.jms.QueueSession;
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.AsyncCallback;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.util.ByteSequence;
 import zipkin2.reporter.AsyncReporter;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.Call;
@@ -17,7 +22,10 @@ import zipkin2.reporter.Callback;
 import zipkin2.reporter.CheckResult;
 import zipkin2.reporter.ClosedSenderException;
 import zipkin2.reporter.Encoding;
+import zipkin2.reporter.ReporterMetrics;
 import zipkin2.reporter.Sender;
+import zipkin2.reporter.activemq.ActiveMQConn.PooledSession;
+import zipkin2.reporter.internal.InFlightMessages;
 
 /**
  * This sends (usually json v2) encoded spans to an ActiveMQ queue.
@@ -51,9 +59,15 @@ import zipkin2.reporter.Sender;
  *
  * <h3>Implementation Notes</h3>
  *
+ * <p>Each concurrent send uses its own JMS session, from a pool of up to {@link
+ * Builder#maxSessions(int)}. By default, {@link #send(List)} blocks until the broker acknowledges
+ * persistent messages. When {@linkplain Builder#asyncSend(boolean) async}, it returns once the
+ * message is written, so that up to {@link Builder#maxInFlightMessages(int)} can be in flight.
+ *
  * <p>This sender is thread-safe.
  */
 public final class ActiveMQSender extends Sender {
+  static final Logger logger = Logger.getLogger(ActiveMQSender.class.getName());
 
   public static ActiveMQSender create(String brokerUrl) {
     ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory();
@@ -69,7 +83,9 @@ public final class ActiveMQSender extends Sender {
     ActiveMQConnectionFactory connectionFactory;
     String queue = "zipkin";
     Encoding encoding = Encoding.JSON;
-    int messageMaxBytes = 500000;
+    int messageMaxBytes = 500000, maxSessions = 4, maxInFlightMessages = 64;
+    boolean persistent = true, asyncSend;
+    ReporterMetrics metrics = ReporterMetrics.NOOP_METRICS;
 
     public Builder connectionFactory(ActiveMQConnectionFactory connectionFactory) {
       if (connectionFactory == null) throw new NullPointerException("connectionFactory == null");
@@ -101,6 +117,72 @@ public final class ActiveMQSender extends Sender {
       return this;
     }
 
+    /**
+     * Maximum JMS sessions, each with its own producer. Sessions are created on demand, so more
+     * than one is only used when sending concurrently. Default 4.
+     *
+     * @since 3.6
+     */
+    public Builder maxSessions(int maxSessions) {
+      if (maxSessions <= 0) throw new IllegalArgumentException("maxSessions <= 0");
+      this.maxSessions = maxSessions;
+      return this;
+    }
+
+    /**
+     * When false, messages are sent with {@link javax.jms.DeliveryMode#NON_PERSISTENT}, so the
+     * broker doesn't write them to disk, and doesn't acknowledge them. Default true.
+     *
+     * @since 3.6
+     */
+    public Builder persistent(boolean persistent) {
+      this.persistent = persistent;
+      return this;
+    }
+
+    /**
+     * When true, {@link ActiveMQSender#send(List)} returns without waiting for the broker to
+     * acknowledge the message. Defaults to false.
+     *
+     * <p>Failures that occur after {@code send} returns are reported to {@link
+     * #metrics(ReporterMetrics)} instead of the caller.
+     *
+     * @since 3.6
+     */
+    public Builder asyncSend(boolean asyncSend) {
+      this.asyncSend = asyncSend;
+      return this;
+    }
+
+    /**
+     * Maximum messages not yet acknowledged when {@link #asyncSend(boolean) async}. Once reached,
+     * {@link ActiveMQSender#send(List)} blocks until the broker acknowledges one. Default 64.
+     *
+     * <p>This replaces the connection factory's "producerWindowSize", which doesn't apply to
+     * sends that await acknowledgement. As a message is at most {@link #messageMaxBytes(int)},
+     * the window in bytes is at most this times that.
+     *
+     * @since 3.6
+     */
+    public Builder maxInFlightMessages(int maxInFlightMessages) {
+      if (maxInFlightMessages <= 0) throw new IllegalArgumentException("maxInFlightMessages <= 0");
+      this.maxInFlightMessages = maxInFlightMessages;
+      return this;
+    }
+
+    /**
+     * Records messages and spans dropped after {@link ActiveMQSender#send(List)} returns, which
+     * only happens when {@link #asyncSend(boolean) async}. Use the same instance as passed to the
+     * reporter. Defaults to no-op.
+     *
+     * @since 3.6
+     */
+    public Builder metrics(ReporterMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
     public ActiveMQSender build() {
       if (connectionFactory == null) throw new NullPointerException("connectionFactory == null");
       return new ActiveMQSender(this);
@@ -112,12 +194,15 @@ public final class ActiveMQSender extends Sender {
 
   final Encoding encoding;
   final int messageMaxBytes;
+  final InFlightMessages inFlight; // null unless asyncSend
 
   final LazyInit lazyInit;
 
   ActiveMQSender(Builder builder) {
     this.encoding = builder.encoding;
     this.messageMaxBytes = builder.messageMaxBytes;
+    this.inFlight = builder.asyncSend
+      ? new InFlightMessages(builder.maxInFlightMessages, builder.metrics, logger) : null;
     this.lazyInit = new LazyInit(builder);
   }
 
@@ -144,24 +229,68 @@ public final class ActiveMQSender extends Sender {
   @Override @Deprecated public Call<Void> sendSpans(List<byte[]> encodedSpans) {
     if (closeCalled) throw new ClosedSenderException();
     byte[] message = encoding.encode(encodedSpans);
-    return new ActiveMQCall(message);
+    return new ActiveMQCall(message, encodedSpans.size());
   }
 
   /** {@inheritDoc} */
   @Override public void send(List<byte[]> encodedSpans) throws IOException {
     if (closeCalled) throw new ClosedSenderException();
-    send(encoding.encode(encodedSpans));
+    send(encoding.encode(encodedSpans), encodedSpans.size());
   }
 
-  void send(byte[] message) throws IOException {
+  void send(byte[] message, int spanCount) throws IOException {
+    ActiveMQConn conn = lazyInit.get();
+    if (inFlight != null) inFlight.acquire(); // before the session, so we don't hold it idle
+    PooledSession pooled = null;
     try {
-      ActiveMQConn conn = lazyInit.get();
-      QueueSender sender = conn.sender;
-      BytesMessage bytesMessage = conn.session.createBytesMessage();
-      bytesMessage.writeBytes(message);
-      sender.send(bytesMessage);
+      pooled = conn.acquire();
+    } finally {
+      if (pooled == null && inFlight != null) inFlight.release();
+    }
+    boolean sent = false;
+    try {
+      BytesMessage bytesMessage = newBytesMessage(pooled.session, message);
+      if (inFlight == null) {
+        pooled.sender.send(bytesMessage);
+      } else {
+        pooled.sender.send(bytesMessage, new InFlightCallback(inFlight, spanCount));
+      }
+      sent = true;
     } catch (JMSException e) {
       throw ioException("Unable to send message: ", e);
+    } finally {
+      // Any failure, including unchecked ones such as IllegalStateException on a closed session.
+      if (sent) {
+        conn.release(pooled);
+      } else {
+        conn.discard(pooled);
+        if (inFlight != null) inFlight.release(); // the callback isn't called when send throws
+      }
+    }
+  }
+
+  /** Uses the message as the body, instead of copying it via {@link BytesMessage#writeBytes}. */
+  static BytesMessage newBytesMessage(QueueSession session, byte[] message) throws JMSException {
+    ActiveMQBytesMessage result = (ActiveMQBytesMessage) session.createBytesMessage();
+    result.setContent(new ByteSequence(message));
+    return result;
+  }
+
+  static final class InFlightCallback implements AsyncCallback {
+    final InFlightMessages inFlight;
+    final int spanCount;
+
+    InFlightCallback(InFlightMessages inFlight, int spanCount) {
+      this.inFlight = inFlight;
+      this.spanCount = spanCount;
+    }
+
+    @Override public void onSuccess() {
+      inFlight.release();
+    }
+
+    @Override public void onException(JMSException e) {
+      inFlight.dropped(ioException("Unable to send message: ", e), spanCount);
     }
   }
 
@@ -176,8 +305,13 @@ public final class ActiveMQSender extends Sender {
     return lazyInit.result.checkResult;
   }
 
+  /** Waits up to a second for in-flight messages to be acknowledged. */
   @Override public void close() {
+    if (closeCalled) return;
     closeCalled = true;
+    if (inFlight != null && !inFlight.awaitCompletion(1, TimeUnit.SECONDS)) {
+      logger.warning("Timed out waiting for " + inFlight.inFlight() + " in-flight messages");
+    }
     lazyInit.close();
   }
 
@@ -190,23 +324,25 @@ public final class ActiveMQSender extends Sender {
 
   final class ActiveMQCall extends Call.Base<Void> { // ActiveMQCall is not cancelable
     final byte[] message;
+    final int spanCount;
 
-    ActiveMQCall(byte[] message) {
+    ActiveMQCall(byte[] message, int spanCount) {
       this.message = message;
+      this.spanCount = spanCount;
     }
 
     @Override protected Void doExecute() throws IOException {
-      send(message);
+      send(message, spanCount);
       return null;
     }
 
     @Override public Call<Void> clone() {
-      return new ActiveMQCall(message);
+      return new ActiveMQCall(message, spanCount);
     }
 
     @Override protected void doEnqueue(Callback<Void> callback) {
       try {
-        send(message);
+        send(message, spanCount);
         callback.onSuccess(null);
       } catch (Throwable t) {
         Call.propagateIfFatal(t);
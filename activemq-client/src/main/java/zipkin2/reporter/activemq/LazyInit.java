@@ -6,10 +6,6 @@ package zipkin2.reporter.activemq;
 
 import java.io.IOException;
 import javax.jms.JMSException;
-import javax.jms.Queue;
-import javax.jms.QueueSender;
-import javax.jms.QueueSession;
-import javax.jms.Session;
 import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.ActiveMQConnectionFactory;
 
@@ -22,12 +18,16 @@ import static zipkin2.reporter.activemq.ActiveMQSender.ioException;
 final class LazyInit {
   final ActiveMQConnectionFactory connectionFactory;
   final String queue;
+  final boolean persistent;
+  final int maxSessions;
 
   volatile ActiveMQConn result;
 
   LazyInit(ActiveMQSender.Builder builder) {
     connectionFactory = builder.connectionFactory;
     queue = builder.queue;
+    persistent = builder.persistent;
+    maxSessions = builder.maxSessions;
   }
 
   ActiveMQConn get() throws IOException {
@@ -53,19 +53,14 @@ final class LazyInit {
       throw ioException("Unable to establish connection to ActiveMQ broker: ", e);
     }
 
+    ActiveMQConn result = new ActiveMQConn(connection, queue, persistent, maxSessions);
     try {
-      // Pass redundant info as we can't use default method in activeMQ
-      QueueSession session = connection.createQueueSession(false, Session.AUTO_ACKNOWLEDGE);
-      // No need to do anything on ActiveMQ side as physical queues are created on demand
-      Queue destination = session.createQueue(queue);
-      QueueSender sender = session.createSender(destination);
-      return new ActiveMQConn(connection, session, sender);
-    } catch (JMSException e) {
-      try {
-        connection.close();
-      } catch (JMSException ignored) {
-      }
-      throw ioException("Unable to create queueSender(" + queue + "): ", e);
+      // Create the first session eagerly, so that a bad queue fails here
+      result.release(result.acquire());
+    } catch (IOException e) {
+      result.close();
+      throw e;
     }
+    return result;
   }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.activemq;
+
+import java.util.List;
+import javax.jms.BytesMessage;
+import javax.jms.Queue;
+import javax.jms.QueueSession;
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQQueueSender;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ActiveMQSenderTest {
+  ActiveMQConnection connection = mock(ActiveMQConnection.class);
+  QueueSession session = mock(QueueSession.class);
+
+  /** Unchecked exceptions must not leak the session or in-flight permits. */
+  @Test void send_uncheckedException_releasesPermits() throws Exception {
+    when(connection.createQueueSession(anyBoolean(), anyInt())).thenReturn(session);
+    when(session.createQueue("zipkin")).thenReturn(mock(Queue.class));
+    when(session.createSender(any())).thenReturn(mock(ActiveMQQueueSender.class));
+    // not an ActiveMQBytesMessage, so the cast fails
+    when(session.createBytesMessage()).thenReturn(mock(BytesMessage.class));
+
+    ActiveMQSender sender = ActiveMQSender.newBuilder()
+      .connectionFactory(new ActiveMQConnectionFactory("vm://localhost"))
+      .maxSessions(1)
+      .asyncSend(true)
+      .build();
+    ActiveMQConn conn = new ActiveMQConn(connection, "zipkin", false, 1);
+    sender.lazyInit.result = conn;
+
+    for (int i = 0; i < 2; i++) { // would block on the second if the session leaked
+      assertThatThrownBy(() -> sender.send(List.of(new byte[] {'{', '}'})))
+        .isInstanceOf(ClassCastException.class);
+    }
+
+    assertThat(conn.sessionPermits.availablePermits()).isEqualTo(1);
+    assertThat(conn.idleSessions).isEmpty(); // discarded, not reused
+    assertThat(sender.inFlight.inFlight()).isZero();
+    verify(session, times(2)).close();
+  }
+}
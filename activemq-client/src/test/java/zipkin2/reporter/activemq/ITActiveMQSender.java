@@ -5,7 +5,13 @@
 package zipkin2.reporter.activemq;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import javax.jms.BytesMessage;
 import javax.jms.MessageConsumer;
@@ -21,6 +27,7 @@ import zipkin2.reporter.AsyncReporter;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.Encoding;
 import zipkin2.reporter.SpanBytesEncoder;
+import zipkin2.reporter.activemq.ActiveMQConn.PooledSession;
 
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -79,6 +86,55 @@ class ITActiveMQSender {
     }
   }
 
+  @Test void send_asyncSend() throws Exception {
+    try (ActiveMQSender sender = activemq.newSenderBuilder("send_asyncSend")
+      .asyncSend(true)
+      .build()) {
+      send(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+      assertThat(sender.inFlight.awaitCompletion(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(SpanBytesDecoder.JSON_V2.decodeList(readMessage(sender))).containsExactly(
+        CLIENT_SPAN, CLIENT_SPAN);
+    }
+  }
+
+  @Test void send_nonPersistent() throws Exception {
+    try (ActiveMQSender sender = activemq.newSenderBuilder("send_nonPersistent")
+      .persistent(false)
+      .build()) {
+      send(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+      assertThat(SpanBytesDecoder.JSON_V2.decodeList(readMessage(sender))).containsExactly(
+        CLIENT_SPAN, CLIENT_SPAN);
+    }
+  }
+
+  @Test void send_concurrentlyUsesSessionPool() throws Exception {
+    try (ActiveMQSender sender = activemq.newSenderBuilder("send_concurrently")
+      .maxSessions(2)
+      .build()) {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+          futures.add(executor.submit(() -> {
+            send(sender, CLIENT_SPAN);
+            return null;
+          }));
+        }
+        for (Future<?> future : futures) future.get();
+      } finally {
+        executor.shutdownNow();
+      }
+
+      assertThat(sender.lazyInit.get().idleSessions).hasSizeBetween(1, 2);
+      for (int i = 0; i < 8; i++) {
+        assertThat(SpanBytesDecoder.JSON_V2.decodeList(readMessage(sender)))
+          .containsExactly(CLIENT_SPAN);
+      }
+    }
+  }
+
   @Test void illegalToSendWhenClosed() {
     try (ActiveMQSender sender = activemq.newSenderBuilder("illegalToSendWhenClosed").build()) {
       sender.close();
@@ -120,12 +176,15 @@ class ITActiveMQSender {
 
   byte[] readMessage(ActiveMQSender sender) throws Exception {
     ActiveMQConn conn = sender.lazyInit.get();
-    Queue queue = conn.sender.getQueue();
-    try (MessageConsumer consumer = conn.session.createConsumer(queue)) {
+    PooledSession pooled = conn.acquire();
+    Queue queue = (Queue) pooled.sender.getDestination();
+    try (MessageConsumer consumer = pooled.session.createConsumer(queue)) {
       BytesMessage message = (BytesMessage) consumer.receive(1000L);
       byte[] result = new byte[(int) message.getBodyLength()];
       message.readBytes(result);
       return result;
+    } finally {
+      conn.release(pooled);
     }
   }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.amqp;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import zipkin2.reporter.internal.InFlightMessages;
+
+/**
+ * A channel must not be used by multiple threads at the same time, so this pools them. Channels
+ * are created on demand, up to the configured maximum, and those that close are not reused.
+ */
+final class ChannelPool {
+  final Semaphore permits;
+  final ConcurrentLinkedQueue<PooledChannel> idleChannels =
+    new ConcurrentLinkedQueue<PooledChannel>();
+  final InFlightMessages inFlight; // null unless publisherConfirms
+
+  ChannelPool(int maxChannels, InFlightMessages inFlight) {
+    this.permits = new Semaphore(maxChannels);
+    this.inFlight = inFlight;
+  }
+
+  /** Blocks until a channel is available. Call {@link #release} or {@link #discard} after. */
+  PooledChannel acquire(Connection connection) throws IOException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for a RabbitMQ channel");
+    }
+    PooledChannel result = null;
+    try {
+      while ((result = idleChannels.poll()) != null) {
+        if (result.channel.isOpen()) return result;
+      }
+      return result = newChannel(connection);
+    } finally {
+      if (result == null) permits.release(); // any failure, including unchecked ones
+    }
+  }
+
+  void release(PooledChannel channel) {
+    idleChannels.offer(channel);
+    permits.release();
+  }
+
+  /** Call instead of {@link #release} when the channel failed, so that it isn't reused. */
+  void discard(PooledChannel channel) {
+    try {
+      if (channel.channel.isOpen()) channel.channel.close();
+    } catch (Exception ignored) {
+      // the channel may have closed concurrently
+    }
+    permits.release();
+  }
+
+  PooledChannel newChannel(Connection connection) throws IOException {
+    Channel channel = connection.createChannel();
+    if (channel == null) throw new IOException("No channels available on " + connection);
+    PooledChannel result = new PooledChannel(channel, inFlight);
+    if (inFlight != null) {
+      channel.confirmSelect();
+      channel.addConfirmListener(result);
+      channel.addShutdownListener(result);
+    }
+    return result;
+  }
+
+  /**
+   * Publishes on a channel, tracking publisher confirms when enabled. Confirms arrive on the
+   * connection's thread, so many messages can be outstanding without waiting for each.
+   */
+  static final class PooledChannel implements ConfirmListener, ShutdownListener {
+    final Channel channel;
+    final InFlightMessages inFlight; // null unless publisherConfirms
+    // delivery tag -> span count, null unless publisherConfirms
+    final ConcurrentSkipListMap<Long, Integer> unconfirmed;
+
+    PooledChannel(Channel channel, InFlightMessages inFlight) {
+      this.channel = channel;
+      this.inFlight = inFlight;
+      this.unconfirmed = inFlight != null ? new ConcurrentSkipListMap<Long, Integer>() : null;
+    }
+
+    /**
+     * When confirms are enabled, the caller must have acquired an in-flight permit, which is
+     * released if this throws.
+     */
+    void publish(String queue, byte[] message, int spanCount) throws IOException {
+      if (unconfirmed == null) {
+        channel.basicPublish("", queue, null, message);
+        return;
+      }
+      Long deliveryTag = null;
+      boolean published = false;
+      try {
+        deliveryTag = channel.getNextPublishSeqNo();
+        unconfirmed.put(deliveryTag, spanCount);
+        channel.basicPublish("", queue, null, message);
+        published = true;
+      } finally {
+        // Any failure, including AlreadyClosedException, which is unchecked. If the entry is
+        // gone, the shutdown listener already dropped the message and released its permit.
+        if (!published && (deliveryTag == null || unconfirmed.remove(deliveryTag) != null)) {
+          inFlight.release();
+        }
+      }
+    }
+
+    @Override public void handleAck(long deliveryTag, boolean multiple) {
+      complete(deliveryTag, multiple, null);
+    }
+
+    @Override public void handleNack(long deliveryTag, boolean multiple) {
+      complete(deliveryTag, multiple, new IOException("RabbitMQ nacked message"));
+    }
+
+    /** Drops any messages that will never be confirmed, as the channel closed. */
+    @Override public void shutdownCompleted(ShutdownSignalException cause) {
+      complete(Long.MAX_VALUE, true, cause);
+    }
+
+    void complete(long deliveryTag, boolean multiple, Throwable error) {
+      Iterator<Long> tags = multiple
+        ? unconfirmed.headMap(deliveryTag, true).keySet().iterator()
+        : Collections.singleton(deliveryTag).iterator();
+      while (tags.hasNext()) {
+        // remove, so that a message completes once even if a nack races with shutdown
+        Integer spanCount = unconfirmed.remove(tags.next());
+        if (spanCount == null) continue;
+        if (error == null) {
+          inFlight.release();
+        } else {
+          inFlight.dropped(error, spanCount);
+        }
+      }
+    }
+  }
+}
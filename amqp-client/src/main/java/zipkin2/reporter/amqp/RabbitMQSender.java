@@ -5,13 +5,14 @@
 package zipkin2.reporter.amqp;
 
 import com.rabbitmq.client.Address;
-import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
 import zipkin2.reporter.AsyncReporter;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.Call;
@@ -19,7 +20,10 @@ import zipkin2.reporter.Callback;
 import zipkin2.reporter.CheckResult;
 import zipkin2.reporter.ClosedSenderException;
 import zipkin2.reporter.Encoding;
+import zipkin2.reporter.ReporterMetrics;
 import zipkin2.reporter.Sender;
+import zipkin2.reporter.amqp.ChannelPool.PooledChannel;
+import zipkin2.reporter.internal.InFlightMessages;
 
 import static zipkin2.reporter.Call.propagateIfFatal;
 
@@ -56,14 +60,18 @@ import static zipkin2.reporter.Call.propagateIfFatal;
  *
  * <h3>Implementation Notes</h3>
  *
- * <p>The sender does not use <a href="https://www.rabbitmq.com/confirms.html">RabbitMQ Publisher
- * Confirms</a>, so messages considered sent may not necessarily be received by consumers in case of
- * RabbitMQ failure.
+ * <p>By default, the sender does not use <a href="https://www.rabbitmq.com/confirms.html">RabbitMQ
+ * Publisher Confirms</a>, so messages considered sent may not necessarily be received by consumers
+ * in case of RabbitMQ failure. When {@linkplain Builder#publisherConfirms(boolean) enabled},
+ * confirms are tracked asynchronously: up to {@link Builder#maxInFlightMessages(int)} can be
+ * unconfirmed, and those nacked or lost are reported to {@link Builder#metrics(ReporterMetrics)}.
  *
- * <p>This sender is thread-safe: a channel is created for each thread that calls
- * {@link #send(List)}.
+ * <p>This sender is thread-safe: concurrent calls to {@link #send(List)} use different channels,
+ * from a pool of up to {@link Builder#maxChannels(int)}.
  */
 public final class RabbitMQSender extends Sender {
+  static final Logger logger = Logger.getLogger(RabbitMQSender.class.getName());
+
   /** Creates a sender that sends {@link Encoding#JSON} messages. */
   public static RabbitMQSender create(String addresses) {
     return newBuilder().addresses(addresses).build();
@@ -79,7 +87,9 @@ public final class RabbitMQSender extends Sender {
     List<Address> addresses;
     String queue = "zipkin";
     Encoding encoding = Encoding.JSON;
-    int messageMaxBytes = 500000;
+    int messageMaxBytes = 500000, maxChannels = 4, maxInFlightMessages = 64;
+    boolean publisherConfirms;
+    ReporterMetrics metrics = ReporterMetrics.NOOP_METRICS;
 
     Builder(RabbitMQSender sender) {
       connectionFactory = sender.connectionFactory.clone();
@@ -87,6 +97,10 @@ public final class RabbitMQSender extends Sender {
       queue = sender.queue;
       encoding = sender.encoding;
       messageMaxBytes = sender.messageMaxBytes;
+      maxChannels = sender.maxChannels;
+      publisherConfirms = sender.inFlight != null;
+      maxInFlightMessages = sender.maxInFlightMessages;
+      metrics = sender.metrics;
     }
 
     public Builder connectionFactory(ConnectionFactory connectionFactory) {
@@ -156,6 +170,57 @@ public final class RabbitMQSender extends Sender {
       return this;
     }
 
+    /**
+     * Maximum channels used to publish. Channels are created on demand, so more than one is only
+     * used when sending concurrently. Default 4.
+     *
+     * @since 3.6
+     */
+    public Builder maxChannels(int maxChannels) {
+      if (maxChannels <= 0) throw new IllegalArgumentException("maxChannels <= 0");
+      this.maxChannels = maxChannels;
+      return this;
+    }
+
+    /**
+     * When true, channels use <a href="https://www.rabbitmq.com/confirms.html">Publisher
+     * Confirms</a>. {@link RabbitMQSender#send(List)} doesn't wait for the confirm: messages the
+     * broker nacks, or that are unconfirmed when their channel closes, are reported to {@link
+     * #metrics(ReporterMetrics)}. Defaults to false.
+     *
+     * @since 3.6
+     */
+    public Builder publisherConfirms(boolean publisherConfirms) {
+      this.publisherConfirms = publisherConfirms;
+      return this;
+    }
+
+    /**
+     * Maximum messages not yet confirmed when {@link #publisherConfirms(boolean) confirms} are
+     * enabled. Once reached, {@link RabbitMQSender#send(List)} blocks until the broker confirms
+     * one. Default 64.
+     *
+     * @since 3.6
+     */
+    public Builder maxInFlightMessages(int maxInFlightMessages) {
+      if (maxInFlightMessages <= 0) throw new IllegalArgumentException("maxInFlightMessages <= 0");
+      this.maxInFlightMessages = maxInFlightMessages;
+      return this;
+    }
+
+    /**
+     * Records messages and spans dropped after {@link RabbitMQSender#send(List)} returns, which
+     * only happens when {@link #publisherConfirms(boolean) confirms} are enabled. Use the same
+     * instance as passed to the reporter. Defaults to no-op.
+     *
+     * @since 3.6
+     */
+    public Builder metrics(ReporterMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
     public final RabbitMQSender build() {
       return new RabbitMQSender(this);
     }
@@ -169,6 +234,10 @@ public final class RabbitMQSender extends Sender {
   final List<Address> addresses;
   final String queue;
   final ConnectionFactory connectionFactory;
+  final int maxChannels, maxInFlightMessages;
+  final ReporterMetrics metrics;
+  final InFlightMessages inFlight; // null unless publisherConfirms
+  final ChannelPool channels;
 
   RabbitMQSender(Builder builder) {
     if (builder.addresses == null) throw new NullPointerException("addresses == null");
@@ -177,6 +246,12 @@ public final class RabbitMQSender extends Sender {
     addresses = builder.addresses;
     queue = builder.queue;
     connectionFactory = builder.connectionFactory.clone();
+    maxChannels = builder.maxChannels;
+    maxInFlightMessages = builder.maxInFlightMessages;
+    metrics = builder.metrics;
+    inFlight = builder.publisherConfirms
+      ? new InFlightMessages(maxInFlightMessages, metrics, logger) : null;
+    channels = new ChannelPool(maxChannels, inFlight);
   }
 
   public Builder toBuilder() {
@@ -207,23 +282,45 @@ public final class RabbitMQSender extends Sender {
   @Override @Deprecated public Call<Void> sendSpans(List<byte[]> encodedSpans) {
     if (closeCalled) throw new ClosedSenderException();
     byte[] message = encoding.encode(encodedSpans);
-    return new RabbitMQCall(message);
+    return new RabbitMQCall(message, encodedSpans.size());
   }
 
   /** {@inheritDoc} */
   @Override public void send(List<byte[]> encodedSpans) throws IOException {
     if (closeCalled) throw new ClosedSenderException();
-    publish(encoding.encode(encodedSpans));
+    publish(encoding.encode(encodedSpans), encodedSpans.size());
   }
 
-  void publish(byte[] message) throws IOException {
-    localChannel().basicPublish("", queue, null, message);
+  void publish(byte[] message, int spanCount) throws IOException {
+    Connection connection = get();
+    if (inFlight != null) inFlight.acquire(); // before the channel, so we don't hold it idle
+    PooledChannel channel = null;
+    try {
+      channel = channels.acquire(connection);
+    } finally {
+      if (channel == null && inFlight != null) inFlight.release();
+    }
+    boolean published = false;
+    try {
+      channel.publish(queue, message, spanCount); // releases the in-flight permit on error
+      published = true;
+    } finally {
+      // Any failure, including AlreadyClosedException, which is unchecked.
+      if (published) {
+        channels.release(channel);
+      } else {
+        channels.discard(channel);
+      }
+    }
   }
 
   /** {@inheritDoc} */
   @Override @Deprecated public CheckResult check() {
     try {
-      if (localChannel().isOpen()) return CheckResult.OK;
+      PooledChannel channel = channels.acquire(get());
+      boolean isOpen = channel.channel.isOpen();
+      channels.release(channel);
+      if (isOpen) return CheckResult.OK;
       throw new IllegalStateException("Not Open");
     } catch (Throwable e) {
       propagateIfFatal(e);
@@ -256,45 +353,34 @@ public final class RabbitMQSender extends Sender {
     }
   }
 
+  /** Waits up to a second for unconfirmed messages, before closing the connection. */
   @Override public synchronized void close() throws IOException {
     if (closeCalled) return;
+    if (inFlight != null && !inFlight.awaitCompletion(1, TimeUnit.SECONDS)) {
+      logger.warning("Timed out waiting for " + inFlight.inFlight() + " unconfirmed messages");
+    }
     Connection connection = this.connection;
     if (connection != null) connection.close();
     closeCalled = true;
   }
 
-  final ThreadLocal<Channel> CHANNEL = new ThreadLocal<Channel>();
-
-  /**
-   * In most circumstances there will only be one thread calling {@link #send(List)}, the
-   * {@link AsyncReporter}. Just in case someone is flushing manually, we use a thread-local. All of
-   * this is to avoid recreating a channel for each publish, as that costs two additional network
-   * roundtrips.
-   */
-  Channel localChannel() throws IOException {
-    Channel channel = CHANNEL.get();
-    if (channel == null) {
-      channel = get().createChannel();
-      CHANNEL.set(channel);
-    }
-    return channel;
-  }
-
   class RabbitMQCall extends Call.Base<Void> { // RabbitMQFuture is not cancelable
     private final byte[] message;
+    private final int spanCount;
 
-    RabbitMQCall(byte[] message) {
+    RabbitMQCall(byte[] message, int spanCount) {
       this.message = message;
+      this.spanCount = spanCount;
     }
 
     @Override protected Void doExecute() throws IOException {
-      publish(message);
+      publish(message, spanCount);
       return null;
     }
 
     @Override protected void doEnqueue(Callback<Void> callback) {
       try {
-        publish(message);
+        publish(message, spanCount);
         callback.onSuccess(null);
       } catch (Throwable t) {
         Call.propagateIfFatal(t);
@@ -303,7 +389,7 @@ public final class RabbitMQSender extends Sender {
     }
 
     @Override public Call<Void> clone() {
-      return new RabbitMQCall(message);
+      return new RabbitMQCall(message, spanCount);
     }
   }
 
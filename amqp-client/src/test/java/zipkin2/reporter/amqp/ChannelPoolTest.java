@@ -0,0 +1,73 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.amqp;
+
+import com.rabbitmq.client.ShutdownSignalException;
+import java.io.IOException;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import zipkin2.reporter.InMemoryReporterMetrics;
+import zipkin2.reporter.amqp.ChannelPool.PooledChannel;
+import zipkin2.reporter.internal.InFlightMessages;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChannelPoolTest {
+  InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+  InFlightMessages inFlight =
+    new InFlightMessages(8, metrics, Logger.getLogger(ChannelPoolTest.class.getName()));
+  PooledChannel channel = new PooledChannel(null, inFlight);
+
+  /** Simulates publishing messages with delivery tags 1-4, with 1-4 spans respectively. */
+  @BeforeEach void publish() throws IOException {
+    for (int i = 1; i <= 4; i++) {
+      inFlight.acquire();
+      channel.unconfirmed.put((long) i, i);
+    }
+  }
+
+  @Test void handleAck() {
+    channel.handleAck(2, false);
+
+    assertThat(channel.unconfirmed).containsOnlyKeys(1L, 3L, 4L);
+    assertThat(inFlight.inFlight()).isEqualTo(3);
+    assertThat(metrics.messagesDropped()).isZero();
+  }
+
+  @Test void handleAck_multiple() {
+    channel.handleAck(3, true);
+
+    assertThat(channel.unconfirmed).containsOnlyKeys(4L);
+    assertThat(inFlight.inFlight()).isEqualTo(1);
+  }
+
+  @Test void handleNack_multiple() {
+    channel.handleNack(2, true);
+
+    assertThat(channel.unconfirmed).containsOnlyKeys(3L, 4L);
+    assertThat(inFlight.inFlight()).isEqualTo(2);
+    assertThat(metrics.messagesDropped()).isEqualTo(2);
+    assertThat(metrics.spansDropped()).isEqualTo(1 + 2);
+  }
+
+  @Test void shutdownCompleted_dropsUnconfirmed() {
+    channel.handleAck(1, false);
+    channel.shutdownCompleted(new ShutdownSignalException(false, false, null, null));
+
+    assertThat(channel.unconfirmed).isEmpty();
+    assertThat(inFlight.inFlight()).isZero();
+    assertThat(metrics.messagesDropped()).isEqualTo(3);
+    assertThat(metrics.spansDropped()).isEqualTo(2 + 3 + 4);
+  }
+
+  @Test void completesOnce() {
+    channel.handleNack(2, false);
+    channel.handleAck(2, false);
+
+    assertThat(inFlight.inFlight()).isEqualTo(3);
+    assertThat(metrics.messagesDropped()).isEqualTo(1);
+  }
+}
@@ -9,8 +9,13 @@ import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.DefaultConsumer;
 import com.rabbitmq.client.Envelope;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
@@ -23,6 +28,7 @@ import zipkin2.Span;
 import zipkin2.codec.SpanBytesDecoder;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.Encoding;
+import zipkin2.reporter.InMemoryReporterMetrics;
 import zipkin2.reporter.SpanBytesEncoder;
 
 import static java.util.stream.Collectors.toList;
@@ -85,6 +91,44 @@ public class ITRabbitMQSender { // public for use in src/it
     }
   }
 
+  @Test void send_publisherConfirms() throws Exception {
+    InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+    try (RabbitMQSender sender = rabbit.newSenderBuilder("send_publisherConfirms")
+      .publisherConfirms(true)
+      .metrics(metrics)
+      .build()) {
+
+      send(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+      assertThat(sender.inFlight.awaitCompletion(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(metrics.messagesDropped()).isZero();
+      assertThat(SpanBytesDecoder.JSON_V2.decodeList(readMessage(sender)))
+        .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+    }
+  }
+
+  @Test void send_concurrentlyUsesChannelPool() throws Exception {
+    try (RabbitMQSender sender = rabbit.newSenderBuilder("send_concurrently")
+      .maxChannels(2)
+      .build()) {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+          futures.add(executor.submit(() -> {
+            send(sender, CLIENT_SPAN);
+            return null;
+          }));
+        }
+        for (Future<?> future : futures) future.get();
+      } finally {
+        executor.shutdownNow();
+      }
+
+      assertThat(sender.channels.idleChannels).hasSizeBetween(1, 2);
+    }
+  }
+
   /** Blocks until the callback completes to allow read-your-writes consistency during tests. */
   static void send(BytesMessageSender sender, Span... spans) throws IOException {
     SpanBytesEncoder bytesEncoder = sender.encoding() == Encoding.JSON
@@ -97,7 +141,7 @@ public class ITRabbitMQSender { // public for use in src/it
     final AtomicReference<byte[]> result = new AtomicReference<>();
 
     // Don't close this as it invalidates the sender's connection!
-    Channel channel = sender.localChannel();
+    Channel channel = sender.get().createChannel();
     channel.basicConsume(sender.queue, true, new DefaultConsumer(channel) {
       @Override public void handleDelivery(String consumerTag, Envelope envelope,
         AMQP.BasicProperties properties, byte[] body) {
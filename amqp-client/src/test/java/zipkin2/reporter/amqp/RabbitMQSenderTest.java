@@ -4,13 +4,25 @@
  */
 package zipkin2.reporter.amqp;
 
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ShutdownSignalException;
 import org.junit.jupiter.api.Test;
 import zipkin2.reporter.AsyncReporter;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.ClosedSenderException;
+import zipkin2.reporter.InMemoryReporterMetrics;
+import zipkin2.reporter.ReporterMetrics;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static zipkin2.TestObjects.CLIENT_SPAN;
 import static zipkin2.reporter.amqp.ITRabbitMQSender.send;
 
@@ -29,6 +41,57 @@ class RabbitMQSenderTest {
       .hasMessageContaining("Unable to establish connection to RabbitMQ server");
   }
 
+  @Test void sendFailsWhenRabbitMQIsDown_releasesInFlight() {
+    RabbitMQSender sender = RabbitMQSender.newBuilder()
+      .connectionTimeout(100).addresses("localhost:80").publisherConfirms(true).build();
+
+    assertThatThrownBy(() -> send(sender, CLIENT_SPAN, CLIENT_SPAN))
+      .isInstanceOf(RuntimeException.class);
+    assertThat(sender.inFlight.inFlight()).isZero();
+  }
+
+  @Test void toBuilder_retainsChannelSettings() {
+    ReporterMetrics metrics = new InMemoryReporterMetrics();
+    RabbitMQSender sender = RabbitMQSender.newBuilder()
+      .addresses("localhost:80")
+      .maxChannels(2)
+      .publisherConfirms(true)
+      .maxInFlightMessages(8)
+      .metrics(metrics)
+      .build();
+
+    RabbitMQSender copy = sender.toBuilder().build();
+    assertThat(copy.maxChannels).isEqualTo(2);
+    assertThat(copy.inFlight).isNotNull();
+    assertThat(copy.maxInFlightMessages).isEqualTo(8);
+    assertThat(copy.metrics).isSameAs(metrics);
+  }
+
+  /** A closed channel throws an unchecked exception, which must not leak permits. */
+  @Test void publishFailsOnClosedChannel_releasesPermits() throws Exception {
+    Connection connection = mock(Connection.class);
+    Channel channel = mock(Channel.class);
+    when(connection.createChannel()).thenReturn(channel);
+    when(channel.isOpen()).thenReturn(true);
+    when(channel.getNextPublishSeqNo()).thenReturn(1L);
+    doThrow(new AlreadyClosedException(new ShutdownSignalException(false, false, null, null)))
+      .when(channel).basicPublish(any(), any(), any(), any());
+
+    RabbitMQSender sender = RabbitMQSender.newBuilder()
+      .addresses("localhost:80").maxChannels(1).publisherConfirms(true).build();
+    sender.connection = connection;
+
+    for (int i = 0; i < 2; i++) { // would block on the second if the channel leaked
+      assertThatThrownBy(() -> send(sender, CLIENT_SPAN))
+        .isInstanceOf(AlreadyClosedException.class);
+    }
+
+    assertThat(sender.channels.permits.availablePermits()).isEqualTo(1);
+    assertThat(sender.channels.idleChannels).isEmpty(); // discarded, not reused
+    assertThat(sender.inFlight.inFlight()).isZero();
+    verify(channel, times(2)).close();
+  }
+
   @Test void illegalToSendWhenClosed() throws Exception {
     sender.close();
 
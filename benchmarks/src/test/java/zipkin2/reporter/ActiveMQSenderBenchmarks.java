@@ -0,0 +1,65 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin2.reporter.activemq.ActiveMQSender;
+import zipkin2.reporter.internal.SenderBenchmarks;
+
+/** Uses an embedded broker, so that results aren't skewed by container networking. */
+public class ActiveMQSenderBenchmarks extends SenderBenchmarks {
+  @Param({"false", "true"})
+  public boolean asyncSend;
+
+  BrokerService broker;
+  Connection consumerConnection;
+
+  @Override protected BytesMessageSender createSender() throws Exception {
+    broker = new BrokerService();
+    broker.setPersistent(false);
+    broker.setUseJmx(false);
+    broker.addConnector("tcp://127.0.0.1:0");
+    broker.start();
+    broker.waitUntilStarted();
+    String brokerURL = broker.getTransportConnectors().get(0).getPublishableConnectString();
+
+    // Discard messages, so that the broker doesn't apply producer flow control
+    consumerConnection = new ActiveMQConnectionFactory(brokerURL).createConnection();
+    consumerConnection.start();
+    Session session = consumerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+    MessageConsumer consumer = session.createConsumer(session.createQueue("zipkin"));
+    consumer.setMessageListener(message -> {
+    });
+
+    return ActiveMQSender.newBuilder()
+      .connectionFactory(new ActiveMQConnectionFactory(brokerURL))
+      .asyncSend(asyncSend)
+      .build();
+  }
+
+  @Override protected void afterSenderClose() throws Exception {
+    consumerConnection.close();
+    broker.stop();
+    broker.waitUntilStopped();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(".*" + ActiveMQSenderBenchmarks.class.getSimpleName() + ".*")
+      .build();
+
+    new Runner(opt).run();
+  }
+}
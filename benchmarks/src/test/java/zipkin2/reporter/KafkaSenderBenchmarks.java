@@ -10,6 +10,7 @@ import java.util.Properties;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
@@ -45,6 +46,9 @@ public class KafkaSenderBenchmarks extends SenderBenchmarks {
     }
   }
 
+  @Param({"false", "true"})
+  public boolean nativeBatching;
+
   KafkaContainer kafka;
   KafkaConsumer<byte[], byte[]> consumer;
 
@@ -69,7 +73,10 @@ public class KafkaSenderBenchmarks extends SenderBenchmarks {
       }
     }).start();
 
-    return KafkaSender.create(kafka.bootstrapServer());
+    return KafkaSender.newBuilder()
+      .bootstrapServers(kafka.bootstrapServer())
+      .nativeBatching(nativeBatching)
+      .build();
   }
 
   @Override protected void afterSenderClose() {
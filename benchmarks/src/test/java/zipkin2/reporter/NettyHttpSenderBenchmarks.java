@@ -0,0 +1,31 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin2.reporter.netty.NettyHttpSender;
+
+public class NettyHttpSenderBenchmarks extends HttpSenderBenchmarks {
+  /** When true, messages are sent over pooled connections instead of serially. */
+  @Param({"false", "true"})
+  public boolean asyncSend;
+
+  @Override BytesMessageSender newHttpSender(String endpoint) {
+    return NettyHttpSender.newBuilder().endpoint(endpoint).asyncSend(asyncSend).build();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + NettyHttpSenderBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
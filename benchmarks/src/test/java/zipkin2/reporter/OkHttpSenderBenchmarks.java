@@ -4,6 +4,7 @@
  */
 package zipkin2.reporter;
 
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
@@ -11,9 +12,16 @@ import org.openjdk.jmh.runner.options.OptionsBuilder;
 import zipkin2.reporter.okhttp3.OkHttpSender;
 
 public class OkHttpSenderBenchmarks extends HttpSenderBenchmarks {
+  /** When false, gzip is streamed to the socket instead of buffered to compute its length. */
+  @Param({"false", "true"})
+  public boolean precomputeContentLength;
 
   @Override BytesMessageSender newHttpSender(String endpoint) {
-    return OkHttpSender.create(endpoint);
+    return OkHttpSender.newBuilder()
+      .endpoint(endpoint)
+      .maxRequests(64)
+      .precomputeContentLength(precomputeContentLength)
+      .build();
   }
 
   // Convenience main entry-point
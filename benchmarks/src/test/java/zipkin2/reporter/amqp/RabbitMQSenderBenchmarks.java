@@ -26,7 +26,7 @@ public class RabbitMQSenderBenchmarks extends SenderBenchmarks {
     // check sender works at all
     sender.send(Collections.emptyList());
 
-    channel = sender.localChannel();
+    channel = sender.get().createChannel();
     channel.queueDelete(sender.queue);
     channel.queueDeclare(sender.queue, false, true, true, null);
 
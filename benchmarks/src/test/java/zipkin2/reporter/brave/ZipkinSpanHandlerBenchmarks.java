@@ -7,6 +7,7 @@ package zipkin2.reporter.brave;
 import brave.handler.MutableSpan;
 import brave.handler.SpanHandler;
 import brave.propagation.TraceContext;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -16,12 +17,17 @@ import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin2.Span;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.BytesMessageSender;
+import zipkin2.reporter.Encoding;
 import zipkin2.reporter.Reporter;
 
 import static zipkin2.reporter.brave.MutableSpans.newBigClientSpan;
@@ -41,6 +47,37 @@ public class ZipkinSpanHandlerBenchmarks {
   final MutableSpan serverSpan = newServerSpan();
   final MutableSpan bigClientSpan = newBigClientSpan();
 
+  // Messages are sent on the benchmark thread, so that encoding is included in the measurement.
+  final AsyncReporter<Span> reporter = AsyncReporter.builder(new BytesMessageSender.Base(
+    Encoding.JSON) {
+    @Override public int messageMaxBytes() {
+      return Integer.MAX_VALUE;
+    }
+
+    @Override public void send(List<byte[]> encodedSpans) {
+      encoding.encode(encodedSpans);
+    }
+
+    @Override public void close() {
+    }
+  }).messageTimeout(0, TimeUnit.MILLISECONDS).build();
+
+  // Encodes MutableSpan directly, as the reporter is an AsyncReporter with a built-in encoder.
+  final SpanHandler encodingHandler =
+    ZipkinSpanHandler.newBuilder(reporter).alwaysReportSpans(true).build();
+
+  // Converts MutableSpan to Span first, as the reporter isn't recognized as an AsyncReporter.
+  final SpanHandler convertingHandler =
+    ZipkinSpanHandler.newBuilder(new Reporter<Span>() {
+      @Override public void report(Span span) {
+        reporter.report(span);
+      }
+    }).alwaysReportSpans(true).build();
+
+  @TearDown public void close() {
+    reporter.close();
+  }
+
   @Benchmark public boolean handleServerSpan() {
     return handler.end(context, serverSpan, SpanHandler.Cause.FINISHED);
   }
@@ -49,6 +86,26 @@ public class ZipkinSpanHandlerBenchmarks {
     return handler.end(context, bigClientSpan, SpanHandler.Cause.FINISHED);
   }
 
+  @Benchmark public void encodeServerSpan_converting() {
+    convertingHandler.end(context, serverSpan, SpanHandler.Cause.FINISHED);
+    reporter.flush();
+  }
+
+  @Benchmark public void encodeServerSpan_direct() {
+    encodingHandler.end(context, serverSpan, SpanHandler.Cause.FINISHED);
+    reporter.flush();
+  }
+
+  @Benchmark public void encodeBigClientSpan_converting() {
+    convertingHandler.end(context, bigClientSpan, SpanHandler.Cause.FINISHED);
+    reporter.flush();
+  }
+
+  @Benchmark public void encodeBigClientSpan_direct() {
+    encodingHandler.end(context, bigClientSpan, SpanHandler.Cause.FINISHED);
+    reporter.flush();
+  }
+
   // Convenience main entry-point
   public static void main(String[] args) throws RunnerException {
     Options opt = new OptionsBuilder()
@@ -0,0 +1,95 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.libthrift;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import static zipkin2.TestObjects.CLIENT_SPAN;
+
+/** Compares streaming base64 to encoding each span into its own array before writing. */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Threads(1)
+public class InternalScribeCodecBenchmarks {
+  @Param({"1", "100", "1000"})
+  public int spanCount;
+
+  List<byte[]> encodedSpans;
+  ByteArrayOutputStream buffer;
+  TBinaryProtocol prot;
+
+  @Setup public void setup() throws TException {
+    byte[] span = SpanBytesEncoder.THRIFT.encode(CLIENT_SPAN);
+    encodedSpans = new ArrayList<>(spanCount);
+    for (int i = 0; i < spanCount; i++) encodedSpans.add(span);
+    buffer = new ByteArrayOutputStream(ScribeClient.messageSizeInBytes(encodedSpans));
+    prot = new TBinaryProtocol(new TIOStreamTransport(buffer));
+  }
+
+  @Benchmark public int writeLogRequest() throws TException {
+    buffer.reset();
+    InternalScribeCodec.writeLogRequest(ScribeClient.category, encodedSpans, 1, prot);
+    return buffer.size();
+  }
+
+  @Benchmark public int writeLogRequest_copyingBase64() throws TException {
+    buffer.reset();
+    prot.writeMessageBegin(new TMessage("Log", TMessageType.CALL, 1));
+    prot.writeFieldBegin(InternalScribeCodec.MESSAGES_FIELD_DESC);
+    prot.writeListBegin(new TList(TType.STRUCT, encodedSpans.size()));
+    for (byte[] encodedSpan : encodedSpans) {
+      prot.writeFieldBegin(InternalScribeCodec.CATEGORY_FIELD_DESC);
+      prot.writeBinary(ByteBuffer.wrap(ScribeClient.category));
+      prot.writeFieldBegin(InternalScribeCodec.MESSAGE_FIELD_DESC);
+      prot.writeBinary(ByteBuffer.wrap(Base64.getEncoder().encode(encodedSpan)));
+      prot.writeFieldStop();
+    }
+    prot.writeFieldStop();
+    return buffer.size();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .addProfiler("gc")
+      .include(".*" + InternalScribeCodecBenchmarks.class.getSimpleName() + ".*")
+      .build();
+
+    new Runner(opt).run();
+  }
+}
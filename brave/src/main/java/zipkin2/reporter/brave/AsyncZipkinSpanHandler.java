@@ -18,7 +18,11 @@ import zipkin2.reporter.Encoding;
 import zipkin2.reporter.Reporter;
 import zipkin2.reporter.ReporterMetrics;
 import zipkin2.reporter.Sender;
+import zipkin2.reporter.SpanSizeLimits;
 import zipkin2.reporter.internal.AsyncReporter;
+import zipkin2.reporter.internal.InternalReporter;
+import zipkin2.reporter.internal.SpanDeduplicator;
+import zipkin2.reporter.internal.SpanResources;
 
 /**
  * A {@link brave.handler.SpanHandler} that queues spans on {@link #end} to bundle and send as a
@@ -74,10 +78,17 @@ public final class AsyncZipkinSpanHandler extends SpanHandler implements Closeab
   public static final class Builder extends ZipkinSpanHandler.Builder {
     final AsyncReporter.Builder delegate;
     final Encoding encoding;
+    boolean deduplicateSpans, snapshotSpans;
+    int queuedMaxSpans = 10000; // to size the pool used by snapshotSpans
+    SpanSizeLimits sizeLimits = SpanSizeLimits.NONE;
 
     Builder(AsyncZipkinSpanHandler handler) {
       this.delegate = ((AsyncReporter<MutableSpan>) handler.spanReporter).toBuilder();
       this.encoding = handler.encoding;
+      this.deduplicateSpans = handler.deduplicateSpans;
+      this.snapshotSpans = handler.snapshotSpans;
+      this.queuedMaxSpans = handler.queuedMaxSpans;
+      this.sizeLimits = handler.sizeLimits;
       this.alwaysReportSpans = handler.alwaysReportSpans;
       this.errorTag = handler.errorTag;
     }
@@ -138,6 +149,7 @@ public final class AsyncZipkinSpanHandler extends SpanHandler implements Closeab
      */
     public Builder queuedMaxSpans(int queuedMaxSpans) {
       delegate.queuedMaxSpans(queuedMaxSpans);
+      this.queuedMaxSpans = queuedMaxSpans;
       return this;
     }
 
@@ -152,6 +164,56 @@ public final class AsyncZipkinSpanHandler extends SpanHandler implements Closeab
       return this;
     }
 
+    /**
+     * When true, spans with the same trace ID, span ID and {@linkplain MutableSpan#shared() shared
+     * flag} are merged into one before they are sent. Defaults to {@code false}.
+     *
+     * <p>This reduces bytes sent when the same span is reported twice, for example flushed and
+     * later finished. Only spans in the same message are merged, as this happens on the thread
+     * that sends spans, not the application thread.
+     *
+     * @since 3.6
+     */
+    public Builder deduplicateSpans(boolean deduplicateSpans) {
+      this.deduplicateSpans = deduplicateSpans;
+      return this;
+    }
+
+    /**
+     * When true, {@link #end} queues a copy of the span instead of the span itself. Defaults to
+     * {@code false}.
+     *
+     * <p>Copies are pooled and reused once encoded, up to {@link #queuedMaxSpans(int)}. This means
+     * the application's span becomes garbage as soon as it ends, even when the sender falls
+     * behind. Without this, a backlog keeps spans reachable long enough to be promoted to the old
+     * generation.
+     *
+     * <p>This costs a copy of each span on the application thread, so it is only worthwhile when
+     * the queue is often backed up.
+     *
+     * @since 3.6
+     */
+    public Builder snapshotSpans(boolean snapshotSpans) {
+      this.snapshotSpans = snapshotSpans;
+      return this;
+    }
+
+    /**
+     * Truncates tag and annotation values over the limits when spans are encoded, instead of
+     * dropping spans that are too large to send. Defaults to {@link SpanSizeLimits#NONE}.
+     *
+     * <p>This only applies to {@link #build()}, as {@link #build(BytesEncoder)} uses the encoder as
+     * given.
+     *
+     * @see MutableSpanBytesEncoder#create(Encoding, Tag, SpanSizeLimits)
+     * @since 3.6
+     */
+    public Builder sizeLimits(SpanSizeLimits sizeLimits) {
+      if (sizeLimits == null) throw new NullPointerException("sizeLimits == null");
+      this.sizeLimits = sizeLimits;
+      return this;
+    }
+
     @Override public Builder errorTag(Tag<Throwable> errorTag) {
       return (Builder) super.errorTag(errorTag);
     }
@@ -165,7 +227,7 @@ public final class AsyncZipkinSpanHandler extends SpanHandler implements Closeab
      */
     // AsyncZipkinSpanHandler not SpanHandler, so that Flushable and Closeable are accessible
     public AsyncZipkinSpanHandler build() {
-      return build(MutableSpanBytesEncoder.create(encoding, errorTag));
+      return build(MutableSpanBytesEncoder.create(encoding, errorTag, sizeLimits));
     }
 
     /**
@@ -179,20 +241,47 @@ public final class AsyncZipkinSpanHandler extends SpanHandler implements Closeab
     // AsyncZipkinSpanHandler not SpanHandler, so that Flushable and Closeable are accessible
     public AsyncZipkinSpanHandler build(BytesEncoder<MutableSpan> encoder) {
       if (encoder == null) throw new NullPointerException("encoder == null");
-      return new AsyncZipkinSpanHandler(delegate.build(encoder), this);
+      // Size OTLP messages exactly, when we know how the encoder writes resources
+      SpanResources<MutableSpan> resources = encoder.encoding() == Encoding.OTLP_PROTO3
+        && MutableSpanResources.isBuiltIn(encoder) ? MutableSpanResources.INSTANCE : null;
+      MutableSpanPool pool = null;
+      if (snapshotSpans) {
+        pool = new MutableSpanPool(queuedMaxSpans);
+        encoder = new MutableSpanPool.RecyclingEncoder(encoder, pool);
+      }
+      SpanDeduplicator<MutableSpan> deduplicator =
+        deduplicateSpans ? MutableSpanDeduplicator.INSTANCE : null;
+      AsyncReporter<MutableSpan> spanReporter;
+      if (resources != null) {
+        spanReporter = InternalReporter.build(delegate, encoder, deduplicator, resources);
+      } else if (deduplicator != null) {
+        spanReporter = delegate.build(encoder, deduplicator);
+      } else {
+        spanReporter = delegate.build(encoder);
+      }
+      return new AsyncZipkinSpanHandler(spanReporter, pool, this);
     }
   }
 
   final Reporter<MutableSpan> spanReporter;
   final Encoding encoding;
   final Tag<Throwable> errorTag; // for toBuilder()
-  final boolean alwaysReportSpans;
+  final boolean alwaysReportSpans, deduplicateSpans, snapshotSpans;
+  final int queuedMaxSpans; // for toBuilder()
+  final SpanSizeLimits sizeLimits; // for toBuilder()
+  final MutableSpanPool pool; // null unless snapshotSpans
 
-  AsyncZipkinSpanHandler(AsyncReporter<MutableSpan> spanReporter, Builder builder) {
+  AsyncZipkinSpanHandler(AsyncReporter<MutableSpan> spanReporter, MutableSpanPool pool,
+    Builder builder) {
     this.spanReporter = spanReporter;
+    this.pool = pool;
     this.encoding = builder.encoding;
     this.errorTag = builder.errorTag;
     this.alwaysReportSpans = builder.alwaysReportSpans;
+    this.deduplicateSpans = builder.deduplicateSpans;
+    this.snapshotSpans = builder.snapshotSpans;
+    this.queuedMaxSpans = builder.queuedMaxSpans;
+    this.sizeLimits = builder.sizeLimits;
   }
 
   @Override public void flush() {
@@ -211,7 +300,7 @@ public final class AsyncZipkinSpanHandler extends SpanHandler implements Closeab
 
   @Override public boolean end(TraceContext context, MutableSpan span, Cause cause) {
     if (!alwaysReportSpans && !Boolean.TRUE.equals(context.sampled())) return true;
-    spanReporter.report(span);
+    spanReporter.report(pool != null ? pool.snapshot(span) : span);
     return true;
   }
 
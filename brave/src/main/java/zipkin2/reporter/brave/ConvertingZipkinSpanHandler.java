@@ -4,6 +4,8 @@
  */
 package zipkin2.reporter.brave;
 
+import brave.Tag;
+import brave.handler.MutableSpan;
 import brave.handler.SpanHandler;
 import zipkin2.Span;
 import zipkin2.reporter.Reporter;
@@ -11,7 +13,7 @@ import zipkin2.reporter.Reporter;
 final class ConvertingZipkinSpanHandler extends ZipkinSpanHandler {
 
   @Override public ZipkinSpanHandler.Builder toBuilder() {
-    return new Builder(((ConvertingSpanReporter) spanReporter).delegate);
+    return new Builder(delegate);
   }
 
   static final class Builder extends ZipkinSpanHandler.Builder {
@@ -28,8 +30,19 @@ final class ConvertingZipkinSpanHandler extends ZipkinSpanHandler {
     }
   }
 
+  final Reporter<Span> delegate; // for toBuilder()
+
   ConvertingZipkinSpanHandler(Builder builder) {
-    super(new ConvertingSpanReporter(builder.spanReporter, builder.errorTag),
+    super(spanReporter(builder.spanReporter, builder.errorTag),
         builder.errorTag, builder.alwaysReportSpans);
+    this.delegate = builder.spanReporter;
+  }
+
+  /** Skips conversion when the span reporter would only encode the result. */
+  static Reporter<MutableSpan> spanReporter(Reporter<Span> spanReporter,
+      Tag<Throwable> errorTag) {
+    Reporter<MutableSpan> result = EncodingSpanReporter.create(spanReporter, errorTag);
+    if (result != null) return result;
+    return new ConvertingSpanReporter(spanReporter, errorTag);
   }
 }
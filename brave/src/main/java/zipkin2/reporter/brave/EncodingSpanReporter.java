@@ -0,0 +1,178 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave;
+
+import brave.Tag;
+import brave.handler.MutableSpan;
+import brave.handler.MutableSpan.AnnotationUpdater;
+import brave.handler.MutableSpan.TagUpdater;
+import brave.handler.SpanHandler;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import zipkin2.Annotation;
+import zipkin2.Span;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.BytesEncoder;
+import zipkin2.reporter.Reporter;
+import zipkin2.reporter.SpanBytesEncoder;
+import zipkin2.reporter.internal.InternalReporter;
+
+/**
+ * Reports {@link MutableSpan} to the queue of an {@link AsyncReporter} without converting it to a
+ * {@link Span} first. This is only possible when the reporter uses a built-in encoder, which writes
+ * the same bytes as the converted span, once the span is {@linkplain #normalize normalized}.
+ */
+final class EncodingSpanReporter implements Reporter<MutableSpan> {
+  /**
+   * Returns null if the input isn't an {@link AsyncReporter} with a built-in encoder, or it is
+   * already shared with a different error tag.
+   */
+  static Reporter<MutableSpan> create(Reporter<Span> reporter, Tag<Throwable> errorTag) {
+    if (!(reporter instanceof AsyncReporter)) return null;
+    AsyncReporter<Span> asyncReporter = (AsyncReporter<Span>) reporter;
+
+    BytesEncoder<Span> encoder = InternalReporter.instance.encoder(asyncReporter);
+    if (encoder != SpanBytesEncoder.JSON_V2 && encoder != SpanBytesEncoder.PROTO3) return null;
+
+    Reporter<MutableSpan> shared;
+    try {
+      shared = InternalReporter.share(InternalReporter.instance.delegate(asyncReporter),
+        MutableSpan.class, MutableSpanBytesEncoder.create(encoder.encoding(), errorTag));
+    } catch (IllegalStateException e) {
+      return null; // another handler shared it with a different error tag
+    }
+    return new EncodingSpanReporter(reporter, shared, errorTag);
+  }
+
+  final Reporter<Span> delegate;
+  final Reporter<MutableSpan> shared;
+  final Tag<Throwable> errorTag;
+
+  EncodingSpanReporter(Reporter<Span> delegate, Reporter<MutableSpan> shared,
+    Tag<Throwable> errorTag) {
+    this.delegate = delegate;
+    this.shared = shared;
+    this.errorTag = errorTag;
+  }
+
+  @Override public void report(MutableSpan span) {
+    shared.report(normalize(span, errorTag));
+  }
+
+  /**
+   * Returns the input, or a copy changed the same way {@link ConvertingSpanReporter#convert} and
+   * {@link Span.Builder} would. For example, names are lowercase, the duration is at least one
+   * microsecond, and tags are sorted by key. Most spans need no changes, so aren't copied.
+   */
+  static MutableSpan normalize(MutableSpan span, Tag<Throwable> errorTag) {
+    if (isNormalized(span)) return span;
+    MutableSpan result = new MutableSpan(span);
+    if (result.error() != null) { // add the tag the same way as ConvertingSpanReporter
+      if (result.tag("error") == null) errorTag.tag(result.error(), null, result);
+      result.error(null);
+    }
+    result.name(lowercase(result.name()));
+    result.localServiceName(lowercase(result.localServiceName()));
+    result.remoteServiceName(lowercase(result.remoteServiceName()));
+    long start = result.startTimestamp(), finish = result.finishTimestamp();
+    if (start == 0L) {
+      result.finishTimestamp(0L);
+    } else if (finish != 0L && finish - start < 1L) {
+      result.finishTimestamp(start + 1L);
+    }
+    if (result.id() != null && result.id().equals(result.parentId())) result.parentId(null);
+    if (result.shared() && result.kind() == brave.Span.Kind.CLIENT) result.unsetShared();
+    sortTags(result);
+    sortAnnotations(result);
+    return result;
+  }
+
+  static boolean isNormalized(MutableSpan span) {
+    if (span.error() != null) return false;
+    if (!isLowercase(span.name())) return false;
+    if (!isLowercase(span.localServiceName())) return false;
+    if (!isLowercase(span.remoteServiceName())) return false;
+    long start = span.startTimestamp(), finish = span.finishTimestamp();
+    if (finish != 0L && (start == 0L || finish - start < 1L)) return false;
+    if (span.id() != null && span.id().equals(span.parentId())) return false;
+    if (span.shared() && span.kind() == brave.Span.Kind.CLIENT) return false;
+    for (int i = 1, length = span.tagCount(); i < length; i++) {
+      if (span.tagKeyAt(i - 1).compareTo(span.tagKeyAt(i)) >= 0) return false;
+    }
+    for (int i = 1, length = span.annotationCount(); i < length; i++) {
+      long previous = span.annotationTimestampAt(i - 1), timestamp = span.annotationTimestampAt(i);
+      if (previous > timestamp) return false;
+      if (previous == timestamp
+        && span.annotationValueAt(i - 1).compareTo(span.annotationValueAt(i)) >= 0) {
+        return false; // Span.Builder also drops duplicate annotations
+      }
+    }
+    return true;
+  }
+
+  static boolean isLowercase(String value) {
+    return value == null || value.equals(value.toLowerCase(Locale.ROOT));
+  }
+
+  static String lowercase(String value) {
+    return value != null ? value.toLowerCase(Locale.ROOT) : null;
+  }
+
+  /** Re-adds tags in key order, as {@link Span} holds them in a sorted map. */
+  static void sortTags(MutableSpan span) {
+    TreeMap<String, String> tags = new TreeMap<String, String>();
+    for (int i = 0, length = span.tagCount(); i < length; i++) {
+      tags.put(span.tagKeyAt(i), span.tagValueAt(i));
+    }
+    span.forEachTag(Remover.INSTANCE);
+    for (Map.Entry<String, String> tag : tags.entrySet()) span.tag(tag.getKey(), tag.getValue());
+  }
+
+  /** Re-adds annotations in order without duplicates, as {@link Span} does. */
+  static void sortAnnotations(MutableSpan span) {
+    TreeSet<Annotation> annotations = new TreeSet<Annotation>();
+    for (int i = 0, length = span.annotationCount(); i < length; i++) {
+      annotations.add(Annotation.create(span.annotationTimestampAt(i), span.annotationValueAt(i)));
+    }
+    span.forEachAnnotation(Remover.INSTANCE);
+    for (Annotation annotation : annotations) {
+      span.annotate(annotation.timestamp(), annotation.value());
+    }
+  }
+
+  enum Remover implements TagUpdater, AnnotationUpdater {
+    INSTANCE;
+
+    @Override public String update(String key, String value) {
+      return null;
+    }
+
+    @Override public String update(long timestamp, String value) {
+      return null;
+    }
+  }
+
+  @Override public String toString() {
+    return delegate.toString();
+  }
+
+  /**
+   * Overridden to avoid duplicates when added via {@link brave.Tracing.Builder#addSpanHandler(SpanHandler)}
+   */
+  @Override public final boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof EncodingSpanReporter)) return false;
+    return delegate.equals(((EncodingSpanReporter) o).delegate);
+  }
+
+  /**
+   * Overridden to avoid duplicates when added via {@link brave.Tracing.Builder#addSpanHandler(SpanHandler)}
+   */
+  @Override public final int hashCode() {
+    return delegate.hashCode();
+  }
+}
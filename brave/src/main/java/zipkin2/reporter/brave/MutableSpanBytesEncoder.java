@@ -9,6 +9,7 @@ import brave.Tags;
 import brave.handler.MutableSpan;
 import zipkin2.reporter.BytesEncoder;
 import zipkin2.reporter.Encoding;
+import zipkin2.reporter.SpanSizeLimits;
 
 /** Includes built-in formats used in Zipkin. */
 public enum MutableSpanBytesEncoder implements BytesEncoder<MutableSpan> {
@@ -38,8 +39,40 @@ public enum MutableSpanBytesEncoder implements BytesEncoder<MutableSpan> {
     @Override public byte[] encode(MutableSpan input) {
       return ZipkinProto3Encoder.INSTANCE.encode(input);
     }
+  },
+  /**
+   * Corresponds to the OpenTelemetry OTLP protobuf format, where the local service name is the
+   * "service.name" resource attribute.
+   *
+   * @since 3.6
+   */
+  OTLP_PROTO3 {
+    @Override public Encoding encoding() {
+      return Encoding.OTLP_PROTO3;
+    }
+
+    @Override public int sizeInBytes(MutableSpan input) {
+      return OtlpProto3Encoder.INSTANCE.sizeInBytes(input);
+    }
+
+    @Override public byte[] encode(MutableSpan input) {
+      return OtlpProto3Encoder.INSTANCE.encode(input);
+    }
   };
 
+  /**
+   * Returns an encoder that truncates tag and annotation values according to the limits, so that
+   * an oversized value doesn't result in the span being dropped.
+   *
+   * <p>Spans within limits are encoded as-is. Otherwise, a truncated copy is encoded, leaving the
+   * input unchanged.
+   *
+   * @since 3.6
+   */
+  public BytesEncoder<MutableSpan> withLimits(SpanSizeLimits limits) {
+    return create(encoding(), Tags.ERROR, limits);
+  }
+
   /**
    * Returns the default {@linkplain MutableSpan} encoder for given encoding.
    *
@@ -53,6 +86,8 @@ public enum MutableSpanBytesEncoder implements BytesEncoder<MutableSpan> {
         return JSON_V2;
       case PROTO3:
         return PROTO3;
+      case OTLP_PROTO3:
+        return OTLP_PROTO3;
       case THRIFT:
         throw new UnsupportedOperationException("THRIFT is not yet a built-in encoder");
       default: // BUG: as encoding is an enum!
@@ -75,10 +110,27 @@ public enum MutableSpanBytesEncoder implements BytesEncoder<MutableSpan> {
         return new JsonV2Encoder(errorTag);
       case PROTO3:
         return new ZipkinProto3Encoder(errorTag);
+      case OTLP_PROTO3:
+        return new OtlpProto3Encoder(errorTag);
       case THRIFT:
         throw new UnsupportedOperationException("THRIFT is not yet a built-in encoder");
       default: // BUG: as encoding is an enum!
         throw new UnsupportedOperationException("BUG: " + encoding.name());
     }
   }
+
+  /**
+   * Like {@linkplain #create(Encoding, Tag)}, except tag and annotation values are truncated
+   * according to the limits.
+   *
+   * @see #withLimits(SpanSizeLimits)
+   * @since 3.6
+   */
+  public static BytesEncoder<MutableSpan> create(Encoding encoding, Tag<Throwable> errorTag,
+    SpanSizeLimits limits) {
+    if (limits == null) throw new NullPointerException("limits == null");
+    BytesEncoder<MutableSpan> encoder = create(encoding, errorTag);
+    if (limits.isEmpty()) return encoder;
+    return new SizeLimitedEncoder(encoder, errorTag, limits);
+  }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave;
+
+import brave.handler.MutableSpan;
+import brave.handler.MutableSpan.AnnotationConsumer;
+import brave.handler.MutableSpan.TagConsumer;
+import zipkin2.reporter.internal.SpanDeduplicator;
+
+/**
+ * Merges spans with the same trace ID, span ID and shared flag, such as when Brave flushes the
+ * same span twice. Client and server sides of the same span are not merged, as they differ in the
+ * shared flag.
+ */
+enum MutableSpanDeduplicator implements SpanDeduplicator<MutableSpan> {
+  INSTANCE;
+
+  @Override public Object key(MutableSpan span) {
+    if (span.traceId() == null || span.id() == null) return null;
+    return new Key(span);
+  }
+
+  /** Copies data missing from the first span from the duplicate, without mutating either. */
+  @Override public MutableSpan merge(MutableSpan first, MutableSpan duplicate) {
+    if (first.equals(duplicate)) return first;
+
+    MutableSpan merged = new MutableSpan(first);
+    if (merged.kind() == null && duplicate.kind() != null) merged.kind(duplicate.kind());
+    if (merged.name() == null && duplicate.name() != null) merged.name(duplicate.name());
+    if (merged.startTimestamp() == 0L) merged.startTimestamp(duplicate.startTimestamp());
+    if (merged.finishTimestamp() == 0L) merged.finishTimestamp(duplicate.finishTimestamp());
+    if (merged.localServiceName() == null && duplicate.localServiceName() != null) {
+      merged.localServiceName(duplicate.localServiceName());
+    }
+    if (merged.localIp() == null && duplicate.localIp() != null) {
+      merged.localIp(duplicate.localIp());
+    }
+    if (merged.localPort() == 0) merged.localPort(duplicate.localPort());
+    if (merged.remoteServiceName() == null && duplicate.remoteServiceName() != null) {
+      merged.remoteServiceName(duplicate.remoteServiceName());
+    }
+    if (merged.remoteIp() == null && duplicate.remoteIp() != null) {
+      merged.remoteIpAndPort(duplicate.remoteIp(), duplicate.remotePort());
+    }
+    if (merged.error() == null && duplicate.error() != null) merged.error(duplicate.error());
+    duplicate.forEachTag(new TagConsumer<MutableSpan>() {
+      @Override public void accept(MutableSpan target, String key, String value) {
+        if (target.tag(key) == null) target.tag(key, value);
+      }
+    }, merged);
+    duplicate.forEachAnnotation(new AnnotationConsumer<MutableSpan>() {
+      @Override public void accept(MutableSpan target, long timestamp, String value) {
+        if (!containsAnnotation(target, timestamp, value)) target.annotate(timestamp, value);
+      }
+    }, merged);
+    return merged;
+  }
+
+  static boolean containsAnnotation(MutableSpan span, long timestamp, String value) {
+    for (int i = 0, length = span.annotationCount(); i < length; i++) {
+      if (span.annotationTimestampAt(i) == timestamp && value.equals(span.annotationValueAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static final class Key {
+    final String traceId, id;
+    final boolean shared;
+
+    Key(MutableSpan span) {
+      this.traceId = span.traceId();
+      this.id = span.id();
+      this.shared = span.shared();
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Key)) return false;
+      Key that = (Key) o;
+      return traceId.equals(that.traceId) && id.equals(that.id) && shared == that.shared;
+    }
+
+    @Override public int hashCode() {
+      int h = 1000003;
+      h ^= traceId.hashCode();
+      h *= 1000003;
+      h ^= id.hashCode();
+      h *= 1000003;
+      h ^= shared ? 1231 : 1237;
+      return h;
+    }
+  }
+}
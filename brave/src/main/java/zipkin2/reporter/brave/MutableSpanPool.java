@@ -0,0 +1,218 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave;
+
+import brave.handler.MutableSpan;
+import brave.handler.MutableSpan.AnnotationConsumer;
+import brave.handler.MutableSpan.AnnotationUpdater;
+import brave.handler.MutableSpan.TagConsumer;
+import brave.handler.MutableSpan.TagUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import zipkin2.reporter.BytesEncoder;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.internal.SpanLimiter;
+import zipkin2.reporter.internal.SpanRecycler;
+
+/**
+ * Copies spans into pooled instances, so that the application's span is garbage as soon as it
+ * ends, even when the reporter has a backlog. Copies are returned to the pool once encoded, so a
+ * long queue reuses the same instances instead of promoting new ones to the old generation.
+ *
+ * <p>Strings are shared with the input, as they are immutable. Only the instances holding them are
+ * reused.
+ *
+ * <p>Spans are taken from the pool on application threads, so it doesn't use a lock. It is a
+ * bounded ring, where each slot has a sequence that says whether it is ready to be written or read
+ * at a given position. Threads only contend on the head or tail position, and a thread that loses
+ * a race for the last span allocates a new one instead of waiting.
+ */
+final class MutableSpanPool {
+  final int capacity;
+  final AtomicReferenceArray<MutableSpan> spans;
+  final AtomicLongArray sequences;
+  final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+  MutableSpanPool(int capacity) {
+    this.capacity = Math.max(capacity, 1);
+    this.spans = new AtomicReferenceArray<MutableSpan>(this.capacity);
+    this.sequences = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; i++) sequences.set(i, i);
+  }
+
+  /** Returns a copy of the input, reusing a pooled instance when available. */
+  MutableSpan snapshot(MutableSpan span) {
+    // ID fields can't be cleared, so only copy into a pooled instance when they are all present.
+    if (span.traceId() == null || span.localRootId() == null || span.id() == null) {
+      return new MutableSpan(span);
+    }
+    MutableSpan result = poll();
+    if (result == null) return new MutableSpan(span);
+    copy(span, result);
+    return result;
+  }
+
+  /** Clears the span and returns it to the pool, unless the pool is full. */
+  void recycle(MutableSpan span) {
+    clear(span);
+    offer(span);
+  }
+
+  /** Returns a pooled span or null if there are none. */
+  MutableSpan poll() {
+    long position = head.get();
+    while (true) {
+      int i = (int) (position % capacity);
+      long difference = sequences.get(i) - (position + 1);
+      if (difference == 0) { // the slot was written for this position
+        if (head.compareAndSet(position, position + 1)) {
+          MutableSpan result = spans.get(i);
+          spans.set(i, null);
+          sequences.set(i, position + capacity); // ready to write on the next lap
+          return result;
+        }
+      } else if (difference < 0) {
+        return null; // empty
+      }
+      position = head.get(); // another thread moved the head
+    }
+  }
+
+  /** Returns false if the pool is full. */
+  boolean offer(MutableSpan span) {
+    long position = tail.get();
+    while (true) {
+      int i = (int) (position % capacity);
+      long difference = sequences.get(i) - position;
+      if (difference == 0) { // the slot was read for this position
+        if (tail.compareAndSet(position, position + 1)) {
+          spans.set(i, span);
+          sequences.set(i, position + 1); // ready to read
+          return true;
+        }
+      } else if (difference < 0) {
+        return false; // full
+      }
+      position = tail.get(); // another thread moved the tail
+    }
+  }
+
+  /** Returns the count of pooled spans, which is approximate when in use. */
+  int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  /** Overwrites all fields of the target, which was previously {@link #clear(MutableSpan) cleared}. */
+  static void copy(MutableSpan source, MutableSpan target) {
+    target.traceId(source.traceId());
+    target.localRootId(source.localRootId());
+    target.parentId(source.parentId());
+    target.id(source.id());
+    target.kind(source.kind());
+    target.name(source.name());
+    target.startTimestamp(source.startTimestamp());
+    target.finishTimestamp(source.finishTimestamp());
+    target.localServiceName(source.localServiceName());
+    target.localIp(source.localIp());
+    target.localPort(source.localPort());
+    target.remoteServiceName(source.remoteServiceName());
+    target.remoteIp(source.remoteIp());
+    target.remotePort(source.remotePort());
+    target.error(source.error());
+    if (source.debug()) target.setDebug();
+    if (source.shared()) target.setShared();
+    source.forEachTag(Copier.INSTANCE, target);
+    source.forEachAnnotation(Copier.INSTANCE, target);
+  }
+
+  /** Clears all fields except IDs, which are overwritten by {@link #copy}. */
+  static void clear(MutableSpan span) {
+    span.parentId(null);
+    span.kind(null);
+    span.name(null);
+    span.startTimestamp(0L);
+    span.finishTimestamp(0L);
+    span.localServiceName(null);
+    span.localIp(null);
+    span.localPort(0);
+    span.remoteServiceName(null);
+    span.remoteIp(null);
+    span.remotePort(0);
+    span.error(null);
+    span.unsetDebug();
+    span.unsetShared();
+    span.forEachTag(Copier.INSTANCE);
+    span.forEachAnnotation(Copier.INSTANCE);
+  }
+
+  /** Copies tags and annotations into the target, or removes them when used as an updater. */
+  enum Copier implements TagConsumer<MutableSpan>, AnnotationConsumer<MutableSpan>, TagUpdater,
+    AnnotationUpdater {
+    INSTANCE;
+
+    @Override public void accept(MutableSpan target, String key, String value) {
+      target.tag(key, value);
+    }
+
+    @Override public void accept(MutableSpan target, long timestamp, String value) {
+      target.annotate(timestamp, value);
+    }
+
+    @Override public String update(String key, String value) {
+      return null;
+    }
+
+    @Override public String update(long timestamp, String value) {
+      return null;
+    }
+  }
+
+  /** Recycles spans into the pool after the delegate encodes them. */
+  static final class RecyclingEncoder implements BytesEncoder<MutableSpan>,
+    SpanLimiter<MutableSpan>, SpanRecycler<MutableSpan> {
+    final BytesEncoder<MutableSpan> delegate;
+    final MutableSpanPool pool;
+
+    RecyclingEncoder(BytesEncoder<MutableSpan> delegate, MutableSpanPool pool) {
+      this.delegate = delegate;
+      this.pool = pool;
+    }
+
+    @Override public Encoding encoding() {
+      return delegate.encoding();
+    }
+
+    @Override public int sizeInBytes(MutableSpan input) {
+      return delegate.sizeInBytes(input);
+    }
+
+    @Override public byte[] encode(MutableSpan input) {
+      return delegate.encode(input);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public MutableSpan limit(MutableSpan span) {
+      if (!(delegate instanceof SpanLimiter)) return span;
+      MutableSpan result = ((SpanLimiter<MutableSpan>) delegate).limit(span);
+      if (result != span) pool.recycle(span); // the reporter queues the copy instead
+      return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public BytesEncoder<MutableSpan> limitedEncoder() {
+      if (!(delegate instanceof SpanLimiter)) return delegate;
+      return ((SpanLimiter<MutableSpan>) delegate).limitedEncoder();
+    }
+
+    @Override public void recycle(MutableSpan span) {
+      pool.recycle(span);
+    }
+
+    @Override public String toString() {
+      return delegate.toString();
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave;
+
+import brave.handler.MutableSpan;
+import zipkin2.reporter.BytesEncoder;
+import zipkin2.reporter.brave.internal.OtlpProto3Writer;
+import zipkin2.reporter.internal.Nullable;
+import zipkin2.reporter.internal.SpanResources;
+
+/**
+ * Groups spans by local service name and endpoint, which are the resource attributes written by
+ * {@link MutableSpanBytesEncoder#OTLP_PROTO3}.
+ */
+enum MutableSpanResources implements SpanResources<MutableSpan> {
+  INSTANCE;
+
+  /** Returns true if the encoder writes resources as {@link OtlpProto3Writer} does. */
+  static boolean isBuiltIn(BytesEncoder<MutableSpan> encoder) {
+    if (encoder instanceof SizeLimitedEncoder) { // limits don't apply to resources
+      encoder = ((SizeLimitedEncoder) encoder).delegate;
+    }
+    return encoder == MutableSpanBytesEncoder.OTLP_PROTO3 || encoder instanceof OtlpProto3Encoder;
+  }
+
+  @Override public Object key(MutableSpan span) {
+    return new Key(span.localServiceName(), span.localIp(), span.localPort());
+  }
+
+  @Override public int sizeInBytes(MutableSpan span) {
+    return OtlpProto3Writer.resourceSizeInBytes(span);
+  }
+
+  static final class Key {
+    @Nullable final String serviceName, ip;
+    final int port;
+
+    Key(@Nullable String serviceName, @Nullable String ip, int port) {
+      this.serviceName = serviceName;
+      this.ip = ip;
+      this.port = port;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Key)) return false;
+      Key that = (Key) o;
+      return equal(serviceName, that.serviceName) && equal(ip, that.ip) && port == that.port;
+    }
+
+    static boolean equal(@Nullable String a, @Nullable String b) {
+      return a == null ? b == null : a.equals(b);
+    }
+
+    @Override public int hashCode() {
+      int h = 1000003;
+      h ^= serviceName == null ? 0 : serviceName.hashCode();
+      h *= 1000003;
+      h ^= ip == null ? 0 : ip.hashCode();
+      h *= 1000003;
+      h ^= port;
+      return h;
+    }
+  }
+}
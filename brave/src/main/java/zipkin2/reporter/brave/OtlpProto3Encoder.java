@@ -0,0 +1,34 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave;
+
+import brave.Tag;
+import brave.Tags;
+import brave.handler.MutableSpan;
+import zipkin2.reporter.BytesEncoder;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.brave.internal.OtlpProto3Writer;
+
+final class OtlpProto3Encoder implements BytesEncoder<MutableSpan> {
+  static final BytesEncoder<MutableSpan> INSTANCE = new OtlpProto3Encoder(Tags.ERROR);
+  final OtlpProto3Writer delegate;
+
+  OtlpProto3Encoder(Tag<Throwable> errorTag) {
+    if (errorTag == null) throw new NullPointerException("errorTag == null");
+    this.delegate = new OtlpProto3Writer(errorTag);
+  }
+
+  @Override public Encoding encoding() {
+    return Encoding.OTLP_PROTO3;
+  }
+
+  @Override public int sizeInBytes(MutableSpan span) {
+    return delegate.sizeInBytes(span);
+  }
+
+  @Override public byte[] encode(MutableSpan span) {
+    return delegate.write(span);
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave;
+
+import brave.Tag;
+import brave.handler.MutableSpan;
+import brave.handler.MutableSpan.AnnotationUpdater;
+import brave.handler.MutableSpan.TagUpdater;
+import zipkin2.reporter.BytesEncoder;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.SpanSizeLimits;
+import zipkin2.reporter.internal.SpanLimiter;
+import zipkin2.reporter.internal.Utf8;
+
+/**
+ * Applies {@link SpanSizeLimits} before delegating. Spans within limits are passed through as-is,
+ * so only spans that violate a limit are copied. The input is never mutated, as it could be read
+ * by other handlers. The reporter queues the result of {@link #limit(MutableSpan)}, then sizes and
+ * encodes it with the {@link #limitedEncoder() delegate}, so limits are checked once, not again
+ * when sizing or encoding.
+ */
+final class SizeLimitedEncoder implements BytesEncoder<MutableSpan>, SpanLimiter<MutableSpan> {
+  final BytesEncoder<MutableSpan> delegate;
+  final Tag<Throwable> errorTag;
+  final SpanSizeLimits limits;
+
+  SizeLimitedEncoder(BytesEncoder<MutableSpan> delegate, Tag<Throwable> errorTag,
+    SpanSizeLimits limits) {
+    this.delegate = delegate;
+    this.errorTag = errorTag;
+    this.limits = limits;
+  }
+
+  @Override public Encoding encoding() {
+    return delegate.encoding();
+  }
+
+  @Override public int sizeInBytes(MutableSpan input) {
+    MutableSpan limited = exceedsValueLimits(input) ? limitValues(input) : input;
+    int sizeInBytes = delegate.sizeInBytes(limited);
+    if (limits.spanMaxBytes() == 0 || sizeInBytes <= limits.spanMaxBytes()) return sizeInBytes;
+    return delegate.sizeInBytes(trimLargestValues(limited, input, sizeInBytes));
+  }
+
+  @Override public byte[] encode(MutableSpan input) {
+    return delegate.encode(limit(input));
+  }
+
+  @Override public MutableSpan limit(MutableSpan input) {
+    MutableSpan limited = exceedsValueLimits(input) ? limitValues(input) : input;
+    if (limits.spanMaxBytes() == 0) return limited;
+    int sizeInBytes = delegate.sizeInBytes(limited);
+    if (sizeInBytes <= limits.spanMaxBytes()) return limited;
+    return trimLargestValues(limited, input, sizeInBytes);
+  }
+
+  @Override public BytesEncoder<MutableSpan> limitedEncoder() {
+    return delegate;
+  }
+
+  boolean exceedsValueLimits(MutableSpan span) {
+    if (limits.tagValueMaxBytes() != 0) {
+      for (int i = 0, length = span.tagCount(); i < length; i++) {
+        if (Utf8.exceeds(span.tagValueAt(i), limits.tagValueMaxBytes())) return true;
+      }
+      String errorValue = errorValue(span);
+      if (errorValue != null && Utf8.exceeds(errorValue, limits.tagValueMaxBytes())) return true;
+    }
+    if (limits.annotationValueMaxBytes() != 0) {
+      for (int i = 0, length = span.annotationCount(); i < length; i++) {
+        if (Utf8.exceeds(span.annotationValueAt(i), limits.annotationValueMaxBytes())) return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns the value the delegate would add for {@link MutableSpan#error()}, if any. */
+  String errorValue(MutableSpan span) {
+    if (span.error() == null || span.tag(errorTag.key()) != null) return null;
+    return errorTag.value(span.error(), null);
+  }
+
+  /** Returns a copy that includes the error tag, so that it can be limited like other tags. */
+  MutableSpan copyWithErrorTag(MutableSpan span) {
+    MutableSpan copy = new MutableSpan(span);
+    String errorValue = errorValue(span);
+    if (errorValue != null) copy.tag(errorTag.key(), errorValue);
+    return copy;
+  }
+
+  MutableSpan limitValues(MutableSpan span) {
+    MutableSpan copy = copyWithErrorTag(span);
+    final int tagValueMaxBytes = limits.tagValueMaxBytes();
+    if (tagValueMaxBytes != 0) {
+      copy.forEachTag(new TagUpdater() {
+        @Override public String update(String key, String value) {
+          return Utf8.truncate(value, tagValueMaxBytes);
+        }
+      });
+    }
+    final int annotationValueMaxBytes = limits.annotationValueMaxBytes();
+    if (annotationValueMaxBytes != 0) {
+      copy.forEachAnnotation(new AnnotationUpdater() {
+        @Override public String update(long timestamp, String value) {
+          return Utf8.truncate(value, annotationValueMaxBytes);
+        }
+      });
+    }
+    return copy;
+  }
+
+  /**
+   * Truncates the largest tag or annotation value by the excess bytes until the span fits. The
+   * encoded span shrinks at least as much as the value, so this loops at most once per value.
+   */
+  MutableSpan trimLargestValues(MutableSpan limited, MutableSpan input, int sizeInBytes) {
+    MutableSpan trimmed = limited != input ? limited : copyWithErrorTag(input);
+    if (trimmed != limited) sizeInBytes = delegate.sizeInBytes(trimmed);
+    while (sizeInBytes > limits.spanMaxBytes()) {
+      int largestTag = -1, largestAnnotation = -1, largestSizeInBytes = 0;
+      for (int i = 0, length = trimmed.tagCount(); i < length; i++) {
+        int valueSizeInBytes = Utf8.sizeInBytes(trimmed.tagValueAt(i));
+        if (valueSizeInBytes > largestSizeInBytes) {
+          largestTag = i;
+          largestSizeInBytes = valueSizeInBytes;
+        }
+      }
+      for (int i = 0, length = trimmed.annotationCount(); i < length; i++) {
+        int valueSizeInBytes = Utf8.sizeInBytes(trimmed.annotationValueAt(i));
+        if (valueSizeInBytes > largestSizeInBytes) {
+          largestTag = -1;
+          largestAnnotation = i;
+          largestSizeInBytes = valueSizeInBytes;
+        }
+      }
+      if (largestSizeInBytes == 0) return trimmed; // nothing left to truncate
+
+      int maxBytes = largestSizeInBytes - (sizeInBytes - limits.spanMaxBytes());
+      if (largestTag != -1) {
+        trimmed.tag(trimmed.tagKeyAt(largestTag),
+          Utf8.truncate(trimmed.tagValueAt(largestTag), maxBytes));
+      } else {
+        trimmed.forEachAnnotation(new TruncateAnnotation(largestAnnotation, maxBytes));
+      }
+      sizeInBytes = delegate.sizeInBytes(trimmed);
+    }
+    return trimmed;
+  }
+
+  static final class TruncateAnnotation implements AnnotationUpdater {
+    final int index, maxBytes;
+    int i;
+
+    TruncateAnnotation(int index, int maxBytes) {
+      this.index = index;
+      this.maxBytes = maxBytes;
+    }
+
+    @Override public String update(long timestamp, String value) {
+      return i++ == index ? Utf8.truncate(value, maxBytes) : value;
+    }
+  }
+
+  @Override public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof SizeLimitedEncoder)) return false;
+    SizeLimitedEncoder that = (SizeLimitedEncoder) o;
+    return delegate.equals(that.delegate) && errorTag.equals(that.errorTag)
+      && limits.equals(that.limits);
+  }
+
+  @Override public int hashCode() {
+    int h = 1000003;
+    h ^= delegate.hashCode();
+    h *= 1000003;
+    h ^= errorTag.hashCode();
+    h *= 1000003;
+    h ^= limits.hashCode();
+    return h;
+  }
+
+  @Override public String toString() {
+    return delegate + "{" + limits + "}";
+  }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave;
+
+import brave.Span.Kind;
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import brave.sampler.Matcher;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import zipkin2.reporter.Reporter;
+
+/**
+ * A {@link SpanHandler} that aggregates spans into rate, error and duration {@linkplain
+ * SpanMetrics summaries}, and only forwards a sample of the raw spans to the next handler.
+ *
+ * <p>This is useful for high-volume, low-value spans, such as health checks or cache gets, which
+ * are only ever charted. Summaries are keyed by local service, span name, kind and remote service,
+ * and reported each {@linkplain Builder#interval(long, TimeUnit) interval}. Spans that don't match
+ * the {@linkplain Builder#spanMatcher(Matcher) span matcher} pass through untouched.
+ *
+ * <p>This must be added before the handler that reports spans, as returning false from {@link
+ * #end} is how Brave drops a span for the remaining handlers.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * metricsHandler = SpanMetricsHandler.newBuilder(metrics -> {
+ *   // for example, record metrics.count() in a Micrometer counter
+ * }).spanMatcher(span -> "get".equals(span.name())).rawSpanRate(0.01f).build();
+ *
+ * tracingBuilder.addSpanHandler(metricsHandler) // don't forget to close!
+ *               .addSpanHandler(zipkinSpanHandler);
+ * }</pre>
+ *
+ * @since 3.6
+ */
+public final class SpanMetricsHandler extends SpanHandler implements Closeable, Flushable {
+  static final Logger logger = Logger.getLogger(SpanMetricsHandler.class.getName());
+
+  /** @since 3.6 */
+  public static SpanMetricsHandler create(Reporter<SpanMetrics> metricsReporter) {
+    return newBuilder(metricsReporter).build();
+  }
+
+  /** @since 3.6 */
+  public static Builder newBuilder(Reporter<SpanMetrics> metricsReporter) {
+    if (metricsReporter == null) throw new NullPointerException("metricsReporter == null");
+    return new Builder(metricsReporter);
+  }
+
+  /** @since 3.6 */
+  public static final class Builder {
+    final Reporter<SpanMetrics> metricsReporter;
+    ThreadFactory threadFactory = Executors.defaultThreadFactory();
+    Matcher<MutableSpan> spanMatcher = new Matcher<MutableSpan>() {
+      @Override public boolean matches(MutableSpan span) {
+        return true;
+      }
+    };
+    float rawSpanRate = 1.0f;
+    long intervalNanos = TimeUnit.MINUTES.toNanos(1);
+    int maxKeys = 1000;
+
+    Builder(Reporter<SpanMetrics> metricsReporter) {
+      this.metricsReporter = metricsReporter;
+    }
+
+    /** Used to create the thread that reports summaries. */
+    public Builder threadFactory(ThreadFactory threadFactory) {
+      if (threadFactory == null) throw new NullPointerException("threadFactory == null");
+      this.threadFactory = threadFactory;
+      return this;
+    }
+
+    /** Selects spans to aggregate. Defaults to all spans. */
+    public Builder spanMatcher(Matcher<MutableSpan> spanMatcher) {
+      if (spanMatcher == null) throw new NullPointerException("spanMatcher == null");
+      this.spanMatcher = spanMatcher;
+      return this;
+    }
+
+    /**
+     * Percentage of aggregated spans forwarded to the next handler, between 0 and 1. Defaults to 1,
+     * which aggregates without dropping anything.
+     *
+     * <p>The decision is made on the trace ID, so that a trace is either forwarded in its entirety
+     * or not at all.
+     */
+    public Builder rawSpanRate(float rawSpanRate) {
+      if (rawSpanRate < 0.0f || rawSpanRate > 1.0f) {
+        throw new IllegalArgumentException("rawSpanRate should be between 0 and 1: was " + rawSpanRate);
+      }
+      this.rawSpanRate = rawSpanRate;
+      return this;
+    }
+
+    /**
+     * How often summaries are reported. Defaults to 1 minute. Zero disables the reporting thread,
+     * so that you must call {@link SpanMetricsHandler#flush()} yourself.
+     */
+    public Builder interval(long interval, TimeUnit unit) {
+      if (interval < 0) throw new IllegalArgumentException("interval < 0: " + interval);
+      this.intervalNanos = unit.toNanos(interval);
+      return this;
+    }
+
+    /**
+     * Maximum count of distinct summaries held at the same time. Spans that would create a summary
+     * past this limit pass through untouched. Defaults to 1000.
+     */
+    public Builder maxKeys(int maxKeys) {
+      if (maxKeys <= 0) throw new IllegalArgumentException("maxKeys <= 0: " + maxKeys);
+      this.maxKeys = maxKeys;
+      return this;
+    }
+
+    public SpanMetricsHandler build() {
+      return new SpanMetricsHandler(this);
+    }
+  }
+
+  final Reporter<SpanMetrics> metricsReporter;
+  final ThreadFactory threadFactory;
+  final Matcher<MutableSpan> spanMatcher;
+  final long rawSpanBoundary; // compared against the trace ID modulo 10000
+  final long intervalNanos;
+  final int maxKeys;
+  final ConcurrentHashMap<Key, Aggregate> aggregates = new ConcurrentHashMap<Key, Aggregate>();
+  final AtomicBoolean started = new AtomicBoolean(), closed = new AtomicBoolean();
+  final CountDownLatch close = new CountDownLatch(1);
+  boolean shouldWarnException = true;
+
+  SpanMetricsHandler(Builder builder) {
+    this.metricsReporter = builder.metricsReporter;
+    this.threadFactory = builder.threadFactory;
+    this.spanMatcher = builder.spanMatcher;
+    this.rawSpanBoundary = (long) (builder.rawSpanRate * 10000);
+    this.intervalNanos = builder.intervalNanos;
+    this.maxKeys = builder.maxKeys;
+  }
+
+  @Override public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+    if (cause == Cause.ABANDONED || closed.get() || !spanMatcher.matches(span)) return true;
+
+    Key key = new Key(span);
+    Aggregate aggregate = aggregates.get(key);
+    if (aggregate == null) {
+      if (aggregates.size() >= maxKeys) return true;
+      if (intervalNanos > 0 && started.compareAndSet(false, true)) startReporterThread();
+      aggregate = new Aggregate();
+      Aggregate existing = aggregates.putIfAbsent(key, aggregate);
+      if (existing != null) aggregate = existing;
+    }
+    aggregate.record(span);
+
+    return (context.traceId() & Long.MAX_VALUE) % 10000 < rawSpanBoundary;
+  }
+
+  /** Reports summaries of spans aggregated since the last interval. */
+  @Override public void flush() {
+    for (Iterator<Map.Entry<Key, Aggregate>> i = aggregates.entrySet().iterator(); i.hasNext(); ) {
+      Map.Entry<Key, Aggregate> entry = i.next();
+      SpanMetrics metrics = entry.getValue().drain(entry.getKey());
+      // Idle since the last interval: free the key for another. A span racing with this removal
+      // may be lost from the summary, which is an acceptable price for not locking in end().
+      if (metrics == null) {
+        i.remove();
+        continue;
+      }
+      try {
+        metricsReporter.report(metrics);
+      } catch (RuntimeException e) {
+        logFailure(e);
+      }
+    }
+  }
+
+  /** Reports any remaining summaries and stops the reporting thread. */
+  @Override public void close() {
+    if (!closed.compareAndSet(false, true)) return;
+    close.countDown();
+    flush();
+  }
+
+  void startReporterThread() {
+    Thread reporterThread = threadFactory.newThread(new Runnable() {
+      @Override public void run() {
+        try {
+          while (!close.await(intervalNanos, TimeUnit.NANOSECONDS)) flush();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    reporterThread.setName("SpanMetricsHandler{" + metricsReporter + "}");
+    reporterThread.setDaemon(true);
+    reporterThread.start();
+  }
+
+  void logFailure(RuntimeException e) {
+    String message = "Failed to report span metrics: " + e.getMessage();
+    if (shouldWarnException) {
+      logger.log(Level.WARNING, message, e);
+      shouldWarnException = false;
+    } else {
+      logger.log(Level.FINE, message, e);
+    }
+  }
+
+  @Override public String toString() {
+    return "SpanMetricsHandler{" + metricsReporter + "}";
+  }
+
+  static final class Key {
+    final String localServiceName, name, remoteServiceName;
+    final Kind kind;
+    final int hashCode;
+
+    Key(MutableSpan span) {
+      this.localServiceName = span.localServiceName();
+      this.name = span.name();
+      this.kind = span.kind();
+      this.remoteServiceName = span.remoteServiceName();
+      int h = 1000003;
+      h ^= localServiceName == null ? 0 : localServiceName.hashCode();
+      h *= 1000003;
+      h ^= name == null ? 0 : name.hashCode();
+      h *= 1000003;
+      h ^= kind == null ? 0 : kind.hashCode();
+      h *= 1000003;
+      h ^= remoteServiceName == null ? 0 : remoteServiceName.hashCode();
+      this.hashCode = h;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Key)) return false;
+      Key that = (Key) o;
+      return equal(localServiceName, that.localServiceName)
+        && equal(name, that.name)
+        && kind == that.kind
+        && equal(remoteServiceName, that.remoteServiceName);
+    }
+
+    @Override public int hashCode() {
+      return hashCode;
+    }
+
+    static boolean equal(String a, String b) {
+      return a == null ? b == null : a.equals(b);
+    }
+  }
+
+  /** Lock-free counters for one key, reset each time they are drained. */
+  static final class Aggregate {
+    final AtomicLong count = new AtomicLong(), errorCount = new AtomicLong();
+    final AtomicLong totalDurationMicros = new AtomicLong(), maxDurationMicros = new AtomicLong();
+    final AtomicLongArray buckets = new AtomicLongArray(SpanMetrics.BUCKET_COUNT);
+
+    void record(MutableSpan span) {
+      count.incrementAndGet();
+      if (span.error() != null || span.tag("error") != null) errorCount.incrementAndGet();
+
+      long startTimestamp = span.startTimestamp(), finishTimestamp = span.finishTimestamp();
+      if (startTimestamp == 0L || finishTimestamp == 0L) return;
+      long duration = Math.max(finishTimestamp - startTimestamp, 0L);
+      totalDurationMicros.addAndGet(duration);
+      buckets.incrementAndGet(SpanMetrics.bucketIndex(duration));
+      for (long max = maxDurationMicros.get(); duration > max; max = maxDurationMicros.get()) {
+        if (maxDurationMicros.compareAndSet(max, duration)) break;
+      }
+    }
+
+    /** Returns null if nothing was recorded since the last drain. */
+    SpanMetrics drain(Key key) {
+      long count = this.count.getAndSet(0L);
+      if (count == 0L) return null;
+      long[] buckets = new long[SpanMetrics.BUCKET_COUNT];
+      for (int i = 0; i < buckets.length; i++) {
+        if (this.buckets.get(i) != 0L) buckets[i] = this.buckets.getAndSet(i, 0L);
+      }
+      return new SpanMetrics(key.localServiceName, key.name, key.kind, key.remoteServiceName,
+        count, errorCount.getAndSet(0L), totalDurationMicros.getAndSet(0L),
+        maxDurationMicros.getAndSet(0L), buckets);
+    }
+  }
+}
@@ -29,7 +29,9 @@ import zipkin2.reporter.SpanBytesEncoder;
  * <p><em>Note</em>: Use {@link AsyncZipkinSpanHandler} if you are using {@link
  * SpanBytesEncoder#JSON_V2} format. This handler has to convert {@link MutableSpan} into {@link
  * Span}, and that conversion happens inline (during production requests) upon {@link
- * brave.Span#finish()} or {@link brave.Span#flush()}.
+ * brave.Span#finish()} or {@link brave.Span#flush()}. The exception is when the reporter is an
+ * {@link zipkin2.reporter.AsyncReporter} using {@link SpanBytesEncoder#JSON_V2} or {@link
+ * SpanBytesEncoder#PROTO3}: Spans are then queued without conversion, and encoded directly.
  *
  * @see AsyncZipkinSpanHandler
  * @see brave.Tracing.Builder#addSpanHandler(SpanHandler)
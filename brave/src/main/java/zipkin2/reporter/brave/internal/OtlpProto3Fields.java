@@ -0,0 +1,301 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave.internal;
+
+import brave.Tag;
+import brave.handler.MutableSpan;
+import zipkin2.reporter.brave.internal.Proto3Fields.Fixed64Field;
+import zipkin2.reporter.brave.internal.Proto3Fields.HexField;
+import zipkin2.reporter.brave.internal.Proto3Fields.Utf8Field;
+import zipkin2.reporter.brave.internal.Proto3Fields.VarintField;
+import zipkin2.reporter.internal.Nullable;
+
+import static zipkin2.reporter.brave.internal.Proto3Fields.WIRETYPE_FIXED64;
+import static zipkin2.reporter.brave.internal.Proto3Fields.WIRETYPE_LENGTH_DELIMITED;
+import static zipkin2.reporter.brave.internal.Proto3Fields.WIRETYPE_VARINT;
+import static zipkin2.reporter.brave.internal.Proto3Fields.sizeOfLengthDelimitedField;
+
+/**
+ * Fields of the OTLP trace protos needed to write a {@link MutableSpan}, without decoding logic.
+ *
+ * <p>See https://github.com/open-telemetry/opentelemetry-proto/blob/main/opentelemetry/proto/trace/v1/trace.proto
+ *
+ * <p>Zipkin data without a dedicated OTLP field is mapped to attributes, following OpenTelemetry
+ * semantic conventions. For example, the local service name is the "service.name" resource
+ * attribute, and the remote service name is the "peer.service" span attribute. The local endpoint
+ * describes the process, not the span, so it is in the resource as well.
+ */
+//@Immutable
+final class OtlpProto3Fields {
+  static final String SERVICE_NAME = "service.name", PEER_SERVICE = "peer.service",
+    LOCAL_ADDRESS = "network.local.address", LOCAL_PORT = "network.local.port",
+    PEER_ADDRESS = "network.peer.address", PEER_PORT = "network.peer.port";
+
+  /** The {@code KeyValue} type, where the value is a string or an int. */
+  static final class AttributeField extends Proto3Fields.Field {
+    static final int KEY_KEY = (1 << 3) | WIRETYPE_LENGTH_DELIMITED;
+    static final int VALUE_KEY = (2 << 3) | WIRETYPE_LENGTH_DELIMITED;
+    // fields of AnyValue
+    static final int STRING_VALUE_KEY = (1 << 3) | WIRETYPE_LENGTH_DELIMITED;
+    static final int INT_VALUE_KEY = (3 << 3) | WIRETYPE_VARINT;
+
+    static final Utf8Field KEY = new Utf8Field(KEY_KEY);
+    static final Utf8Field STRING_VALUE = new Utf8Field(STRING_VALUE_KEY);
+    static final VarintField INT_VALUE = new VarintField(INT_VALUE_KEY);
+
+    AttributeField(int key) {
+      super(key);
+      assert wireType == WIRETYPE_LENGTH_DELIMITED;
+    }
+
+    int sizeInBytes(String key, @Nullable String value) {
+      if (value == null) return 0;
+      return sizeOfLengthDelimitedField(sizeOfValue(key, value));
+    }
+
+    static int sizeOfValue(String key, String value) {
+      return KEY.sizeInBytes(key) + sizeOfLengthDelimitedField(STRING_VALUE.sizeInBytes(value));
+    }
+
+    void write(WriteBuffer b, String key, @Nullable String value) {
+      if (value == null) return;
+      b.writeByte(this.key);
+      b.writeVarint(sizeOfValue(key, value)); // length prefix
+      KEY.write(b, key);
+      b.writeByte(VALUE_KEY);
+      b.writeVarint(STRING_VALUE.sizeInBytes(value));
+      STRING_VALUE.write(b, value);
+    }
+
+    int sizeInBytes(String key, int value) {
+      if (value == 0) return 0;
+      return sizeOfLengthDelimitedField(sizeOfValue(key, value));
+    }
+
+    static int sizeOfValue(String key, int value) {
+      return KEY.sizeInBytes(key) + sizeOfLengthDelimitedField(INT_VALUE.sizeInBytes(value));
+    }
+
+    void write(WriteBuffer b, String key, int value) {
+      if (value == 0) return;
+      b.writeByte(this.key);
+      b.writeVarint(sizeOfValue(key, value)); // length prefix
+      KEY.write(b, key);
+      b.writeByte(VALUE_KEY);
+      b.writeVarint(INT_VALUE.sizeInBytes(value));
+      INT_VALUE.write(b, value);
+    }
+  }
+
+  /** The {@code Resource} type, which holds the local service name and endpoint. */
+  static final class ResourceField extends Proto3Fields.Field {
+    static final AttributeField ATTRIBUTE =
+      new AttributeField((1 << 3) | WIRETYPE_LENGTH_DELIMITED);
+
+    ResourceField(int key) {
+      super(key);
+      assert wireType == WIRETYPE_LENGTH_DELIMITED;
+    }
+
+    int sizeInBytes(MutableSpan span) {
+      int sizeOfValue = sizeOfValue(span);
+      return sizeOfValue != 0 ? sizeOfLengthDelimitedField(sizeOfValue) : 0;
+    }
+
+    static int sizeOfValue(MutableSpan span) {
+      return ATTRIBUTE.sizeInBytes(SERVICE_NAME, span.localServiceName())
+        + ATTRIBUTE.sizeInBytes(LOCAL_ADDRESS, span.localIp())
+        + ATTRIBUTE.sizeInBytes(LOCAL_PORT, span.localPort());
+    }
+
+    void write(WriteBuffer b, MutableSpan span) {
+      int sizeOfValue = sizeOfValue(span);
+      if (sizeOfValue == 0) return;
+      b.writeByte(key);
+      b.writeVarint(sizeOfValue); // length prefix
+      ATTRIBUTE.write(b, SERVICE_NAME, span.localServiceName());
+      ATTRIBUTE.write(b, LOCAL_ADDRESS, span.localIp());
+      ATTRIBUTE.write(b, LOCAL_PORT, span.localPort());
+    }
+  }
+
+  /** The {@code Span.Event} type, which is a Zipkin annotation. */
+  static final class EventField extends Proto3Fields.Field {
+    static final Fixed64Field TIME = new Fixed64Field((1 << 3) | WIRETYPE_FIXED64);
+    static final Utf8Field NAME = new Utf8Field((2 << 3) | WIRETYPE_LENGTH_DELIMITED);
+
+    EventField(int key) {
+      super(key);
+      assert wireType == WIRETYPE_LENGTH_DELIMITED;
+    }
+
+    int sizeInBytes(long timestamp, String value) {
+      return sizeOfLengthDelimitedField(sizeOfValue(timestamp, value));
+    }
+
+    static int sizeOfValue(long timestamp, String value) {
+      return TIME.sizeInBytes(timestamp * 1000L) + NAME.sizeInBytes(value);
+    }
+
+    void write(WriteBuffer b, long timestamp, String value) {
+      b.writeByte(key);
+      b.writeVarint(sizeOfValue(timestamp, value)); // length prefix
+      TIME.write(b, timestamp * 1000L);
+      NAME.write(b, value);
+    }
+  }
+
+  /** The {@code Status} type, which is only written on error. */
+  static final class StatusField extends Proto3Fields.Field {
+    static final Utf8Field MESSAGE = new Utf8Field((2 << 3) | WIRETYPE_LENGTH_DELIMITED);
+    static final VarintField CODE = new VarintField((3 << 3) | WIRETYPE_VARINT);
+    static final int STATUS_CODE_ERROR = 2;
+
+    StatusField(int key) {
+      super(key);
+      assert wireType == WIRETYPE_LENGTH_DELIMITED;
+    }
+
+    int sizeInBytes(@Nullable String errorMessage) {
+      if (errorMessage == null) return 0;
+      return sizeOfLengthDelimitedField(sizeOfValue(errorMessage));
+    }
+
+    static int sizeOfValue(String errorMessage) {
+      return MESSAGE.sizeInBytes(errorMessage) + CODE.sizeInBytes(STATUS_CODE_ERROR);
+    }
+
+    void write(WriteBuffer b, @Nullable String errorMessage) {
+      if (errorMessage == null) return;
+      b.writeByte(key);
+      b.writeVarint(sizeOfValue(errorMessage)); // length prefix
+      MESSAGE.write(b, errorMessage);
+      CODE.write(b, STATUS_CODE_ERROR);
+    }
+  }
+
+  /** OTLP trace IDs are always 16 bytes, so a 64-bit trace ID is left-padded with zeros. */
+  static final class TraceIdField extends HexField {
+    TraceIdField(int key) {
+      super(key);
+    }
+
+    @Override int sizeOfValue(String hex) {
+      return hex != null ? 16 : 0;
+    }
+
+    @Override void writeValue(WriteBuffer b, String hex) {
+      for (int i = hex.length(); i < 32; i += 2) b.writeByte(0);
+      super.writeValue(b, hex);
+    }
+  }
+
+  /** The {@code Span} type, written as field 2 of {@code ScopeSpans}. */
+  static final class SpanField extends Proto3Fields.LengthDelimitedField<MutableSpan> {
+    static final TraceIdField TRACE_ID = new TraceIdField((1 << 3) | WIRETYPE_LENGTH_DELIMITED);
+    static final HexField SPAN_ID = new HexField((2 << 3) | WIRETYPE_LENGTH_DELIMITED);
+    static final HexField PARENT_SPAN_ID = new HexField((4 << 3) | WIRETYPE_LENGTH_DELIMITED);
+    static final Utf8Field NAME = new Utf8Field((5 << 3) | WIRETYPE_LENGTH_DELIMITED);
+    static final VarintField KIND = new VarintField((6 << 3) | WIRETYPE_VARINT);
+    static final Fixed64Field START_TIME = new Fixed64Field((7 << 3) | WIRETYPE_FIXED64);
+    static final Fixed64Field END_TIME = new Fixed64Field((8 << 3) | WIRETYPE_FIXED64);
+    static final AttributeField ATTRIBUTE =
+      new AttributeField((9 << 3) | WIRETYPE_LENGTH_DELIMITED);
+    static final EventField EVENT = new EventField((11 << 3) | WIRETYPE_LENGTH_DELIMITED);
+    static final StatusField STATUS = new StatusField((15 << 3) | WIRETYPE_LENGTH_DELIMITED);
+
+    final Tag<Throwable> errorTag;
+
+    SpanField(Tag<Throwable> errorTag) {
+      super((2 << 3) | WIRETYPE_LENGTH_DELIMITED);
+      if (errorTag == null) throw new NullPointerException("errorTag == null");
+      this.errorTag = errorTag;
+    }
+
+    @Override int sizeOfValue(MutableSpan span) {
+      int sizeInBytes = TRACE_ID.sizeInBytes(span.traceId());
+      sizeInBytes += SPAN_ID.sizeInBytes(span.id());
+      sizeInBytes += PARENT_SPAN_ID.sizeInBytes(span.parentId());
+      sizeInBytes += NAME.sizeInBytes(span.name());
+      sizeInBytes += KIND.sizeInBytes(kind(span.kind()));
+      if (span.startTimestamp() != 0L) {
+        sizeInBytes += START_TIME.sizeInBytes(span.startTimestamp() * 1000L);
+        sizeInBytes += END_TIME.sizeInBytes(span.finishTimestamp() * 1000L);
+      }
+
+      sizeInBytes += ATTRIBUTE.sizeInBytes(PEER_SERVICE, span.remoteServiceName());
+      sizeInBytes += ATTRIBUTE.sizeInBytes(PEER_ADDRESS, span.remoteIp());
+      sizeInBytes += ATTRIBUTE.sizeInBytes(PEER_PORT, span.remotePort());
+
+      String errorTagName = errorTag.key(), errorMessage = null;
+      for (int i = 0, tagCount = span.tagCount(); i < tagCount; i++) {
+        String key = span.tagKeyAt(i);
+        if (key.equals(errorTagName)) {
+          errorMessage = span.tagValueAt(i);
+          continue; // written as the status
+        }
+        sizeInBytes += ATTRIBUTE.sizeInBytes(key, span.tagValueAt(i));
+      }
+
+      for (int i = 0, annotationCount = span.annotationCount(); i < annotationCount; i++) {
+        sizeInBytes += EVENT.sizeInBytes(span.annotationTimestampAt(i), span.annotationValueAt(i));
+      }
+
+      if (errorMessage == null) errorMessage = errorTag.value(span.error(), null);
+      sizeInBytes += STATUS.sizeInBytes(errorMessage);
+      return sizeInBytes;
+    }
+
+    @Override void writeValue(WriteBuffer b, MutableSpan span) {
+      TRACE_ID.write(b, span.traceId());
+      SPAN_ID.write(b, span.id());
+      PARENT_SPAN_ID.write(b, span.parentId());
+      NAME.write(b, span.name());
+      KIND.write(b, kind(span.kind()));
+      if (span.startTimestamp() != 0L) {
+        START_TIME.write(b, span.startTimestamp() * 1000L);
+        END_TIME.write(b, span.finishTimestamp() * 1000L);
+      }
+
+      ATTRIBUTE.write(b, PEER_SERVICE, span.remoteServiceName());
+      ATTRIBUTE.write(b, PEER_ADDRESS, span.remoteIp());
+      ATTRIBUTE.write(b, PEER_PORT, span.remotePort());
+
+      String errorTagName = errorTag.key(), errorMessage = null;
+      for (int i = 0, tagCount = span.tagCount(); i < tagCount; i++) {
+        String key = span.tagKeyAt(i);
+        if (key.equals(errorTagName)) {
+          errorMessage = span.tagValueAt(i);
+          continue; // written as the status
+        }
+        ATTRIBUTE.write(b, key, span.tagValueAt(i));
+      }
+
+      for (int i = 0, annotationCount = span.annotationCount(); i < annotationCount; i++) {
+        EVENT.write(b, span.annotationTimestampAt(i), span.annotationValueAt(i));
+      }
+
+      if (errorMessage == null) errorMessage = errorTag.value(span.error(), null);
+      STATUS.write(b, errorMessage);
+    }
+
+    /** Maps to the OTLP {@code SpanKind}, where a span without a kind is internal. */
+    static int kind(@Nullable brave.Span.Kind kind) {
+      if (kind == null) return 1; // SPAN_KIND_INTERNAL
+      switch (kind) {
+        case SERVER:
+          return 2;
+        case CLIENT:
+          return 3;
+        case PRODUCER:
+          return 4;
+        case CONSUMER:
+          return 5;
+        default:
+          return 1;
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave.internal;
+
+import brave.Tag;
+import brave.handler.MutableSpan;
+
+import static zipkin2.reporter.brave.internal.Proto3Fields.WIRETYPE_LENGTH_DELIMITED;
+import static zipkin2.reporter.brave.internal.Proto3Fields.sizeOfLengthDelimitedField;
+
+/**
+ * Writes a single span as an OTLP {@code resource_spans} field, which is a resource and one {@code
+ * scope_spans} holding the span. This is the layout {@link zipkin2.reporter.Encoding#OTLP_PROTO3}
+ * expects, so that spans with the same resource can share it when combined into a message.
+ */
+public final class OtlpProto3Writer {
+  static final int RESOURCE_SPANS_KEY = (1 << 3) | WIRETYPE_LENGTH_DELIMITED;
+  static final int SCOPE_SPANS_KEY = (2 << 3) | WIRETYPE_LENGTH_DELIMITED;
+  static final OtlpProto3Fields.ResourceField RESOURCE =
+    new OtlpProto3Fields.ResourceField((1 << 3) | WIRETYPE_LENGTH_DELIMITED);
+
+  final OtlpProto3Fields.SpanField spanField;
+
+  public OtlpProto3Writer(Tag<Throwable> errorTag) {
+    this.spanField = new OtlpProto3Fields.SpanField(errorTag);
+  }
+
+  public int sizeInBytes(MutableSpan span) {
+    return sizeOfLengthDelimitedField(sizeOfResourceSpans(span, spanField.sizeInBytes(span)));
+  }
+
+  /**
+   * Returns the size of the {@code resource} field, or zero if the span has no local service name
+   * or endpoint.
+   */
+  public static int resourceSizeInBytes(MutableSpan span) {
+    return RESOURCE.sizeInBytes(span);
+  }
+
+  static int sizeOfResourceSpans(MutableSpan span, int sizeOfSpanField) {
+    return RESOURCE.sizeInBytes(span) + sizeOfLengthDelimitedField(sizeOfSpanField);
+  }
+
+  @Override public String toString() {
+    return "MutableSpan";
+  }
+
+  public byte[] write(MutableSpan span) {
+    int sizeOfSpan = spanField.sizeOfValue(span);
+    int sizeOfSpanField = sizeOfLengthDelimitedField(sizeOfSpan);
+    int sizeOfResourceSpans = sizeOfResourceSpans(span, sizeOfSpanField);
+    byte[] result = new byte[sizeOfLengthDelimitedField(sizeOfResourceSpans)];
+    WriteBuffer buf = new WriteBuffer(result);
+    buf.writeByte(RESOURCE_SPANS_KEY);
+    buf.writeVarint(sizeOfResourceSpans); // length prefix
+    RESOURCE.write(buf, span);
+    buf.writeByte(SCOPE_SPANS_KEY);
+    buf.writeVarint(sizeOfSpanField); // length prefix
+    buf.writeByte(spanField.key);
+    buf.writeVarint(sizeOfSpan); // length prefix
+    spanField.writeValue(buf, span);
+    return result;
+  }
+}
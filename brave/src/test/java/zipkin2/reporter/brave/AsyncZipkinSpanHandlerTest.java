@@ -7,6 +7,7 @@ package zipkin2.reporter.brave;
 import brave.handler.MutableSpan;
 import brave.handler.SpanHandler;
 import brave.propagation.TraceContext;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -16,12 +17,14 @@ import org.junit.jupiter.api.Test;
 import zipkin2.Span;
 import zipkin2.codec.SpanBytesDecoder;
 import zipkin2.reporter.BytesEncoder;
+import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.Call;
 import zipkin2.reporter.Callback;
 import zipkin2.reporter.Encoding;
 import zipkin2.reporter.Sender;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 class AsyncZipkinSpanHandlerTest {
   @Test void build_proto() {
@@ -74,6 +77,207 @@ class AsyncZipkinSpanHandlerTest {
     assertThat(sentSpans.get()).isEqualTo(1);
   }
 
+  /** Spans with the same local service and endpoint fit in a message smaller than their sum. */
+  @Test void otlp_sizesMessagesByResource() {
+    MutableSpan get = new MutableSpan();
+    get.traceId("1");
+    get.id("2");
+    get.localServiceName("frontend");
+    get.localIp("127.0.0.1");
+    get.localPort(8080);
+    get.name("get");
+    MutableSpan post = new MutableSpan(get);
+    post.id("3");
+    post.name("post");
+    List<byte[]> encoded = List.of(MutableSpanBytesEncoder.OTLP_PROTO3.encode(get),
+      MutableSpanBytesEncoder.OTLP_PROTO3.encode(post));
+    int messageMaxBytes = Encoding.OTLP_PROTO3.listSizeInBytes(encoded);
+    assertThat(messageMaxBytes).isLessThan(encoded.get(0).length + encoded.get(1).length);
+
+    List<List<byte[]>> messages = new ArrayList<>();
+    BytesMessageSender sender = new BytesMessageSender.Base(Encoding.OTLP_PROTO3) {
+      @Override public int messageMaxBytes() {
+        return messageMaxBytes;
+      }
+
+      @Override public void send(List<byte[]> encodedSpans) {
+        messages.add(encodedSpans);
+      }
+
+      @Override public void close() {
+      }
+    };
+
+    try (AsyncZipkinSpanHandler spanHandler = AsyncZipkinSpanHandler.newBuilder(sender)
+      .messageTimeout(0, TimeUnit.MILLISECONDS) // no thread
+      .build()) {
+      TraceContext context = TraceContext.newBuilder().traceId(1).spanId(2).sampled(true).build();
+      spanHandler.end(context, get, SpanHandler.Cause.FINISHED);
+      spanHandler.end(context, post, SpanHandler.Cause.FINISHED);
+      spanHandler.flush();
+    }
+
+    assertThat(messages).hasSize(1);
+    assertThat(messages.get(0)).hasSize(2);
+  }
+
+  @Test void otlp_resourceKeyIncludesLocalEndpoint() {
+    MutableSpan span = new MutableSpan();
+    span.localServiceName("frontend");
+    span.localIp("127.0.0.1");
+    span.localPort(8080);
+    MutableSpan otherPort = new MutableSpan(span);
+    otherPort.localPort(8081);
+    MutableSpan otherIp = new MutableSpan(span);
+    otherIp.localIp("127.0.0.2");
+
+    MutableSpanResources resources = MutableSpanResources.INSTANCE;
+    assertThat(resources.key(span))
+      .isEqualTo(resources.key(new MutableSpan(span)))
+      .isNotEqualTo(resources.key(otherPort))
+      .isNotEqualTo(resources.key(otherIp));
+    assertThat(resources.key(new MutableSpan()))
+      .isEqualTo(resources.key(new MutableSpan()));
+  }
+
+  @Test void deduplicateSpans() {
+    List<Span> sentSpans = new ArrayList<>();
+    try (AsyncZipkinSpanHandler spanHandler = AsyncZipkinSpanHandler.newBuilder(FakeSender.create()
+        .onSpans(sentSpans::addAll))
+      .messageTimeout(0, TimeUnit.MILLISECONDS) // no thread
+      .deduplicateSpans(true)
+      .build()) {
+
+      TraceContext context = TraceContext.newBuilder().traceId(1).spanId(2).sampled(true).build();
+      MutableSpan flushed = new MutableSpan(context, null);
+      flushed.name("test");
+      flushed.startTimestamp(1L);
+      flushed.tag("a", "1");
+      MutableSpan finished = new MutableSpan(context, null);
+      finished.startTimestamp(1L);
+      finished.finishTimestamp(3L);
+      finished.tag("a", "2");
+      finished.tag("b", "2");
+      MutableSpan server = new MutableSpan(context, null);
+      server.setShared();
+      server.name("test");
+
+      spanHandler.end(context, flushed, SpanHandler.Cause.FLUSHED);
+      spanHandler.end(context, finished, SpanHandler.Cause.FINISHED);
+      spanHandler.end(context, server, SpanHandler.Cause.FINISHED);
+      spanHandler.flush();
+
+      assertThat(flushed.finishTimestamp()).isZero(); // inputs aren't mutated
+    }
+
+    assertThat(sentSpans).hasSize(2);
+    assertThat(sentSpans.get(0).name()).isEqualTo("test");
+    assertThat(sentSpans.get(0).duration()).isEqualTo(2L);
+    assertThat(sentSpans.get(0).tags()).containsOnly(entry("a", "1"), entry("b", "2"));
+    assertThat(sentSpans.get(1).shared()).isTrue();
+  }
+
+  @Test void deduplicateSpans_toBuilder() {
+    try (AsyncZipkinSpanHandler spanHandler = AsyncZipkinSpanHandler.newBuilder(FakeSender.create())
+      .deduplicateSpans(true)
+      .build()) {
+      assertThat(spanHandler.toBuilder().deduplicateSpans).isTrue();
+    }
+  }
+
+  @Test void snapshotSpans() {
+    List<Span> sentSpans = new ArrayList<>();
+    try (AsyncZipkinSpanHandler spanHandler = AsyncZipkinSpanHandler.newBuilder(FakeSender.create()
+        .onSpans(sentSpans::addAll))
+      .messageTimeout(0, TimeUnit.MILLISECONDS) // no thread
+      .snapshotSpans(true)
+      .build()) {
+
+      TraceContext context = TraceContext.newBuilder().traceId(1).spanId(2).sampled(true).build();
+      MutableSpan span = new MutableSpan(context, null);
+      span.localRootId("2"); // normally set by the tracer
+      span.name("test");
+      span.localIp("1.2.3.4");
+      span.tag("a", "1");
+      span.annotate(1L, "foo");
+      spanHandler.end(context, span, SpanHandler.Cause.FINISHED);
+
+      // mutations after end() aren't visible to the reporter
+      span.name("mutated");
+      span.tag("b", "2");
+      spanHandler.flush();
+
+      // the next span reuses the pooled copy, which was cleared after encoding
+      assertThat(spanHandler.pool.size()).isEqualTo(1);
+      MutableSpan pooled = spanHandler.pool.spans.get(0);
+      MutableSpan next = new MutableSpan(context, null);
+      next.localRootId("2");
+      next.remoteServiceName("db");
+      spanHandler.end(context, next, SpanHandler.Cause.FINISHED);
+      assertThat(spanHandler.pool.size()).isZero();
+      spanHandler.flush();
+      assertThat(spanHandler.pool.size()).isEqualTo(1);
+      assertThat(spanHandler.pool.spans.get(1)).isSameAs(pooled);
+    }
+
+    assertThat(sentSpans).hasSize(2);
+    assertThat(sentSpans.get(0).name()).isEqualTo("test");
+    assertThat(sentSpans.get(0).localEndpoint().ipv4()).isEqualTo("1.2.3.4");
+    assertThat(sentSpans.get(0).tags()).containsOnly(entry("a", "1"));
+    assertThat(sentSpans.get(0).annotations()).hasSize(1);
+    assertThat(sentSpans.get(1).name()).isNull();
+    assertThat(sentSpans.get(1).localEndpoint()).isNull();
+    assertThat(sentSpans.get(1).remoteServiceName()).isEqualTo("db");
+    assertThat(sentSpans.get(1).tags()).isEmpty();
+    assertThat(sentSpans.get(1).annotations()).isEmpty();
+  }
+
+  @Test void snapshotSpans_copiesAllFields() {
+    MutableSpanPool pool = new MutableSpanPool(1);
+    MutableSpan recycled = new MutableSpan(ZipkinSpanConverter.CLIENT_SPAN);
+    pool.recycle(recycled);
+
+    MutableSpan span = new MutableSpan(ZipkinSpanConverter.CLIENT_SPAN);
+    span.localRootId("1");
+    span.parentId(null);
+    span.setShared();
+    span.error(new RuntimeException());
+    MutableSpan snapshot = pool.snapshot(span);
+
+    assertThat(snapshot).isSameAs(recycled).isEqualTo(span);
+  }
+
+  @Test void snapshotSpans_poolIsBounded() {
+    MutableSpanPool pool = new MutableSpanPool(2);
+    MutableSpan first = new MutableSpan(), second = new MutableSpan();
+
+    assertThat(pool.offer(first)).isTrue();
+    assertThat(pool.offer(second)).isTrue();
+    assertThat(pool.offer(new MutableSpan())).isFalse(); // full
+
+    // wraps around the ring in order
+    for (int i = 0; i < 5; i++) {
+      assertThat(pool.poll()).isSameAs(first);
+      assertThat(pool.offer(first)).isTrue();
+      assertThat(pool.poll()).isSameAs(second);
+      assertThat(pool.offer(second)).isTrue();
+    }
+    assertThat(pool.poll()).isSameAs(first);
+    assertThat(pool.poll()).isSameAs(second);
+    assertThat(pool.poll()).isNull(); // empty
+  }
+
+  @Test void snapshotSpans_toBuilder() {
+    try (AsyncZipkinSpanHandler spanHandler = AsyncZipkinSpanHandler.newBuilder(FakeSender.create())
+      .queuedMaxSpans(10)
+      .snapshotSpans(true)
+      .build()) {
+      assertThat(spanHandler.pool.capacity).isEqualTo(10);
+      assertThat(spanHandler.toBuilder().snapshotSpans).isTrue();
+      assertThat(spanHandler.toBuilder().queuedMaxSpans).isEqualTo(10);
+    }
+  }
+
   @Deprecated @Test void example_deprecatedSender() {
     AtomicInteger sentSpans = new AtomicInteger();
     try (AsyncZipkinSpanHandler spanHandler = AsyncZipkinSpanHandler.newBuilder(
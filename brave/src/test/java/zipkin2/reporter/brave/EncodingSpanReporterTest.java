@@ -0,0 +1,176 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave;
+
+import brave.Tag;
+import brave.Tags;
+import brave.handler.MutableSpan;
+import brave.propagation.TraceContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import zipkin2.Span;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import static brave.handler.SpanHandler.Cause.FINISHED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static zipkin2.reporter.brave.ZipkinSpanConverter.CLIENT_SPAN;
+
+class EncodingSpanReporterTest {
+  List<Span> spans = new ArrayList<>();
+  AsyncReporter<Span> reporter = AsyncReporter.builder(FakeSender.create().onSpans(spans::addAll))
+    .messageTimeout(0, TimeUnit.MILLISECONDS)
+    .build();
+  TraceContext context = TraceContext.newBuilder().traceId(1).spanId(2).sampled(true).build();
+
+  @AfterEach void close() {
+    reporter.close();
+  }
+
+  @Test void zipkinSpanHandler_skipsConversion() {
+    ZipkinSpanHandler handler = (ZipkinSpanHandler) ZipkinSpanHandler.create(reporter);
+
+    assertThat(handler.spanReporter).isInstanceOf(EncodingSpanReporter.class);
+    assertThat(handler).hasToString(reporter.toString());
+    assertThat(handler.toBuilder().build()).isEqualTo(handler);
+  }
+
+  @Test void sameResultAsConverting() {
+    ZipkinSpanHandler handler = (ZipkinSpanHandler) ZipkinSpanHandler.create(reporter);
+
+    handler.end(context, CLIENT_SPAN, FINISHED);
+    reporter.flush();
+
+    assertThat(spans).containsExactly(ConvertingSpanReporter.convert(CLIENT_SPAN));
+  }
+
+  @Test void normalize_sameBytesAsConverting() {
+    List<Consumer<MutableSpan>> changes = List.of(
+      span -> {
+      },
+      span -> {
+        span.name("GET /Users");
+        span.localServiceName("FrontEnd");
+        span.remoteServiceName("BackEnd");
+      },
+      span -> span.finishTimestamp(span.startTimestamp()),
+      span -> span.finishTimestamp(span.startTimestamp() - 1L),
+      span -> span.startTimestamp(0L),
+      span -> {
+        span.tag("b", "2");
+        span.tag("a", "1");
+      },
+      span -> {
+        span.annotate(span.startTimestamp() + 2L, "b");
+        span.annotate(span.startTimestamp() + 1L, "a");
+        span.annotate(span.startTimestamp() + 1L, "a");
+      },
+      span -> span.error(new RuntimeException("ice cream")),
+      span -> {
+        span.tag("zzz", "last");
+        span.error(new RuntimeException("sorted before zzz"));
+      },
+      span -> span.parentId(span.id()),
+      span -> span.setShared(),
+      span -> {
+        span.localServiceName(null);
+        span.localIp(null);
+      }
+    );
+
+    for (Encoding encoding : List.of(Encoding.JSON, Encoding.PROTO3)) {
+      for (int i = 0; i < changes.size(); i++) {
+        MutableSpan span = new MutableSpan(CLIENT_SPAN);
+        changes.get(i).accept(span);
+
+        assertThat(encode(encoding, span))
+          .as("%s change %s", encoding, i)
+          .containsExactly(encodeConverted(encoding, span));
+      }
+    }
+  }
+
+  @Test void normalize_doesntCopyNormalizedSpan() {
+    assertThat(EncodingSpanReporter.normalize(CLIENT_SPAN, Tags.ERROR)).isSameAs(CLIENT_SPAN);
+  }
+
+  static byte[] encode(Encoding encoding, MutableSpan span) {
+    MutableSpan normalized = EncodingSpanReporter.normalize(new MutableSpan(span), Tags.ERROR);
+    return MutableSpanBytesEncoder.forEncoding(encoding).encode(normalized);
+  }
+
+  static byte[] encodeConverted(Encoding encoding, MutableSpan span) {
+    MutableSpan copy = new MutableSpan(span);
+    new ConvertingSpanReporter(null, Tags.ERROR).maybeAddErrorTag(copy);
+    return SpanBytesEncoder.forEncoding(encoding).encode(ConvertingSpanReporter.convert(copy));
+  }
+
+  @Test void interleavesWithConvertedSpans() {
+    ZipkinSpanHandler handler = (ZipkinSpanHandler) ZipkinSpanHandler.create(reporter);
+    Span converted = ConvertingSpanReporter.convert(CLIENT_SPAN).toBuilder().id(3).build();
+
+    reporter.report(converted);
+    handler.end(context, CLIENT_SPAN, FINISHED);
+    reporter.flush();
+
+    assertThat(spans).containsExactly(converted, ConvertingSpanReporter.convert(CLIENT_SPAN));
+  }
+
+  @Test void errorTag() {
+    Tag<Throwable> errorTag = new Tag<Throwable>("exception") {
+      @Override protected String parseValue(Throwable throwable, TraceContext traceContext) {
+        return throwable.getMessage();
+      }
+    };
+    ZipkinSpanHandler handler = (ZipkinSpanHandler) ZipkinSpanHandler.newBuilder(reporter)
+      .errorTag(errorTag)
+      .build();
+    MutableSpan span = new MutableSpan(context, null);
+    span.error(new RuntimeException("ice cream"));
+
+    handler.end(context, span, FINISHED);
+    reporter.flush();
+
+    assertThat(handler.spanReporter).isInstanceOf(EncodingSpanReporter.class);
+    assertThat(spans.get(0).tags()).containsEntry("exception", "ice cream");
+  }
+
+  @Test void convertsWhenAlreadySharedWithDifferentErrorTag() {
+    ZipkinSpanHandler.create(reporter);
+    ZipkinSpanHandler handler = (ZipkinSpanHandler) ZipkinSpanHandler.newBuilder(reporter)
+      .errorTag(new Tag<Throwable>("exception") {
+        @Override protected String parseValue(Throwable throwable, TraceContext traceContext) {
+          return throwable.getMessage();
+        }
+      })
+      .build();
+
+    assertThat(handler.spanReporter).isInstanceOf(ConvertingSpanReporter.class);
+  }
+
+  @Test void convertsWhenNotBuiltInEncoder() {
+    AsyncReporter<Span> reporter = AsyncReporter.builder(FakeSender.create())
+      .build(SpanBytesEncoder.JSON_V1);
+    try {
+      ZipkinSpanHandler handler = (ZipkinSpanHandler) ZipkinSpanHandler.create(reporter);
+
+      assertThat(handler.spanReporter).isInstanceOf(ConvertingSpanReporter.class);
+    } finally {
+      reporter.close();
+    }
+  }
+
+  @Test void convertsWhenNotAsyncReporter() {
+    ZipkinSpanHandler handler = (ZipkinSpanHandler) ZipkinSpanHandler.create(spans::add);
+
+    assertThat(handler.spanReporter).isInstanceOf(ConvertingSpanReporter.class);
+    assertThat(handler.errorTag).isSameAs(Tags.ERROR);
+  }
+}
@@ -10,7 +10,10 @@ import brave.handler.MutableSpan;
 import brave.propagation.TraceContext;
 import org.junit.jupiter.api.Test;
 import zipkin2.reporter.BytesEncoder;
+import zipkin2.codec.SpanBytesDecoder;
 import zipkin2.reporter.Encoding;
+import zipkin2.reporter.SpanSizeLimits;
+import zipkin2.reporter.internal.SpanLimiter;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -22,6 +25,8 @@ class MutableSpanBytesEncoderTest {
       .isSameAs(MutableSpanBytesEncoder.JSON_V2);
     assertThat(MutableSpanBytesEncoder.forEncoding(Encoding.PROTO3))
       .isSameAs(MutableSpanBytesEncoder.PROTO3);
+    assertThat(MutableSpanBytesEncoder.forEncoding(Encoding.OTLP_PROTO3))
+      .isSameAs(MutableSpanBytesEncoder.OTLP_PROTO3);
     assertThatThrownBy(() -> MutableSpanBytesEncoder.forEncoding(Encoding.THRIFT))
       .isInstanceOf(UnsupportedOperationException.class)
       .hasMessage("THRIFT is not yet a built-in encoder");
@@ -81,4 +86,122 @@ class MutableSpanBytesEncoderTest {
       .isInstanceOf(UnsupportedOperationException.class)
       .hasMessage("THRIFT is not yet a built-in encoder");
   }
+
+  @Test void withLimits_noLimitsIsSame() {
+    assertThat(MutableSpanBytesEncoder.JSON_V2.withLimits(SpanSizeLimits.NONE))
+      .isSameAs(MutableSpanBytesEncoder.JSON_V2);
+  }
+
+  @Test void withLimits_truncatesWithoutMutatingInput() {
+    MutableSpan span = new MutableSpan();
+    span.traceId("1");
+    span.id("2");
+    span.tag("sql", "SELECT * FROM users");
+    span.annotate(1L, "very long annotation");
+    span.error(new OutOfMemoryError("out of memory"));
+
+    BytesEncoder<MutableSpan> encoder = MutableSpanBytesEncoder.JSON_V2.withLimits(
+      SpanSizeLimits.newBuilder().tagValueMaxBytes(6).annotationValueMaxBytes(9).build());
+
+    assertThat(new String(encoder.encode(span), UTF_8))
+      .isEqualTo("{\"traceId\":\"0000000000000001\",\"id\":\"0000000000000002\","
+        + "\"annotations\":[{\"timestamp\":1,\"value\":\"very long\"}],"
+        + "\"tags\":{\"sql\":\"SELECT\",\"error\":\"out of\"}}");
+    assertThat(encoder.sizeInBytes(span))
+      .isEqualTo(encoder.encode(span).length);
+
+    assertThat(span.tag("sql")).isEqualTo("SELECT * FROM users");
+    assertThat(span.annotationValueAt(0)).isEqualTo("very long annotation");
+  }
+
+  @Test void withLimits_spanMaxBytes() {
+    MutableSpan span = new MutableSpan();
+    span.traceId("1");
+    span.id("2");
+    span.tag("small", "value");
+    span.tag("sql", "SELECT * FROM users WHERE name = 'bob'");
+
+    int spanMaxBytes = MutableSpanBytesEncoder.PROTO3.sizeInBytes(span) - 10;
+    BytesEncoder<MutableSpan> encoder = MutableSpanBytesEncoder.PROTO3.withLimits(
+      SpanSizeLimits.newBuilder().spanMaxBytes(spanMaxBytes).build());
+
+    byte[] encoded = encoder.encode(span);
+    assertThat(encoded).hasSize(spanMaxBytes);
+    assertThat(encoder.sizeInBytes(span)).isEqualTo(spanMaxBytes);
+
+    zipkin2.Span decoded = SpanBytesDecoder.PROTO3.decodeList(encoded).get(0);
+    assertThat(decoded.tags())
+      .containsEntry("small", "value")
+      .containsEntry("sql", "SELECT * FROM users WHERE na");
+  }
+
+  @Test void withLimits_limitsOnce() {
+    MutableSpan span = new MutableSpan();
+    span.traceId("1");
+    span.id("2");
+    span.tag("sql", "SELECT * FROM users");
+    span.error(new OutOfMemoryError("out of memory"));
+
+    BytesEncoder<MutableSpan> encoder = MutableSpanBytesEncoder.JSON_V2.withLimits(
+      SpanSizeLimits.newBuilder().tagValueMaxBytes(6).build());
+    SpanLimiter<MutableSpan> limiter = (SpanLimiter<MutableSpan>) encoder;
+
+    MutableSpan limited = limiter.limit(span);
+    assertThat(limited).isNotSameAs(span);
+    assertThat(limited.tag("sql")).isEqualTo("SELECT");
+    assertThat(limiter.limit(limited)).isSameAs(limited); // no copy when already within limits
+    assertThat(encoder.encode(limited)).isEqualTo(encoder.encode(span));
+  }
+
+  /** The reporter limits once, then sizes and encodes the result without checking limits. */
+  @Test void withLimits_limitedEncoderDoesntLimitAgain() {
+    class CountingEncoder implements BytesEncoder<MutableSpan> {
+      int sizeInBytes, encode;
+
+      @Override public Encoding encoding() {
+        return Encoding.JSON;
+      }
+
+      @Override public int sizeInBytes(MutableSpan input) {
+        sizeInBytes++;
+        return MutableSpanBytesEncoder.JSON_V2.sizeInBytes(input);
+      }
+
+      @Override public byte[] encode(MutableSpan input) {
+        encode++;
+        return MutableSpanBytesEncoder.JSON_V2.encode(input);
+      }
+    }
+    CountingEncoder delegate = new CountingEncoder();
+    SizeLimitedEncoder encoder = new SizeLimitedEncoder(delegate, Tags.ERROR,
+      SpanSizeLimits.newBuilder().tagValueMaxBytes(6).spanMaxBytes(1024).build());
+    MutableSpan span = new MutableSpan();
+    span.traceId("1");
+    span.id("2");
+    span.tag("sql", "SELECT * FROM users");
+
+    MutableSpan limited = encoder.limit(span);
+    assertThat(delegate.sizeInBytes).isEqualTo(1); // to check spanMaxBytes
+
+    BytesEncoder<MutableSpan> limitedEncoder = encoder.limitedEncoder();
+    int sizeInBytes = limitedEncoder.sizeInBytes(limited);
+    byte[] encoded = limitedEncoder.encode(limited);
+    assertThat(delegate.sizeInBytes).isEqualTo(2);
+    assertThat(delegate.encode).isEqualTo(1);
+
+    assertThat(encoded).hasSize(sizeInBytes).isEqualTo(encoder.encode(span));
+  }
+
+  @Test void create_limitsUseErrorTag() {
+    MutableSpan span = new MutableSpan();
+    span.traceId("1");
+    span.id("2");
+    span.error(new OutOfMemoryError("out of memory"));
+
+    BytesEncoder<MutableSpan> encoder = MutableSpanBytesEncoder.create(Encoding.JSON, iceCream,
+      SpanSizeLimits.newBuilder().tagValueMaxBytes(3).build());
+
+    assertThat(new String(encoder.encode(span), UTF_8))
+      .isEqualTo("{\"traceId\":\"0000000000000001\",\"id\":\"0000000000000002\",\"tags\":{\"exception\":\"ice\"}}");
+  }
 }
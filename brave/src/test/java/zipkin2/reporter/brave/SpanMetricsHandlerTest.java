@@ -0,0 +1,192 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave;
+
+import brave.Span.Kind;
+import brave.handler.MutableSpan;
+import brave.propagation.TraceContext;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static brave.handler.SpanHandler.Cause.ABANDONED;
+import static brave.handler.SpanHandler.Cause.FINISHED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.groups.Tuple.tuple;
+
+class SpanMetricsHandlerTest {
+  List<SpanMetrics> reported = new CopyOnWriteArrayList<>();
+  SpanMetricsHandler handler = SpanMetricsHandler.newBuilder(reported::add)
+    .interval(0, TimeUnit.MILLISECONDS) // no thread
+    .build();
+
+  @AfterEach void close() {
+    handler.close();
+  }
+
+  @Test void aggregatesByServiceNameKindAndRemoteService() {
+    handler.end(context(1L), span("get", Kind.CLIENT, "redis", 1000L), FINISHED);
+    handler.end(context(2L), span("get", Kind.CLIENT, "redis", 3000L), FINISHED);
+    handler.end(context(3L), span("get", Kind.CLIENT, "memcached", 2000L), FINISHED);
+    handler.end(context(4L), span("set", Kind.CLIENT, "redis", 5000L), FINISHED);
+
+    handler.flush();
+
+    assertThat(reported).hasSize(3);
+    SpanMetrics redisGet = reported.stream()
+      .filter(m -> "get".equals(m.name()) && "redis".equals(m.remoteServiceName()))
+      .findFirst().get();
+    assertThat(redisGet.localServiceName()).isEqualTo("frontend");
+    assertThat(redisGet.kind()).isEqualTo(Kind.CLIENT);
+    assertThat(redisGet.count()).isEqualTo(2L);
+    assertThat(redisGet.errorCount()).isZero();
+    assertThat(redisGet.totalDurationMicros()).isEqualTo(4000L);
+    assertThat(redisGet.maxDurationMicros()).isEqualTo(3000L);
+  }
+
+  @Test void countsErrors() {
+    MutableSpan error = span("get", Kind.CLIENT, "redis", 1000L);
+    error.error(new RuntimeException());
+    MutableSpan errorTag = span("get", Kind.CLIENT, "redis", 1000L);
+    errorTag.tag("error", "500");
+
+    handler.end(context(1L), error, FINISHED);
+    handler.end(context(2L), errorTag, FINISHED);
+    handler.end(context(3L), span("get", Kind.CLIENT, "redis", 1000L), FINISHED);
+    handler.flush();
+
+    assertThat(reported).extracting(SpanMetrics::count, SpanMetrics::errorCount)
+      .containsExactly(tuple(3L, 2L));
+  }
+
+  @Test void durationPercentile() {
+    for (long i = 1; i <= 100; i++) {
+      handler.end(context(i), span("get", Kind.CLIENT, "redis", i * 1000L), FINISHED);
+    }
+    handler.flush();
+
+    SpanMetrics metrics = reported.get(0);
+    assertThat(metrics.durationPercentile(0.5)).isBetween(50_000L, 50_000L * 9 / 8);
+    assertThat(metrics.durationPercentile(0.99)).isBetween(99_000L, 99_000L * 9 / 8);
+    assertThat(metrics.durationPercentile(1.0)).isEqualTo(100_000L);
+    assertThatThrownBy(() -> metrics.durationPercentile(1.1))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test void bucketIndex_roundTrips() {
+    for (long duration : new long[] {0L, 1L, 7L, 8L, 9L, 15L, 16L, 17L, 1000L, 123456789L}) {
+      int index = SpanMetrics.bucketIndex(duration);
+      assertThat(SpanMetrics.bucketUpperBound(index)).isGreaterThanOrEqualTo(duration);
+      if (index > 0) assertThat(SpanMetrics.bucketUpperBound(index - 1)).isLessThan(duration);
+    }
+    assertThat(SpanMetrics.bucketUpperBound(SpanMetrics.BUCKET_COUNT - 1))
+      .isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test void flush_resetsCounters() {
+    handler.end(context(1L), span("get", Kind.CLIENT, "redis", 1000L), FINISHED);
+    handler.flush();
+    handler.flush();
+
+    assertThat(reported).hasSize(1);
+    assertThat(handler.aggregates).isEmpty(); // idle keys are released
+  }
+
+  @Test void rawSpanRate_zeroDropsSpans() {
+    handler = SpanMetricsHandler.newBuilder(reported::add)
+      .interval(0, TimeUnit.MILLISECONDS)
+      .rawSpanRate(0.0f)
+      .build();
+
+    assertThat(handler.end(context(1L), span("get", Kind.CLIENT, "redis", 1000L), FINISHED))
+      .isFalse();
+  }
+
+  @Test void rawSpanRate_consistentPerTrace() {
+    handler = SpanMetricsHandler.newBuilder(reported::add)
+      .interval(0, TimeUnit.MILLISECONDS)
+      .rawSpanRate(0.5f)
+      .build();
+
+    int forwarded = 0;
+    for (long traceId = 1; traceId <= 10000; traceId++) {
+      boolean first = handler.end(context(traceId), span("get", Kind.CLIENT, "redis", 1L), FINISHED);
+      boolean second = handler.end(context(traceId), span("set", Kind.CLIENT, "redis", 1L), FINISHED);
+      assertThat(first).isEqualTo(second);
+      if (first) forwarded++;
+    }
+    assertThat(forwarded).isEqualTo(5000);
+  }
+
+  @Test void unmatchedSpansPassThrough() {
+    handler = SpanMetricsHandler.newBuilder(reported::add)
+      .interval(0, TimeUnit.MILLISECONDS)
+      .spanMatcher(span -> "get".equals(span.name()))
+      .rawSpanRate(0.0f)
+      .build();
+
+    assertThat(handler.end(context(1L), span("set", Kind.CLIENT, "redis", 1000L), FINISHED))
+      .isTrue();
+    handler.flush();
+
+    assertThat(reported).isEmpty();
+  }
+
+  @Test void maxKeys_passesThroughNewKeys() {
+    handler = SpanMetricsHandler.newBuilder(reported::add)
+      .interval(0, TimeUnit.MILLISECONDS)
+      .maxKeys(1)
+      .rawSpanRate(0.0f)
+      .build();
+
+    assertThat(handler.end(context(1L), span("get", Kind.CLIENT, "redis", 1000L), FINISHED))
+      .isFalse();
+    assertThat(handler.end(context(1L), span("set", Kind.CLIENT, "redis", 1000L), FINISHED))
+      .isTrue();
+  }
+
+  @Test void ignoresAbandonedSpans() {
+    handler.end(context(1L), span("get", Kind.CLIENT, "redis", 1000L), ABANDONED);
+    handler.flush();
+
+    assertThat(reported).isEmpty();
+  }
+
+  @Test void close_reportsRemaining() {
+    handler.end(context(1L), span("get", Kind.CLIENT, "redis", 1000L), FINISHED);
+    handler.close();
+
+    assertThat(reported).hasSize(1);
+  }
+
+  @Test void reportsOnInterval() throws InterruptedException {
+    handler = SpanMetricsHandler.newBuilder(reported::add)
+      .interval(10, TimeUnit.MILLISECONDS)
+      .build();
+
+    handler.end(context(1L), span("get", Kind.CLIENT, "redis", 1000L), FINISHED);
+
+    for (int i = 0; i < 100 && reported.isEmpty(); i++) Thread.sleep(10);
+    assertThat(reported).hasSize(1);
+  }
+
+  static TraceContext context(long traceId) {
+    return TraceContext.newBuilder().traceId(traceId).spanId(1L).sampled(true).build();
+  }
+
+  static MutableSpan span(String name, Kind kind, String remoteServiceName, long duration) {
+    MutableSpan span = new MutableSpan();
+    span.localServiceName("frontend");
+    span.name(name);
+    span.kind(kind);
+    span.remoteServiceName(remoteServiceName);
+    span.startTimestamp(1_000_000L);
+    span.finishTimestamp(1_000_000L + duration);
+    return span;
+  }
+}
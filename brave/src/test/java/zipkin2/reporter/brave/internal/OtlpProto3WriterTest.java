@@ -0,0 +1,261 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.brave.internal;
+
+import brave.Span.Kind;
+import brave.Tags;
+import brave.handler.MutableSpan;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import zipkin2.reporter.Encoding;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OtlpProto3WriterTest {
+  OtlpProto3Writer writer = new OtlpProto3Writer(Tags.ERROR);
+  MutableSpan span = new MutableSpan();
+
+  OtlpProto3WriterTest() {
+    span.traceId("7180c278b62e8f6a216a2aea45d08fc9");
+    span.parentId("6b221d5bc9e6496c");
+    span.id("5b4185666d50f68b");
+    span.name("get");
+    span.kind(Kind.CLIENT);
+    span.localServiceName("frontend");
+    span.localIp("127.0.0.1");
+    span.remoteServiceName("backend");
+    span.remoteIpAndPort("192.168.99.101", 9000);
+    span.startTimestamp(1472470996199000L);
+    span.finishTimestamp(1472470996199000L + 207000L);
+    span.annotate(1472470996199000L + 4000L, "foo");
+    span.tag("http.path", "/api");
+  }
+
+  @Test void sizeInBytes() {
+    assertThat(writer.write(span)).hasSize(writer.sizeInBytes(span));
+  }
+
+  @Test void resourceSizeInBytes() {
+    List<Field> fields = Field.parse(writer.write(span)).get(0).fields();
+    byte[] resource = field(fields, 1).bytes;
+
+    assertThat(OtlpProto3Writer.resourceSizeInBytes(span)).isEqualTo(2 + resource.length);
+
+    span.localServiceName(null);
+    span.localIp(null);
+    assertThat(OtlpProto3Writer.resourceSizeInBytes(span)).isZero();
+  }
+
+  @Test void write() {
+    List<Field> resourceSpans = Field.parse(writer.write(span));
+    assertThat(resourceSpans).extracting(f -> f.number).containsExactly(1);
+
+    List<Field> fields = resourceSpans.get(0).fields();
+    assertThat(fields).extracting(f -> f.number).containsExactly(1, 2); // resource, scope_spans
+    assertThat(attributes(fields.get(0).fields(), 1)).containsExactly(
+      "service.name=frontend",
+      "network.local.address=127.0.0.1"
+    );
+
+    List<Field> scopeSpans = fields.get(1).fields();
+    assertThat(scopeSpans).extracting(f -> f.number).containsExactly(2); // no scope
+
+    List<Field> otlpSpan = scopeSpans.get(0).fields();
+    assertThat(field(otlpSpan, 1).hex()).isEqualTo("7180c278b62e8f6a216a2aea45d08fc9");
+    assertThat(field(otlpSpan, 2).hex()).isEqualTo("5b4185666d50f68b");
+    assertThat(field(otlpSpan, 4).hex()).isEqualTo("6b221d5bc9e6496c");
+    assertThat(field(otlpSpan, 5).string()).isEqualTo("get");
+    assertThat(field(otlpSpan, 6).number()).isEqualTo(3L); // SPAN_KIND_CLIENT
+    assertThat(field(otlpSpan, 7).number()).isEqualTo(1472470996199000000L);
+    assertThat(field(otlpSpan, 8).number()).isEqualTo(1472470996406000000L);
+    assertThat(attributes(otlpSpan, 9)).containsExactly(
+      "peer.service=backend",
+      "network.peer.address=192.168.99.101",
+      "network.peer.port=9000",
+      "http.path=/api"
+    );
+
+    List<Field> event = field(otlpSpan, 11).fields();
+    assertThat(field(event, 1).number()).isEqualTo(1472470996203000000L);
+    assertThat(field(event, 2).string()).isEqualTo("foo");
+    assertThat(otlpSpan).extracting(f -> f.number).doesNotContain(15); // no status
+  }
+
+  @Test void write_traceId64_leftPadded() {
+    span.traceId("216a2aea45d08fc9");
+
+    List<Field> otlpSpan = otlpSpan(writer.write(span));
+    assertThat(field(otlpSpan, 1).hex()).isEqualTo("0000000000000000216a2aea45d08fc9");
+    assertThat(writer.write(span)).hasSize(writer.sizeInBytes(span));
+  }
+
+  @Test void write_noKind_isInternal() {
+    span.kind(null);
+
+    assertThat(field(otlpSpan(writer.write(span)), 6).number()).isEqualTo(1L);
+  }
+
+  @Test void write_localPort_isResourceAttribute() {
+    span.localPort(8080);
+
+    List<Field> fields = Field.parse(writer.write(span)).get(0).fields();
+    assertThat(attributes(fields.get(0).fields(), 1)).containsExactly(
+      "service.name=frontend",
+      "network.local.address=127.0.0.1",
+      "network.local.port=8080"
+    );
+    assertThat(writer.write(span)).hasSize(writer.sizeInBytes(span));
+  }
+
+  @Test void write_noLocalServiceOrEndpoint_noResource() {
+    span.localServiceName(null);
+    span.localIp(null);
+
+    List<Field> fields = Field.parse(writer.write(span)).get(0).fields();
+    assertThat(fields).extracting(f -> f.number).containsExactly(2); // scope_spans
+    assertThat(writer.write(span)).hasSize(writer.sizeInBytes(span));
+  }
+
+  @Test void write_error_isStatus() {
+    span.error(new OutOfMemoryError("out of memory"));
+
+    List<Field> otlpSpan = otlpSpan(writer.write(span));
+    List<Field> status = field(otlpSpan, 15).fields();
+    assertThat(field(status, 2).string()).isEqualTo("out of memory");
+    assertThat(field(status, 3).number()).isEqualTo(2L); // STATUS_CODE_ERROR
+    assertThat(writer.write(span)).hasSize(writer.sizeInBytes(span));
+  }
+
+  @Test void write_errorTag_isStatus() {
+    span.tag("error", "500");
+    span.error(new OutOfMemoryError("out of memory")); // the tag takes precedence
+
+    List<Field> otlpSpan = otlpSpan(writer.write(span));
+    assertThat(attributes(otlpSpan, 9)).doesNotContain("error=500");
+    assertThat(field(field(otlpSpan, 15).fields(), 2).string()).isEqualTo("500");
+    assertThat(writer.write(span)).hasSize(writer.sizeInBytes(span));
+  }
+
+  @Test void encodingCombinesSpansWithTheSameResource() {
+    byte[] message = Encoding.OTLP_PROTO3.encode(List.of(writer.write(span), writer.write(span)));
+
+    List<Field> resourceSpans = Field.parse(message);
+    assertThat(resourceSpans).hasSize(1);
+    List<Field> fields = resourceSpans.get(0).fields();
+    assertThat(attributes(fields.get(0).fields(), 1)).containsExactly(
+      "service.name=frontend",
+      "network.local.address=127.0.0.1"
+    );
+    List<Field> spans = fields.get(1).fields();
+    assertThat(spans).hasSize(2); // both spans in one scope_spans
+    for (Field otlpSpan : spans) {
+      assertThat(attributes(otlpSpan.fields(), 9)).doesNotContain(
+        "network.local.address=127.0.0.1");
+    }
+  }
+
+  @Test void encodingSeparatesSpansWithDifferentLocalEndpoints() {
+    MutableSpan other = new MutableSpan(span);
+    other.localIp("127.0.0.2");
+    byte[] message = Encoding.OTLP_PROTO3.encode(List.of(writer.write(span), writer.write(other)));
+
+    List<Field> resourceSpans = Field.parse(message);
+    assertThat(resourceSpans).hasSize(2);
+    assertThat(attributes(resourceSpans.get(1).fields().get(0).fields(), 1)).containsExactly(
+      "service.name=frontend",
+      "network.local.address=127.0.0.2"
+    );
+  }
+
+  static List<Field> otlpSpan(byte[] resourceSpans) {
+    List<Field> fields = Field.parse(resourceSpans).get(0).fields();
+    return field(fields, 2).fields().get(0).fields();
+  }
+
+  static Field field(List<Field> fields, int number) {
+    return fields.stream().filter(f -> f.number == number).findFirst().orElseThrow();
+  }
+
+  /** Returns "key=value" for each attribute, where the value is a string or an int. */
+  static List<String> attributes(List<Field> fields, int attributesNumber) {
+    List<String> result = new ArrayList<>();
+    for (Field attribute : fields) {
+      if (attribute.number != attributesNumber) continue;
+      List<Field> keyValue = attribute.fields();
+      Field value = field(keyValue, 2).fields().get(0);
+      result.add(field(keyValue, 1).string() + "="
+        + (value.number == 1 ? value.string() : String.valueOf(value.number())));
+    }
+    return result;
+  }
+
+  /** A minimal protobuf reader, as OTLP classes aren't a test dependency. */
+  static final class Field {
+    final int number;
+    final long value; // unless length-delimited
+    final byte[] bytes; // null unless length-delimited
+
+    Field(int number, long value, byte[] bytes) {
+      this.number = number;
+      this.value = value;
+      this.bytes = bytes;
+    }
+
+    static List<Field> parse(byte[] message) {
+      ByteBuffer buffer = ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN);
+      List<Field> result = new ArrayList<>();
+      while (buffer.hasRemaining()) {
+        int key = (int) readVarint(buffer);
+        switch (key & 7) {
+          case 0:
+            result.add(new Field(key >>> 3, readVarint(buffer), null));
+            break;
+          case 1:
+            result.add(new Field(key >>> 3, buffer.getLong(), null));
+            break;
+          case 2:
+            byte[] bytes = new byte[(int) readVarint(buffer)];
+            buffer.get(bytes);
+            result.add(new Field(key >>> 3, 0L, bytes));
+            break;
+          default:
+            throw new AssertionError("unexpected wire type: " + key);
+        }
+      }
+      return result;
+    }
+
+    static long readVarint(ByteBuffer buffer) {
+      long result = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = buffer.get();
+        result |= (long) (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) return result;
+      }
+    }
+
+    List<Field> fields() {
+      return parse(bytes);
+    }
+
+    String string() {
+      return new String(bytes, UTF_8);
+    }
+
+    String hex() {
+      StringBuilder result = new StringBuilder();
+      for (byte b : bytes) result.append(String.format("%02x", b));
+      return result.toString();
+    }
+
+    long number() {
+      return value;
+    }
+  }
+}
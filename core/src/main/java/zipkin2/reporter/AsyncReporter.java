@@ -9,6 +9,7 @@ import java.io.Flushable;
 import java.util.List;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import zipkin2.reporter.internal.InternalReporter;
 
 /**
  * As spans are reported, they are encoded and added to a pending queue. The task of sending spans
@@ -27,6 +28,19 @@ import java.util.concurrent.TimeUnit;
  */
 // This is effectively, but not explicitly final as it was not final in version 2.x.
 public class AsyncReporter<S> extends Component implements Reporter<S>, Closeable, Flushable {
+  static {
+    InternalReporter.instance = new InternalReporter() {
+      @Override
+      public <S> zipkin2.reporter.internal.AsyncReporter<S> delegate(AsyncReporter<S> reporter) {
+        return reporter.delegate;
+      }
+
+      @Override public <S> BytesEncoder<S> encoder(AsyncReporter<S> reporter) {
+        return reporter.encoder;
+      }
+    };
+  }
+
   /** @deprecated Since 3.2, use {@link #create(BytesMessageSender)} */
   @Deprecated public static AsyncReporter<zipkin2.Span> create(Sender sender) {
     return create((BytesMessageSender) sender);
@@ -56,9 +70,11 @@ public class AsyncReporter<S> extends Component implements Reporter<S>, Closeabl
   }
 
   final zipkin2.reporter.internal.AsyncReporter<S> delegate;
+  final BytesEncoder<S> encoder;
 
-  AsyncReporter(zipkin2.reporter.internal.AsyncReporter<S> delegate) {
+  AsyncReporter(zipkin2.reporter.internal.AsyncReporter<S> delegate, BytesEncoder<S> encoder) {
     this.delegate = delegate;
+    this.encoder = encoder;
   }
 
   @Override public void report(S span) {
@@ -165,7 +181,7 @@ public class AsyncReporter<S> extends Component implements Reporter<S>, Closeabl
     /** Builds an async reporter that encodes arbitrary spans as they are reported. */
     public <S> AsyncReporter<S> build(BytesEncoder<S> encoder) {
       if (encoder == null) throw new NullPointerException("encoder == null");
-      return new AsyncReporter<S>(delegate.build(new BytesEncoderAdapter<S>(encoder)));
+      return new AsyncReporter<S>(delegate.build(new BytesEncoderAdapter<S>(encoder)), encoder);
     }
   }
 
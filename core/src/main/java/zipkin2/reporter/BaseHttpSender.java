@@ -8,6 +8,8 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 import zipkin2.reporter.HttpEndpointSupplier.Factory;
@@ -26,17 +28,23 @@ import static zipkin2.reporter.Call.propagateIfFatal;
  */
 public abstract class BaseHttpSender<U, B> extends BytesMessageSender.Base {
   final Logger logger;
+  static final int MAX_PARSED_ENDPOINTS = 64;
+
   final HttpEndpointSupplier endpointSupplier;
   final U endpoint;
+  final Map<String, U> parsedEndpoints; // null when the endpoint is constant
 
   /** close is typically called from a different thread */
   final AtomicBoolean closeCalled = new AtomicBoolean();
 
   /**
-   * Called each invocation of {@linkplain #postSpans(Object, Object)}, unless the
-   * {@linkplain HttpEndpointSupplier} is a {@linkplain HttpEndpointSupplier.Constant},
+   * Called before {@linkplain #postSpans(Object, Object)} with the value of the
+   * {@linkplain HttpEndpointSupplier}, or once if it is a {@linkplain HttpEndpointSupplier.Constant}.
    * Implementations should perform any validation needed here.
    *
+   * <p>Results are cached by endpoint, so this is usually called once per distinct value returned
+   * by a dynamic {@linkplain HttpEndpointSupplier}.
+   *
    * @since 3.3
    */
   protected abstract U newEndpoint(String endpoint);
@@ -66,6 +74,56 @@ public abstract class BaseHttpSender<U, B> extends BytesMessageSender.Base {
    */
   protected abstract void postSpans(U endpoint, B body) throws IOException;
 
+  /**
+   * Like {@linkplain #postSpans(Object, Object)}, except the outcome is reported to the completion,
+   * so that a {@linkplain HttpEndpointSupplier.Feedback} supplier sees the actual outcome and
+   * response time.
+   *
+   * <p>The default implementation calls {@linkplain #postSpans(Object, Object)} and reports success
+   * when it returns. Override this when the request completes after it returns, such as when it is
+   * queued on the HTTP client's dispatcher, and report the response to the completion instead.
+   *
+   * <p>If this throws, its exception is reported instead, and calls to the completion are ignored.
+   *
+   * @since 3.6
+   */
+  protected void postSpans(U endpoint, B body, Completion completion) throws IOException {
+    postSpans(endpoint, body);
+    completion.onSuccess();
+  }
+
+  /**
+   * Reports the outcome of a request that completes after {@linkplain #postSpans(Object, Object)}
+   * returns. Only the first call has any effect, and calls can come from any thread.
+   *
+   * @see #postSpans(Object, Object, Completion)
+   * @since 3.6
+   */
+  public static final class Completion {
+    static final Completion NOOP = new Completion(null);
+
+    final HttpEndpointSupplier.Feedback.Attempt attempt; // null when there's no feedback
+    final long startNanos = System.nanoTime();
+    final AtomicBoolean done = new AtomicBoolean();
+
+    Completion(HttpEndpointSupplier.Feedback.Attempt attempt) {
+      this.attempt = attempt;
+    }
+
+    /** Call when the response was successful. */
+    public void onSuccess() {
+      if (attempt == null || !done.compareAndSet(false, true)) return;
+      attempt.onSuccess(System.nanoTime() - startNanos);
+    }
+
+    /** Call when the request failed or the response was unsuccessful. */
+    public void onError(Throwable error) {
+      if (error == null) throw new NullPointerException("error == null");
+      if (attempt == null || !done.compareAndSet(false, true)) return;
+      attempt.onError(error);
+    }
+  }
+
   /**
    * Override to close any resources.
    *
@@ -93,10 +151,12 @@ public abstract class BaseHttpSender<U, B> extends BytesMessageSender.Base {
       throw new NullPointerException("endpointSupplierFactory.create() returned null");
     }
     if (endpointSupplier instanceof HttpEndpointSupplier.Constant) {
+      this.parsedEndpoints = null;
       this.endpoint = nextEndpoint(endpointSupplier);
       closeQuietly(endpointSupplier);
       this.endpointSupplier = null;
     } else {
+      this.parsedEndpoints = new ConcurrentHashMap<String, U>();
       this.endpoint = null;
       this.endpointSupplier = endpointSupplier;
     }
@@ -105,7 +165,21 @@ public abstract class BaseHttpSender<U, B> extends BytesMessageSender.Base {
   final U nextEndpoint(HttpEndpointSupplier endpointSupplier) {
     String endpoint = endpointSupplier.get(); // eagerly resolve the endpoint
     if (endpoint == null) throw new NullPointerException("endpointSupplier.get() returned null");
-    return newEndpoint(endpoint);
+    return parsedEndpoint(endpoint);
+  }
+
+  /**
+   * Dynamic suppliers usually return one of a few endpoints, so this avoids parsing them each send.
+   * The cache is cleared when full, as endpoints could change over time.
+   */
+  final U parsedEndpoint(String endpoint) {
+    if (parsedEndpoints == null) return newEndpoint(endpoint); // constant
+    U result = parsedEndpoints.get(endpoint);
+    if (result != null) return result;
+    result = newEndpoint(endpoint);
+    if (parsedEndpoints.size() >= MAX_PARSED_ENDPOINTS) parsedEndpoints.clear();
+    parsedEndpoints.put(endpoint, result);
+    return result;
   }
 
   /** Defaults to the most common max message size: 512KB. */
@@ -116,11 +190,41 @@ public abstract class BaseHttpSender<U, B> extends BytesMessageSender.Base {
   /** Sends spans as an HTTP POST request. */
   @Override public final void send(List<byte[]> encodedSpans) throws IOException {
     if (closeCalled.get()) throw new ClosedSenderException();
+    if (endpointSupplier instanceof HttpEndpointSupplier.Feedback) {
+      sendWithFeedback((HttpEndpointSupplier.Feedback) endpointSupplier, encodedSpans);
+      return;
+    }
     U endpoint = this.endpoint;
     if (endpoint == null) endpoint = nextEndpoint(endpointSupplier);
     B body = newBody(encodedSpans);
     if (body == null) throw new NullPointerException("newBody(encodedSpans) returned null");
-    postSpans(endpoint, body);
+    postSpans(endpoint, body, Completion.NOOP);
+  }
+
+  void sendWithFeedback(HttpEndpointSupplier.Feedback feedback, List<byte[]> encodedSpans)
+    throws IOException {
+    HttpEndpointSupplier.Feedback.Attempt attempt = feedback.next();
+    if (attempt == null) throw new NullPointerException("endpointSupplier.next() returned null");
+    String endpointString = attempt.endpoint();
+    if (endpointString == null) {
+      throw new NullPointerException("endpointSupplier.next() returned a null endpoint");
+    }
+    Completion completion = new Completion(attempt);
+    try {
+      U endpoint = parsedEndpoint(endpointString);
+      B body = newBody(encodedSpans);
+      if (body == null) throw new NullPointerException("newBody(encodedSpans) returned null");
+      postSpans(endpoint, body, completion);
+    } catch (IOException e) {
+      completion.onError(e);
+      throw e;
+    } catch (RuntimeException e) {
+      completion.onError(e);
+      throw e;
+    } catch (Error e) {
+      completion.onError(e);
+      throw e;
+    }
   }
 
   @Override public final void close() {
@@ -5,6 +5,7 @@
 package zipkin2.reporter;
 
 import java.util.List;
+import zipkin2.reporter.internal.OtlpProto3Messages;
 
 /**
  * Senders like Kafka use byte[] message encoding. This provides helpers to concatenate spans into a
@@ -99,6 +100,18 @@ public enum BytesMessageEncoder {
       }
       return buf;
     }
+  },
+  /**
+   * Combines {@code resource_spans} fields into one {@code ExportTraceServiceRequest}, writing
+   * each distinct resource once.
+   *
+   * @see Encoding#OTLP_PROTO3
+   * @since 3.6
+   */
+  OTLP_PROTO3 {
+    @Override public byte[] encode(List<byte[]> values) {
+      return OtlpProto3Messages.encode(values);
+    }
   };
 
   /**
@@ -120,6 +133,8 @@ public enum BytesMessageEncoder {
         return PROTO3;
       case THRIFT:
         return THRIFT;
+      case OTLP_PROTO3:
+        return OTLP_PROTO3;
       default:
         throw new UnsupportedOperationException(encoding.name());
     }
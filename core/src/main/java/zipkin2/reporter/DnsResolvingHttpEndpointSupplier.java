@@ -0,0 +1,147 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Resolves the host of an endpoint in the background, and returns its addresses round-robin. This
+ * keeps DNS lookups off the reporting thread, which only reads the last result.
+ *
+ * <p>When resolution fails, the last addresses are kept. Until the first success, the endpoint is
+ * returned as-is.
+ *
+ * <p>All instances share one daemon thread, as lookups are infrequent. The first lookup runs on
+ * that thread too, so that building a sender doesn't block on DNS.
+ */
+class DnsResolvingHttpEndpointSupplier implements HttpEndpointSupplier { // not final for testing
+  static final Logger LOGGER = Logger.getLogger(DnsResolvingHttpEndpointSupplier.class.getName());
+
+  static final class Factory implements HttpEndpointSupplier.Factory {
+    final int refreshIntervalSeconds;
+
+    Factory(int refreshIntervalSeconds) {
+      this.refreshIntervalSeconds = refreshIntervalSeconds;
+    }
+
+    @Override public HttpEndpointSupplier create(String endpoint) {
+      return HttpEndpointSuppliers.newDnsResolving(endpoint, refreshIntervalSeconds);
+    }
+
+    @Override public String toString() {
+      return "DnsResolving{refreshIntervalSeconds=" + refreshIntervalSeconds + "}";
+    }
+  }
+
+  /** Lazily creates the thread shared by all instances, which never exits the JVM. */
+  static final class SharedRefresher {
+    static final ScheduledExecutorService INSTANCE =
+      new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "zipkin-dns-resolver");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+  final Logger logger;
+  final ScheduledExecutorService refresher;
+  final URI endpoint;
+  final int refreshIntervalSeconds;
+  final AtomicInteger next = new AtomicInteger();
+  volatile String[] resolved; // null until the first successful resolution
+  volatile ScheduledFuture<?> refresh; // null until started
+
+  DnsResolvingHttpEndpointSupplier(Logger logger, ScheduledExecutorService refresher, URI endpoint,
+    int refreshIntervalSeconds) {
+    this.logger = logger;
+    this.refresher = refresher;
+    this.endpoint = endpoint;
+    this.refreshIntervalSeconds = refreshIntervalSeconds;
+  }
+
+  /** Schedules resolution now, and then every interval, without waiting for the result. */
+  DnsResolvingHttpEndpointSupplier start() {
+    refresh = refresher.scheduleWithFixedDelay(new Runnable() {
+      @Override public void run() {
+        refresh();
+      }
+    }, 0, refreshIntervalSeconds, TimeUnit.SECONDS);
+    return this;
+  }
+
+  // overridable for tests
+  InetAddress[] resolve(String host) throws UnknownHostException {
+    return InetAddress.getAllByName(host);
+  }
+
+  void refresh() {
+    InetAddress[] addresses;
+    try {
+      addresses = resolve(endpoint.getHost());
+    } catch (Throwable t) {
+      Call.propagateIfFatal(t);
+      String message = format("error resolving %s will retry in %ds: %s",
+        endpoint.getHost(), refreshIntervalSeconds, t.getMessage());
+      logger.warning(message);
+      logger.log(Level.FINE, "exception resolving: " + endpoint, t);
+      return;
+    }
+    String[] result = new String[addresses.length];
+    for (int i = 0; i < addresses.length; i++) {
+      result[i] = withHost(addresses[i]);
+    }
+    if (result.length > 0) resolved = result;
+  }
+
+  String withHost(InetAddress address) {
+    String host = address.getHostAddress();
+    if (address instanceof Inet6Address) {
+      int scope = host.indexOf('%'); // zone IDs need to be escaped, so drop them
+      if (scope != -1) host = host.substring(0, scope);
+      host = "[" + host + "]";
+    }
+    StringBuilder result = new StringBuilder(endpoint.getScheme()).append("://");
+    if (endpoint.getRawUserInfo() != null) result.append(endpoint.getRawUserInfo()).append('@');
+    result.append(host);
+    if (endpoint.getPort() != -1) result.append(':').append(endpoint.getPort());
+    if (endpoint.getRawPath() != null) result.append(endpoint.getRawPath());
+    if (endpoint.getRawQuery() != null) result.append('?').append(endpoint.getRawQuery());
+    return result.toString();
+  }
+
+  @Override public String get() {
+    String[] resolved = this.resolved;
+    if (resolved == null) return endpoint.toString();
+    if (resolved.length == 1) return resolved[0];
+    // mask instead of abs, so that overflow is still non-negative
+    return resolved[(next.getAndIncrement() & Integer.MAX_VALUE) % resolved.length];
+  }
+
+  /** Stops refreshing, but leaves the shared thread running for other instances. */
+  @Override public void close() {
+    ScheduledFuture<?> refresh = this.refresh;
+    if (refresh != null) refresh.cancel(false);
+  }
+
+  @Override public String toString() {
+    return "DnsResolving{endpoint=" + endpoint
+      + ", refreshIntervalSeconds=" + refreshIntervalSeconds + "}";
+  }
+}
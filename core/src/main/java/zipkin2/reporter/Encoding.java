@@ -5,6 +5,7 @@
 package zipkin2.reporter;
 
 import java.util.List;
+import zipkin2.reporter.internal.OtlpProto3Messages;
 
 /**
  * This includes the formats Zipkin server accepts.
@@ -97,6 +98,35 @@ public enum Encoding {
       return BytesMessageEncoder.PROTO3.encode(encodedSpans);
     }
 
+    @Override public String mediaType() {
+      return "application/x-protobuf";
+    }
+  },
+  /**
+   * OpenTelemetry's <a href="https://opentelemetry.io/docs/specs/otlp/">OTLP</a> protobuf format.
+   * Each span is encoded as a {@code resource_spans} field, so a list is a valid {@code
+   * ExportTraceServiceRequest}. When combined, spans with the same resource share one {@code
+   * resource_spans} field, so each resource is written once per message.
+   *
+   * <p>The combined size is never larger than the sum of the spans' sizes.
+   *
+   * @since 3.6
+   */
+  OTLP_PROTO3 {
+    /** Returns the input, as a single span is already a {@code resource_spans} field. */
+    @Override public int listSizeInBytes(int encodedSizeInBytes) {
+      return encodedSizeInBytes;
+    }
+
+    /** Returns the size after spans with the same resource are combined. */
+    @Override public int listSizeInBytes(List<byte[]> values) {
+      return OtlpProto3Messages.sizeInBytes(values);
+    }
+
+    @Override public byte[] encode(List<byte[]> encodedSpans) {
+      return OtlpProto3Messages.encode(encodedSpans);
+    }
+
     @Override public String mediaType() {
       return "application/x-protobuf";
     }
@@ -31,6 +31,7 @@ import java.util.List;
  *   <li>If the result is {@link Constant}, build the sender to use a static value.</li>
  *   <li>Otherwise, call {@link HttpEndpointSupplier#get()} each time
  *       {@linkplain BytesMessageSender#send(List)} is invoked.</li>
+ *   <li>If the result is {@link Feedback}, report the outcome of each POST to it.</li>
  *   <li>Call {@link #close()} once during {@link BytesMessageSender#close()}.</li>
  * </ul>
  *
@@ -62,6 +63,39 @@ public interface HttpEndpointSupplier extends Closeable {
   interface Constant extends HttpEndpointSupplier {
   }
 
+  /**
+   * {@linkplain BaseHttpSender} reports the outcome of each POST to suppliers of this type, so
+   * that they can route away from slow or failing endpoints.
+   *
+   * <p>During {@link BytesMessageSender#send(List)}, senders call {@link #next()} instead of
+   * {@link #get()}, and report the outcome of the POST to the result exactly once. Senders that
+   * return before the response is read report it when the response completes.
+   *
+   * @see HttpEndpointSuppliers#newLoadBalanced(List)
+   * @since 3.6
+   */
+  interface Feedback extends HttpEndpointSupplier {
+    /** Like {@link #get()}, except the result receives the outcome of the POST. */
+    Attempt next();
+
+    /**
+     * An endpoint chosen for one POST. This is bound to the choice, so the outcome is attributed
+     * correctly even if the supplier returns a different endpoint before the POST completes.
+     *
+     * @since 3.6
+     */
+    interface Attempt {
+      /** The endpoint to POST to, which is never null. */
+      String endpoint();
+
+      /** Called when the POST succeeded. */
+      void onSuccess(long durationNanos);
+
+      /** Called when the POST failed. */
+      void onError(Throwable error);
+    }
+  }
+
   /**
    * Returns a possibly cached endpoint to an HTTP {@link BytesMessageSender sender}.
    *
@@ -5,6 +5,10 @@
 package zipkin2.reporter;
 
 import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -120,6 +124,123 @@ public final class HttpEndpointSuppliers {
     return new RateLimited(RateLimited.LOGGER, input, intervalSeconds);
   }
 
+  /**
+   * Returns a {@linkplain Factory} that splits a comma-separated endpoint into members created by
+   * the input, and chooses between them with {@link #newLoadBalanced(List)}. An endpoint without a
+   * comma is passed to the input as-is.
+   *
+   * <p>For example, the following reports to two collectors, re-resolving each at most every 30
+   * seconds:
+   * <pre>{@code
+   * sender = OkHttpSender.newBuilder()
+   *   .endpointSupplierFactory(newLoadBalancedFactory(newRateLimitedFactory(eureka, 30)))
+   *   .endpoint("http://zipkin-a/api/v2/spans,http://zipkin-b/api/v2/spans")
+   *   .build();
+   * }</pre>
+   *
+   * @param memberFactory creates a supplier for each endpoint, such as
+   *                      {@link #constantFactory()} or {@link #newRateLimitedFactory(Factory, int)}.
+   * @since 3.6
+   */
+  public static Factory newLoadBalancedFactory(Factory memberFactory) {
+    if (memberFactory == null) throw new NullPointerException("memberFactory == null");
+    return new LoadBalancedHttpEndpointSupplier.Factory(memberFactory);
+  }
+
+  /**
+   * Returns a supplier that balances across the given members, based on the response time and
+   * errors {@linkplain HttpEndpointSupplier.Feedback reported} by the sender.
+   *
+   * <p>Each send picks the faster of two random members, weighted by requests in flight. Members
+   * that fail three times in a row are ejected for ten seconds, doubling on each consecutive
+   * ejection up to five minutes. If all members are ejected, the one due to recover first is used.
+   *
+   * <p>Dynamic members are called on each send, so should be {@linkplain #newRateLimited(
+   * HttpEndpointSupplier, int) rate-limited} when they make remote calls. Don't rate-limit the
+   * result, as that would pin the choice for the whole interval.
+   *
+   * @param members suppliers of each endpoint, such as {@linkplain #newConstant(String) constants}.
+   * @throws IllegalArgumentException if members is empty.
+   * @since 3.6
+   */
+  public static HttpEndpointSupplier.Feedback newLoadBalanced(List<HttpEndpointSupplier> members) {
+    if (members == null) throw new NullPointerException("members == null");
+    if (members.isEmpty()) throw new IllegalArgumentException("members is empty");
+    for (HttpEndpointSupplier member : members) {
+      if (member == null) throw new NullPointerException("members contains null");
+    }
+    return new LoadBalancedHttpEndpointSupplier(LoadBalancedHttpEndpointSupplier.LOGGER,
+      new ArrayList<HttpEndpointSupplier>(members), new Random());
+  }
+
+  /**
+   * Returns a {@linkplain Factory} which calls {@link #newDnsResolving(String, int)} for each
+   * input.
+   *
+   * @since 3.6
+   */
+  public static Factory newDnsResolvingFactory(int refreshIntervalSeconds) {
+    if (refreshIntervalSeconds < 1) {
+      throw new IllegalArgumentException("refreshIntervalSeconds < 1");
+    }
+    return new DnsResolvingHttpEndpointSupplier.Factory(refreshIntervalSeconds);
+  }
+
+  /**
+   * Returns a supplier that resolves the host of the endpoint on a background thread, and returns
+   * the endpoint with each address in turn. The reporting thread never blocks on DNS, and requests
+   * are spread across all addresses of a collector fleet.
+   *
+   * <p><em>Note:</em> Only use this when each address is a collector that accepts requests
+   * addressed to its IP. The host in the URL is replaced, so the HTTP "Host" header is the address,
+   * not the original name. This breaks collectors behind proxies that route by name, such as
+   * Kubernetes ingress or other virtual hosts.
+   *
+   * <p>This doesn't block: until the first lookup succeeds, the endpoint is returned as-is. Lookups
+   * for all suppliers run on one shared daemon thread, every interval. Failures keep the last
+   * addresses. The interval is fixed, as {@link java.net.InetAddress} doesn't expose record TTLs.
+   * Lookups are also subject to the JVM's cache (the "networkaddress.cache.ttl" security
+   * property), so set the interval to at least that value.
+   *
+   * <p>HTTPS endpoints are returned as a {@linkplain #newConstant(String) constant}, as replacing
+   * the host with an address would break certificate validation and SNI. The same applies to
+   * endpoints that already use an IP address.
+   *
+   * <p>Combine with {@link #newLoadBalancedFactory(Factory)} to also balance across hostnames.
+   *
+   * @param refreshIntervalSeconds how often to resolve the host again.
+   * @throws IllegalArgumentException if refreshIntervalSeconds is less than one.
+   * @since 3.6
+   */
+  public static HttpEndpointSupplier newDnsResolving(String endpoint, int refreshIntervalSeconds) {
+    if (endpoint == null) throw new NullPointerException("endpoint == null");
+    if (refreshIntervalSeconds < 1) {
+      throw new IllegalArgumentException("refreshIntervalSeconds < 1");
+    }
+    URI uri;
+    try {
+      uri = URI.create(endpoint);
+    } catch (IllegalArgumentException e) {
+      return newConstant(endpoint); // let the sender report the invalid endpoint
+    }
+    String host = uri.getHost();
+    if (!"http".equalsIgnoreCase(uri.getScheme()) || host == null || isIpLiteral(host)) {
+      return newConstant(endpoint);
+    }
+    return new DnsResolvingHttpEndpointSupplier(DnsResolvingHttpEndpointSupplier.LOGGER,
+      DnsResolvingHttpEndpointSupplier.SharedRefresher.INSTANCE, uri, refreshIntervalSeconds)
+      .start();
+  }
+
+  static boolean isIpLiteral(String host) {
+    if (host.indexOf(':') != -1 || host.startsWith("[")) return true; // IPv6
+    for (int i = 0, length = host.length(); i < length; i++) {
+      char c = host.charAt(i);
+      if (c != '.' && (c < '0' || c > '9')) return false;
+    }
+    return true;
+  }
+
   static class RateLimited implements HttpEndpointSupplier { // not final for testing
     static final Logger LOGGER = Logger.getLogger(RateLimited.class.getName());
 
@@ -0,0 +1,249 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Chooses between member endpoints using "power of two choices": two random healthy members are
+ * compared, and the one with the lower score is used. A score is the moving average response time
+ * multiplied by the requests in flight, so that one slow collector doesn't throttle the reporter.
+ *
+ * <p>Members that fail {@link #MAX_CONSECUTIVE_ERRORS} times in a row are ejected for {@link
+ * #BASE_EJECTION_SECONDS}, doubling each consecutive ejection up to {@link
+ * #MAX_EJECTION_SECONDS}. If all members are ejected, the one whose ejection ends first is used.
+ */
+class LoadBalancedHttpEndpointSupplier implements HttpEndpointSupplier.Feedback { // not final for testing
+  static final Logger LOGGER = Logger.getLogger(LoadBalancedHttpEndpointSupplier.class.getName());
+  static final int MAX_CONSECUTIVE_ERRORS = 3;
+  static final int BASE_EJECTION_SECONDS = 10, MAX_EJECTION_SECONDS = 300;
+
+  static final class Factory implements HttpEndpointSupplier.Factory {
+    final HttpEndpointSupplier.Factory memberFactory;
+
+    Factory(HttpEndpointSupplier.Factory memberFactory) {
+      this.memberFactory = memberFactory;
+    }
+
+    @Override public HttpEndpointSupplier create(String endpoint) {
+      String[] endpoints = endpoint.split(",", -1);
+      if (endpoints.length == 1) return memberFactory.create(endpoint);
+      List<HttpEndpointSupplier> members = new ArrayList<HttpEndpointSupplier>(endpoints.length);
+      for (String member : endpoints) {
+        member = member.trim();
+        if (member.isEmpty()) continue;
+        members.add(memberFactory.create(member));
+      }
+      return HttpEndpointSuppliers.newLoadBalanced(members);
+    }
+
+    @Override public String toString() {
+      return "LoadBalanced{memberFactory=" + memberFactory + "}";
+    }
+  }
+
+  static final class Member {
+    final HttpEndpointSupplier supplier;
+    String endpoint; // null until get() succeeds
+    long averageNanos; // exponentially weighted, zero until the first success
+    int inFlight, consecutiveErrors, ejections;
+    long ejectedUntilNanos;
+    boolean ejected;
+
+    Member(HttpEndpointSupplier supplier) {
+      this.supplier = supplier;
+    }
+
+    long score() {
+      // Add one so that an unmeasured member is preferred, but still sorted by in-flight.
+      return (averageNanos + 1) * (inFlight + 1);
+    }
+  }
+
+  final Logger logger;
+  final Member[] members;
+  final Random random;
+
+  LoadBalancedHttpEndpointSupplier(Logger logger, List<HttpEndpointSupplier> members,
+    Random random) {
+    this.logger = logger;
+    this.members = new Member[members.size()];
+    for (int i = 0; i < this.members.length; i++) {
+      this.members[i] = new Member(members.get(i));
+    }
+    this.random = random;
+  }
+
+  // overridable for tests
+  long nanoTime() {
+    return System.nanoTime();
+  }
+
+  /** Returns an endpoint without counting a request in flight, as there's no feedback. */
+  @Override public final String get() {
+    Member chosen;
+    synchronized (this) {
+      chosen = choose(nanoTime());
+    }
+    return resolve(chosen);
+  }
+
+  /**
+   * Only selection holds the lock, as feedback can come from I/O threads, which shouldn't wait
+   * for a slow member supplier.
+   */
+  @Override public final Attempt next() {
+    Member chosen;
+    synchronized (this) {
+      chosen = choose(nanoTime());
+      chosen.inFlight++;
+    }
+    String endpoint;
+    try {
+      endpoint = resolve(chosen);
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        if (chosen.inFlight > 0) chosen.inFlight--;
+      }
+      throw e;
+    }
+    return new MemberAttempt(chosen, endpoint);
+  }
+
+  /** Calls the member supplier without holding the lock. */
+  String resolve(Member chosen) {
+    String endpoint;
+    try {
+      endpoint = chosen.supplier.get();
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        recordError(chosen, nanoTime(), e);
+      }
+      throw e;
+    }
+    if (endpoint == null) {
+      throw new NullPointerException("endpointSupplier.get() returned null: " + chosen.supplier);
+    }
+    synchronized (this) {
+      chosen.endpoint = endpoint; // for logging
+    }
+    return endpoint;
+  }
+
+  Member choose(long now) {
+    Member first = null, second = null, leastEjected = null;
+    int healthy = 0;
+    // Reservoir sample two healthy members, so that we don't allocate.
+    for (Member member : members) {
+      if (member.ejected && now - member.ejectedUntilNanos < 0) {
+        if (leastEjected == null || member.ejectedUntilNanos - leastEjected.ejectedUntilNanos < 0) {
+          leastEjected = member;
+        }
+        continue;
+      }
+      healthy++;
+      if (healthy == 1) {
+        first = member;
+      } else if (healthy == 2) {
+        second = member;
+      } else {
+        int index = random.nextInt(healthy);
+        if (index == 0) {
+          first = member;
+        } else if (index == 1) {
+          second = member;
+        }
+      }
+    }
+    if (first == null) return leastEjected; // all are ejected, so pick the first to recover
+    if (second == null) return first;
+    return second.score() < first.score() ? second : first;
+  }
+
+  /** Holds the member chosen, as its endpoint could change before the POST completes. */
+  final class MemberAttempt implements Attempt {
+    final Member member;
+    final String endpoint;
+
+    MemberAttempt(Member member, String endpoint) {
+      this.member = member;
+      this.endpoint = endpoint;
+    }
+
+    @Override public String endpoint() {
+      return endpoint;
+    }
+
+    @Override public void onSuccess(long durationNanos) {
+      LoadBalancedHttpEndpointSupplier.this.onSuccess(member, durationNanos);
+    }
+
+    @Override public void onError(Throwable error) {
+      LoadBalancedHttpEndpointSupplier.this.onError(member, error);
+    }
+
+    @Override public String toString() {
+      return endpoint;
+    }
+  }
+
+  synchronized void onSuccess(Member member, long durationNanos) {
+    if (member.inFlight > 0) member.inFlight--;
+    member.averageNanos = member.averageNanos == 0L ? durationNanos
+      : member.averageNanos + (durationNanos - member.averageNanos) / 4;
+    member.consecutiveErrors = 0;
+    member.ejections = 0;
+    member.ejected = false;
+  }
+
+  synchronized void onError(Member member, Throwable error) {
+    if (member.inFlight > 0) member.inFlight--;
+    recordError(member, nanoTime(), error);
+  }
+
+  void recordError(Member member, long now, Throwable error) {
+    // A member recovering from ejection is ejected again on its first error.
+    if (!member.ejected && ++member.consecutiveErrors < MAX_CONSECUTIVE_ERRORS) return;
+    member.consecutiveErrors = 0;
+    long ejectionSeconds =
+      Math.min((long) BASE_EJECTION_SECONDS << Math.min(member.ejections, 16), MAX_EJECTION_SECONDS);
+    member.ejections++;
+    member.ejected = true;
+    member.ejectedUntilNanos = now + TimeUnit.SECONDS.toNanos(ejectionSeconds);
+    logger.warning(format("ejecting %s for %ds after errors: %s",
+      member.endpoint != null ? member.endpoint : member.supplier, ejectionSeconds,
+      error.getMessage()));
+    logger.log(Level.FINE, "last error from: " + member.supplier, error);
+  }
+
+  @Override public final void close() throws IOException {
+    IOException error = null;
+    for (Member member : members) {
+      try {
+        member.supplier.close();
+      } catch (IOException e) {
+        if (error == null) error = e;
+      }
+    }
+    if (error != null) throw error;
+  }
+
+  @Override public String toString() {
+    StringBuilder result = new StringBuilder("LoadBalanced{members=[");
+    for (int i = 0; i < members.length; i++) {
+      if (i > 0) result.append(", ");
+      result.append(members[i].supplier);
+    }
+    return result.append("]}").toString();
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import zipkin2.Annotation;
+import zipkin2.Span;
+import zipkin2.reporter.internal.SpanLimiter;
+import zipkin2.reporter.internal.Utf8;
+
+/**
+ * Applies {@link SpanSizeLimits} before delegating. Spans within limits are passed through as-is,
+ * so only spans that violate a limit are copied. The reporter queues the result of
+ * {@link #limit(Span)}, then sizes and encodes it with the {@link #limitedEncoder() delegate}, so
+ * limits are checked once, not again when sizing or encoding.
+ */
+final class SizeLimitedSpanBytesEncoder implements BytesEncoder<Span>, SpanLimiter<Span> {
+  final BytesEncoder<Span> delegate;
+  final SpanSizeLimits limits;
+
+  SizeLimitedSpanBytesEncoder(BytesEncoder<Span> delegate, SpanSizeLimits limits) {
+    this.delegate = delegate;
+    this.limits = limits;
+  }
+
+  @Override public Encoding encoding() {
+    return delegate.encoding();
+  }
+
+  @Override public int sizeInBytes(Span input) {
+    Span limited = exceedsValueLimits(input) ? limitValues(input) : input;
+    int sizeInBytes = delegate.sizeInBytes(limited);
+    if (limits.spanMaxBytes == 0 || sizeInBytes <= limits.spanMaxBytes) return sizeInBytes;
+    return delegate.sizeInBytes(trimLargestValues(limited, sizeInBytes));
+  }
+
+  @Override public byte[] encode(Span input) {
+    return delegate.encode(limit(input));
+  }
+
+  @Override public Span limit(Span span) {
+    Span limited = exceedsValueLimits(span) ? limitValues(span) : span;
+    int spanMaxBytes = limits.spanMaxBytes;
+    if (spanMaxBytes == 0) return limited;
+    int sizeInBytes = delegate.sizeInBytes(limited);
+    return sizeInBytes > spanMaxBytes ? trimLargestValues(limited, sizeInBytes) : limited;
+  }
+
+  @Override public BytesEncoder<Span> limitedEncoder() {
+    return delegate;
+  }
+
+  boolean exceedsValueLimits(Span span) {
+    if (limits.tagValueMaxBytes != 0) {
+      for (String value : span.tags().values()) {
+        if (limits.exceedsTagValueMaxBytes(value)) return true;
+      }
+    }
+    if (limits.annotationValueMaxBytes != 0) {
+      for (Annotation annotation : span.annotations()) {
+        if (limits.exceedsAnnotationValueMaxBytes(annotation.value())) return true;
+      }
+    }
+    return false;
+  }
+
+  Span limitValues(Span span) {
+    Span.Builder builder = span.toBuilder().clearTags().clearAnnotations();
+    for (Map.Entry<String, String> tag : span.tags().entrySet()) {
+      builder.putTag(tag.getKey(), limits.limitTagValue(tag.getValue()));
+    }
+    for (Annotation annotation : span.annotations()) {
+      builder.addAnnotation(annotation.timestamp(),
+        limits.limitAnnotationValue(annotation.value()));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Truncates the largest tag or annotation value by the excess bytes until the span fits. The
+   * encoded span shrinks at least as much as the value, so this loops at most once per value.
+   */
+  Span trimLargestValues(Span span, int sizeInBytes) {
+    Map<String, String> tags = new LinkedHashMap<String, String>(span.tags());
+    List<Annotation> annotations = new ArrayList<Annotation>(span.annotations());
+    Span trimmed = span;
+    while (sizeInBytes > limits.spanMaxBytes) {
+      String largestTagKey = null;
+      int largestAnnotation = -1, largestSizeInBytes = 0;
+      for (Map.Entry<String, String> tag : tags.entrySet()) {
+        int valueSizeInBytes = Utf8.sizeInBytes(tag.getValue());
+        if (valueSizeInBytes > largestSizeInBytes) {
+          largestTagKey = tag.getKey();
+          largestSizeInBytes = valueSizeInBytes;
+        }
+      }
+      for (int i = 0, length = annotations.size(); i < length; i++) {
+        int valueSizeInBytes = Utf8.sizeInBytes(annotations.get(i).value());
+        if (valueSizeInBytes > largestSizeInBytes) {
+          largestTagKey = null;
+          largestAnnotation = i;
+          largestSizeInBytes = valueSizeInBytes;
+        }
+      }
+      if (largestSizeInBytes == 0) return trimmed; // nothing left to truncate
+
+      int maxBytes = largestSizeInBytes - (sizeInBytes - limits.spanMaxBytes);
+      if (largestTagKey != null) {
+        tags.put(largestTagKey, Utf8.truncate(tags.get(largestTagKey), maxBytes));
+      } else {
+        Annotation annotation = annotations.get(largestAnnotation);
+        annotations.set(largestAnnotation, Annotation.create(annotation.timestamp(),
+          Utf8.truncate(annotation.value(), maxBytes)));
+      }
+
+      Span.Builder builder = span.toBuilder().clearTags().clearAnnotations();
+      for (Map.Entry<String, String> tag : tags.entrySet()) {
+        builder.putTag(tag.getKey(), tag.getValue());
+      }
+      for (Annotation annotation : annotations) {
+        builder.addAnnotation(annotation.timestamp(), annotation.value());
+      }
+      trimmed = builder.build();
+      sizeInBytes = delegate.sizeInBytes(trimmed);
+    }
+    return trimmed;
+  }
+
+  @Override public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof SizeLimitedSpanBytesEncoder)) return false;
+    SizeLimitedSpanBytesEncoder that = (SizeLimitedSpanBytesEncoder) o;
+    return delegate.equals(that.delegate) && limits.equals(that.limits);
+  }
+
+  @Override public int hashCode() {
+    return delegate.hashCode() ^ limits.hashCode();
+  }
+
+  @Override public String toString() {
+    return delegate + "{" + limits + "}";
+  }
+}
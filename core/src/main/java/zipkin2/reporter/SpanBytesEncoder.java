@@ -64,6 +64,20 @@ public enum SpanBytesEncoder implements BytesEncoder<Span> {
     }
   };
 
+  /**
+   * Returns an encoder that truncates tag and annotation values according to the limits, so that
+   * an oversized value doesn't result in the span being dropped.
+   *
+   * <p>Spans within limits are encoded as-is. Otherwise, a truncated copy is encoded.
+   *
+   * @since 3.6
+   */
+  public BytesEncoder<Span> withLimits(SpanSizeLimits limits) {
+    if (limits == null) throw new NullPointerException("limits == null");
+    if (limits.isEmpty()) return this;
+    return new SizeLimitedSpanBytesEncoder(this, limits);
+  }
+
   /**
    * Returns the default {@linkplain Span} encoder for given encoding.
    *
@@ -78,6 +92,8 @@ public enum SpanBytesEncoder implements BytesEncoder<Span> {
         return PROTO3;
       case THRIFT:
         return THRIFT;
+      case OTLP_PROTO3:
+        throw new UnsupportedOperationException("OTLP_PROTO3 is not yet a built-in encoder");
       default: // BUG: as encoding is an enum!
         throw new UnsupportedOperationException("BUG: " + encoding.name());
     }
@@ -0,0 +1,155 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter;
+
+import zipkin2.reporter.internal.Utf8;
+
+/**
+ * Limits the size of tag and annotation values, so that one oversized value, such as a large SQL
+ * statement in a tag, doesn't cause the whole span to be dropped.
+ *
+ * <p>Values over a limit are truncated to the longest prefix that fits in UTF-8, without splitting
+ * a character. A limit of zero means unlimited, which is the default.
+ *
+ * <p>Example:
+ * <pre>{@code
+ * limits = SpanSizeLimits.newBuilder().tagValueMaxBytes(1024).spanMaxBytes(64 * 1024).build();
+ * reporter = AsyncReporter.builder(sender).build(SpanBytesEncoder.JSON_V2.withLimits(limits));
+ * }</pre>
+ *
+ * @see SpanBytesEncoder#withLimits(SpanSizeLimits)
+ * @since 3.6
+ */
+public final class SpanSizeLimits {
+  /** No limits, which is the default. */
+  public static final SpanSizeLimits NONE = newBuilder().build();
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  public static final class Builder {
+    int tagValueMaxBytes, annotationValueMaxBytes, spanMaxBytes;
+
+    Builder() {
+    }
+
+    Builder(SpanSizeLimits source) {
+      this.tagValueMaxBytes = source.tagValueMaxBytes;
+      this.annotationValueMaxBytes = source.annotationValueMaxBytes;
+      this.spanMaxBytes = source.spanMaxBytes;
+    }
+
+    /** Maximum UTF-8 bytes of a tag value. Defaults to zero, which is unlimited. */
+    public Builder tagValueMaxBytes(int tagValueMaxBytes) {
+      if (tagValueMaxBytes < 0) {
+        throw new IllegalArgumentException("tagValueMaxBytes < 0: " + tagValueMaxBytes);
+      }
+      this.tagValueMaxBytes = tagValueMaxBytes;
+      return this;
+    }
+
+    /** Maximum UTF-8 bytes of an annotation value. Defaults to zero, which is unlimited. */
+    public Builder annotationValueMaxBytes(int annotationValueMaxBytes) {
+      if (annotationValueMaxBytes < 0) {
+        throw new IllegalArgumentException(
+          "annotationValueMaxBytes < 0: " + annotationValueMaxBytes);
+      }
+      this.annotationValueMaxBytes = annotationValueMaxBytes;
+      return this;
+    }
+
+    /**
+     * Maximum encoded bytes of a span. When a span is larger, the largest tag and annotation values
+     * are truncated until it fits. Defaults to zero, which is unlimited.
+     *
+     * <p>Note: Other fields are never truncated. If a span is still too large after removing tag
+     * and annotation values, it is encoded as-is.
+     */
+    public Builder spanMaxBytes(int spanMaxBytes) {
+      if (spanMaxBytes < 0) throw new IllegalArgumentException("spanMaxBytes < 0: " + spanMaxBytes);
+      this.spanMaxBytes = spanMaxBytes;
+      return this;
+    }
+
+    public SpanSizeLimits build() {
+      return new SpanSizeLimits(this);
+    }
+  }
+
+  final int tagValueMaxBytes, annotationValueMaxBytes, spanMaxBytes;
+
+  SpanSizeLimits(Builder builder) {
+    this.tagValueMaxBytes = builder.tagValueMaxBytes;
+    this.annotationValueMaxBytes = builder.annotationValueMaxBytes;
+    this.spanMaxBytes = builder.spanMaxBytes;
+  }
+
+  /** @see Builder#tagValueMaxBytes(int) */
+  public int tagValueMaxBytes() {
+    return tagValueMaxBytes;
+  }
+
+  /** @see Builder#annotationValueMaxBytes(int) */
+  public int annotationValueMaxBytes() {
+    return annotationValueMaxBytes;
+  }
+
+  /** @see Builder#spanMaxBytes(int) */
+  public int spanMaxBytes() {
+    return spanMaxBytes;
+  }
+
+  /** Returns true if no limits are set. */
+  public boolean isEmpty() {
+    return tagValueMaxBytes == 0 && annotationValueMaxBytes == 0 && spanMaxBytes == 0;
+  }
+
+  boolean exceedsTagValueMaxBytes(String value) {
+    return Utf8.exceeds(value, tagValueMaxBytes);
+  }
+
+  String limitTagValue(String value) {
+    return tagValueMaxBytes == 0 ? value : Utf8.truncate(value, tagValueMaxBytes);
+  }
+
+  boolean exceedsAnnotationValueMaxBytes(String value) {
+    return Utf8.exceeds(value, annotationValueMaxBytes);
+  }
+
+  String limitAnnotationValue(String value) {
+    return annotationValueMaxBytes == 0 ? value : Utf8.truncate(value, annotationValueMaxBytes);
+  }
+
+  @Override public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof SpanSizeLimits)) return false;
+    SpanSizeLimits that = (SpanSizeLimits) o;
+    return tagValueMaxBytes == that.tagValueMaxBytes
+      && annotationValueMaxBytes == that.annotationValueMaxBytes
+      && spanMaxBytes == that.spanMaxBytes;
+  }
+
+  @Override public int hashCode() {
+    int h = 1000003;
+    h ^= tagValueMaxBytes;
+    h *= 1000003;
+    h ^= annotationValueMaxBytes;
+    h *= 1000003;
+    h ^= spanMaxBytes;
+    return h;
+  }
+
+  @Override public String toString() {
+    return "SpanSizeLimits{tagValueMaxBytes=" + tagValueMaxBytes
+      + ", annotationValueMaxBytes=" + annotationValueMaxBytes
+      + ", spanMaxBytes=" + spanMaxBytes
+      + "}";
+  }
+}
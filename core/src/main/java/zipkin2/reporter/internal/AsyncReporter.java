@@ -21,6 +21,7 @@ import zipkin2.reporter.Call;
 import zipkin2.reporter.CheckResult;
 import zipkin2.reporter.ClosedSenderException;
 import zipkin2.reporter.Component;
+import zipkin2.reporter.Encoding;
 import zipkin2.reporter.Reporter;
 import zipkin2.reporter.ReporterMetrics;
 
@@ -164,7 +165,12 @@ public abstract class AsyncReporter<S> extends Component
       return this;
     }
 
-    /** Builds an async reporter that encodes arbitrary spans as they are reported. */
+    /**
+     * Builds an async reporter that encodes arbitrary spans as they are reported.
+     *
+     * <p>If the encoder is also a {@link SpanRecycler}, spans are recycled once encoded. If the
+     * sender is also a {@link MessageFraming}, messages are sized with its exact overhead.
+     */
     public <S> AsyncReporter<S> build(BytesEncoder<S> encoder) {
       if (encoder == null) throw new NullPointerException("encoder == null");
 
@@ -173,7 +179,40 @@ public abstract class AsyncReporter<S> extends Component
           "Encoder doesn't match Sender: %s %s", encoder.encoding(), sender.encoding()));
       }
 
-      return new BoundedAsyncReporter<S>(this, encoder);
+      return new BoundedAsyncReporter<S>(this, encoder, null, null);
+    }
+
+    /**
+     * Like {@link #build(BytesEncoder)}, except duplicate spans in the same message are merged
+     * before they are encoded.
+     *
+     * @since 3.6
+     */
+    public <S> AsyncReporter<S> build(BytesEncoder<S> encoder,
+      SpanDeduplicator<S> deduplicator) {
+      if (encoder == null) throw new NullPointerException("encoder == null");
+      if (deduplicator == null) throw new NullPointerException("deduplicator == null");
+
+      if (encoder.encoding() != sender.encoding()) {
+        throw new IllegalArgumentException(String.format(
+          "Encoder doesn't match Sender: %s %s", encoder.encoding(), sender.encoding()));
+      }
+
+      return new BoundedAsyncReporter<S>(this, encoder, deduplicator, null);
+    }
+
+    /** @see InternalReporter#build(Builder, BytesEncoder, SpanDeduplicator, SpanResources) */
+    <S> AsyncReporter<S> build(BytesEncoder<S> encoder,
+      @Nullable SpanDeduplicator<S> deduplicator, SpanResources<S> resources) {
+      if (encoder == null) throw new NullPointerException("encoder == null");
+      if (resources == null) throw new NullPointerException("resources == null");
+
+      if (encoder.encoding() != sender.encoding()) {
+        throw new IllegalArgumentException(String.format(
+          "Encoder doesn't match Sender: %s %s", encoder.encoding(), sender.encoding()));
+      }
+
+      return new BoundedAsyncReporter<S>(this, encoder, deduplicator, resources);
     }
   }
 
@@ -181,7 +220,14 @@ public abstract class AsyncReporter<S> extends Component
     static final Logger logger = Logger.getLogger(BoundedAsyncReporter.class.getName());
     final AtomicBoolean started, closed;
     final BytesEncoder<S> encoder;
-    final BoundedQueue<S> pending;
+    final SharedEncoder sharedEncoder;
+    final BytesEncoder<Object> limitedEncoder; // queued spans are already limited
+    // The below are only set when no other type can be shared, so all queued spans are S.
+    @Nullable final SpanDeduplicator<Object> deduplicator;
+    @Nullable final SpanResources<Object> resources;
+    @Nullable final SpanRecycler<Object> recycler;
+    @Nullable final MessageFraming framing;
+    final BoundedQueue<Object> pending; // spans of type S, or the shared type
     final BytesMessageSender sender;
     final int queuedMaxBytes;
     final int messageMaxBytes;
@@ -193,8 +239,12 @@ public abstract class AsyncReporter<S> extends Component
     /** Tracks if we should log the first instance of an exception in flush(). */
     private boolean shouldWarnException = true;
 
-    BoundedAsyncReporter(Builder builder, BytesEncoder<S> encoder) {
-      this.pending = BoundedQueue.create(encoder, builder.sender, builder.metrics,
+    @SuppressWarnings("unchecked")
+    BoundedAsyncReporter(Builder builder, BytesEncoder<S> encoder,
+      @Nullable SpanDeduplicator<S> deduplicator, @Nullable SpanResources<S> resources) {
+      this.sharedEncoder = new SharedEncoder(encoder);
+      this.limitedEncoder = sharedEncoder.limitedEncoder();
+      this.pending = BoundedQueue.create(sharedEncoder, builder.sender, builder.metrics,
         builder.messageMaxBytes, builder.queuedMaxSpans, builder.queuedMaxBytes);
       this.sender = builder.sender;
       this.queuedMaxBytes = builder.queuedMaxBytes;
@@ -208,20 +258,29 @@ public abstract class AsyncReporter<S> extends Component
       this.metrics = builder.metrics;
       this.threadFactory = builder.threadFactory;
       this.encoder = encoder;
+      this.deduplicator = (SpanDeduplicator<Object>) deduplicator;
+      this.resources = (SpanResources<Object>) resources;
+      this.framing = builder.sender instanceof MessageFraming
+        && encoder.encoding() != Encoding.OTLP_PROTO3 ? (MessageFraming) builder.sender : null;
+      this.recycler = encoder instanceof SpanRecycler ? (SpanRecycler<Object>) encoder : null;
     }
 
     void startFlusherThread() {
-      BufferNextMessage<S> consumer =
-        BufferNextMessage.create(encoder.encoding(), messageMaxBytes, messageTimeoutNanos);
-      Thread flushThread = threadFactory.newThread(new Flusher<S>(this, consumer));
+      BufferNextMessage<Object> consumer = BufferNextMessage.create(
+        encoder.encoding(), messageMaxBytes, messageTimeoutNanos, resources, framing);
+      Thread flushThread = threadFactory.newThread(new Flusher(this, consumer));
       flushThread.setName("AsyncReporter{" + sender + "}");
       flushThread.setDaemon(true);
       flushThread.start();
     }
 
-    @SuppressWarnings("unchecked")
     @Override public void report(S next) {
       if (next == null) throw new NullPointerException("span == null");
+      enqueue(next);
+    }
+
+    /** Enqueues a span of type {@code S}, or of the shared type. */
+    void enqueue(Object next) {
       // Lazy start so that reporters never used don't spawn threads
       if (started.compareAndSet(false, true)) startFlusherThread();
       metrics.incrementSpans(1);
@@ -234,34 +293,72 @@ public abstract class AsyncReporter<S> extends Component
 
     @Override public void flush() {
       if (closed.get()) throw new ClosedSenderException();
-      flush(BufferNextMessage.<S>create(encoder.encoding(), messageMaxBytes, 0));
+      flush(BufferNextMessage.create(encoder.encoding(), messageMaxBytes, 0, resources, framing));
     }
 
-    void flush(BufferNextMessage<S> bundler) {
+    void flush(BufferNextMessage<Object> bundler) {
       pending.drainTo(bundler, bundler.remainingNanos());
 
       // loop around if we are running, and the bundle isn't full
       // if we are closed, try to send what's pending
       if (!bundler.isReady() && !closed.get()) return;
 
+      // Merge duplicates before sizing the message, so that their bytes aren't sent
+      if (deduplicator != null) bundler.deduplicate(deduplicator, sharedEncoder);
+
       // Signal that we are about to send a message of a known size in bytes
       metrics.incrementMessages();
       metrics.incrementMessageBytes(bundler.sizeInBytes());
 
       // Create the next message. Since we are outside the lock shared with writers, we can encode
       final ArrayList<byte[]> nextMessage = new ArrayList<byte[]>(bundler.count());
-      bundler.drain(new SpanWithSizeConsumer<S>() {
-        @Override public boolean offer(S next, int nextSizeInBytes) {
-          nextMessage.add(encoder.encode(next)); // speculatively add to the pending message
+      if (framing != null) {
+        drainFramed(bundler, nextMessage);
+      } else {
+        drain(bundler, nextMessage);
+      }
+
+      send(nextMessage);
+    }
+
+    void drain(BufferNextMessage<Object> bundler, final ArrayList<byte[]> nextMessage) {
+      bundler.drain(new SpanWithSizeConsumer<Object>() {
+        @Override public boolean offer(Object next, int nextSizeInBytes) {
+          nextMessage.add(limitedEncoder.encode(next)); // speculatively add to the pending message
           if (sender.messageSizeInBytes(nextMessage) > messageMaxBytes) {
             // if we overran the message size, remove the encoded message.
             nextMessage.remove(nextMessage.size() - 1);
             return false;
           }
+          if (recycler != null) recycler.recycle(next);
+          return true;
+        }
+      });
+    }
+
+    /** Adds spans that fit to the message, encoding each once, as its size is already known. */
+    void drainFramed(BufferNextMessage<Object> bundler, final ArrayList<byte[]> nextMessage) {
+      bundler.drain(new SpanWithSizeConsumer<Object>() {
+        int messageSizeInBytes = framing.emptyMessageSizeInBytes();
+
+        @Override public boolean offer(Object next, int nextSizeInBytes) {
+          int index = nextMessage.size();
+          int x = messageSizeInBytes + framing.spanSizeInBytes(index, nextSizeInBytes);
+          if (x > messageMaxBytes) return false;
+          byte[] encoded = limitedEncoder.encode(next);
+          if (encoded.length != nextSizeInBytes) { // the encoder's size was wrong, so recheck
+            x = messageSizeInBytes + framing.spanSizeInBytes(index, encoded.length);
+            if (x > messageMaxBytes) return false;
+          }
+          nextMessage.add(encoded);
+          messageSizeInBytes = x;
+          if (recycler != null) recycler.recycle(next);
           return true;
         }
       });
+    }
 
+    void send(ArrayList<byte[]> nextMessage) {
       try {
         sender.send(nextMessage);
       } catch (Throwable t) {
@@ -330,18 +427,57 @@ public abstract class AsyncReporter<S> extends Component
       return new Builder(this);
     }
 
+    /** See {@link InternalReporter#share(AsyncReporter, Class, BytesEncoder)} */
+    <T> Reporter<T> share(Class<T> type, BytesEncoder<T> encoder) {
+      if (type == null) throw new NullPointerException("type == null");
+      if (encoder == null) throw new NullPointerException("encoder == null");
+      if (encoder.encoding() != this.encoder.encoding()) {
+        throw new IllegalArgumentException(format(
+          "Encoder doesn't match reporter: %s %s", encoder.encoding(), this.encoder.encoding()));
+      }
+      if (deduplicator != null || recycler != null || resources != null) {
+        throw new IllegalStateException(
+          "can't share a reporter that merges, recycles or groups spans by resource");
+      }
+      if (!sharedEncoder.share(type, encoder)) {
+        throw new IllegalStateException(
+          "already shared with a different type or encoder: " + sharedEncoder.shared.type);
+      }
+      return new SharedReporter<T>(this, type);
+    }
+
     @Override public String toString() {
       return "AsyncReporter{" + sender + "}";
     }
   }
 
-  static final class Flusher<S> implements Runnable {
+  /** Enqueues spans of another type, relying on {@link SharedEncoder} to encode them. */
+  static final class SharedReporter<T> implements Reporter<T> {
+    final BoundedAsyncReporter<?> delegate;
+    final Class<T> type;
+
+    SharedReporter(BoundedAsyncReporter<?> delegate, Class<T> type) {
+      this.delegate = delegate;
+      this.type = type;
+    }
+
+    @Override public void report(T span) {
+      if (span == null) throw new NullPointerException("span == null");
+      delegate.enqueue(type.cast(span));
+    }
+
+    @Override public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  static final class Flusher implements Runnable {
     static final Logger logger = Logger.getLogger(Flusher.class.getName());
 
-    final BoundedAsyncReporter<S> result;
-    final BufferNextMessage<S> consumer;
+    final BoundedAsyncReporter<?> result;
+    final BufferNextMessage<Object> consumer;
 
-    Flusher(BoundedAsyncReporter<S> result, BufferNextMessage<S> consumer) {
+    Flusher(BoundedAsyncReporter<?> result, BufferNextMessage<Object> consumer) {
       this.result = result;
       this.consumer = consumer;
     }
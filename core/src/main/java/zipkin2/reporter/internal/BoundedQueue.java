@@ -22,6 +22,18 @@ abstract class BoundedQueue<S> implements SpanWithSizeConsumer<S> {
     }
   }
 
+  /** Returns the span to queue in place of the input, so that it is only limited once. */
+  @SuppressWarnings("unchecked")
+  static <S> S limit(BytesEncoder<S> encoder, S next) {
+    return encoder instanceof SpanLimiter ? ((SpanLimiter<S>) encoder).limit(next) : next;
+  }
+
+  /** Returns the encoder for spans returned by {@link #limit}, which doesn't limit them again. */
+  @SuppressWarnings("unchecked")
+  static <S> BytesEncoder<S> limitedEncoder(BytesEncoder<S> encoder) {
+    return encoder instanceof SpanLimiter ? ((SpanLimiter<S>) encoder).limitedEncoder() : encoder;
+  }
+
   /**
    * Max element's count of this bounded queue
    */
@@ -5,12 +5,22 @@
 package zipkin2.reporter.internal;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import zipkin2.reporter.BytesEncoder;
 import zipkin2.reporter.Encoding;
 
 /** Use of this type happens off the application's main thread. This type is not thread-safe */
 abstract class BufferNextMessage<S> implements SpanWithSizeConsumer<S> {
   static <S> BufferNextMessage<S> create(Encoding encoding, int maxBytes, long timeoutNanos) {
+    return create(encoding, maxBytes, timeoutNanos, null, null);
+  }
+
+  static <S> BufferNextMessage<S> create(Encoding encoding, int maxBytes, long timeoutNanos,
+    @Nullable SpanResources<S> resources, @Nullable MessageFraming framing) {
+    if (framing != null && encoding != Encoding.OTLP_PROTO3) {
+      return new BufferNextFramedMessage<S>(maxBytes, timeoutNanos, framing);
+    }
     switch (encoding) {
       case JSON:
         return new BufferNextJsonMessage<S>(maxBytes, timeoutNanos);
@@ -18,6 +28,12 @@ abstract class BufferNextMessage<S> implements SpanWithSizeConsumer<S> {
         return new BufferNextThriftMessage<S>(maxBytes, timeoutNanos);
       case PROTO3:
         return new BufferNextProto3Message<S>(maxBytes, timeoutNanos);
+      case OTLP_PROTO3:
+        if (resources != null) {
+          return new BufferNextOtlpProto3Message<S>(maxBytes, timeoutNanos, resources);
+        }
+        // Spans are sized as if not combined, which is an upper bound of the message size.
+        return new BufferNextProto3Message<S>(maxBytes, timeoutNanos);
     }
     throw new UnsupportedOperationException("encoding: " + encoding);
   }
@@ -36,7 +52,7 @@ abstract class BufferNextMessage<S> implements SpanWithSizeConsumer<S> {
     this.timeoutNanos = timeoutNanos;
   }
 
-  abstract int messageSizeInBytes(int nextSizeInBytes);
+  abstract int messageSizeInBytes(S next, int nextSizeInBytes);
 
   abstract void resetMessageSizeInBytes();
 
@@ -50,7 +66,7 @@ abstract class BufferNextMessage<S> implements SpanWithSizeConsumer<S> {
     }
 
     @Override
-    int messageSizeInBytes(int nextSizeInBytes) {
+    int messageSizeInBytes(S next, int nextSizeInBytes) {
       return messageSizeInBytes + nextSizeInBytes + (hasAtLeastOneSpan ? 1 : 0);
     }
 
@@ -84,7 +100,7 @@ abstract class BufferNextMessage<S> implements SpanWithSizeConsumer<S> {
     }
 
     @Override
-    int messageSizeInBytes(int nextSizeInBytes) {
+    int messageSizeInBytes(S next, int nextSizeInBytes) {
       return messageSizeInBytes + nextSizeInBytes;
     }
 
@@ -104,7 +120,7 @@ abstract class BufferNextMessage<S> implements SpanWithSizeConsumer<S> {
 
     /** proto3 repeated fields are simply concatenated. there is no other overhead */
     @Override
-    int messageSizeInBytes(int nextSizeInBytes) {
+    int messageSizeInBytes(S next, int nextSizeInBytes) {
       return messageSizeInBytes += nextSizeInBytes;
     }
 
@@ -117,10 +133,98 @@ abstract class BufferNextMessage<S> implements SpanWithSizeConsumer<S> {
     }
   }
 
+  /** The sender knows its exact overhead, such as Scribe's log entries. */
+  static final class BufferNextFramedMessage<S> extends BufferNextMessage<S> {
+    final MessageFraming framing;
+
+    BufferNextFramedMessage(int maxBytes, long timeoutNanos, MessageFraming framing) {
+      super(maxBytes, timeoutNanos);
+      this.framing = framing;
+      messageSizeInBytes = framing.emptyMessageSizeInBytes();
+    }
+
+    @Override
+    int messageSizeInBytes(S next, int nextSizeInBytes) {
+      return messageSizeInBytes + framing.spanSizeInBytes(spans.size(), nextSizeInBytes);
+    }
+
+    @Override
+    void resetMessageSizeInBytes() {
+      messageSizeInBytes = framing.emptyMessageSizeInBytes();
+      for (int i = 0, length = sizes.size(); i < length; i++) {
+        messageSizeInBytes += framing.spanSizeInBytes(i, sizes.get(i));
+      }
+    }
+  }
+
+  /**
+   * Spans with the same resource share one {@code resource_spans} field, so the message size is the
+   * sum of each group's size, which {@link OtlpProto3Messages} derives from the sizes of the spans.
+   */
+  static final class BufferNextOtlpProto3Message<S> extends BufferNextMessage<S> {
+    final SpanResources<S> resources;
+    final HashMap<Object, Group> groups = new HashMap<Object, Group>();
+
+    BufferNextOtlpProto3Message(int maxBytes, long timeoutNanos, SpanResources<S> resources) {
+      super(maxBytes, timeoutNanos);
+      this.resources = resources;
+    }
+
+    @Override
+    int messageSizeInBytes(S next, int nextSizeInBytes) {
+      Group group = groups.get(resources.key(next));
+      if (group == null) return messageSizeInBytes + nextSizeInBytes; // new group of one span
+      int spansSizeInBytes = group.spansSizeInBytes
+        + OtlpProto3Messages.spansSizeInBytes(nextSizeInBytes, group.resourceSizeInBytes);
+      return messageSizeInBytes - group.sizeInBytes()
+        + OtlpProto3Messages.sizeInBytes(group.resourceSizeInBytes, spansSizeInBytes);
+    }
+
+    @Override
+    void addSpanToBuffer(S next, int nextSizeInBytes) {
+      super.addSpanToBuffer(next, nextSizeInBytes);
+      addToGroup(next, nextSizeInBytes);
+    }
+
+    @Override
+    void resetMessageSizeInBytes() {
+      groups.clear();
+      messageSizeInBytes = 0;
+      for (int i = 0, length = sizes.size(); i < length; i++) {
+        messageSizeInBytes = messageSizeInBytes(spans.get(i), sizes.get(i));
+        addToGroup(spans.get(i), sizes.get(i));
+      }
+    }
+
+    void addToGroup(S next, int nextSizeInBytes) {
+      Object key = resources.key(next);
+      Group group = groups.get(key);
+      if (group == null) {
+        group = new Group(resources.sizeInBytes(next));
+        groups.put(key, group);
+      }
+      group.spansSizeInBytes +=
+        OtlpProto3Messages.spansSizeInBytes(nextSizeInBytes, group.resourceSizeInBytes);
+    }
+
+    static final class Group {
+      final int resourceSizeInBytes;
+      int spansSizeInBytes;
+
+      Group(int resourceSizeInBytes) {
+        this.resourceSizeInBytes = resourceSizeInBytes;
+      }
+
+      int sizeInBytes() {
+        return OtlpProto3Messages.sizeInBytes(resourceSizeInBytes, spansSizeInBytes);
+      }
+    }
+  }
+
   /** This is done inside a lock that holds up writers, so has to be fast. No encoding! */
   @Override
   public boolean offer(S next, int nextSizeInBytes) {
-    int x = messageSizeInBytes(nextSizeInBytes);
+    int x = messageSizeInBytes(next, nextSizeInBytes);
     int y = maxBytes;
     int includingNextVsMaxBytes = (x < y) ? -1 : ((x == y) ? 0 : 1); // Integer.compare, but JRE 6
 
@@ -169,6 +273,48 @@ abstract class BufferNextMessage<S> implements SpanWithSizeConsumer<S> {
     deadlineNanoTime = 0;
   }
 
+  /**
+   * Merges spans with the same {@linkplain SpanDeduplicator#key(Object) key} into the first
+   * occurrence. This occurs off the application thread, before {@link #drain}.
+   *
+   * @return count of spans removed
+   */
+  int deduplicate(SpanDeduplicator<S> deduplicator, BytesEncoder<S> encoder) {
+    int length = spans.size();
+    if (length < 2) return 0;
+
+    HashMap<Object, Integer> firstIndex = new HashMap<Object, Integer>(length * 4 / 3 + 1);
+    int removed = 0;
+    for (int i = 0; i < spans.size(); ) {
+      S next = spans.get(i);
+      Object key = deduplicator.key(next);
+      Integer first = key != null ? firstIndex.get(key) : null;
+      if (first == null) {
+        if (key != null) firstIndex.put(key, i);
+        i++;
+        continue;
+      }
+
+      S merged = deduplicator.merge(spans.get(first), next);
+      if (merged != spans.get(first)) {
+        merged = BoundedQueue.limit(encoder, merged); // like the queue, so it is encoded as-is
+        int mergedSizeInBytes = BoundedQueue.limitedEncoder(encoder).sizeInBytes(merged);
+        if (mergedSizeInBytes > maxBytes) { // don't create a span that can't be sent
+          i++;
+          continue;
+        }
+        spans.set(first, merged);
+        sizes.set(first, mergedSizeInBytes);
+      }
+      spans.remove(i);
+      sizes.remove(i);
+      removed++;
+    }
+
+    if (removed > 0) resetMessageSizeInBytes();
+    return removed;
+  }
+
   int count() {
     return spans.size();
   }
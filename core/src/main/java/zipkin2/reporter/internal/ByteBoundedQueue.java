@@ -21,6 +21,7 @@ import zipkin2.reporter.ReporterMetrics;
 @Deprecated
 final class ByteBoundedQueue<S> extends BoundedQueue<S> {
   final BytesEncoder<S> encoder;
+  final BytesEncoder<S> limitedEncoder;
   final BytesMessageSender sender;
   final ReporterMetrics metrics;
   final int messageMaxBytes;
@@ -42,6 +43,7 @@ final class ByteBoundedQueue<S> extends BoundedQueue<S> {
     BytesMessageSender sender, ReporterMetrics metrics, int messageMaxBytes, int maxSize,
     int maxBytes) {
     this.encoder = encoder;
+    this.limitedEncoder = limitedEncoder(encoder);
     this.sender = sender;
     this.metrics = metrics;
     this.messageMaxBytes = messageMaxBytes;
@@ -101,7 +103,8 @@ final class ByteBoundedQueue<S> extends BoundedQueue<S> {
   }
 
   @Override boolean offer(S next) {
-    int nextSizeInBytes = encoder.sizeInBytes(next);
+    next = limit(encoder, next);
+    int nextSizeInBytes = limitedEncoder.sizeInBytes(next);
     int messageSizeOfNextSpan = sender.messageSizeInBytes(nextSizeInBytes);
     metrics.incrementSpanBytes(nextSizeInBytes);
     // don't enqueue something larger than we can drain
@@ -23,6 +23,7 @@ final class CountBoundedQueue<S> extends BoundedQueue<S> {
   final Condition available = lock.newCondition();
 
   final BytesEncoder<S> encoder;
+  final BytesEncoder<S> limitedEncoder;
   final BytesMessageSender sender;
   final ReporterMetrics metrics;
   final int messageMaxBytes;
@@ -36,6 +37,7 @@ final class CountBoundedQueue<S> extends BoundedQueue<S> {
   @SuppressWarnings("unchecked") CountBoundedQueue(BytesEncoder<S> encoder,
     BytesMessageSender sender, ReporterMetrics metrics, int messageMaxBytes, int maxSize) {
     this.encoder = encoder;
+    this.limitedEncoder = limitedEncoder(encoder);
     this.sender = sender;
     this.metrics = metrics;
     this.messageMaxBytes = messageMaxBytes;
@@ -112,7 +114,9 @@ final class CountBoundedQueue<S> extends BoundedQueue<S> {
 
       if (next == null) break;
 
-      int nextSizeInBytes = encoder.sizeInBytes(next);
+      // replace the queued span, so that it isn't limited again if this message is full
+      elements[readPos] = next = limit(encoder, next);
+      int nextSizeInBytes = limitedEncoder.sizeInBytes(next);
       int messageSizeOfNextSpan = sender.messageSizeInBytes(nextSizeInBytes);
       metrics.incrementSpanBytes(nextSizeInBytes);
 
@@ -0,0 +1,111 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import zipkin2.reporter.BytesMessageSender;
+import zipkin2.reporter.ReporterMetrics;
+
+import static java.lang.String.format;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Bounds the count of messages in flight, for senders that return from
+ * {@link BytesMessageSender#send} before the message is acknowledged.
+ *
+ * <p>{@link AsyncReporter} considers a message sent when {@code send} returns. Failures that happen
+ * later are reported here instead: they increment {@link ReporterMetrics#incrementMessagesDropped}
+ * and {@link ReporterMetrics#incrementSpansDropped}. Like {@link AsyncReporter}, the first failure
+ * is logged at WARNING level, and subsequent ones at FINE.
+ *
+ * @since 3.6
+ */
+public final class InFlightMessages {
+  final int maxMessages;
+  final Semaphore permits;
+  final ReporterMetrics metrics;
+  final Logger logger;
+  final AtomicBoolean shouldWarnException = new AtomicBoolean(true);
+
+  public InFlightMessages(int maxMessages, ReporterMetrics metrics, Logger logger) {
+    if (maxMessages <= 0) throw new IllegalArgumentException("maxMessages <= 0: " + maxMessages);
+    if (metrics == null) throw new NullPointerException("metrics == null");
+    if (logger == null) throw new NullPointerException("logger == null");
+    this.maxMessages = maxMessages;
+    this.permits = new Semaphore(maxMessages);
+    this.metrics = metrics;
+    this.logger = logger;
+  }
+
+  /**
+   * Blocks until another message can be sent. Once it completes, call {@link #release()} or
+   * {@link #dropped(Throwable, int)}.
+   *
+   * <p>Blocking here is ok, as the caller is the {@link AsyncReporter} flush thread, which has a
+   * buffer of unsent spans for this purpose.
+   */
+  public void acquire() throws InterruptedIOException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for in-flight messages");
+    }
+  }
+
+  /**
+   * Call when a message completed successfully, or failed before {@code send} returned. In the
+   * latter case, the caller is responsible for metrics, as the exception propagates.
+   */
+  public void release() {
+    permits.release();
+  }
+
+  /** Call when a message failed after {@code send} returned. */
+  public void dropped(Throwable t, int spanCount) {
+    metrics.incrementMessagesDropped(t);
+    metrics.incrementSpansDropped(spanCount);
+
+    Level logLevel = FINE;
+    if (shouldWarnException.compareAndSet(true, false)) {
+      logger.log(WARNING, "Spans were dropped due to exceptions. "
+        + "All subsequent errors will be logged at FINE level.");
+      logLevel = WARNING;
+    }
+    if (logger.isLoggable(logLevel)) {
+      logger.log(logLevel,
+        format("Dropped %s spans due to %s(%s)", spanCount, t.getClass().getSimpleName(),
+          t.getMessage() == null ? "" : t.getMessage()), t);
+    }
+    permits.release(); // last, so that metrics are visible once completion is awaited
+  }
+
+  /** Returns the count of messages that have not yet completed. */
+  public int inFlight() {
+    return maxMessages - permits.availablePermits();
+  }
+
+  /** Returns false if messages are still in flight after the timeout. */
+  public boolean awaitCompletion(long timeout, TimeUnit unit) {
+    try {
+      if (!permits.tryAcquire(maxMessages, timeout, unit)) return false;
+      permits.release(maxMessages);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  @Override public String toString() {
+    return "InFlightMessages{inFlight=" + inFlight() + ", maxMessages=" + maxMessages + "}";
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+import zipkin2.reporter.BytesEncoder;
+import zipkin2.reporter.Reporter;
+
+/**
+ * Escalate internal APIs in {@code zipkin2.reporter} so they can be used from outside packages,
+ * such as {@code zipkin2.reporter.brave}. The only implementation is in
+ * {@link zipkin2.reporter.AsyncReporter}. Static methods escalate package-private APIs of this
+ * package.
+ *
+ * <p>Inspired by {@code okhttp3.internal.Internal}.
+ *
+ * @since 3.6
+ */
+public abstract class InternalReporter {
+  public static InternalReporter instance;
+
+  /**
+   * Like {@link AsyncReporter.Builder#build(BytesEncoder, SpanDeduplicator)}, except messages are
+   * sized exactly when the encoding writes each resource once, such as {@link
+   * zipkin2.reporter.Encoding#OTLP_PROTO3}. Otherwise, the resources are ignored.
+   *
+   * @param deduplicator null to not merge duplicate spans
+   */
+  public static <S> AsyncReporter<S> build(AsyncReporter.Builder builder, BytesEncoder<S> encoder,
+    @Nullable SpanDeduplicator<S> deduplicator, SpanResources<S> resources) {
+    return builder.build(encoder, deduplicator, resources);
+  }
+
+  /**
+   * Returns a reporter of another span type, which shares the queue, flush thread and sender of the
+   * input. Spans of that type are encoded with the given encoder, instead of being converted to
+   * {@code S} first.
+   *
+   * <p>Only one type can be shared. Sharing the same type and encoder again returns another
+   * reporter of the same queue.
+   *
+   * @throws IllegalArgumentException if the reporter wasn't built by {@link AsyncReporter.Builder},
+   *                                  or its encoding doesn't match
+   * @throws IllegalStateException if the reporter merges duplicate spans, recycles them, or sizes
+   *                               messages by resource, or if it was already shared with a
+   *                               different type or encoder
+   */
+  public static <S, T> Reporter<T> share(AsyncReporter<S> reporter, Class<T> type,
+    BytesEncoder<T> encoder) {
+    if (reporter == null) throw new NullPointerException("reporter == null");
+    if (!(reporter instanceof AsyncReporter.BoundedAsyncReporter)) {
+      throw new IllegalArgumentException("reporter wasn't built by AsyncReporter.Builder");
+    }
+    return ((AsyncReporter.BoundedAsyncReporter<S>) reporter).share(type, encoder);
+  }
+
+  /** Returns the reporter that the input delegates to. */
+  public abstract <S> AsyncReporter<S> delegate(zipkin2.reporter.AsyncReporter<S> reporter);
+
+  /** Returns the encoder the input was built with. */
+  public abstract <S> BytesEncoder<S> encoder(zipkin2.reporter.AsyncReporter<S> reporter);
+}
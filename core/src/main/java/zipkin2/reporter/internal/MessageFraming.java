@@ -0,0 +1,34 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+/**
+ * Implemented by a {@link zipkin2.reporter.BytesMessageSender} whose message overhead is a fixed
+ * size plus a size per span, such as Scribe, which base64 encodes each span into a log entry.
+ *
+ * <p>This lets {@link AsyncReporter} track the exact message size as spans are bundled, instead of
+ * only knowing the {@linkplain zipkin2.reporter.Encoding encoding}'s overhead. Bundles are then
+ * encoded once, without checking the sender's {@code messageSizeInBytes(List)} after each span.
+ *
+ * <p>Implementations must agree with the sender: its {@code messageSizeInBytes(List)} is {@link
+ * #emptyMessageSizeInBytes()} plus {@link #spanSizeInBytes(int, int)} of each span. This is ignored
+ * for {@link zipkin2.reporter.Encoding#OTLP_PROTO3}, as spans there share bytes.
+ *
+ * @see AsyncReporter.Builder#build(zipkin2.reporter.BytesEncoder)
+ * @since 3.6
+ */
+public interface MessageFraming {
+  /** Returns the size of a message without spans, such as "[]" in a JSON list. */
+  int emptyMessageSizeInBytes();
+
+  /**
+   * Returns the bytes a span adds to a message, including any separator or per-span framing.
+   *
+   * @param index the position of the span in the message, such as zero for the first
+   * @param encodedSizeInBytes the {@link zipkin2.reporter.BytesEncoder#sizeInBytes(Object) encoded
+   * size} of the span
+   */
+  int spanSizeInBytes(int index, int encodedSizeInBytes);
+}
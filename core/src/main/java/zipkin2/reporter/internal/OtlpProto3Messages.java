@@ -0,0 +1,228 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Combines {@link zipkin2.reporter.Encoding#OTLP_PROTO3} encoded spans into an OTLP {@code
+ * ExportTraceServiceRequest}, writing each distinct resource once.
+ *
+ * <p>Each encoded span is a {@code resource_spans} field, holding an optional {@code resource} and
+ * one {@code scope_spans} field without a {@code scope}. Concatenating these is already a valid
+ * request. This merges spans with the same resource bytes into one {@code resource_spans} field,
+ * with one {@code scope_spans}, placed where the first of them was. A span not in this layout is
+ * copied as-is.
+ *
+ * <p>The merged message is never larger than the concatenation. Its exact size only depends on the
+ * size of each span and of its resource, so {@link SpanResources} can track it as spans are added.
+ */
+public final class OtlpProto3Messages {
+  static final int RESOURCE_SPANS_KEY = (1 << 3) | 2, RESOURCE_KEY = (1 << 3) | 2;
+  static final int SCOPE_SPANS_KEY = (2 << 3) | 2, SPANS_KEY = (2 << 3) | 2;
+
+  /** Returns the exact size of {@link #encode(List)}. */
+  public static int sizeInBytes(List<byte[]> encodedSpans) {
+    int sizeInBytes = 0;
+    for (Object part : parts(encodedSpans)) {
+      sizeInBytes += part instanceof Group ? ((Group) part).sizeInBytes() : ((byte[]) part).length;
+    }
+    return sizeInBytes;
+  }
+
+  public static byte[] encode(List<byte[]> encodedSpans) {
+    List<Object> parts = parts(encodedSpans);
+    int sizeInBytes = 0;
+    for (Object part : parts) {
+      sizeInBytes += part instanceof Group ? ((Group) part).sizeInBytes() : ((byte[]) part).length;
+    }
+    byte[] result = new byte[sizeInBytes];
+    int pos = 0;
+    Element element = new Element();
+    for (Object part : parts) {
+      if (!(part instanceof Group)) {
+        byte[] span = (byte[]) part;
+        System.arraycopy(span, 0, result, pos, span.length);
+        pos += span.length;
+        continue;
+      }
+      Group group = (Group) part;
+      result[pos++] = RESOURCE_SPANS_KEY;
+      pos = writeVarint(result, pos, group.resourceSpansSizeInBytes());
+      System.arraycopy(group.first, group.resourceStart, result, pos, group.resourceSizeInBytes);
+      pos += group.resourceSizeInBytes;
+      result[pos++] = SCOPE_SPANS_KEY;
+      pos = writeVarint(result, pos, group.spansSizeInBytes);
+      for (int i = 0, length = group.spans.size(); i < length; i++) {
+        byte[] span = group.spans.get(i);
+        element.parse(span);
+        int spansLength = element.spansEnd - element.spansStart;
+        System.arraycopy(span, element.spansStart, result, pos, spansLength);
+        pos += spansLength;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the size of the {@code spans} in a span encoded with a resource of the given size. This
+   * lets a {@link BufferNextMessage} add the span to an existing group without encoding it.
+   */
+  static int spansSizeInBytes(int sizeInBytes, int resourceSizeInBytes) {
+    return lengthOfField(lengthOfField(sizeInBytes) - resourceSizeInBytes);
+  }
+
+  /** Returns the size of a {@code resource_spans} field with the given resource and spans. */
+  static int sizeInBytes(int resourceSizeInBytes, int spansSizeInBytes) {
+    return sizeOfField(resourceSizeInBytes + sizeOfField(spansSizeInBytes));
+  }
+
+  /** Returns groups of spans with the same resource and spans not in the expected layout. */
+  static List<Object> parts(List<byte[]> encodedSpans) {
+    int length = encodedSpans.size();
+    List<Object> parts = new ArrayList<Object>(length);
+    if (length == 0) return parts;
+
+    HashMap<Group, Group> groups = new HashMap<Group, Group>();
+    Element element = new Element();
+    for (int i = 0; i < length; i++) {
+      byte[] span = encodedSpans.get(i);
+      if (!element.parse(span)) {
+        parts.add(span);
+        continue;
+      }
+      Group next = new Group(span, element);
+      Group group = groups.get(next);
+      if (group == null) {
+        groups.put(next, next);
+        parts.add(next);
+      } else {
+        group.add(span, element);
+      }
+    }
+    return parts;
+  }
+
+  /** Spans with the same resource bytes, in the order they were added. */
+  static final class Group {
+    final byte[] first;
+    final int resourceStart, resourceSizeInBytes, hashCode;
+    final ArrayList<byte[]> spans = new ArrayList<byte[]>();
+    int spansSizeInBytes;
+
+    Group(byte[] first, Element element) {
+      this.first = first;
+      this.resourceStart = element.resourceStart;
+      this.resourceSizeInBytes = element.resourceEnd - element.resourceStart;
+      int h = 1;
+      for (int i = resourceStart, end = element.resourceEnd; i < end; i++) h = 31 * h + first[i];
+      this.hashCode = h;
+      add(first, element);
+    }
+
+    void add(byte[] span, Element element) {
+      spans.add(span);
+      spansSizeInBytes += element.spansEnd - element.spansStart;
+    }
+
+    int resourceSpansSizeInBytes() {
+      return resourceSizeInBytes + sizeOfField(spansSizeInBytes);
+    }
+
+    int sizeInBytes() {
+      return sizeOfField(resourceSpansSizeInBytes());
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Group)) return false;
+      Group that = (Group) o;
+      if (resourceSizeInBytes != that.resourceSizeInBytes) return false;
+      for (int i = 0; i < resourceSizeInBytes; i++) {
+        if (first[resourceStart + i] != that.first[that.resourceStart + i]) return false;
+      }
+      return true;
+    }
+
+    @Override public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /** Offsets of the resource field and the content of the scope_spans field in an encoded span. */
+  static final class Element {
+    int resourceStart, resourceEnd, spansStart, spansEnd, pos;
+
+    boolean parse(byte[] span) {
+      pos = 0;
+      if (span.length == 0 || span[pos++] != RESOURCE_SPANS_KEY) return false;
+      int resourceSpansSize = readVarint(span);
+      if (resourceSpansSize == -1 || pos + resourceSpansSize != span.length) return false;
+
+      resourceStart = resourceEnd = pos;
+      if (pos < span.length && span[pos] == RESOURCE_KEY) {
+        pos++;
+        int resourceSize = readVarint(span);
+        if (resourceSize == -1) return false;
+        resourceEnd = pos += resourceSize;
+      }
+
+      if (pos >= span.length || span[pos++] != SCOPE_SPANS_KEY) return false;
+      int scopeSpansSize = readVarint(span);
+      if (scopeSpansSize == -1 || pos + scopeSpansSize != span.length) return false;
+      // a scope would need to be the same to merge, so only merge when there are only spans
+      if (scopeSpansSize == 0 || span[pos] != SPANS_KEY) return false;
+      spansStart = pos;
+      spansEnd = span.length;
+      return true;
+    }
+
+    /** Returns -1 if the varint is malformed or goes past the end of the span. */
+    int readVarint(byte[] span) {
+      int result = 0;
+      for (int shift = 0; shift < 32 && pos < span.length; shift += 7) {
+        byte b = span[pos++];
+        result |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) return result < 0 || result > span.length - pos ? -1 : result;
+      }
+      return -1;
+    }
+  }
+
+  static int sizeOfField(int sizeInBytes) {
+    return 1 + varintSizeInBytes(sizeInBytes) + sizeInBytes; // tag + len + bytes
+  }
+
+  /** Inverse of {@link #sizeOfField(int)}, which is unique as that function only increases. */
+  static int lengthOfField(int sizeOfField) {
+    for (int varintSize = 1; varintSize < 5; varintSize++) {
+      int length = sizeOfField - 1 - varintSize;
+      if (varintSizeInBytes(length) == varintSize) return length;
+    }
+    return sizeOfField - 1 - 5;
+  }
+
+  static int varintSizeInBytes(int value) {
+    if ((value & (0xffffffff << 7)) == 0) return 1;
+    if ((value & (0xffffffff << 14)) == 0) return 2;
+    if ((value & (0xffffffff << 21)) == 0) return 3;
+    if ((value & (0xffffffff << 28)) == 0) return 4;
+    return 5;
+  }
+
+  static int writeVarint(byte[] buf, int pos, int v) {
+    while ((v & ~0x7f) != 0) {
+      buf[pos++] = (byte) ((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    buf[pos++] = (byte) v;
+    return pos;
+  }
+
+  OtlpProto3Messages() {
+  }
+}
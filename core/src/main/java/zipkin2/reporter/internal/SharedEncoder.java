@@ -0,0 +1,110 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+import zipkin2.reporter.BytesEncoder;
+import zipkin2.reporter.Encoding;
+
+/**
+ * Encodes spans of the reporter's type with its encoder, except instances of a shared type, which
+ * are encoded with the encoder registered for that type. This lets another span type use the same
+ * queue without converting to the reporter's type first.
+ *
+ * <p>The queue holds either type, so this accepts any object. Only the reporter's own spans are
+ * passed to its encoder.
+ */
+final class SharedEncoder implements BytesEncoder<Object>, SpanLimiter<Object> {
+  final BytesEncoder<Object> delegate, limitedDelegate;
+  final BytesEncoder<Object> limitedEncoder = new LimitedEncoder();
+  volatile Shared shared;
+
+  @SuppressWarnings("unchecked") // only spans of the encoder's type or the shared type are queued
+  SharedEncoder(BytesEncoder<?> delegate) {
+    this.delegate = (BytesEncoder<Object>) delegate;
+    this.limitedDelegate = BoundedQueue.limitedEncoder(this.delegate);
+  }
+
+  /** Returns false if a different encoder is already registered. */
+  synchronized boolean share(Class<?> type, BytesEncoder<?> encoder) {
+    if (shared != null) return shared.type == type && shared.encoder.equals(encoder);
+    shared = new Shared(type, encoder);
+    return true;
+  }
+
+  @Override public Encoding encoding() {
+    return delegate.encoding();
+  }
+
+  @Override public int sizeInBytes(Object input) {
+    Shared shared = this.shared;
+    if (shared != null && shared.type.isInstance(input)) {
+      return shared.encoder.sizeInBytes(input);
+    }
+    return delegate.sizeInBytes(input);
+  }
+
+  @Override public byte[] encode(Object input) {
+    Shared shared = this.shared;
+    if (shared != null && shared.type.isInstance(input)) {
+      return shared.encoder.encode(input);
+    }
+    return delegate.encode(input);
+  }
+
+  @Override public Object limit(Object input) {
+    Shared shared = this.shared;
+    if (shared != null && shared.type.isInstance(input)) {
+      return BoundedQueue.limit(shared.encoder, input);
+    }
+    return BoundedQueue.limit(delegate, input);
+  }
+
+  @Override public BytesEncoder<Object> limitedEncoder() {
+    return limitedEncoder;
+  }
+
+  @Override public String toString() {
+    return delegate.toString();
+  }
+
+  /** Dispatches like the outer encoder, but to encoders that don't limit spans again. */
+  final class LimitedEncoder implements BytesEncoder<Object> {
+    @Override public Encoding encoding() {
+      return delegate.encoding();
+    }
+
+    @Override public int sizeInBytes(Object input) {
+      Shared shared = SharedEncoder.this.shared;
+      if (shared != null && shared.type.isInstance(input)) {
+        return shared.limitedEncoder.sizeInBytes(input);
+      }
+      return limitedDelegate.sizeInBytes(input);
+    }
+
+    @Override public byte[] encode(Object input) {
+      Shared shared = SharedEncoder.this.shared;
+      if (shared != null && shared.type.isInstance(input)) {
+        return shared.limitedEncoder.encode(input);
+      }
+      return limitedDelegate.encode(input);
+    }
+
+    @Override public String toString() {
+      return limitedDelegate.toString();
+    }
+  }
+
+  static final class Shared {
+    final Class<?> type;
+    final BytesEncoder<Object> encoder, limitedEncoder;
+
+    @SuppressWarnings("unchecked") // only instances of the type are passed to the encoder
+    Shared(Class<?> type, BytesEncoder<?> encoder) {
+      this.type = type;
+      this.encoder = (BytesEncoder<Object>) encoder;
+      this.limitedEncoder = BoundedQueue.limitedEncoder(this.encoder);
+    }
+  }
+}
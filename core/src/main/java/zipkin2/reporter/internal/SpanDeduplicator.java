@@ -0,0 +1,32 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+/**
+ * Detects duplicate spans in the same message, so that they can be merged before sending.
+ *
+ * <p>This runs on the {@link AsyncReporter} flush thread, after spans are bundled and before they
+ * are encoded. Only spans in the same bundle are compared.
+ *
+ * @param <S> type of the span, usually {@code zipkin2.Span}
+ * @see AsyncReporter.Builder#build(zipkin2.reporter.BytesEncoder, SpanDeduplicator)
+ * @since 3.6
+ */
+public interface SpanDeduplicator<S> {
+  /**
+   * Returns a key that is equal for duplicate spans, such as their trace ID, span ID and shared
+   * flag, or null to never deduplicate this span.
+   */
+  @Nullable Object key(S span);
+
+  /**
+   * Returns a span that represents both inputs, which are duplicates according to {@link #key}.
+   * Return {@code first} to simply drop the {@code duplicate}.
+   *
+   * @param first the span reported earlier
+   * @param duplicate the span reported later
+   */
+  S merge(S first, S duplicate);
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+import zipkin2.reporter.BytesEncoder;
+
+/**
+ * Implemented by a {@link zipkin2.reporter.BytesEncoder} that rewrites spans before writing them,
+ * such as to apply size limits.
+ *
+ * <p>The {@link AsyncReporter} queues the result in place of the input, right before sizing it.
+ * Queued spans are then sized and encoded with the {@link #limitedEncoder()}, so a span is checked
+ * against limits once, instead of again when sizing and again when encoding.
+ *
+ * @param <S> type of the span, usually {@code zipkin2.Span}
+ * @see AsyncReporter.Builder#build(zipkin2.reporter.BytesEncoder)
+ * @since 3.6
+ */
+public interface SpanLimiter<S> {
+  /**
+   * Returns the input if the encoder would write it as-is, or a copy that it would. The input is
+   * never mutated.
+   */
+  S limit(S span);
+
+  /**
+   * Returns an encoder for results of {@link #limit(Object)}, which writes them as-is instead of
+   * checking limits again. Other input may exceed limits when written with this encoder.
+   */
+  BytesEncoder<S> limitedEncoder();
+}
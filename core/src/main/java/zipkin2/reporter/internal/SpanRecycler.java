@@ -0,0 +1,22 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+/**
+ * Implemented by a {@link zipkin2.reporter.BytesEncoder} whose input spans can be reused once
+ * encoded, such as pooled copies.
+ *
+ * <p>This runs on the {@link AsyncReporter} flush thread, after a span's bytes are added to the
+ * next message. Spans that are dropped or merged are never recycled, so implementations must not
+ * rely on this to release resources.
+ *
+ * @param <S> type of the span, usually {@code zipkin2.Span}
+ * @see AsyncReporter.Builder#build(zipkin2.reporter.BytesEncoder)
+ * @since 3.6
+ */
+public interface SpanRecycler<S> {
+  /** Called when the reporter no longer references the span. */
+  void recycle(S span);
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+/**
+ * Identifies the resource of a span, for {@link zipkin2.reporter.Encoding#OTLP_PROTO3}, which
+ * writes each distinct resource once per message. This lets the reporter size a message exactly
+ * as spans are bundled, without encoding them.
+ *
+ * <p>This runs inside a lock that holds up writers, so has to be fast. The results must agree with
+ * the encoder, or bundles will be sized incorrectly. Regardless, a message is never sent larger
+ * than {@link zipkin2.reporter.BytesMessageSender#messageMaxBytes()}.
+ *
+ * @param <S> type of the span, usually {@code zipkin2.Span}
+ * @see InternalReporter#build(AsyncReporter.Builder, zipkin2.reporter.BytesEncoder,
+ *   SpanDeduplicator, SpanResources)
+ * @since 3.6
+ */
+public interface SpanResources<S> {
+  /** Returns a key that is equal for spans encoded with the same resource bytes. */
+  Object key(S span);
+
+  /** Returns the encoded size of the span's {@code resource} field, or zero if it has none. */
+  int sizeInBytes(S span);
+}
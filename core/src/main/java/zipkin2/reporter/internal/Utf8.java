@@ -0,0 +1,82 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+/** UTF-8 sizing and truncation that never splits a surrogate pair. */
+public final class Utf8 {
+  /** Returns the count of bytes needed to encode the input as UTF-8. */
+  public static int sizeInBytes(CharSequence string) {
+    int sizeInBytes = 0;
+    for (int i = 0, len = string.length(); i < len; i++) {
+      char ch = string.charAt(i);
+      if (ch < 0x80) {
+        sizeInBytes++; // 7-bit ASCII character
+      } else if (ch < 0x800) {
+        sizeInBytes += 2; // 11-bit character
+      } else if (ch < 0xd800 || ch > 0xdfff) {
+        sizeInBytes += 3; // 16-bit character
+      } else if (isSurrogatePair(string, i, len)) {
+        sizeInBytes += 4; // A 21-bit character
+        i++;
+      } else {
+        sizeInBytes++; // A malformed surrogate, which yields '?'.
+      }
+    }
+    return sizeInBytes;
+  }
+
+  /**
+   * Returns true if the input may encode larger than the given bytes. This is a cheap check that
+   * avoids scanning short strings.
+   */
+  public static boolean mayExceed(String string, int maxBytes) {
+    // UTF-8 encodes at most 3 bytes per char, as a 4 byte code point is two chars.
+    return string.length() > maxBytes / 3;
+  }
+
+  /** Returns true if the input encodes larger than the given bytes, unless they are zero. */
+  public static boolean exceeds(String string, int maxBytes) {
+    if (maxBytes == 0 || !mayExceed(string, maxBytes)) return false;
+    return string.length() > maxBytes || sizeInBytes(string) > maxBytes;
+  }
+
+  /**
+   * Returns the input if it encodes within the given bytes, or the longest prefix that does,
+   * without splitting a surrogate pair.
+   */
+  public static String truncate(String string, int maxBytes) {
+    if (maxBytes <= 0) return "";
+    if (!mayExceed(string, maxBytes)) return string;
+    int sizeInBytes = 0;
+    for (int i = 0, len = string.length(); i < len; i++) {
+      char ch = string.charAt(i);
+      int charBytes, charCount = 1;
+      if (ch < 0x80) {
+        charBytes = 1;
+      } else if (ch < 0x800) {
+        charBytes = 2;
+      } else if (ch < 0xd800 || ch > 0xdfff) {
+        charBytes = 3;
+      } else if (isSurrogatePair(string, i, len)) {
+        charBytes = 4;
+        charCount = 2;
+      } else {
+        charBytes = 1;
+      }
+      if (sizeInBytes + charBytes > maxBytes) return string.substring(0, i);
+      sizeInBytes += charBytes;
+      i += charCount - 1;
+    }
+    return string;
+  }
+
+  static boolean isSurrogatePair(CharSequence string, int i, int len) {
+    return Character.isHighSurrogate(string.charAt(i)) && i + 1 < len
+      && Character.isLowSurrogate(string.charAt(i + 1));
+  }
+
+  Utf8() {
+  }
+}
@@ -5,7 +5,14 @@
 package zipkin2.reporter;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
@@ -23,6 +30,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static zipkin2.TestObjects.CLIENT_SPAN;
 import static zipkin2.reporter.HttpEndpointSuppliers.newConstant;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
 
 @ExtendWith(MockitoExtension.class)
 class BaseHttpSenderTest {
@@ -144,6 +153,145 @@ class BaseHttpSenderTest {
       .hasMessageContaining("unknown protocol: htp");
   }
 
+  @Test void endpointSupplierFactory_dynamic_cachesParsedEndpoints() throws IOException {
+    AtomicInteger getCount = new AtomicInteger();
+    sender.close();
+    sender = sender.withHttpEndpointSupplierFactory(e -> new BaseHttpEndpointSupplier() {
+      @Override public String get() {
+        return "http://localhost:" + (19092 + getCount.incrementAndGet() % 2);
+      }
+    });
+
+    for (int i = 0; i < 4; i++) sendSpans(sender, CLIENT_SPAN);
+
+    assertThat(getCount).hasValue(4);
+    assertThat(sender.newEndpointCount).isEqualTo(2);
+  }
+
+  @Test void endpointSupplierFactory_feedback() throws IOException {
+    List<String> feedback = new ArrayList<>();
+    sender.close();
+    sender = sender.withHttpEndpointSupplierFactory(e -> new FeedbackEndpointSupplier(feedback));
+
+    sendSpans(sender, CLIENT_SPAN);
+
+    doThrow(new IllegalStateException("failed")).when(onSpans).accept(any());
+    assertThatThrownBy(() -> sendSpans(sender, CLIENT_SPAN))
+      .isInstanceOf(IllegalStateException.class);
+
+    assertThat(feedback).containsExactly(
+      "success http://localhost:19092",
+      "error http://localhost:19092 failed"
+    );
+  }
+
+  @Test void endpointSupplierFactory_feedback_deferred() throws IOException {
+    List<String> feedback = new ArrayList<>();
+    List<BaseHttpSender.Completion> deferred = new ArrayList<>();
+    sender.close();
+    sender = new FakeHttpSender(logger, "http://localhost:19092",
+      e -> new FeedbackEndpointSupplier(feedback), onSpans) {
+      @Override protected void postSpans(String endpoint, byte[] body, Completion completion) {
+        deferred.add(completion);
+      }
+    };
+
+    sendSpans(sender, CLIENT_SPAN);
+    sendSpans(sender, CLIENT_SPAN);
+    assertThat(feedback).isEmpty(); // not reported when postSpans returns
+
+    deferred.get(1).onError(new IOException("503"));
+    deferred.get(0).onSuccess();
+    deferred.get(0).onError(new IOException("ignored"));
+
+    assertThat(feedback).containsExactly(
+      "error http://localhost:19092 503",
+      "success http://localhost:19092"
+    );
+  }
+
+  /** Senders are thread-safe, so each concurrent send must complete its own attempt. */
+  @Test void endpointSupplierFactory_feedback_concurrentSends() throws Exception {
+    int threads = 4;
+    List<String> feedback = new CopyOnWriteArrayList<>();
+    AtomicInteger attempts = new AtomicInteger();
+    CyclicBarrier allPosting = new CyclicBarrier(threads);
+    sender.close();
+    sender = new FakeHttpSender(logger, "http://localhost:19092",
+      e -> new FeedbackEndpointSupplier(feedback) {
+        @Override public String get() {
+          return "http://localhost:19092/" + attempts.incrementAndGet();
+        }
+      }, onSpans) {
+      @Override protected void postSpans(String endpoint, byte[] body, Completion completion)
+        throws IOException {
+        try {
+          allPosting.await(10, TimeUnit.SECONDS); // overlap all sends
+        } catch (Exception e) {
+          throw new AssertionError(e);
+        }
+        // odd attempts fail, after all threads are inside postSpans
+        if (Integer.parseInt(endpoint.substring(endpoint.lastIndexOf('/') + 1)) % 2 == 1) {
+          completion.onError(new IOException(endpoint));
+        } else {
+          completion.onSuccess();
+        }
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> sends = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        sends.add(executor.submit(() -> {
+          sendSpans(sender, CLIENT_SPAN);
+          return null;
+        }));
+      }
+      for (Future<?> send : sends) send.get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(feedback).containsExactlyInAnyOrder(
+      "error http://localhost:19092/1 http://localhost:19092/1",
+      "success http://localhost:19092/2",
+      "error http://localhost:19092/3 http://localhost:19092/3",
+      "success http://localhost:19092/4"
+    );
+  }
+
+  static class FeedbackEndpointSupplier extends BaseHttpEndpointSupplier
+    implements HttpEndpointSupplier.Feedback {
+    final List<String> feedback;
+
+    FeedbackEndpointSupplier(List<String> feedback) {
+      this.feedback = feedback;
+    }
+
+    @Override public String get() {
+      return "http://localhost:19092";
+    }
+
+    @Override public Attempt next() {
+      String endpoint = get();
+      return new Attempt() {
+        @Override public String endpoint() {
+          return endpoint;
+        }
+
+        @Override public void onSuccess(long durationNanos) {
+          assertThat(durationNanos).isNotNegative();
+          feedback.add("success " + endpoint);
+        }
+
+        @Override public void onError(Throwable error) {
+          feedback.add("error " + endpoint + " " + error.getMessage());
+        }
+      };
+    }
+  }
+
   /**
    * The output of toString() on {@link BytesMessageSender} implementations appears in thread names
    * created by {@link AsyncReporter}. Since thread names are likely to be exposed in logs and other
@@ -0,0 +1,151 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static zipkin2.reporter.HttpEndpointSuppliers.newConstant;
+import static zipkin2.reporter.HttpEndpointSuppliers.newDnsResolving;
+import static zipkin2.reporter.HttpEndpointSuppliers.newDnsResolvingFactory;
+
+@ExtendWith(MockitoExtension.class)
+class DnsResolvingHttpEndpointSupplierTest {
+  static final String ENDPOINT = "http://zipkin:9411/api/v2/spans";
+
+  @Mock Logger logger;
+  ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor();
+  CountDownLatch resolving = new CountDownLatch(0);
+  InetAddress[] addresses;
+  UnknownHostException error;
+
+  DnsResolvingHttpEndpointSupplier newSupplier(String endpoint) {
+    return new DnsResolvingHttpEndpointSupplier(logger, refresher, URI.create(endpoint), 30) {
+      @Override InetAddress[] resolve(String host) throws UnknownHostException {
+        assertThat(host).isEqualTo(this.endpoint.getHost());
+        try {
+          resolving.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new UnknownHostException(host);
+        }
+        if (error != null) throw error;
+        return addresses;
+      }
+    };
+  }
+
+  @AfterEach void shutdownRefresher() {
+    refresher.shutdownNow();
+  }
+
+  @Test void get_beforeResolution_returnsEndpoint() {
+    assertThat(newSupplier(ENDPOINT).get()).isEqualTo(ENDPOINT);
+  }
+
+  @Test void get_roundRobinsAddresses() throws UnknownHostException {
+    addresses = new InetAddress[] {
+      InetAddress.getByName("10.0.0.1"), InetAddress.getByName("10.0.0.2")
+    };
+    DnsResolvingHttpEndpointSupplier supplier = newSupplier(ENDPOINT);
+    supplier.refresh();
+
+    assertThat(supplier.get()).isEqualTo("http://10.0.0.1:9411/api/v2/spans");
+    assertThat(supplier.get()).isEqualTo("http://10.0.0.2:9411/api/v2/spans");
+    assertThat(supplier.get()).isEqualTo("http://10.0.0.1:9411/api/v2/spans");
+  }
+
+  @Test void get_keepsQuery() throws UnknownHostException {
+    addresses = new InetAddress[] {InetAddress.getByName("10.0.0.1")};
+    DnsResolvingHttpEndpointSupplier supplier = newSupplier("http://zipkin/api/v2/spans?a=b");
+    supplier.refresh();
+
+    assertThat(supplier.get()).isEqualTo("http://10.0.0.1/api/v2/spans?a=b");
+  }
+
+  @Test void get_ipv6() throws UnknownHostException {
+    addresses = new InetAddress[] {InetAddress.getByName("2001:db8::c001")};
+    DnsResolvingHttpEndpointSupplier supplier = newSupplier(ENDPOINT);
+    supplier.refresh();
+
+    assertThat(supplier.get()).isEqualTo("http://[2001:db8:0:0:0:0:0:c001]:9411/api/v2/spans");
+  }
+
+  @Test void refresh_failureKeepsLastAddresses() throws UnknownHostException {
+    addresses = new InetAddress[] {InetAddress.getByName("10.0.0.1")};
+    DnsResolvingHttpEndpointSupplier supplier = newSupplier(ENDPOINT);
+    supplier.refresh();
+
+    error = new UnknownHostException("zipkin");
+    supplier.refresh();
+
+    assertThat(supplier.get()).isEqualTo("http://10.0.0.1:9411/api/v2/spans");
+  }
+
+  @Test void refresh_updatesAddresses() throws UnknownHostException {
+    addresses = new InetAddress[] {InetAddress.getByName("10.0.0.1")};
+    DnsResolvingHttpEndpointSupplier supplier = newSupplier(ENDPOINT);
+    supplier.refresh();
+
+    addresses = new InetAddress[] {InetAddress.getByName("10.0.0.2")};
+    supplier.refresh();
+
+    assertThat(supplier.get()).isEqualTo("http://10.0.0.2:9411/api/v2/spans");
+  }
+
+  @Test void start_doesntBlockOnResolution() throws Exception {
+    addresses = new InetAddress[] {InetAddress.getByName("10.0.0.1")};
+    resolving = new CountDownLatch(1);
+    DnsResolvingHttpEndpointSupplier supplier = newSupplier(ENDPOINT).start();
+
+    assertThat(supplier.get()).isEqualTo(ENDPOINT);
+
+    resolving.countDown();
+    refresher.submit(() -> {}).get(); // the refresher is single-threaded, so this runs after
+
+    assertThat(supplier.get()).isEqualTo("http://10.0.0.1:9411/api/v2/spans");
+  }
+
+  @Test void close_cancelsRefreshButNotSharedThread() {
+    DnsResolvingHttpEndpointSupplier supplier = newSupplier(ENDPOINT).start();
+
+    supplier.close();
+
+    assertThat(supplier.refresh.isCancelled()).isTrue();
+    assertThat(refresher.isShutdown()).isFalse();
+  }
+
+  @Test void newDnsResolving_constantWhenNotResolvable() {
+    assertThat(newDnsResolving("https://zipkin:9411/api/v2/spans", 30))
+      .isEqualTo(newConstant("https://zipkin:9411/api/v2/spans"));
+    assertThat(newDnsResolving("http://127.0.0.1:9411/api/v2/spans", 30))
+      .isEqualTo(newConstant("http://127.0.0.1:9411/api/v2/spans"));
+    assertThat(newDnsResolving("http://[::1]:9411/api/v2/spans", 30))
+      .isEqualTo(newConstant("http://[::1]:9411/api/v2/spans"));
+  }
+
+  @Test void newDnsResolvingFactory_validatesInterval() {
+    assertThatThrownBy(() -> newDnsResolvingFactory(0))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("refreshIntervalSeconds < 1");
+  }
+
+  @Test void newDnsResolvingFactory_toString() {
+    assertThat(newDnsResolvingFactory(30))
+      .hasToString("DnsResolving{refreshIntervalSeconds=30}");
+  }
+}
@@ -58,4 +58,116 @@ class EncodingTest {
       1, 1, 'c'
     );
   }
+
+  @Deprecated @Test void bytesMessageEncoder_matchesEncoding() {
+    byte[] resource = {1, 2, 3};
+    List<byte[]> encoded = List.of(
+      resourceSpans(resource, 'a'),
+      resourceSpans(resource, 'b')
+    );
+    for (Encoding encoding : Encoding.values()) {
+      assertThat(BytesMessageEncoder.forEncoding(encoding).encode(encoded))
+        .as(encoding.name())
+        .containsExactly(encoding.encode(encoded));
+    }
+  }
+
+  @Test void emptyList_otlpProto3() {
+    List<byte[]> encoded = List.of();
+    assertThat(Encoding.OTLP_PROTO3.encode(encoded)).isEmpty();
+    assertThat(Encoding.OTLP_PROTO3.listSizeInBytes(encoded)).isZero();
+  }
+
+  @Test void singletonList_otlpProto3() {
+    List<byte[]> encoded = List.of(resourceSpans(new byte[] {1, 2, 3}, 'a'));
+
+    assertThat(Encoding.OTLP_PROTO3.encode(encoded)).containsExactly(encoded.get(0));
+    assertThat(Encoding.OTLP_PROTO3.listSizeInBytes(encoded))
+      .isEqualTo(Encoding.OTLP_PROTO3.listSizeInBytes(encoded.get(0).length));
+  }
+
+  @Test void multiItemList_otlpProto3_writesResourceOnce() {
+    byte[] resource = {1, 2, 3};
+    List<byte[]> encoded = List.of(
+      resourceSpans(resource, 'a'),
+      resourceSpans(resource, 'b'),
+      resourceSpans(resource, 'c')
+    );
+
+    assertThat(Encoding.OTLP_PROTO3.encode(encoded)).containsExactly(
+      0x0a, 16, // resource_spans
+      0x0a, 3, 1, 2, 3, // resource
+      0x12, 9, // scope_spans
+      0x12, 1, 'a', // spans
+      0x12, 1, 'b',
+      0x12, 1, 'c'
+    );
+    assertThat(Encoding.OTLP_PROTO3.listSizeInBytes(encoded)).isEqualTo(18);
+  }
+
+  @Test void multiItemList_otlpProto3_differentResources() {
+    List<byte[]> encoded = List.of(
+      resourceSpans(new byte[] {1}, 'a'),
+      resourceSpans(new byte[] {2}, 'b'),
+      resourceSpans(new byte[] {2}, 'c'),
+      resourceSpans(null, 'd')
+    );
+
+    assertThat(Encoding.OTLP_PROTO3.encode(encoded)).containsExactly(
+      0x0a, 8, 0x0a, 1, 1, 0x12, 3, 0x12, 1, 'a',
+      0x0a, 11, 0x0a, 1, 2, 0x12, 6, 0x12, 1, 'b', 0x12, 1, 'c',
+      0x0a, 5, 0x12, 3, 0x12, 1, 'd'
+    );
+    assertThat(Encoding.OTLP_PROTO3.listSizeInBytes(encoded)).isEqualTo(30);
+  }
+
+  @Test void multiItemList_otlpProto3_copiesUnknownLayout() {
+    byte[] unknown = {0x0a, 3, 0x1a, 1, 'x'}; // schema_url, but no scope_spans
+    List<byte[]> encoded = List.of(
+      resourceSpans(null, 'a'),
+      unknown,
+      resourceSpans(null, 'b')
+    );
+
+    assertThat(Encoding.OTLP_PROTO3.encode(encoded)).containsExactly(
+      0x0a, 8, 0x12, 6, 0x12, 1, 'a', 0x12, 1, 'b',
+      0x0a, 3, 0x1a, 1, 'x'
+    );
+    assertThat(Encoding.OTLP_PROTO3.listSizeInBytes(encoded)).isEqualTo(15);
+  }
+
+  @Test void multiItemList_otlpProto3_groupsByResource() {
+    List<byte[]> encoded = List.of(
+      resourceSpans(new byte[] {1}, 'a'),
+      resourceSpans(new byte[] {2}, 'b'),
+      resourceSpans(new byte[] {1}, 'c')
+    );
+
+    assertThat(Encoding.OTLP_PROTO3.encode(encoded)).containsExactly(
+      0x0a, 11, 0x0a, 1, 1, 0x12, 6, 0x12, 1, 'a', 0x12, 1, 'c',
+      0x0a, 8, 0x0a, 1, 2, 0x12, 3, 0x12, 1, 'b'
+    );
+    assertThat(Encoding.OTLP_PROTO3.listSizeInBytes(encoded)).isEqualTo(23);
+  }
+
+  /** Returns a resource_spans field with the given resource and a span of one byte. */
+  static byte[] resourceSpans(byte[] resource, char span) {
+    int resourceSize = resource != null ? 2 + resource.length : 0;
+    byte[] result = new byte[2 + resourceSize + 5];
+    int pos = 0;
+    result[pos++] = 0x0a;
+    result[pos++] = (byte) (resourceSize + 5);
+    if (resource != null) {
+      result[pos++] = 0x0a;
+      result[pos++] = (byte) resource.length;
+      System.arraycopy(resource, 0, result, pos, resource.length);
+      pos += resource.length;
+    }
+    result[pos++] = 0x12; // scope_spans
+    result[pos++] = 3;
+    result[pos++] = 0x12; // spans
+    result[pos++] = 1;
+    result[pos] = (byte) span;
+    return result;
+  }
 }
@@ -36,8 +36,10 @@ class FakeHttpSender extends BaseHttpSender<String, byte[]> {
 
   /** close is typically called from a different thread */
   volatile boolean closeCalled;
+  int newEndpointCount;
 
   @Override protected String newEndpoint(String endpoint) {
+    newEndpointCount++;
     try {
       return URI.create(endpoint).toURL().toString(); // validate
     } catch (MalformedURLException e) {
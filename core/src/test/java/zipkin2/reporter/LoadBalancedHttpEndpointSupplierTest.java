@@ -0,0 +1,276 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import zipkin2.reporter.HttpEndpointSupplier.Feedback.Attempt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static zipkin2.reporter.HttpEndpointSuppliers.constantFactory;
+import static zipkin2.reporter.HttpEndpointSuppliers.newConstant;
+import static zipkin2.reporter.HttpEndpointSuppliers.newLoadBalanced;
+import static zipkin2.reporter.HttpEndpointSuppliers.newLoadBalancedFactory;
+
+@ExtendWith(MockitoExtension.class)
+class LoadBalancedHttpEndpointSupplierTest {
+  static final String A = "http://a:9411/api/v2/spans", B = "http://b:9411/api/v2/spans";
+  static final Exception ERROR = new IOException("connection refused");
+
+  @Mock Logger logger;
+  long nanoTime;
+
+  LoadBalancedHttpEndpointSupplier supplier;
+
+  @BeforeEach void newSupplier() {
+    supplier = newSupplier(A, B);
+  }
+
+  LoadBalancedHttpEndpointSupplier newSupplier(String... endpoints) {
+    List<HttpEndpointSupplier> members = new ArrayList<>();
+    for (String endpoint : endpoints) members.add(newConstant(endpoint));
+    return new LoadBalancedHttpEndpointSupplier(logger, members, new Random(1L)) {
+      @Override long nanoTime() {
+        return nanoTime;
+      }
+    };
+  }
+
+  @Test void usesAllMembers() {
+    List<String> used = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      Attempt attempt = supplier.next();
+      used.add(attempt.endpoint());
+      attempt.onSuccess(1000L);
+    }
+
+    assertThat(used).contains(A, B);
+  }
+
+  @Test void prefersFasterMember() {
+    getUntil(A).onSuccess(TimeUnit.SECONDS.toNanos(1));
+    getUntil(B).onSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+
+    for (int i = 0; i < 10; i++) {
+      Attempt attempt = supplier.next();
+      assertThat(attempt.endpoint()).isEqualTo(B);
+      attempt.onSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+  }
+
+  @Test void prefersMemberWithLessInFlight() {
+    getUntil(A).onSuccess(1000L);
+    getUntil(B).onSuccess(1000L);
+
+    Attempt first = supplier.next(); // don't complete it
+    assertThat(supplier.next().endpoint()).isNotEqualTo(first.endpoint());
+  }
+
+  @Test void ejectsAfterConsecutiveErrors() {
+    for (int i = 0; i < LoadBalancedHttpEndpointSupplier.MAX_CONSECUTIVE_ERRORS; i++) {
+      getUntil(A).onError(ERROR);
+    }
+
+    for (int i = 0; i < 10; i++) {
+      Attempt attempt = supplier.next();
+      assertThat(attempt.endpoint()).isEqualTo(B);
+      attempt.onSuccess(1000L);
+    }
+
+    // After the ejection, A is tried again
+    nanoTime += TimeUnit.SECONDS.toNanos(LoadBalancedHttpEndpointSupplier.BASE_EJECTION_SECONDS);
+    assertThat(getUntil(A).endpoint()).isEqualTo(A);
+  }
+
+  @Test void reejectsOnFirstErrorAfterEjection_backingOff() {
+    for (int i = 0; i < LoadBalancedHttpEndpointSupplier.MAX_CONSECUTIVE_ERRORS; i++) {
+      getUntil(A).onError(ERROR);
+    }
+    nanoTime += TimeUnit.SECONDS.toNanos(LoadBalancedHttpEndpointSupplier.BASE_EJECTION_SECONDS);
+
+    getUntil(A).onError(ERROR);
+
+    // The second ejection is twice as long
+    nanoTime += TimeUnit.SECONDS.toNanos(LoadBalancedHttpEndpointSupplier.BASE_EJECTION_SECONDS);
+    for (int i = 0; i < 10; i++) {
+      Attempt attempt = supplier.next();
+      assertThat(attempt.endpoint()).isEqualTo(B);
+      attempt.onSuccess(1000L);
+    }
+  }
+
+  @Test void allEjected_usesFirstToRecover() {
+    for (int i = 0; i < LoadBalancedHttpEndpointSupplier.MAX_CONSECUTIVE_ERRORS; i++) {
+      getUntil(A).onError(ERROR);
+    }
+    nanoTime += 1;
+    for (int i = 0; i < LoadBalancedHttpEndpointSupplier.MAX_CONSECUTIVE_ERRORS; i++) {
+      getUntil(B).onError(ERROR);
+    }
+
+    assertThat(supplier.get()).isEqualTo(A);
+  }
+
+  @Test void get_doesntCountInFlight() {
+    getUntil(A).onSuccess(1000L);
+    getUntil(B).onSuccess(1000L);
+
+    for (int i = 0; i < 10; i++) supplier.get(); // no feedback is coming
+
+    assertThat(supplier.members).allSatisfy(m -> assertThat(m.inFlight).isZero());
+  }
+
+  /** A dynamic member could return a different endpoint before the first POST completes. */
+  @Test void feedbackGoesToChosenMember_whenEndpointChanges() {
+    AtomicInteger version = new AtomicInteger();
+    HttpEndpointSupplier dynamic = new HttpEndpointSupplier() {
+      @Override public String get() {
+        return A + "?v=" + version.incrementAndGet();
+      }
+
+      @Override public void close() {
+      }
+    };
+    supplier = new LoadBalancedHttpEndpointSupplier(logger, List.of(dynamic), new Random(1L));
+
+    Attempt first = supplier.next(), second = supplier.next();
+    assertThat(first.endpoint()).isNotEqualTo(second.endpoint());
+    assertThat(supplier.members[0].inFlight).isEqualTo(2);
+
+    first.onSuccess(1000L);
+    second.onError(ERROR);
+
+    assertThat(supplier.members[0].inFlight).isZero();
+    assertThat(supplier.members[0].averageNanos).isEqualTo(1000L);
+    assertThat(supplier.members[0].consecutiveErrors).isEqualTo(1);
+  }
+
+  /** Feedback comes from I/O threads, which shouldn't wait for a slow member supplier. */
+  @Test void feedbackDoesntWaitForSlowMember() throws Exception {
+    CountDownLatch blocking = new CountDownLatch(1), release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    HttpEndpointSupplier slow = new HttpEndpointSupplier() {
+      @Override public String get() {
+        if (calls.incrementAndGet() > 1) { // block after the first call
+          blocking.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+        return A;
+      }
+
+      @Override public void close() {
+      }
+    };
+    supplier = new LoadBalancedHttpEndpointSupplier(logger, List.of(slow), new Random(1L));
+    Attempt first = supplier.next();
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Attempt> second = executor.submit(() -> supplier.next());
+      assertThat(blocking.await(10, TimeUnit.SECONDS)).isTrue();
+
+      CompletableFuture.runAsync(() -> first.onSuccess(1000L)).get(10, TimeUnit.SECONDS);
+
+      release.countDown();
+      assertThat(second.get(10, TimeUnit.SECONDS).endpoint()).isEqualTo(A);
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  @Test void errorFromMember_countsTowardsEjection() {
+    HttpEndpointSupplier broken = new HttpEndpointSupplier() {
+      @Override public String get() {
+        throw new IllegalStateException("eureka is down");
+      }
+
+      @Override public void close() {
+      }
+    };
+    supplier = new LoadBalancedHttpEndpointSupplier(logger,
+      Arrays.asList(broken, newConstant(B)), new Random(1L));
+
+    int errors = 0;
+    for (int i = 0; i < 20; i++) {
+      try {
+        supplier.next().onSuccess(1000L);
+      } catch (IllegalStateException e) {
+        errors++;
+      }
+    }
+
+    assertThat(errors).isEqualTo(LoadBalancedHttpEndpointSupplier.MAX_CONSECUTIVE_ERRORS);
+  }
+
+  @Test void closesMembers() throws IOException {
+    List<Boolean> closed = new ArrayList<>();
+    HttpEndpointSupplier member = new HttpEndpointSupplier() {
+      @Override public String get() {
+        return A;
+      }
+
+      @Override public void close() {
+        closed.add(true);
+      }
+    };
+    supplier = new LoadBalancedHttpEndpointSupplier(logger,
+      Arrays.asList(member, member), new Random(1L));
+
+    supplier.close();
+
+    assertThat(closed).hasSize(2);
+  }
+
+  @Test void newLoadBalanced_validatesMembers() {
+    assertThatThrownBy(() -> newLoadBalanced(new ArrayList<>()))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("members is empty");
+  }
+
+  @Test void factory_singleEndpoint_usesMemberFactory() {
+    assertThat(newLoadBalancedFactory(constantFactory()).create(A))
+      .isEqualTo(newConstant(A));
+  }
+
+  @Test void factory_splitsOnComma() {
+    HttpEndpointSupplier result = newLoadBalancedFactory(constantFactory()).create(A + ", " + B);
+
+    assertThat(result)
+      .isInstanceOf(HttpEndpointSupplier.Feedback.class)
+      .hasToString("LoadBalanced{members=[" + A + ", " + B + "]}");
+  }
+
+  /** Calls next until the endpoint is returned, completing others successfully. */
+  Attempt getUntil(String endpoint) {
+    for (int i = 0; i < 100; i++) {
+      Attempt result = supplier.next();
+      if (result.endpoint().equals(endpoint)) return result;
+      result.onSuccess(1000L);
+    }
+    throw new AssertionError("never got " + endpoint);
+  }
+}
@@ -5,8 +5,13 @@
 package zipkin2.reporter;
 
 import org.junit.jupiter.api.Test;
+import zipkin2.Annotation;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.reporter.internal.SpanLimiter;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static zipkin2.TestObjects.CLIENT_SPAN;
 
 class SpanBytesEncoderTest {
   @Test void forEncoding() {
@@ -17,4 +22,106 @@ class SpanBytesEncoderTest {
     assertThat(SpanBytesEncoder.forEncoding(Encoding.THRIFT))
       .isSameAs(SpanBytesEncoder.THRIFT);
   }
+
+  @Test void withLimits_noLimitsIsSame() {
+    assertThat(SpanBytesEncoder.JSON_V2.withLimits(SpanSizeLimits.NONE))
+      .isSameAs(SpanBytesEncoder.JSON_V2);
+  }
+
+  @Test void withLimits_withinLimitsIsUnchanged() {
+    BytesEncoder<Span> encoder = SpanBytesEncoder.JSON_V2.withLimits(
+      SpanSizeLimits.newBuilder().tagValueMaxBytes(100).annotationValueMaxBytes(100).build());
+
+    assertThat(encoder.encode(CLIENT_SPAN))
+      .isEqualTo(SpanBytesEncoder.JSON_V2.encode(CLIENT_SPAN));
+    assertThat(encoder.sizeInBytes(CLIENT_SPAN))
+      .isEqualTo(SpanBytesEncoder.JSON_V2.sizeInBytes(CLIENT_SPAN));
+  }
+
+  @Test void withLimits_truncatesTagAndAnnotationValues() {
+    Span span = CLIENT_SPAN.toBuilder()
+      .putTag("sql", "SELECT * FROM users")
+      .addAnnotation(CLIENT_SPAN.timestampAsLong() + 1, "very long annotation")
+      .build();
+    BytesEncoder<Span> encoder = SpanBytesEncoder.PROTO3.withLimits(
+      SpanSizeLimits.newBuilder().tagValueMaxBytes(6).annotationValueMaxBytes(9).build());
+
+    Span decoded = SpanBytesDecoder.PROTO3.decodeOne(encoder.encode(span));
+    assertThat(decoded.tags())
+      .containsEntry("sql", "SELECT");
+    assertThat(decoded.annotations())
+      .extracting(Annotation::value)
+      .contains("very long");
+    assertThat(encoder.sizeInBytes(span))
+      .isEqualTo(encoder.encode(span).length);
+  }
+
+  @Test void withLimits_spanMaxBytesTruncatesLargestValue() {
+    Span span = CLIENT_SPAN.toBuilder()
+      .clearTags()
+      .putTag("sql", "SELECT * FROM users WHERE name = 'bob' AND email = 'bob@example.com'")
+      .putTag("small", "value")
+      .build();
+    int spanMaxBytes = SpanBytesEncoder.JSON_V2.sizeInBytes(span) - 10;
+    BytesEncoder<Span> encoder = SpanBytesEncoder.JSON_V2.withLimits(
+      SpanSizeLimits.newBuilder().spanMaxBytes(spanMaxBytes).build());
+
+    byte[] encoded = encoder.encode(span);
+    assertThat(encoded).hasSizeLessThanOrEqualTo(spanMaxBytes);
+    assertThat(encoder.sizeInBytes(span)).isEqualTo(encoded.length);
+
+    Span decoded = SpanBytesDecoder.JSON_V2.decodeOne(encoded);
+    assertThat(decoded.tags().get("sql"))
+      .startsWith("SELECT * FROM users WHERE name = 'bob' AND email = 'bob@ex");
+    assertThat(decoded.tags().get("small"))
+      .isEqualTo("value"); // smaller values are unchanged
+  }
+
+  @Test void withLimits_limitsOnce() {
+    Span span = CLIENT_SPAN.toBuilder().putTag("sql", "SELECT * FROM users").build();
+    BytesEncoder<Span> encoder = SpanBytesEncoder.JSON_V2.withLimits(
+      SpanSizeLimits.newBuilder().tagValueMaxBytes(6).build());
+    SpanLimiter<Span> limiter = (SpanLimiter<Span>) encoder;
+
+    Span limited = limiter.limit(span);
+    assertThat(limited.tags()).containsEntry("sql", "SELECT");
+    assertThat(limiter.limit(limited)).isSameAs(limited); // no copy when already within limits
+    assertThat(encoder.encode(limited)).isEqualTo(encoder.encode(span));
+  }
+
+  /** The reporter limits once, then sizes and encodes the result without checking limits. */
+  @Test void withLimits_limitedEncoderDoesntLimitAgain() {
+    class CountingEncoder implements BytesEncoder<Span> {
+      int sizeInBytes, encode;
+
+      @Override public Encoding encoding() {
+        return Encoding.JSON;
+      }
+
+      @Override public int sizeInBytes(Span input) {
+        sizeInBytes++;
+        return SpanBytesEncoder.JSON_V2.sizeInBytes(input);
+      }
+
+      @Override public byte[] encode(Span input) {
+        encode++;
+        return SpanBytesEncoder.JSON_V2.encode(input);
+      }
+    }
+    CountingEncoder delegate = new CountingEncoder();
+    SizeLimitedSpanBytesEncoder encoder = new SizeLimitedSpanBytesEncoder(delegate,
+      SpanSizeLimits.newBuilder().tagValueMaxBytes(6).spanMaxBytes(1024).build());
+    Span span = CLIENT_SPAN.toBuilder().putTag("sql", "SELECT * FROM users").build();
+
+    Span limited = encoder.limit(span);
+    assertThat(delegate.sizeInBytes).isEqualTo(1); // to check spanMaxBytes
+
+    BytesEncoder<Span> limitedEncoder = encoder.limitedEncoder();
+    int sizeInBytes = limitedEncoder.sizeInBytes(limited);
+    byte[] encoded = limitedEncoder.encode(limited);
+    assertThat(delegate.sizeInBytes).isEqualTo(2);
+    assertThat(delegate.encode).isEqualTo(1);
+
+    assertThat(encoded).hasSize(sizeInBytes).isEqualTo(encoder.encode(span));
+  }
 }
@@ -28,10 +28,13 @@ import zipkin2.reporter.ClosedSenderException;
 import zipkin2.reporter.Encoding;
 import zipkin2.reporter.FakeSender;
 import zipkin2.reporter.InMemoryReporterMetrics;
+import zipkin2.reporter.Reporter;
 import zipkin2.reporter.SpanBytesEncoder;
 import zipkin2.reporter.internal.AsyncReporter.BoundedAsyncReporter;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -203,6 +206,186 @@ class AsyncReporterTest {
     assertThat(metrics.messageBytes()).isEqualTo(sizeInBytesOfSingleSpanMessage * 2);
   }
 
+  @Test void flush_deduplicatesSpans() {
+    List<Span> sentSpans = new ArrayList<>();
+    AsyncReporter<Span> reporter = AsyncReporter.newBuilder(FakeSender.create()
+        .onSpans(sentSpans::addAll))
+      .metrics(metrics)
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .build(SpanBytesEncoder.JSON_V2, new SpanDeduplicator<Span>() {
+        @Override public Object key(Span span) {
+          return span.traceId() + span.id() + span.shared();
+        }
+
+        @Override public Span merge(Span first, Span duplicate) {
+          return first.toBuilder().merge(duplicate).build();
+        }
+      });
+
+    reporter.report(span.toBuilder().clearTags().build());
+    reporter.report(span);
+    reporter.flush();
+    reporter.close();
+
+    assertThat(sentSpans).containsExactly(span);
+    assertThat(metrics.messageBytes()).isEqualTo(sizeInBytesOfSingleSpanMessage);
+  }
+
+  static final class RecyclingEncoder implements BytesEncoder<Span>, SpanRecycler<Span> {
+    final List<Span> recycled = new ArrayList<>();
+
+    @Override public Encoding encoding() {
+      return Encoding.JSON;
+    }
+
+    @Override public int sizeInBytes(Span input) {
+      return SpanBytesEncoder.JSON_V2.sizeInBytes(input);
+    }
+
+    @Override public byte[] encode(Span input) {
+      return SpanBytesEncoder.JSON_V2.encode(input);
+    }
+
+    @Override public void recycle(Span span) {
+      recycled.add(span);
+    }
+  }
+
+  @Test void flush_recyclesEncodedSpans() {
+    RecyclingEncoder encoder = new RecyclingEncoder();
+    List<Span> sentSpans = new ArrayList<>();
+    AsyncReporter<Span> reporter = AsyncReporter.newBuilder(FakeSender.create()
+        .onSpans(sentSpans::addAll))
+      .messageMaxBytes(sizeInBytesOfSingleSpanMessage)
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .build(encoder);
+
+    Span other = span.toBuilder().id("2").build();
+    reporter.report(span);
+    reporter.report(other);
+    reporter.flush();
+
+    // only the first span fit in the message
+    assertThat(sentSpans).containsExactly(span);
+    assertThat(encoder.recycled).containsExactly(span);
+
+    reporter.flush();
+    assertThat(encoder.recycled).containsExactly(span, other);
+    assertThatThrownBy(() -> InternalReporter.share(reporter, String.class, JSON_STRING))
+      .isInstanceOf(IllegalStateException.class);
+    reporter.close();
+  }
+
+  /** Encodes a span that was already serialized as JSON. */
+  static final BytesEncoder<String> JSON_STRING = new BytesEncoder<String>() {
+    @Override public Encoding encoding() {
+      return Encoding.JSON;
+    }
+
+    @Override public int sizeInBytes(String input) {
+      return input.length();
+    }
+
+    @Override public byte[] encode(String input) {
+      return input.getBytes(UTF_8);
+    }
+  };
+
+  @Test void share_encodesOtherTypeInSameMessage() {
+    List<Span> sentSpans = new ArrayList<>();
+    AsyncReporter<Span> reporter = AsyncReporter.newBuilder(FakeSender.create()
+        .onSpans(sentSpans::addAll))
+      .metrics(metrics)
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .build(SpanBytesEncoder.JSON_V2);
+
+    Reporter<String> shared = InternalReporter.share(reporter, String.class, JSON_STRING);
+    Span other = span.toBuilder().id("2").build();
+    reporter.report(span);
+    shared.report(new String(SpanBytesEncoder.JSON_V2.encode(other), UTF_8));
+    reporter.flush();
+    reporter.close();
+
+    assertThat(sentSpans).containsExactly(span, other);
+    assertThat(metrics.spans()).isEqualTo(2);
+    assertThat(metrics.messages()).isEqualTo(1);
+    assertThat(shared).hasToString(reporter.toString());
+  }
+
+  @Test void share_sameTypeAndEncoder() {
+    AsyncReporter<Span> reporter = AsyncReporter.newBuilder(FakeSender.create())
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .build(SpanBytesEncoder.JSON_V2);
+
+    assertThat(InternalReporter.share(reporter, String.class, JSON_STRING)).isNotNull();
+    assertThat(InternalReporter.share(reporter, String.class, JSON_STRING)).isNotNull();
+  }
+
+  @Test void share_throwsWhenDifferentTypeOrEncoder() {
+    AsyncReporter<Span> reporter = AsyncReporter.newBuilder(FakeSender.create())
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .build(SpanBytesEncoder.JSON_V2);
+    InternalReporter.share(reporter, String.class, JSON_STRING);
+
+    assertThatThrownBy(() -> InternalReporter.share(reporter, String.class, new BytesEncoder<String>() {
+      @Override public Encoding encoding() {
+        return Encoding.JSON;
+      }
+
+      @Override public int sizeInBytes(String input) {
+        return input.length();
+      }
+
+      @Override public byte[] encode(String input) {
+        return input.getBytes(UTF_8);
+      }
+    })).isInstanceOf(IllegalStateException.class);
+    assertThatThrownBy(
+      () -> InternalReporter.share(reporter, CharSequence.class, (BytesEncoder) JSON_STRING))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessageContaining("already shared");
+  }
+
+  @Test void share_throwsWhenEncodingDiffers() {
+    AsyncReporter<Span> reporter = AsyncReporter.newBuilder(FakeSender.create()
+        .encoding(Encoding.PROTO3))
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .build(SpanBytesEncoder.PROTO3);
+
+    assertThatThrownBy(() -> InternalReporter.share(reporter, String.class, JSON_STRING))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Encoder doesn't match reporter: JSON PROTO3");
+  }
+
+  @Test void share_throwsWhenDeduplicating() {
+    AsyncReporter<Span> reporter = AsyncReporter.newBuilder(FakeSender.create())
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .build(SpanBytesEncoder.JSON_V2, new SpanDeduplicator<Span>() {
+        @Override public Object key(Span span) {
+          return span.id();
+        }
+
+        @Override public Span merge(Span first, Span duplicate) {
+          return first;
+        }
+      });
+
+    assertThatThrownBy(() -> InternalReporter.share(reporter, String.class, JSON_STRING))
+      .isInstanceOf(IllegalStateException.class);
+  }
+
+  /** The shared type is checked, so that other spans aren't passed to the reporter's encoder. */
+  @Test void share_reportChecksType() {
+    AsyncReporter<Span> reporter = AsyncReporter.newBuilder(FakeSender.create())
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .build(SpanBytesEncoder.JSON_V2);
+    Reporter<CharSequence> shared =
+      InternalReporter.share(reporter, CharSequence.class, (BytesEncoder) JSON_STRING);
+
+    assertThatThrownBy(() -> ((Reporter) shared).report(span))
+      .isInstanceOf(ClassCastException.class);
+  }
+
   @ParameterizedTest(name = "queuedMaxBytes={0}")
   @ValueSource(ints = { 0, 1000000 })
   void flush_incrementsMessagesDropped(int queuedMaxBytes) {
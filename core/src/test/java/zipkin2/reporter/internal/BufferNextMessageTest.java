@@ -4,9 +4,14 @@
  */
 package zipkin2.reporter.internal;
 
+import java.io.ByteArrayOutputStream;
+import java.util.List;
 import org.junit.jupiter.api.Test;
+import zipkin2.reporter.BytesEncoder;
 import zipkin2.reporter.Encoding;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 class BufferNextMessageTest {
@@ -177,4 +182,207 @@ class BufferNextMessageTest {
     assertThat(pending.messageSizeInBytes)
       .isEqualTo(1 /* 3 */);
   }
+
+  /** Integers are duplicates when they have the same value modulo 10. */
+  static final SpanDeduplicator<Integer> MOD_TEN = new SpanDeduplicator<Integer>() {
+    @Override public Object key(Integer span) {
+      return span % 10;
+    }
+
+    @Override public Integer merge(Integer first, Integer duplicate) {
+      return first + duplicate;
+    }
+  };
+
+  static final BytesEncoder<Integer> DIGITS = new BytesEncoder<Integer>() {
+    @Override public Encoding encoding() {
+      return Encoding.PROTO3;
+    }
+
+    @Override public int sizeInBytes(Integer input) {
+      return input.toString().length();
+    }
+
+    @Override public byte[] encode(Integer input) {
+      return input.toString().getBytes(UTF_8);
+    }
+  };
+
+  @Test void deduplicate() {
+    BufferNextMessage<Integer> pending = BufferNextMessage.create(Encoding.PROTO3, 10, 0L);
+    pending.offer(1, 1);
+    pending.offer(2, 1);
+    pending.offer(1, 1);
+    pending.offer(11, 2);
+
+    assertThat(pending.deduplicate(MOD_TEN, DIGITS))
+      .isEqualTo(2);
+
+    assertThat(pending.spans)
+      .containsExactly(13, 2);
+    assertThat(pending.sizes)
+      .containsExactly(2, 1);
+    assertThat(pending.messageSizeInBytes)
+      .isEqualTo(3 /* 132 */);
+  }
+
+  @Test void deduplicate_nullKeyIsNeverDuplicate() {
+    BufferNextMessage<Integer> pending = BufferNextMessage.create(Encoding.PROTO3, 10, 0L);
+    pending.offer(1, 1);
+    pending.offer(1, 1);
+
+    assertThat(pending.deduplicate(new SpanDeduplicator<Integer>() {
+      @Override public Object key(Integer span) {
+        return null;
+      }
+
+      @Override public Integer merge(Integer first, Integer duplicate) {
+        throw new AssertionError();
+      }
+    }, DIGITS)).isZero();
+
+    assertThat(pending.spans)
+      .containsExactly(1, 1);
+  }
+
+  @Test void deduplicate_skipsMergeLargerThanMaxBytes() {
+    BufferNextMessage<Integer> pending = BufferNextMessage.create(Encoding.PROTO3, 2, 0L);
+    pending.addSpanToBuffer(90, 2);
+    pending.addSpanToBuffer(90, 2);
+
+    assertThat(pending.deduplicate(MOD_TEN, DIGITS))
+      .isZero(); // 180 would be 3 bytes
+
+    assertThat(pending.spans)
+      .containsExactly(90, 90);
+  }
+
+  /** Spans are their resource and name, like "frontend/get", or only a name without a resource. */
+  static final SpanResources<String> BY_SERVICE = new SpanResources<String>() {
+    @Override public Object key(String span) {
+      int slash = span.indexOf('/');
+      return slash == -1 ? "" : span.substring(0, slash + 1);
+    }
+
+    @Override public int sizeInBytes(String span) {
+      int slash = span.indexOf('/');
+      return slash == -1 ? 0 : 2 + slash;
+    }
+  };
+
+  /** Encodes spans as {@link Encoding#OTLP_PROTO3} expects, with the name as the span's bytes. */
+  static byte[] otlp(String span) {
+    int slash = span.indexOf('/');
+    byte[] resource = slash == -1 ? new byte[0] : span.substring(0, slash).getBytes(UTF_8);
+    byte[] name = span.substring(slash + 1).getBytes(UTF_8);
+    int resourceSize = slash == -1 ? 0 : 2 + resource.length;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(0x0a); // resource_spans
+    out.write(resourceSize + 4 + name.length);
+    if (slash != -1) {
+      out.write(0x0a); // resource
+      out.write(resource.length);
+      out.writeBytes(resource);
+    }
+    out.write(0x12); // scope_spans
+    out.write(2 + name.length);
+    out.write(0x12); // spans
+    out.write(name.length);
+    out.writeBytes(name);
+    return out.toByteArray();
+  }
+
+  static List<byte[]> otlp(List<String> spans) {
+    return spans.stream().map(BufferNextMessageTest::otlp).collect(toList());
+  }
+
+  @Test void offer_otlpProto3_exact() {
+    BufferNextMessage<String> pending =
+      BufferNextMessage.create(Encoding.OTLP_PROTO3, 1000, 0L, BY_SERVICE, null);
+    List<String> spans =
+      List.of("frontend/get", "backend/query", "frontend/post", "internal", "frontend/put");
+    for (String span : spans) {
+      pending.offer(span, otlp(span).length);
+
+      assertThat(pending.messageSizeInBytes)
+        .isEqualTo(Encoding.OTLP_PROTO3.listSizeInBytes(otlp(pending.spans)));
+    }
+  }
+
+  @Test void offerWhenFull_otlpProto3() {
+    byte[] first = otlp("frontend/get");
+    int maxBytes = Encoding.OTLP_PROTO3.listSizeInBytes(List.of(first, otlp("frontend/put")));
+    BufferNextMessage<String> pending =
+      BufferNextMessage.create(Encoding.OTLP_PROTO3, maxBytes, 0L, BY_SERVICE, null);
+
+    // This wouldn't fit if the resource were written twice
+    assertThat(pending.offer("frontend/get", first.length)).isTrue();
+    assertThat(pending.offer("frontend/put", otlp("frontend/put").length)).isTrue();
+    assertThat(pending.bufferFull).isTrue();
+    assertThat(pending.messageSizeInBytes).isEqualTo(maxBytes);
+  }
+
+  @Test void drain_incrementally_otlpProto3() {
+    BufferNextMessage<String> pending =
+      BufferNextMessage.create(Encoding.OTLP_PROTO3, 1000, 0L, BY_SERVICE, null);
+    for (String span : List.of("frontend/get", "backend/query", "frontend/post")) {
+      pending.offer(span, otlp(span).length);
+    }
+
+    pending.drain((s, n) -> s.equals("frontend/get"));
+
+    assertThat(pending.spans)
+      .containsExactly("backend/query", "frontend/post");
+    assertThat(pending.messageSizeInBytes)
+      .isEqualTo(Encoding.OTLP_PROTO3.listSizeInBytes(otlp(pending.spans)));
+  }
+
+  /** Like Scribe, each span is a log entry with a fixed overhead, in a message with a header. */
+  static final MessageFraming LOG_ENTRIES = new MessageFraming() {
+    @Override public int emptyMessageSizeInBytes() {
+      return 10;
+    }
+
+    @Override public int spanSizeInBytes(int index, int encodedSizeInBytes) {
+      return 3 + encodedSizeInBytes;
+    }
+  };
+
+  @Test void offer_framed() {
+    BufferNextMessage<Integer> pending =
+      BufferNextMessage.create(Encoding.THRIFT, 20, 0L, null, LOG_ENTRIES);
+    assertThat(pending.messageSizeInBytes)
+      .isEqualTo(10);
+
+    assertThat(pending.offer(1, 1)).isTrue();
+    assertThat(pending.offer(2, 1)).isTrue();
+    assertThat(pending.messageSizeInBytes)
+      .isEqualTo(18);
+    assertThat(pending.bufferFull)
+      .isFalse();
+
+    // the encoding alone would fit, but not the log entry
+    assertThat(pending.offer(3, 1)).isFalse();
+    assertThat(pending.bufferFull)
+      .isTrue();
+  }
+
+  @Test void drain_incrementally_framed() {
+    BufferNextMessage<Integer> pending =
+      BufferNextMessage.create(Encoding.THRIFT, 20, 0L, null, LOG_ENTRIES);
+    pending.offer(1, 1);
+    pending.offer(2, 1);
+
+    pending.drain((s, n) -> s == 1);
+
+    assertThat(pending.spans)
+      .containsExactly(2);
+    assertThat(pending.messageSizeInBytes)
+      .isEqualTo(14);
+  }
+
+  @Test void framingIgnoredForOtlpProto3() {
+    assertThat(BufferNextMessage.create(Encoding.OTLP_PROTO3, 20, 0L, BY_SERVICE, LOG_ENTRIES))
+      .isInstanceOf(BufferNextMessage.BufferNextOtlpProto3Message.class);
+  }
 }
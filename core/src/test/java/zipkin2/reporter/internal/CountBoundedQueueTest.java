@@ -61,4 +61,53 @@ class CountBoundedQueueTest {
     assertThat(polled)
       .containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14);
   }
+
+  /** The limited span replaces the queued one, so it isn't limited again on the next drain. */
+  @Test void drainTo_queuesLimitedSpan() {
+    List<Integer> limited = new ArrayList<>();
+    class LimitingEncoder implements BytesEncoder<Integer>, SpanLimiter<Integer> {
+      @Override public Encoding encoding() {
+        return Encoding.JSON;
+      }
+
+      @Override public int sizeInBytes(Integer input) {
+        throw new AssertionError("queued spans should be sized without limiting them again");
+      }
+
+      @Override public byte[] encode(Integer input) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override public Integer limit(Integer span) {
+        limited.add(span);
+        return span < 10 ? span * 10 : span;
+      }
+
+      @Override public BytesEncoder<Integer> limitedEncoder() {
+        return new BytesEncoder<Integer>() {
+          @Override public Encoding encoding() {
+            return Encoding.JSON;
+          }
+
+          @Override public int sizeInBytes(Integer input) {
+            return 1;
+          }
+
+          @Override public byte[] encode(Integer input) {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    }
+    CountBoundedQueue<Integer> queue = new CountBoundedQueue<>(new LimitingEncoder(),
+      FakeSender.create(), ReporterMetrics.NOOP_METRICS, 10, 10);
+    queue.offer(1);
+
+    queue.drainTo((next, ignored) -> false, 1); // the message is full
+    List<Integer> polled = new ArrayList<>();
+    queue.drainTo((next, ignored) -> polled.add(next), 1);
+
+    assertThat(polled).containsExactly(10);
+    assertThat(limited).containsExactly(1, 10);
+  }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Test;
+import zipkin2.reporter.InMemoryReporterMetrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InFlightMessagesTest {
+  InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+  InFlightMessages inFlight =
+    new InFlightMessages(2, metrics, Logger.getLogger(InFlightMessagesTest.class.getName()));
+
+  @Test void acquireAndRelease() throws IOException {
+    inFlight.acquire();
+    inFlight.acquire();
+    assertThat(inFlight.inFlight()).isEqualTo(2);
+    assertThat(inFlight.awaitCompletion(1, TimeUnit.MILLISECONDS)).isFalse();
+
+    inFlight.release();
+    inFlight.release();
+    assertThat(inFlight.inFlight()).isZero();
+    assertThat(inFlight.awaitCompletion(1, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(metrics.messagesDropped()).isZero();
+  }
+
+  @Test void dropped_incrementsMetrics() throws IOException {
+    inFlight.acquire();
+    inFlight.dropped(new IOException("bad"), 3);
+
+    assertThat(inFlight.inFlight()).isZero();
+    assertThat(metrics.messagesDropped()).isEqualTo(1);
+    assertThat(metrics.messagesDroppedByCause()).containsOnlyKeys(IOException.class);
+    assertThat(metrics.spansDropped()).isEqualTo(3);
+  }
+
+  @Test void acquire_interrupted() throws IOException {
+    inFlight.acquire();
+    inFlight.acquire();
+
+    Thread.currentThread().interrupt();
+    try {
+      assertThatThrownBy(inFlight::acquire).isInstanceOf(java.io.InterruptedIOException.class);
+    } finally {
+      assertThat(Thread.interrupted()).isTrue(); // clears the flag
+    }
+  }
+
+  @Test void maxMessages_positive() {
+    assertThatThrownBy(() -> new InFlightMessages(0, metrics, Logger.getGlobal()))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+}
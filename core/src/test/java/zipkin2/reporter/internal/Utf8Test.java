@@ -0,0 +1,39 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Utf8Test {
+  @Test void sizeInBytes() {
+    for (String string : new String[] {"", "a", "é", "€", "💩", "a💩b", "\uD83D"}) {
+      assertThat(Utf8.sizeInBytes(string))
+        .as(string)
+        .isEqualTo(string.getBytes(UTF_8).length);
+    }
+  }
+
+  @Test void truncate_ascii() {
+    assertThat(Utf8.truncate("abcdef", 3)).isEqualTo("abc");
+    assertThat(Utf8.truncate("abc", 3)).isEqualTo("abc");
+    assertThat(Utf8.truncate("abc", 0)).isEmpty();
+  }
+
+  @Test void truncate_doesntSplitCharacters() {
+    assertThat(Utf8.truncate("é€", 2)).isEqualTo("é");
+    assertThat(Utf8.truncate("é€", 4)).isEqualTo("é");
+    assertThat(Utf8.truncate("é€", 5)).isEqualTo("é€");
+    assertThat(Utf8.truncate("a💩", 4)).isEqualTo("a");
+    assertThat(Utf8.truncate("a💩", 5)).isEqualTo("a💩");
+  }
+
+  @Test void mayExceed() {
+    assertThat(Utf8.mayExceed("abc", 9)).isFalse(); // even if all were 3-byte characters
+    assertThat(Utf8.mayExceed("abcd", 9)).isTrue();
+  }
+}
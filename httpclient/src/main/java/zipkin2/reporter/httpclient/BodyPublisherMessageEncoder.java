@@ -0,0 +1,135 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.httpclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.zip.GZIPOutputStream;
+import zipkin2.reporter.Encoding;
+
+/**
+ * Frames encoded spans as a list, without concatenating them. The resulting chunks are either
+ * streamed as-is, or compressed one at a time.
+ */
+enum BodyPublisherMessageEncoder {
+  JSON {
+    @Override List<byte[]> chunks(List<byte[]> encodedSpans) {
+      int length = encodedSpans.size();
+      List<byte[]> result = new ArrayList<>(length * 2 + 1);
+      result.add(OPEN_BRACKET);
+      for (int i = 0; i < length; ) {
+        result.add(encodedSpans.get(i++));
+        if (i < length) result.add(COMMA);
+      }
+      result.add(CLOSE_BRACKET);
+      return result;
+    }
+  },
+  @Deprecated
+  THRIFT {
+    @Override List<byte[]> chunks(List<byte[]> encodedSpans) {
+      // TBinaryProtocol List header is element type followed by count
+      int length = encodedSpans.size();
+      List<byte[]> result = new ArrayList<>(length + 1);
+      result.add(new byte[] {
+        12, // TYPE_STRUCT
+        (byte) ((length >>> 24) & 0xff),
+        (byte) ((length >>> 16) & 0xff),
+        (byte) ((length >>> 8) & 0xff),
+        (byte) (length & 0xff)
+      });
+      // Then each struct is written one-at-a-time with no delimiters until done.
+      result.addAll(encodedSpans);
+      return result;
+    }
+  },
+  PROTO3 {
+    @Override List<byte[]> chunks(List<byte[]> encodedSpans) {
+      return encodedSpans; // repeated fields are already length-prefixed
+    }
+  },
+  OTLP_PROTO3 {
+    @Override List<byte[]> chunks(List<byte[]> encodedSpans) {
+      // spans with the same resource are combined, so this can't be streamed as-is
+      return List.of(Encoding.OTLP_PROTO3.encode(encodedSpans));
+    }
+  };
+
+  static final byte[] OPEN_BRACKET = {'['}, COMMA = {','}, CLOSE_BRACKET = {']'};
+
+  static BodyPublisherMessageEncoder forEncoding(Encoding encoding) {
+    switch (encoding) {
+      case JSON:
+        return BodyPublisherMessageEncoder.JSON;
+      case THRIFT:
+        return BodyPublisherMessageEncoder.THRIFT;
+      case PROTO3:
+        return BodyPublisherMessageEncoder.PROTO3;
+      case OTLP_PROTO3:
+        return BodyPublisherMessageEncoder.OTLP_PROTO3;
+      default:
+        throw new UnsupportedOperationException("Unsupported encoding: " + encoding.name());
+    }
+  }
+
+  /** Returns the message as a sequence of byte arrays, which concatenated are the message. */
+  abstract List<byte[]> chunks(List<byte[]> encodedSpans);
+
+  BodyPublisher encode(Encoding encoding, List<byte[]> encodedSpans, boolean compressionEnabled)
+    throws IOException {
+    List<byte[]> chunks = chunks(encodedSpans);
+    BodyPublisher publisher;
+    if (compressionEnabled) {
+      publisher = gzip(chunks);
+    } else {
+      int contentLength = encoding.listSizeInBytes(encodedSpans);
+      publisher = contentLength == 0 ? BodyPublishers.noBody()
+        : BodyPublishers.fromPublisher(BodyPublishers.ofByteArrays(chunks), contentLength);
+    }
+    return new SpansBodyPublisher(publisher, encodedSpans.size());
+  }
+
+  static BodyPublisher gzip(List<byte[]> chunks) throws IOException {
+    UnsafeByteArrayOutputStream gzipped = new UnsafeByteArrayOutputStream();
+    try (GZIPOutputStream compressor = new GZIPOutputStream(gzipped)) {
+      for (int i = 0, length = chunks.size(); i < length; i++) {
+        compressor.write(chunks.get(i));
+      }
+    }
+    return BodyPublishers.ofByteArray(gzipped.buffer(), 0, gzipped.size());
+  }
+
+  /** Allows reading the buffer without copying it. */
+  static final class UnsafeByteArrayOutputStream extends ByteArrayOutputStream {
+    byte[] buffer() {
+      return buf;
+    }
+  }
+
+  /** Remembers the count of spans, so that it can be added to metrics on failure. */
+  static final class SpansBodyPublisher implements BodyPublisher {
+    final BodyPublisher delegate;
+    final int spanCount;
+
+    SpansBodyPublisher(BodyPublisher delegate, int spanCount) {
+      this.delegate = delegate;
+      this.spanCount = spanCount;
+    }
+
+    @Override public long contentLength() {
+      return delegate.contentLength();
+    }
+
+    @Override public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+      delegate.subscribe(subscriber);
+    }
+  }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.httpclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import zipkin2.reporter.BaseHttpSender;
+import zipkin2.reporter.BytesMessageSender;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.HttpEndpointSupplier;
+import zipkin2.reporter.HttpEndpointSupplier.Factory;
+import zipkin2.reporter.HttpEndpointSuppliers;
+import zipkin2.reporter.ReporterMetrics;
+import zipkin2.reporter.httpclient.BodyPublisherMessageEncoder.SpansBodyPublisher;
+import zipkin2.reporter.internal.InFlightMessages;
+
+import static zipkin2.reporter.HttpEndpointSuppliers.constantFactory;
+
+/**
+ * Reports spans to Zipkin, using its <a href="https://zipkin.io/zipkin-api/#/">POST</a> endpoint,
+ * via the JDK 11+ {@link HttpClient}.
+ *
+ * <p>Requests use HTTP/2 when the server supports it, so that concurrent messages share one
+ * connection. Otherwise, they use HTTP/1.1. Encoded spans are streamed to the request body, without
+ * concatenating them into one array first.
+ *
+ * <p>By default, {@link #send(List)} blocks until the response is read. When {@linkplain
+ * Builder#asyncSend(boolean) async}, it returns once the request is started, so that up to {@link
+ * Builder#maxRequests(int)} messages can be in flight.
+ *
+ * <p>This sender is thread-safe.
+ *
+ * @since 3.6
+ */
+public final class HttpClientSender extends BaseHttpSender<URI, BodyPublisher> {
+  static final Logger logger = Logger.getLogger(HttpClientSender.class.getName());
+
+  /** Creates a sender that posts {@link Encoding#JSON} messages. */
+  public static HttpClientSender create(String endpoint) {
+    return newBuilder().endpoint(endpoint).build();
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    Factory endpointSupplierFactory = constantFactory();
+    String endpoint;
+    Encoding encoding = Encoding.JSON;
+    int messageMaxBytes = 500000;
+    int connectTimeout = 10 * 1000, readTimeout = 60 * 1000;
+    boolean compressionEnabled = true, asyncSend;
+    int maxRequests = 64;
+    ReporterMetrics metrics = ReporterMetrics.NOOP_METRICS;
+
+    Builder(HttpClientSender sender) {
+      this.endpointSupplierFactory = sender.endpointSupplierFactory;
+      this.endpoint = sender.endpointString;
+      this.encoding = sender.encoding;
+      this.messageMaxBytes = sender.messageMaxBytes;
+      this.connectTimeout = sender.connectTimeout;
+      this.readTimeout = sender.readTimeout;
+      this.compressionEnabled = sender.compressionEnabled;
+      this.asyncSend = sender.asyncSend;
+      this.maxRequests = sender.maxRequests;
+      this.metrics = sender.metrics;
+    }
+
+    /**
+     * Defaults to {@link HttpEndpointSuppliers#constantFactory()}.
+     *
+     * <p>See JavaDoc on {@link HttpEndpointSupplier} for implementation notes.
+     */
+    public Builder endpointSupplierFactory(Factory endpointSupplierFactory) {
+      if (endpointSupplierFactory == null) {
+        throw new NullPointerException("endpointSupplierFactory == null");
+      }
+      this.endpointSupplierFactory = endpointSupplierFactory;
+      return this;
+    }
+
+    /**
+     * No default. The POST URL for zipkin's <a href="https://zipkin.io/zipkin-api/#/">v2 api</a>,
+     * usually "http://zipkinhost:9411/api/v2/spans"
+     */
+    // customizable so that users can re-map /api/v2/spans ex for browser-originated traces
+    public Builder endpoint(String endpoint) {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      this.endpoint = endpoint;
+      return this;
+    }
+
+    public Builder endpoint(URI endpoint) {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      this.endpoint = endpoint.toString();
+      return this;
+    }
+
+    /** Default 10 * 1000 milliseconds. 0 implies no timeout. */
+    public Builder connectTimeout(int connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+    }
+
+    /** Default 60 * 1000 milliseconds. 0 implies no timeout. */
+    public Builder readTimeout(int readTimeout) {
+      this.readTimeout = readTimeout;
+      return this;
+    }
+
+    /** Default true. true implies that spans will be gzipped before transport. */
+    public Builder compressionEnabled(boolean compressionEnabled) {
+      this.compressionEnabled = compressionEnabled;
+      return this;
+    }
+
+    /** Maximum size of a message. Default 500KB */
+    public Builder messageMaxBytes(int messageMaxBytes) {
+      this.messageMaxBytes = messageMaxBytes;
+      return this;
+    }
+
+    /**
+     * Use this to change the encoding used in messages. Default is {@linkplain Encoding#JSON}
+     * This also controls the "Content-Type" header when sending spans.
+     *
+     * <p>Note: If ultimately sending to Zipkin, version 2.8+ is required to process protobuf.
+     */
+    public Builder encoding(Encoding encoding) {
+      if (encoding == null) throw new NullPointerException("encoding == null");
+      this.encoding = encoding;
+      return this;
+    }
+
+    /**
+     * When true, {@link BytesMessageSender#send(List)} returns as soon as the request is started,
+     * instead of waiting for the response. Defaults to false.
+     *
+     * <p>This allows the reporting thread to encode the next message while prior ones are in
+     * flight. Failures that occur after {@code send} returns are reported to {@link
+     * #metrics(ReporterMetrics)} instead of the caller.
+     */
+    public Builder asyncSend(boolean asyncSend) {
+      this.asyncSend = asyncSend;
+      return this;
+    }
+
+    /**
+     * Maximum in-flight requests when {@link #asyncSend(boolean) async}. Once reached, {@link
+     * BytesMessageSender#send(List)} blocks until a request completes. Default 64
+     */
+    public Builder maxRequests(int maxRequests) {
+      if (maxRequests <= 0) throw new IllegalArgumentException("maxRequests <= 0");
+      this.maxRequests = maxRequests;
+      return this;
+    }
+
+    /**
+     * Records messages and spans dropped after {@link BytesMessageSender#send(List)} returns,
+     * which only happens when {@link #asyncSend(boolean) async}. Use the same instance as passed
+     * to the reporter. Defaults to no-op.
+     */
+    public Builder metrics(ReporterMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
+    public HttpClientSender build() {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      return new HttpClientSender(this);
+    }
+
+    Builder() {
+    }
+  }
+
+  final HttpClient client;
+  final BodyPublisherMessageEncoder encoder;
+  final int messageMaxBytes, connectTimeout, readTimeout, maxRequests;
+  final boolean compressionEnabled, asyncSend;
+  final ReporterMetrics metrics;
+  final InFlightMessages inFlight; // null unless asyncSend
+  final Factory endpointSupplierFactory; // for toBuilder()
+  final String endpointString; // for toBuilder()
+
+  HttpClientSender(Builder builder) {
+    super(builder.encoding, builder.endpointSupplierFactory, builder.endpoint);
+    this.encoder = BodyPublisherMessageEncoder.forEncoding(builder.encoding);
+    this.messageMaxBytes = builder.messageMaxBytes;
+    this.connectTimeout = builder.connectTimeout;
+    this.readTimeout = builder.readTimeout;
+    this.compressionEnabled = builder.compressionEnabled;
+    this.asyncSend = builder.asyncSend;
+    this.maxRequests = builder.maxRequests;
+    this.metrics = builder.metrics;
+    this.inFlight = asyncSend ? new InFlightMessages(maxRequests, metrics, logger) : null;
+    this.endpointSupplierFactory = builder.endpointSupplierFactory;
+    this.endpointString = builder.endpoint;
+
+    HttpClient.Builder clientBuilder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+    if (connectTimeout > 0) clientBuilder.connectTimeout(Duration.ofMillis(connectTimeout));
+    this.client = clientBuilder.build();
+  }
+
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  @Override public int messageMaxBytes() {
+    return messageMaxBytes;
+  }
+
+  @Override protected URI newEndpoint(String endpoint) {
+    try {
+      URI result = URI.create(endpoint);
+      String scheme = result.getScheme();
+      if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+        throw new IllegalArgumentException("invalid POST url: " + endpoint);
+      }
+      return result;
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(e.getMessage());
+    }
+  }
+
+  @Override protected BodyPublisher newBody(List<byte[]> encodedSpans) throws IOException {
+    return encoder.encode(encoding, encodedSpans, compressionEnabled);
+  }
+
+  @Override protected void postSpans(URI endpoint, BodyPublisher body) throws IOException {
+    HttpResponse<String> response;
+    try {
+      response = client.send(newRequest(endpoint, body), BodyHandlers.ofString());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+    checkResponse(endpoint, response);
+  }
+
+  @Override protected void postSpans(URI endpoint, BodyPublisher body, Completion completion)
+    throws IOException {
+    if (!asyncSend) {
+      super.postSpans(endpoint, body, completion);
+      return;
+    }
+
+    HttpRequest request = newRequest(endpoint, body);
+    int spanCount = ((SpansBodyPublisher) body).spanCount;
+    inFlight.acquire();
+    try {
+      client.sendAsync(request, BodyHandlers.ofString()).whenComplete(
+        (response, error) -> onComplete(endpoint, completion, spanCount, response, error));
+    } catch (RuntimeException | Error e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  void onComplete(URI endpoint, Completion completion, int spanCount,
+    HttpResponse<String> response, Throwable error) {
+    if (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    if (error == null) {
+      try {
+        checkResponse(endpoint, response);
+      } catch (IOException e) {
+        error = e;
+      }
+    }
+    if (error == null) {
+      completion.onSuccess();
+      inFlight.release();
+    } else {
+      completion.onError(error);
+      inFlight.dropped(error, spanCount);
+    }
+  }
+
+  HttpRequest newRequest(URI endpoint, BodyPublisher body) {
+    HttpRequest.Builder request = HttpRequest.newBuilder(endpoint)
+      // Amplification can occur when the Zipkin endpoint is proxied, and the proxy is instrumented.
+      // This prevents that in proxies, such as Envoy, that understand B3 single format,
+      .header("b3", "0")
+      .header("Content-Type", encoding.mediaType());
+    if (compressionEnabled) request.header("Content-Encoding", "gzip");
+    if (readTimeout > 0) request.timeout(Duration.ofMillis(readTimeout));
+    return request.POST(body).build();
+  }
+
+  static void checkResponse(URI endpoint, HttpResponse<String> response) throws IOException {
+    int status = response.statusCode();
+    if (status >= 200 && status < 300) return;
+    throw new IOException(
+      "response for " + endpoint + " failed: " + status + " " + response.body());
+  }
+
+  /** Waits up to a second for in-flight requests to finish. */
+  @Override protected void doClose() {
+    if (inFlight == null) return;
+    if (!inFlight.awaitCompletion(1, TimeUnit.SECONDS)) {
+      logger.warning("Timed out waiting for " + inFlight.inFlight() + " in-flight requests");
+    }
+  }
+}
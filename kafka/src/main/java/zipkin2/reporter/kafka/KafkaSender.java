@@ -4,11 +4,16 @@
  */
 package zipkin2.reporter.kafka;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.admin.AdminClientConfig;
 import org.apache.kafka.clients.producer.KafkaProducer;
@@ -25,8 +30,13 @@ import zipkin2.reporter.Callback;
 import zipkin2.reporter.CheckResult;
 import zipkin2.reporter.ClosedSenderException;
 import zipkin2.reporter.Encoding;
+import zipkin2.reporter.ReporterMetrics;
 import zipkin2.reporter.Sender;
 
+import static java.lang.String.format;
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
+
 /**
  * This sends (usually json v2) encoded spans to a Kafka topic.
  *
@@ -63,6 +73,8 @@ import zipkin2.reporter.Sender;
  * work with Kafka 0.10+ brokers
  */
 public final class KafkaSender extends Sender {
+  static final Logger logger = Logger.getLogger(KafkaSender.class.getName());
+
   /** Creates a sender that sends {@link Encoding#JSON} messages. */
   public static KafkaSender create(String bootstrapServers) {
     return newBuilder().bootstrapServers(bootstrapServers).build();
@@ -87,6 +99,9 @@ public final class KafkaSender extends Sender {
     Encoding encoding = Encoding.JSON;
     String topic = "zipkin";
     int messageMaxBytes = 500_000;
+    boolean partitionByTraceId, nativeBatching;
+    boolean batchSizeOverridden; // so that nativeBatching doesn't replace the user's value
+    ReporterMetrics metrics = ReporterMetrics.NOOP_METRICS;
 
     Builder(Properties properties) {
       this.properties = properties;
@@ -98,6 +113,10 @@ public final class KafkaSender extends Sender {
       encoding = sender.encoding;
       topic = sender.topic;
       messageMaxBytes = sender.messageMaxBytes;
+      partitionByTraceId = sender.partitionByTraceId;
+      nativeBatching = sender.nativeBatching;
+      batchSizeOverridden = sender.batchSizeOverridden;
+      metrics = sender.metrics;
     }
 
     /** Topic zipkin spans will be send to. Defaults to "zipkin" */
@@ -135,7 +154,8 @@ public final class KafkaSender extends Sender {
      * producer config.
      * <p>
      * Consider not overriding batching properties ("batch.size" and "linger.ms") as those will
-     * duplicate buffering effort that is already handled by Sender.
+     * duplicate buffering effort that is already handled by Sender, unless {@linkplain
+     * #nativeBatching(boolean) natively batching}.
      *
      * <p>For example: Reduce the timeout blocking from one minute to 5 seconds.
      * <pre>{@code
@@ -148,6 +168,7 @@ public final class KafkaSender extends Sender {
      */
     public Builder overrides(Map<String, ?> overrides) {
       if (overrides == null) throw new NullPointerException("overrides == null");
+      if (overrides.containsKey(ProducerConfig.BATCH_SIZE_CONFIG)) batchSizeOverridden = true;
       properties.putAll(overrides);
       return this;
     }
@@ -158,7 +179,8 @@ public final class KafkaSender extends Sender {
      * producer config.
      * <p>
      * Consider not overriding batching properties ("batch.size" and "linger.ms") as those will
-     * duplicate buffering effort that is already handled by Sender.
+     * duplicate buffering effort that is already handled by Sender, unless {@linkplain
+     * #nativeBatching(boolean) natively batching}.
      *
      * <p>For example: Reduce the timeout blocking from one minute to 5 seconds.
      * <pre>{@code
@@ -171,6 +193,7 @@ public final class KafkaSender extends Sender {
      */
     public Builder overrides(Properties overrides) {
       if (overrides == null) throw new NullPointerException("overrides == null");
+      if (overrides.containsKey(ProducerConfig.BATCH_SIZE_CONFIG)) batchSizeOverridden = true;
       properties.putAll(overrides);
       return this;
     }
@@ -186,6 +209,61 @@ public final class KafkaSender extends Sender {
       return this;
     }
 
+    /**
+     * When true, spans in a message are split into one record per partition, chosen by their trace
+     * ID. This allows consumers to assemble traces locally, as all spans of a trace land on the
+     * same partition. Defaults to false, which sends each message as one record to any partition.
+     *
+     * <p>The partition is the lower 64 bits of the trace ID, as a positive long, modulo the count
+     * of partitions in the {@link #topic(String) topic}. Spans without a readable trace ID are
+     * sent in a separate record, to any partition.
+     *
+     * <p>Note: This only affects {@link KafkaSender#send(List)}.
+     *
+     * @since 3.6
+     */
+    public Builder partitionByTraceId(boolean partitionByTraceId) {
+      this.partitionByTraceId = partitionByTraceId;
+      return this;
+    }
+
+    /**
+     * When true, {@link KafkaSender#send(List)} sends each span as its own record, without waiting
+     * for the result. Batching and compression are left to the producer. Defaults to false, which
+     * sends each message as one record, and blocks until the producer acknowledges it.
+     *
+     * <p>This also changes producer defaults as below, unless {@link #overrides(Map) overridden}:
+     * <ul>
+     *   <li>{@link ProducerConfig#BATCH_SIZE_CONFIG "batch.size"}: 16384</li>
+     *   <li>{@link ProducerConfig#LINGER_MS_CONFIG "linger.ms"}: 5</li>
+     *   <li>{@link ProducerConfig#COMPRESSION_TYPE_CONFIG "compression.type"}: "lz4"</li>
+     * </ul>
+     *
+     * <p>Failures that occur after {@code send} returns are reported to {@link
+     * #metrics(ReporterMetrics)} instead of the caller. When {@linkplain
+     * #partitionByTraceId(boolean) partitioning by trace ID}, spans are sent one record per
+     * partition instead of one per span.
+     *
+     * @since 3.6
+     */
+    public Builder nativeBatching(boolean nativeBatching) {
+      this.nativeBatching = nativeBatching;
+      return this;
+    }
+
+    /**
+     * Records messages and spans dropped after {@link KafkaSender#send(List)} returns, which only
+     * happens when {@link #nativeBatching(boolean) natively batching}. Use the same instance as
+     * passed to the reporter. Defaults to no-op.
+     *
+     * @since 3.6
+     */
+    public Builder metrics(ReporterMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
     public KafkaSender build() {
       return new KafkaSender(this);
     }
@@ -195,6 +273,9 @@ public final class KafkaSender extends Sender {
   final String topic;
   final Encoding encoding;
   final int messageMaxBytes;
+  final boolean partitionByTraceId, nativeBatching, batchSizeOverridden;
+  final ReporterMetrics metrics;
+  final AtomicBoolean shouldWarnException = new AtomicBoolean(true);
 
   KafkaSender(Builder builder) {
     properties = new Properties();
@@ -202,6 +283,26 @@ public final class KafkaSender extends Sender {
     topic = builder.topic;
     encoding = builder.encoding;
     messageMaxBytes = builder.messageMaxBytes;
+    partitionByTraceId = builder.partitionByTraceId;
+    nativeBatching = builder.nativeBatching;
+    batchSizeOverridden = builder.batchSizeOverridden;
+    metrics = builder.metrics;
+  }
+
+  /** Returns the {@link #properties} plus any defaults implied by {@link #nativeBatching}. */
+  Properties producerProperties() {
+    if (!nativeBatching) return properties;
+    Properties result = new Properties();
+    result.putAll(properties);
+    // Replace the default from newBuilder(), which disables batching, unless the user set it.
+    if (!batchSizeOverridden) result.put(ProducerConfig.BATCH_SIZE_CONFIG, 16384);
+    if (!result.containsKey(ProducerConfig.LINGER_MS_CONFIG)) {
+      result.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+    }
+    if (!result.containsKey(ProducerConfig.COMPRESSION_TYPE_CONFIG)) {
+      result.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+    }
+    return result;
   }
 
   /**
@@ -253,13 +354,91 @@ public final class KafkaSender extends Sender {
   }
 
   /**
-   * This sends all the spans as a single message.
+   * This sends all the spans as a single message, unless {@linkplain
+   * Builder#partitionByTraceId(boolean) partitioning by trace ID}.
    *
    * <p>NOTE: this blocks until the metadata server is available.
    */
   @Override public void send(List<byte[]> encodedSpans) {
     if (closeCalled) throw new ClosedSenderException();
-    send(encoding.encode(encodedSpans));
+    if (nativeBatching) {
+      sendWithoutWaiting(encodedSpans);
+      return;
+    }
+    if (!partitionByTraceId) {
+      send(encoding.encode(encodedSpans));
+      return;
+    }
+
+    KafkaProducer<byte[], byte[]> producer = get();
+    Map<Integer, List<byte[]>> spansByPartition =
+      spansByPartition(encodedSpans, partitionCount(producer));
+    List<AwaitableCallback> callbacks = new ArrayList<>(spansByPartition.size());
+    for (Map.Entry<Integer, List<byte[]>> entry : spansByPartition.entrySet()) {
+      AwaitableCallback callback = new AwaitableCallback();
+      producer.send(newRecord(entry.getKey(), entry.getValue()), new CallbackAdapter(callback));
+      callbacks.add(callback);
+    }
+    for (AwaitableCallback callback : callbacks) {
+      callback.await();
+    }
+  }
+
+  /**
+   * Hands records to the producer, which batches them in the background. This only blocks when
+   * the producer's "buffer.memory" is exhausted, up to "max.block.ms".
+   */
+  void sendWithoutWaiting(List<byte[]> encodedSpans) {
+    KafkaProducer<byte[], byte[]> producer = get();
+    if (partitionByTraceId) {
+      Map<Integer, List<byte[]>> spansByPartition =
+        spansByPartition(encodedSpans, partitionCount(producer));
+      for (Map.Entry<Integer, List<byte[]>> entry : spansByPartition.entrySet()) {
+        producer.send(newRecord(entry.getKey(), entry.getValue()),
+          new DroppedSpansCallback(this, entry.getValue().size()));
+      }
+      return;
+    }
+    for (byte[] encodedSpan : encodedSpans) {
+      producer.send(new ProducerRecord<byte[], byte[]>(topic, message(encodedSpan)),
+        new DroppedSpansCallback(this, 1));
+    }
+  }
+
+  /**
+   * Returns the record value for one span. When the encoding has no list overhead, such as {@link
+   * Encoding#PROTO3}, this is the encoded span itself. This is safe as {@link ByteArraySerializer}
+   * passes it through, and the producer copies it into its batch before {@code send} returns.
+   */
+  byte[] message(byte[] encodedSpan) {
+    if (encoding.listSizeInBytes(encodedSpan.length) == encodedSpan.length) return encodedSpan;
+    return encoding.encode(Collections.singletonList(encodedSpan));
+  }
+
+  /** The producer caches topic metadata, so this only blocks on the first message. */
+  int partitionCount(KafkaProducer<byte[], byte[]> producer) {
+    return producer.partitionsFor(topic).size();
+  }
+
+  /** Groups spans by partition, in order of first appearance in the input. */
+  Map<Integer, List<byte[]>> spansByPartition(List<byte[]> encodedSpans, int partitionCount) {
+    Map<Integer, List<byte[]>> result = new LinkedHashMap<>();
+    for (byte[] encodedSpan : encodedSpans) {
+      int partition = TraceIdPartitioner.partition(encoding, encodedSpan, partitionCount);
+      List<byte[]> spans = result.get(partition);
+      if (spans == null) result.put(partition, spans = new ArrayList<>());
+      spans.add(encodedSpan);
+    }
+    return result;
+  }
+
+  ProducerRecord<byte[], byte[]> newRecord(int partition, List<byte[]> encodedSpans) {
+    byte[] message = encodedSpans.size() == 1
+      ? message(encodedSpans.get(0)) : encoding.encode(encodedSpans);
+    if (partition == -1) { // unknown trace ID, so let the producer choose
+      return new ProducerRecord<byte[], byte[]>(topic, message);
+    }
+    return new ProducerRecord<byte[], byte[]>(topic, partition, null, message);
   }
 
   void send(byte[] message) {
@@ -284,7 +463,7 @@ public final class KafkaSender extends Sender {
     if (producer == null) {
       synchronized (this) {
         if (producer == null) {
-          producer = new KafkaProducer<>(properties);
+          producer = new KafkaProducer<>(producerProperties());
         }
       }
     }
@@ -339,6 +518,37 @@ public final class KafkaSender extends Sender {
     }
   }
 
+  void dropped(Exception exception, int spanCount) {
+    metrics.incrementMessagesDropped(exception);
+    metrics.incrementSpansDropped(spanCount);
+
+    Level logLevel = FINE;
+    if (shouldWarnException.compareAndSet(true, false)) {
+      logger.log(WARNING, "Spans were dropped due to exceptions. "
+        + "All subsequent errors will be logged at FINE level.");
+      logLevel = WARNING;
+    }
+    if (logger.isLoggable(logLevel)) {
+      logger.log(logLevel, format("Dropped %s spans due to %s(%s)", spanCount,
+        exception.getClass().getSimpleName(),
+        exception.getMessage() == null ? "" : exception.getMessage()), exception);
+    }
+  }
+
+  static final class DroppedSpansCallback implements org.apache.kafka.clients.producer.Callback {
+    final KafkaSender sender;
+    final int spanCount;
+
+    DroppedSpansCallback(KafkaSender sender, int spanCount) {
+      this.sender = sender;
+      this.spanCount = spanCount;
+    }
+
+    @Override public void onCompletion(RecordMetadata metadata, Exception exception) {
+      if (exception != null) sender.dropped(exception, spanCount);
+    }
+  }
+
   static final class CallbackAdapter implements org.apache.kafka.clients.producer.Callback {
     final Callback<Void> delegate;
 
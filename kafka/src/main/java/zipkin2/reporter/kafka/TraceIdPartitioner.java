@@ -0,0 +1,109 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.kafka;
+
+import zipkin2.reporter.Encoding;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Chooses a partition for an encoded span, based on the lower 64 bits of its trace ID. Using only
+ * the lower bits means spans of the same trace land on the same partition, even if some services
+ * only propagate 64-bit trace IDs.
+ *
+ * <p>The partition is {@code (traceIdLow64 & Long.MAX_VALUE) % partitionCount}, so consumers can
+ * derive it independently.
+ *
+ * <p>The trace ID is read without decoding the span: encoders in Zipkin and Brave write it as the
+ * first field. Spans where it can't be found are not partitioned.
+ */
+final class TraceIdPartitioner {
+  static final byte[] JSON_TRACE_ID = "\"traceId\":\"".getBytes(UTF_8);
+
+  /** Returns the partition for the encoded span or -1 if its trace ID couldn't be read. */
+  static int partition(Encoding encoding, byte[] span, int partitionCount) {
+    long traceIdLow64 = traceIdLow64(encoding, span);
+    if (traceIdLow64 == 0L) return -1;
+    return (int) ((traceIdLow64 & Long.MAX_VALUE) % partitionCount);
+  }
+
+  /** Returns zero if the trace ID couldn't be read, as that's not a valid trace ID. */
+  static long traceIdLow64(Encoding encoding, byte[] span) {
+    switch (encoding) {
+      case JSON:
+        return jsonTraceIdLow64(span);
+      case PROTO3:
+        return proto3TraceIdLow64(span);
+      case THRIFT:
+        return thriftTraceIdLow64(span);
+      default:
+        return 0L;
+    }
+  }
+
+  /** Parses the last 16 hex characters of the "traceId" field, which is usually at offset 1. */
+  static long jsonTraceIdLow64(byte[] span) {
+    int start = indexOf(span, JSON_TRACE_ID);
+    if (start == -1) return 0L;
+    start += JSON_TRACE_ID.length;
+    int end = start;
+    while (end < span.length && span[end] != '"') end++;
+    int length = end - start;
+    if (end == span.length || (length != 16 && length != 32)) return 0L;
+
+    long result = 0L;
+    for (int i = end - 16; i < end; i++) {
+      int digit = Character.digit(span[i], 16);
+      if (digit == -1) return 0L;
+      result = (result << 4) | digit;
+    }
+    return result;
+  }
+
+  /**
+   * Encoded spans start with the key of the repeated field in ListOfSpans, then the length of the
+   * span. The first field of the span is the trace ID, which is 8 or 16 bytes.
+   */
+  static long proto3TraceIdLow64(byte[] span) {
+    if (span.length < 2 || span[0] != 0x0a) return 0L;
+    int pos = 1;
+    while (pos < span.length && (span[pos] & 0x80) != 0) pos++; // skip the varint span length
+    pos++;
+    if (pos + 2 > span.length || span[pos] != 0x0a) return 0L;
+    int length = span[pos + 1];
+    if (length != 8 && length != 16) return 0L;
+    int end = pos + 2 + length;
+    if (end > span.length) return 0L;
+    return readLong(span, end - 8);
+  }
+
+  /** In a TBinaryProtocol span, the first field is the 64-bit "trace_id": type 10, field 1. */
+  static long thriftTraceIdLow64(byte[] span) {
+    if (span.length < 11 || span[0] != 10 || span[1] != 0 || span[2] != 1) return 0L;
+    return readLong(span, 3);
+  }
+
+  static long readLong(byte[] bytes, int pos) {
+    long result = 0L;
+    for (int i = pos; i < pos + 8; i++) {
+      result = (result << 8) | (bytes[i] & 0xff);
+    }
+    return result;
+  }
+
+  static int indexOf(byte[] bytes, byte[] target) {
+    outer:
+    for (int i = 0, last = bytes.length - target.length; i <= last; i++) {
+      for (int j = 0; j < target.length; j++) {
+        if (bytes[i + j] != target[j]) continue outer;
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  TraceIdPartitioner() {
+  }
+}
@@ -66,6 +66,28 @@ class ITKafkaSender {
       .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
   }
 
+  @Test void send_partitionByTraceId() {
+    sender.close();
+    sender = sender.toBuilder().partitionByTraceId(true).build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN);
+    sender.producer.flush();
+
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(readMessage()))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void send_nativeBatching() {
+    sender.close();
+    sender = sender.toBuilder().nativeBatching(true).build();
+
+    sendSpans(CLIENT_SPAN);
+    sender.producer.flush();
+
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(readMessage()))
+      .containsExactly(CLIENT_SPAN);
+  }
+
   @Test void send_PROTO3() {
     sender.close();
     sender = sender.toBuilder().encoding(Encoding.PROTO3).build();
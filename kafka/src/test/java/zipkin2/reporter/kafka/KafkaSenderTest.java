@@ -0,0 +1,94 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.kafka;
+
+import java.util.Collections;
+import java.util.Properties;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.jupiter.api.Test;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.InMemoryReporterMetrics;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+
+class KafkaSenderTest {
+  KafkaSender sender = KafkaSender.create("localhost:9092");
+
+  @Test void producerProperties_disablesBatchingByDefault() {
+    assertThat(sender.producerProperties())
+      .containsEntry(ProducerConfig.BATCH_SIZE_CONFIG, 0)
+      .doesNotContainKeys(ProducerConfig.LINGER_MS_CONFIG, ProducerConfig.COMPRESSION_TYPE_CONFIG);
+  }
+
+  @Test void producerProperties_nativeBatching() {
+    sender = sender.toBuilder().nativeBatching(true).build();
+
+    assertThat(sender.producerProperties())
+      .containsEntry(ProducerConfig.BATCH_SIZE_CONFIG, 16384)
+      .containsEntry(ProducerConfig.LINGER_MS_CONFIG, 5)
+      .containsEntry(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+
+    // defaults don't leak into the builder
+    assertThat(sender.toBuilder().nativeBatching(false).build().producerProperties())
+      .containsEntry(ProducerConfig.BATCH_SIZE_CONFIG, 0);
+  }
+
+  @Test void producerProperties_nativeBatching_overridden() {
+    sender = KafkaSender.newBuilder()
+      .bootstrapServers("localhost:9092")
+      .nativeBatching(true)
+      .overrides(Collections.singletonMap(ProducerConfig.COMPRESSION_TYPE_CONFIG, "zstd"))
+      .overrides(Collections.singletonMap(ProducerConfig.BATCH_SIZE_CONFIG, 65536))
+      .build();
+
+    assertThat(sender.producerProperties())
+      .containsEntry(ProducerConfig.BATCH_SIZE_CONFIG, 65536)
+      .containsEntry(ProducerConfig.COMPRESSION_TYPE_CONFIG, "zstd");
+  }
+
+  /** An override is kept as-is, regardless of whether it is a number or a string. */
+  @Test void producerProperties_nativeBatching_overriddenToZero() {
+    Properties overrides = new Properties();
+    overrides.put(ProducerConfig.BATCH_SIZE_CONFIG, "0");
+    sender = sender.toBuilder().nativeBatching(true).overrides(overrides).build();
+
+    assertThat(sender.producerProperties())
+      .containsEntry(ProducerConfig.BATCH_SIZE_CONFIG, "0");
+
+    sender = sender.toBuilder()
+      .overrides(Collections.singletonMap(ProducerConfig.BATCH_SIZE_CONFIG, 0))
+      .build();
+
+    assertThat(sender.producerProperties())
+      .containsEntry(ProducerConfig.BATCH_SIZE_CONFIG, 0);
+  }
+
+  @Test void dropped_incrementsMetrics() {
+    InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+    sender = sender.toBuilder().nativeBatching(true).metrics(metrics).build();
+
+    new KafkaSender.DroppedSpansCallback(sender, 3)
+      .onCompletion(null, new IllegalStateException("broker down"));
+
+    assertThat(metrics.messagesDropped()).isEqualTo(1);
+    assertThat(metrics.spansDropped()).isEqualTo(3);
+  }
+
+  @Test void message_proto3_isTheEncodedSpan() {
+    sender = sender.toBuilder().encoding(Encoding.PROTO3).build();
+    byte[] span = SpanBytesEncoder.PROTO3.encode(CLIENT_SPAN);
+
+    assertThat(sender.message(span)).isSameAs(span);
+  }
+
+  @Test void message_json_isList() {
+    byte[] span = SpanBytesEncoder.JSON_V2.encode(CLIENT_SPAN);
+
+    assertThat(sender.message(span))
+      .containsExactly(Encoding.JSON.encode(Collections.singletonList(span)));
+  }
+}
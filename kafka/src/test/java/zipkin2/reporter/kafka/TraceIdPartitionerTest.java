@@ -0,0 +1,107 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.kafka;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.api.Test;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.EnumSource.Mode.EXCLUDE;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+
+class TraceIdPartitionerTest {
+  Span span64 = CLIENT_SPAN.toBuilder().traceId("216a2aea45d08fc9").build();
+  Span otherTrace = CLIENT_SPAN.toBuilder().traceId("00000000000000ff").build();
+
+  @ParameterizedTest @EnumSource(value = Encoding.class, names = "OTLP_PROTO3", mode = EXCLUDE)
+  void traceIdLow64(Encoding encoding) {
+    long expected = Long.parseUnsignedLong("216a2aea45d08fc9", 16);
+
+    assertThat(TraceIdPartitioner.traceIdLow64(encoding, encode(encoding, CLIENT_SPAN)))
+      .isEqualTo(expected);
+    assertThat(TraceIdPartitioner.traceIdLow64(encoding, encode(encoding, span64)))
+      .isEqualTo(expected);
+  }
+
+  @ParameterizedTest @EnumSource(value = Encoding.class, names = "OTLP_PROTO3", mode = EXCLUDE)
+  void traceIdLow64_unreadable(Encoding encoding) {
+    assertThat(TraceIdPartitioner.traceIdLow64(encoding, new byte[0])).isZero();
+    assertThat(TraceIdPartitioner.traceIdLow64(encoding, "{}".getBytes())).isZero();
+  }
+
+  @Test void jsonTraceIdLow64_notFirstField() {
+    byte[] json = "{\"id\":\"1\",\"traceId\":\"00000000000000ff\"}".getBytes();
+
+    assertThat(TraceIdPartitioner.jsonTraceIdLow64(json)).isEqualTo(255L);
+  }
+
+  @Test void jsonTraceIdLow64_invalid() {
+    assertThat(TraceIdPartitioner.jsonTraceIdLow64("{\"traceId\":\"ff\"}".getBytes()))
+      .isZero();
+    assertThat(TraceIdPartitioner.jsonTraceIdLow64("{\"traceId\":\"000000000000000g\"}".getBytes()))
+      .isZero();
+    assertThat(TraceIdPartitioner.jsonTraceIdLow64("{\"traceId\":\"00000000".getBytes()))
+      .isZero();
+  }
+
+  @Test void partition() {
+    byte[] json = SpanBytesEncoder.JSON_V2.encode(otherTrace);
+
+    assertThat(TraceIdPartitioner.partition(Encoding.JSON, json, 1)).isZero();
+    assertThat(TraceIdPartitioner.partition(Encoding.JSON, json, 16)).isEqualTo(255 % 16);
+    assertThat(TraceIdPartitioner.partition(Encoding.JSON, new byte[0], 16)).isEqualTo(-1);
+  }
+
+  @Test void partition_positiveWhenHighBitSet() {
+    byte[] json = SpanBytesEncoder.JSON_V2.encode(
+      CLIENT_SPAN.toBuilder().traceId("ffffffffffffffff").build());
+
+    assertThat(TraceIdPartitioner.partition(Encoding.JSON, json, 7))
+      .isEqualTo((int) (Long.MAX_VALUE % 7));
+  }
+
+  @Test void spansByPartition_groupsSpansOfTheSameTrace() {
+    KafkaSender sender = KafkaSender.newBuilder().partitionByTraceId(true).build();
+    byte[] span1 = SpanBytesEncoder.JSON_V2.encode(CLIENT_SPAN);
+    byte[] span2 = SpanBytesEncoder.JSON_V2.encode(otherTrace);
+    byte[] span3 = SpanBytesEncoder.JSON_V2.encode(span64);
+    byte[] unreadable = "{}".getBytes();
+
+    List<ProducerRecord<byte[], byte[]>> records = new ArrayList<>();
+    sender.spansByPartition(Arrays.asList(span1, span2, unreadable, span3), 1024)
+      .forEach((partition, spans) -> records.add(sender.newRecord(partition, spans)));
+
+    assertThat(records).hasSize(3);
+    assertThat(records.get(0).partition())
+      .isEqualTo((int) (Long.parseUnsignedLong("216a2aea45d08fc9", 16) % 1024));
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(records.get(0).value()))
+      .containsExactly(CLIENT_SPAN, span64);
+    assertThat(records.get(1).partition()).isEqualTo(255);
+    assertThat(records.get(2).partition()).isNull();
+    assertThat(records.get(2).value()).isEqualTo("[{}]".getBytes());
+  }
+
+  static byte[] encode(Encoding encoding, Span span) {
+    switch (encoding) {
+      case JSON:
+        return SpanBytesEncoder.JSON_V2.encode(span);
+      case THRIFT:
+        return SpanBytesEncoder.THRIFT.encode(span);
+      case PROTO3:
+        return SpanBytesEncoder.PROTO3.encode(span);
+      default:
+        throw new UnsupportedOperationException("encoding: " + encoding);
+    }
+  }
+}
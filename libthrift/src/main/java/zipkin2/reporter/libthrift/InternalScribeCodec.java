@@ -14,6 +14,7 @@ import org.apache.thrift.protocol.TMessage;
 import org.apache.thrift.protocol.TMessageType;
 import org.apache.thrift.protocol.TProtocolUtil;
 import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TTransport;
 
 import static org.apache.thrift.TApplicationException.BAD_SEQUENCE_ID;
 import static org.apache.thrift.TApplicationException.MISSING_RESULT;
@@ -50,7 +51,13 @@ public final class InternalScribeCodec { // public for zipkin-finagle
     oprot.writeMessageBegin(new TMessage("Log", TMessageType.CALL, seqid));
     oprot.writeFieldBegin(MESSAGES_FIELD_DESC);
     oprot.writeListBegin(new TList(TType.STRUCT, encodedSpans.size()));
-    for (byte[] encodedSpan : encodedSpans) write(category, encodedSpan, oprot);
+    if (!encodedSpans.isEmpty()) {
+      byte[] logEntryPrefix = logEntryPrefix(category);
+      byte[] buffer = BASE64_BUFFER.get();
+      for (byte[] encodedSpan : encodedSpans) {
+        write(logEntryPrefix, encodedSpan, buffer, oprot);
+      }
+    }
     oprot.writeFieldStop();
   }
 
@@ -88,15 +95,35 @@ public final class InternalScribeCodec { // public for zipkin-finagle
     return sizeInBytes;
   }
 
-  static void write(byte[] category, byte[] span, TBinaryProtocol oprot) throws TException {
-    oprot.writeFieldBegin(CATEGORY_FIELD_DESC);
-    oprot.writeI32(category.length);
-    oprot.getTransport().write(category, 0, category.length);
+  /**
+   * Returns the bytes that precede the message in each LogEntry: the category field and the
+   * header of the message field. These are the same for each span, so are written in one call.
+   */
+  static byte[] logEntryPrefix(byte[] category) {
+    byte[] result = new byte[3 + 4 + category.length + 3];
+    int i = 0;
+    result[i++] = CATEGORY_FIELD_DESC.type;
+    result[i++] = (byte) (CATEGORY_FIELD_DESC.id >>> 8);
+    result[i++] = (byte) CATEGORY_FIELD_DESC.id;
+    result[i++] = (byte) (category.length >>> 24);
+    result[i++] = (byte) (category.length >>> 16);
+    result[i++] = (byte) (category.length >>> 8);
+    result[i++] = (byte) category.length;
+    System.arraycopy(category, 0, result, i, category.length);
+    i += category.length;
+    result[i++] = MESSAGE_FIELD_DESC.type;
+    result[i++] = (byte) (MESSAGE_FIELD_DESC.id >>> 8);
+    result[i] = (byte) MESSAGE_FIELD_DESC.id;
+    return result;
+  }
 
-    oprot.writeFieldBegin(MESSAGE_FIELD_DESC);
-    byte[] base64 = base64(span);
-    oprot.writeI32(base64.length);
-    oprot.getTransport().write(base64, 0, base64.length);
+  /** Writes a LogEntry, base64 encoding the span into the buffer instead of a new array. */
+  static void write(byte[] logEntryPrefix, byte[] span, byte[] buffer, TBinaryProtocol oprot)
+    throws TException {
+    TTransport transport = oprot.getTransport();
+    transport.write(logEntryPrefix, 0, logEntryPrefix.length);
+    oprot.writeI32(base64SizeInBytes(span.length));
+    writeBase64(span, buffer, transport);
     oprot.writeFieldStop();
   }
 
@@ -107,37 +134,51 @@ public final class InternalScribeCodec { // public for zipkin-finagle
     '5', '6', '7', '8', '9', '+', '/'
   };
 
+  /** Holds at most this many bytes of base64, which is a multiple of 4. */
+  static final int BASE64_BUFFER_SIZE = 4096;
+  static final ThreadLocal<byte[]> BASE64_BUFFER = new ThreadLocal<byte[]>() {
+    @Override protected byte[] initialValue() {
+      return new byte[BASE64_BUFFER_SIZE];
+    }
+  };
+
   /**
-   * Adapted from okio.Base64 as JRE 6 doesn't have a base64 encoder
+   * Writes the base64 encoding of the input in chunks that fit the buffer, so that a large span
+   * doesn't need an array of its encoded size.
+   *
+   * <p>Adapted from okio.Base64 as JRE 6 doesn't have a base64 encoder
    *
    * <p>Original author: Alexander Y. Kleymenov
    */
-  static byte[] base64(byte[] in) {
-    int length = base64SizeInBytes(in.length);
-    byte[] out = new byte[length];
-    int index = 0, end = in.length - in.length % 3;
-    for (int i = 0; i < end; i += 3) {
-      out[index++] = MAP[(in[i] & 0xff) >> 2];
-      out[index++] = MAP[((in[i] & 0x03) << 4) | ((in[i + 1] & 0xff) >> 4)];
-      out[index++] = MAP[((in[i + 1] & 0x0f) << 2) | ((in[i + 2] & 0xff) >> 6)];
-      out[index++] = MAP[(in[i + 2] & 0x3f)];
+  static void writeBase64(byte[] in, byte[] buffer, TTransport out) throws TException {
+    int chunkSize = buffer.length / 4 * 3; // input bytes that encode to a full buffer
+    int end = in.length - in.length % 3;
+    for (int chunkStart = 0; chunkStart < end; chunkStart += chunkSize) {
+      int chunkEnd = Math.min(chunkStart + chunkSize, end), index = 0;
+      for (int i = chunkStart; i < chunkEnd; i += 3) {
+        buffer[index++] = MAP[(in[i] & 0xff) >> 2];
+        buffer[index++] = MAP[((in[i] & 0x03) << 4) | ((in[i + 1] & 0xff) >> 4)];
+        buffer[index++] = MAP[((in[i + 1] & 0x0f) << 2) | ((in[i + 2] & 0xff) >> 6)];
+        buffer[index++] = MAP[(in[i + 2] & 0x3f)];
+      }
+      out.write(buffer, 0, index);
     }
+    int index = 0;
     switch (in.length % 3) {
       case 1:
-        out[index++] = MAP[(in[end] & 0xff) >> 2];
-        out[index++] = MAP[(in[end] & 0x03) << 4];
-        out[index++] = '=';
-        out[index++] = '=';
+        buffer[index++] = MAP[(in[end] & 0xff) >> 2];
+        buffer[index++] = MAP[(in[end] & 0x03) << 4];
+        buffer[index++] = '=';
+        buffer[index++] = '=';
         break;
       case 2:
-        out[index++] = MAP[(in[end] & 0xff) >> 2];
-        out[index++] = MAP[((in[end] & 0x03) << 4) | ((in[end + 1] & 0xff) >> 4)];
-        out[index++] = MAP[((in[end + 1] & 0x0f) << 2)];
-        out[index++] = '=';
+        buffer[index++] = MAP[(in[end] & 0xff) >> 2];
+        buffer[index++] = MAP[((in[end] & 0x03) << 4) | ((in[end + 1] & 0xff) >> 4)];
+        buffer[index++] = MAP[((in[end + 1] & 0x0f) << 2)];
+        buffer[index++] = '=';
         break;
     }
-    assert index == out.length : "index " + index + " != out.length " + out.length;
-    return out;
+    if (index > 0) out.write(buffer, 0, index);
   }
 
   static int base64SizeInBytes(int sizeInBytes) {
@@ -5,22 +5,37 @@
 package zipkin2.reporter.libthrift;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 import org.apache.thrift.TException;
 import zipkin2.reporter.Call;
 import zipkin2.reporter.Callback;
 import zipkin2.reporter.CheckResult;
 import zipkin2.reporter.ClosedSenderException;
 import zipkin2.reporter.Encoding;
+import zipkin2.reporter.ReporterMetrics;
 import zipkin2.reporter.Sender;
+import zipkin2.reporter.internal.InFlightMessages;
+import zipkin2.reporter.internal.MessageFraming;
 
 /**
- * Blocking reporter that sends spans to Zipkin via Scribe.
+ * Reporter that sends spans to Zipkin via Scribe.
  *
- * <p>This sender is not thread-safe.
+ * <p>By default, {@link #send(List)} blocks until Scribe responds. When {@linkplain
+ * Builder#asyncSend(boolean) async}, requests are pipelined: {@link #send(List)} returns once the
+ * request is written, and up to {@link Builder#maxInFlightMessages(int)} can await a response.
+ *
+ * <p>This sender is thread-safe: concurrent calls to {@link #send(List)} use different connections,
+ * from a pool of up to {@link Builder#maxConnections(int)}.
  */
-public final class LibthriftSender extends Sender {
+public final class LibthriftSender extends Sender implements MessageFraming {
+  static final Logger logger = Logger.getLogger(LibthriftSender.class.getName());
+
   /** Creates a sender that sends {@link Encoding#THRIFT} messages. */
   public static LibthriftSender create(String host) {
     return newBuilder().host(host).build();
@@ -35,6 +50,9 @@ public final class LibthriftSender extends Sender {
     int port = 9410;
     int messageMaxBytes = 500000; // TFramedTransport.DEFAULT_MAX_LENGTH
     int connectTimeout = 10 * 1000, socketTimeout = 60 * 1000;
+    int maxConnections = 4, maxInFlightMessages = 64;
+    boolean asyncSend;
+    ReporterMetrics metrics = ReporterMetrics.NOOP_METRICS;
 
     Builder(LibthriftSender sender) {
       this.host = sender.host;
@@ -42,6 +60,10 @@ public final class LibthriftSender extends Sender {
       this.connectTimeout = sender.connectTimeout;
       this.socketTimeout = sender.socketTimeout;
       this.port = sender.port;
+      this.maxConnections = sender.maxConnections;
+      this.asyncSend = sender.inFlight != null;
+      this.maxInFlightMessages = sender.maxInFlightMessages;
+      this.metrics = sender.metrics;
     }
 
     /** No default. The host listening for scribe messages. */
@@ -75,6 +97,58 @@ public final class LibthriftSender extends Sender {
       return this;
     }
 
+    /**
+     * Maximum connections to Scribe. Connections are opened on demand, so more than one is only
+     * used when sending concurrently. Default 4.
+     *
+     * @since 3.6
+     */
+    public Builder maxConnections(int maxConnections) {
+      if (maxConnections <= 0) throw new IllegalArgumentException("maxConnections <= 0");
+      this.maxConnections = maxConnections;
+      return this;
+    }
+
+    /**
+     * When true, {@link LibthriftSender#send(List)} returns once the request is written, instead
+     * of waiting for the response. Responses are matched to requests by seqid, so many requests
+     * can be in flight on the same connection. Defaults to false.
+     *
+     * <p>Failures that occur after {@code send} returns, including "try later" responses, are
+     * reported to {@link #metrics(ReporterMetrics)} instead of the caller.
+     *
+     * @since 3.6
+     */
+    public Builder asyncSend(boolean asyncSend) {
+      this.asyncSend = asyncSend;
+      return this;
+    }
+
+    /**
+     * Maximum requests awaiting a response when {@link #asyncSend(boolean) async}. Once reached,
+     * {@link LibthriftSender#send(List)} blocks until a response is read. Default 64.
+     *
+     * @since 3.6
+     */
+    public Builder maxInFlightMessages(int maxInFlightMessages) {
+      if (maxInFlightMessages <= 0) throw new IllegalArgumentException("maxInFlightMessages <= 0");
+      this.maxInFlightMessages = maxInFlightMessages;
+      return this;
+    }
+
+    /**
+     * Records messages and spans dropped after {@link LibthriftSender#send(List)} returns, which
+     * only happens when {@link #asyncSend(boolean) async}. Use the same instance as passed to the
+     * reporter. Defaults to no-op.
+     *
+     * @since 3.6
+     */
+    public Builder metrics(ReporterMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
     public LibthriftSender build() {
       return new LibthriftSender(this);
     }
@@ -87,6 +161,12 @@ public final class LibthriftSender extends Sender {
   final int port;
   final int messageMaxBytes;
   final int connectTimeout, socketTimeout;
+  final int maxConnections, maxInFlightMessages;
+  final ReporterMetrics metrics;
+  final InFlightMessages inFlight; // null unless asyncSend
+  final List<ScribeClient> clients;
+  // Last in, first out, so that a single caller reuses the same connection.
+  final LinkedBlockingDeque<ScribeClient> idleClients;
 
   LibthriftSender(Builder builder) {
     if (builder.host == null) throw new NullPointerException("host == null");
@@ -95,6 +175,19 @@ public final class LibthriftSender extends Sender {
     this.connectTimeout = builder.connectTimeout;
     this.socketTimeout = builder.socketTimeout;
     this.port = builder.port;
+    this.maxConnections = builder.maxConnections;
+    this.maxInFlightMessages = builder.maxInFlightMessages;
+    this.metrics = builder.metrics;
+    this.inFlight = builder.asyncSend
+      ? new InFlightMessages(maxInFlightMessages, metrics, logger) : null;
+    // Clients don't connect until used, so it is cheap to create them eagerly.
+    this.clients = new ArrayList<ScribeClient>(maxConnections);
+    this.idleClients = new LinkedBlockingDeque<ScribeClient>(maxConnections);
+    for (int i = 0; i < maxConnections; i++) {
+      ScribeClient client = new ScribeClient(host, port, socketTimeout, connectTimeout, inFlight);
+      clients.add(client);
+      idleClients.offerFirst(client);
+    }
   }
 
   public Builder toBuilder() {
@@ -120,6 +213,24 @@ public final class LibthriftSender extends Sender {
     return ScribeClient.messageSizeInBytes(encodedSpans);
   }
 
+  /**
+   * Size of the Thrift RPC message without log entries.
+   *
+   * @since 3.6
+   */
+  @Override public int emptyMessageSizeInBytes() {
+    return ScribeClient.messageSizeInBytes(Collections.<byte[]>emptyList());
+  }
+
+  /**
+   * Size of the log entry for a span, which includes its category and base64 encoding.
+   *
+   * @since 3.6
+   */
+  @Override public int spanSizeInBytes(int index, int encodedSizeInBytes) {
+    return ScribeClient.sizeOfLogEntry(encodedSizeInBytes);
+  }
+
   /** {@inheritDoc} */
   @Override @Deprecated public Call<Void> sendSpans(List<byte[]> encodedSpans) {
     if (closeCalled) throw new ClosedSenderException();
@@ -130,7 +241,7 @@ public final class LibthriftSender extends Sender {
   @Override public void send(List<byte[]> encodedSpans) throws IOException {
     if (closeCalled) throw new ClosedSenderException();
     try {
-      if (!get().log(encodedSpans)) {
+      if (!log(encodedSpans)) {
         throw new IllegalStateException("try later");
       }
     } catch (TException e) {
@@ -138,25 +249,41 @@ public final class LibthriftSender extends Sender {
     }
   }
 
-  ScribeClient get() {
-    if (client == null) {
-      synchronized (this) {
-        if (client == null) {
-          client = new ScribeClient(host, port, socketTimeout, connectTimeout);
-        }
+  /** Returns false if the scribe response was try later, or true once written when async. */
+  boolean log(List<byte[]> encodedSpans) throws IOException, TException {
+    if (inFlight != null) inFlight.acquire(); // before the client, so we don't hold it idle
+    boolean success = false;
+    try {
+      ScribeClient client = acquireClient();
+      try {
+        boolean result = client.log(encodedSpans);
+        success = true;
+        return result;
+      } finally {
+        idleClients.offerFirst(client);
       }
+    } finally {
+      // when log fails synchronously, the exception is reported instead of metrics
+      if (!success && inFlight != null) inFlight.release();
+    }
+  }
+
+  ScribeClient acquireClient() throws InterruptedIOException {
+    try {
+      return idleClients.takeFirst();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for a Scribe connection");
     }
-    return client;
   }
 
   /** close is typically called from a different thread */
   private volatile boolean closeCalled;
-  private volatile ScribeClient client;
 
   /** {@inheritDoc} */
   @Override @Deprecated public CheckResult check() {
     try {
-      if (get().log(Collections.<byte[]>emptyList())) {
+      if (log(Collections.<byte[]>emptyList())) {
         return CheckResult.OK;
       }
       throw new IllegalStateException("try later");
@@ -165,11 +292,14 @@ public final class LibthriftSender extends Sender {
     }
   }
 
+  /** Waits up to a second for in-flight messages to receive a response. */
   @Override public void close() {
     if (closeCalled) return;
     closeCalled = true;
-    ScribeClient client = this.client;
-    if (client != null) client.close();
+    if (inFlight != null && !inFlight.awaitCompletion(1, TimeUnit.SECONDS)) {
+      logger.warning("Timed out waiting for " + inFlight.inFlight() + " in-flight messages");
+    }
+    for (ScribeClient client : clients) client.close();
   }
 
   @Override public String toString() {
@@ -190,7 +320,7 @@ public final class LibthriftSender extends Sender {
 
     @Override protected void doEnqueue(Callback<Void> callback) {
       try {
-        if (get().log(encodedSpans)) {
+        if (log(encodedSpans)) {
           callback.onSuccess(null);
         } else {
           callback.onError(new IllegalStateException("try later"));
@@ -5,16 +5,31 @@
 package zipkin2.reporter.libthrift;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.thrift.TApplicationException;
 import org.apache.thrift.TConfiguration;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
 import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransportException;
 import org.apache.thrift.transport.layered.TFramedTransport;
+import zipkin2.reporter.internal.InFlightMessages;
 
+import static org.apache.thrift.TApplicationException.BAD_SEQUENCE_ID;
+
+/**
+ * A Scribe connection that reconnects on demand. Only one thread may call {@link #log} at a time.
+ *
+ * <p>When async, {@link #log} returns once the request is written, and a reader thread matches
+ * responses to requests by seqid. This allows many requests in flight on the same connection.
+ */
 final class ScribeClient implements Closeable {
   static final Logger logger = Logger.getLogger(ScribeClient.class.getName());
   static final byte[] category = new byte[] {'z', 'i', 'p', 'k', 'i', 'n'};
@@ -23,19 +38,22 @@ final class ScribeClient implements Closeable {
   final int port;
   final int socketTimeout;
   final int connectTimeout;
+  final InFlightMessages inFlight; // null unless asyncSend
 
-  volatile TSocket socket;
-  volatile TBinaryProtocol prot;
+  volatile Connection connection; // null until the first call to log or after an error
+  volatile boolean closed;
 
   /**
    * This defers opening a socket until the first call to {@link #log}, to
    * accommodate a server that's down when the client initializes.
    */
-  ScribeClient(String host, int port, int socketTimeout, int connectTimeout) {
+  ScribeClient(String host, int port, int socketTimeout, int connectTimeout,
+    InFlightMessages inFlight) {
     this.host = host;
     this.port = port;
     this.socketTimeout = socketTimeout;
     this.connectTimeout = connectTimeout;
+    this.inFlight = inFlight;
   }
 
   static int messageSizeInBytes(int spanSizeInBytes) {
@@ -46,35 +64,158 @@ final class ScribeClient implements Closeable {
     return InternalScribeCodec.messageSizeInBytes(category, encodedSpans);
   }
 
-  private int seqid_;
+  static int sizeOfLogEntry(int spanSizeInBytes) {
+    return InternalScribeCodec.sizeOfLogEntry(category, spanSizeInBytes);
+  }
 
+  /**
+   * Returns false if the scribe response was try later. When async, this returns true once the
+   * request is written, and the caller must have acquired an in-flight permit.
+   */
   boolean log(List<byte[]> encodedSpans) throws TException {
+    Connection connection = this.connection;
+    boolean reused = connection != null;
+    if (!reused) connection = connect();
+
+    int seqid;
     try {
-      // Starting in version 0.14, TSocket opens a socket inside its
-      // constructor, which we defer so that the server can be initially down.
-      if (socket == null) {
-        synchronized (this) {
-          if (socket == null) {
-            socket = new TSocket(new TConfiguration(), host, port, socketTimeout, connectTimeout);
-            prot = new TBinaryProtocol(new TFramedTransport(socket));
-          }
-        }
+      seqid = connection.write(encodedSpans);
+    } catch (TTransportException e) {
+      disconnect(connection, e);
+      if (!reused) throw e;
+      // The server may have closed the idle connection, so retry once on a new one. Part of the
+      // request may have reached Scribe before the write failed, in which case the spans could be
+      // logged twice. We accept that, as a duplicate span is merged by the collector, while not
+      // retrying would drop every message written to a connection the server closed while idle.
+      connection = connect();
+      try {
+        seqid = connection.write(encodedSpans);
+      } catch (TTransportException e2) {
+        disconnect(connection, e2);
+        throw e2;
       }
+    }
+    if (inFlight != null) return true;
 
-      if (!socket.isOpen()) socket.open();
-      InternalScribeCodec.writeLogRequest(category, encodedSpans, ++seqid_, prot);
-      prot.getTransport().flush();
-      return InternalScribeCodec.readLogResponse(seqid_, prot);
+    try {
+      return InternalScribeCodec.readLogResponse(seqid, connection.iprot);
     } catch (TTransportException e) {
-      logger.log(Level.FINE, "Transport exception. recreating socket", e);
-      close();
-      seqid_ = 0;
+      disconnect(connection, e);
+      throw e;
+    } catch (TApplicationException e) {
+      // Other application exceptions are read fully, so the connection can be reused.
+      if (e.getType() == BAD_SEQUENCE_ID) disconnect(connection, e);
       throw e;
     }
   }
 
+  Connection connect() throws TTransportException {
+    // Starting in version 0.14, TSocket opens a socket inside its
+    // constructor, which we defer so that the server can be initially down.
+    TSocket socket = new TSocket(new TConfiguration(), host, port, socketTimeout, connectTimeout);
+    socket.open();
+    Connection result = new Connection(socket);
+    if (inFlight != null) {
+      Thread reader = new Thread(result, "ScribeClient-" + host + ":" + port);
+      reader.setDaemon(true);
+      reader.start();
+    }
+    connection = result;
+    if (closed) { // raced with close
+      disconnect(result, new TTransportException(TTransportException.NOT_OPEN, "closed"));
+      throw new TTransportException(TTransportException.NOT_OPEN, "closed");
+    }
+    return result;
+  }
+
+  void disconnect(Connection connection, Throwable cause) {
+    if (!closed) logger.log(Level.FINE, "Transport exception. recreating socket", cause);
+    synchronized (this) {
+      if (this.connection == connection) this.connection = null;
+    }
+    connection.close(cause);
+  }
+
   @Override public void close() {
-    TSocket maybe = this.socket;
-    if (maybe != null) maybe.close();
+    closed = true;
+    Connection maybe = this.connection;
+    if (maybe != null) disconnect(maybe, new IOException("ScribeClient closed"));
+  }
+
+  final class Connection implements Runnable {
+    final TSocket socket;
+    final TBinaryProtocol oprot, iprot; // separate, as protocols share a scratch buffer
+    // seqid -> span count of requests awaiting a response, null unless asyncSend
+    final ConcurrentHashMap<Integer, Integer> pending;
+    int seqid; // guarded by the caller of log, which is one thread at a time
+
+    Connection(TSocket socket) throws TTransportException {
+      this.socket = socket;
+      this.oprot = new TBinaryProtocol(new TFramedTransport(socket));
+      this.iprot = new TBinaryProtocol(new TFramedTransport(socket));
+      this.pending = inFlight != null ? new ConcurrentHashMap<Integer, Integer>() : null;
+    }
+
+    int write(List<byte[]> encodedSpans) throws TException {
+      int seqid = ++this.seqid;
+      // before writing, as the reader could otherwise see the response first
+      if (pending != null) pending.put(seqid, encodedSpans.size());
+      try {
+        InternalScribeCodec.writeLogRequest(category, encodedSpans, seqid, oprot);
+        oprot.getTransport().flush();
+      } catch (TException e) {
+        // the caller releases the in-flight permit when log throws
+        if (pending != null) pending.remove(seqid);
+        throw e;
+      }
+      return seqid;
+    }
+
+    /** Reads responses until the connection fails, completing in-flight messages. */
+    @Override public void run() {
+      try {
+        while (true) {
+          TMessage msg;
+          try {
+            msg = iprot.readMessageBegin();
+          } catch (TTransportException e) {
+            if (isTimeout(e) && pending.isEmpty()) continue; // idle, not a hung server
+            throw e;
+          }
+          Throwable error = null;
+          if (msg.type == TMessageType.EXCEPTION) {
+            error = TApplicationException.readFrom(iprot);
+          } else if (!InternalScribeCodec.parseResponse(iprot)) {
+            error = new IllegalStateException("try later");
+          }
+          iprot.readMessageEnd();
+
+          Integer spanCount = pending.remove(msg.seqid);
+          if (spanCount == null) continue; // already failed by a concurrent disconnect
+          if (error == null) {
+            inFlight.release();
+          } else {
+            inFlight.dropped(error, spanCount);
+          }
+        }
+      } catch (Throwable t) {
+        disconnect(this, t);
+      }
+    }
+
+    /** Closes the socket, and drops any messages that will not receive a response. */
+    void close(Throwable cause) {
+      socket.close();
+      if (pending == null) return;
+      for (Integer seqid : pending.keySet()) {
+        Integer spanCount = pending.remove(seqid);
+        if (spanCount != null) inFlight.dropped(cause, spanCount);
+      }
+    }
+  }
+
+  static boolean isTimeout(TTransportException e) {
+    return e.getType() == TTransportException.TIMED_OUT
+      || e.getCause() instanceof SocketTimeoutException;
   }
 }
@@ -5,10 +5,15 @@
 package zipkin2.reporter.libthrift;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
 import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TType;
 import org.apache.thrift.transport.TIOStreamTransport;
 import org.junit.jupiter.api.Test;
 import zipkin2.Endpoint;
@@ -22,13 +27,43 @@ import static zipkin2.TestObjects.TODAY;
 import static zipkin2.TestObjects.UTF_8;
 
 class InternalScribeCodecTest {
-  @Test void base64_matches() {
-    // testing every padding value
-    for (String input : Arrays.asList("abc", "abcd", "abcd", "abcde")) {
-      byte[] base64 = Base64.getEncoder().encode(input.getBytes(UTF_8));
-      assertThat(InternalScribeCodec.base64SizeInBytes(input.length())).isEqualTo(base64.length);
-      assertThat(InternalScribeCodec.base64(input.getBytes(UTF_8))).containsExactly(base64);
+  @Test void writeBase64_matchesBase64() throws Exception {
+    byte[] buffer = new byte[8]; // small, so that input spans several chunks
+    for (int length = 0; length <= 20; length++) { // every padding value and chunk boundary
+      byte[] input = new byte[length];
+      for (int i = 0; i < length; i++) input[i] = (byte) (i * 37);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      InternalScribeCodec.writeBase64(input, buffer, new TIOStreamTransport(out));
+
+      assertThat(out.toByteArray()).containsExactly(Base64.getEncoder().encode(input));
+    }
+  }
+
+  @Test void writeLogRequest() throws Exception {
+    byte[] thrift = SpanBytesEncoder.THRIFT.encode(CLIENT_SPAN);
+    List<byte[]> encodedSpans = asList(thrift, thrift);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    InternalScribeCodec.writeLogRequest(ScribeClient.category, encodedSpans, 1,
+      new TBinaryProtocol(new TIOStreamTransport(out)));
+
+    // Write the same request with the Thrift protocol and the JRE's base64 encoder
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    TBinaryProtocol prot = new TBinaryProtocol(new TIOStreamTransport(expected));
+    prot.writeMessageBegin(new TMessage("Log", TMessageType.CALL, 1));
+    prot.writeFieldBegin(InternalScribeCodec.MESSAGES_FIELD_DESC);
+    prot.writeListBegin(new TList(TType.STRUCT, encodedSpans.size()));
+    for (byte[] encodedSpan : encodedSpans) {
+      prot.writeFieldBegin(InternalScribeCodec.CATEGORY_FIELD_DESC);
+      prot.writeBinary(ByteBuffer.wrap(ScribeClient.category));
+      prot.writeFieldBegin(InternalScribeCodec.MESSAGE_FIELD_DESC);
+      prot.writeBinary(ByteBuffer.wrap(Base64.getEncoder().encode(encodedSpan)));
+      prot.writeFieldStop();
     }
+    prot.writeFieldStop();
+
+    assertThat(out.toByteArray()).containsExactly(expected.toByteArray());
   }
 
   @Test void sendExpectedMetrics() throws Exception {
@@ -82,11 +117,11 @@ class InternalScribeCodecTest {
             .build();
 
     byte[] thrift1 = SpanBytesEncoder.THRIFT.encode(span1);
-    assertThat(InternalScribeCodec.base64(thrift1))
+    assertThat(Base64.getEncoder().encode(thrift1))
         .hasSize(InternalScribeCodec.base64SizeInBytes(thrift1.length));
 
     byte[] thrift2 = SpanBytesEncoder.THRIFT.encode(span2);
-    assertThat(InternalScribeCodec.base64(thrift2))
+    assertThat(Base64.getEncoder().encode(thrift2))
         .hasSize(InternalScribeCodec.base64SizeInBytes(thrift2.length));
   }
 }
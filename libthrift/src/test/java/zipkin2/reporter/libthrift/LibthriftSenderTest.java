@@ -0,0 +1,258 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.libthrift;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.layered.TFramedTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import zipkin2.Span;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.InMemoryReporterMetrics;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+
+@Timeout(10)
+class LibthriftSenderTest {
+  FakeScribe scribe = new FakeScribe();
+  InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+  LibthriftSender sender;
+
+  @BeforeEach void start() throws IOException {
+    scribe.start();
+  }
+
+  @AfterEach void close() throws IOException {
+    if (sender != null) sender.close();
+    scribe.close();
+  }
+
+  @Test void send() throws Exception {
+    sender = scribe.newSenderBuilder().build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(scribe.seqids).containsExactly(1);
+  }
+
+  @Test void send_reusesConnection() throws Exception {
+    sender = scribe.newSenderBuilder().build();
+
+    sendSpans(CLIENT_SPAN);
+    sendSpans(CLIENT_SPAN);
+
+    assertThat(scribe.connectionCount).hasValue(1);
+    assertThat(scribe.seqids).containsExactly(1, 2);
+  }
+
+  @Test void send_tryLater() throws Exception {
+    scribe.resultCode = 1; // TRY_LATER
+    sender = scribe.newSenderBuilder().build();
+
+    assertThatThrownBy(() -> sendSpans(CLIENT_SPAN))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("try later");
+
+    // the connection is still usable
+    scribe.resultCode = 0;
+    sendSpans(CLIENT_SPAN);
+    assertThat(scribe.connectionCount).hasValue(1);
+  }
+
+  /** Scribe doesn't respond until it has read all requests, so this only passes if pipelined. */
+  @Test void asyncSend_pipelinesRequests() throws Exception {
+    scribe.requestsPerResponse = 3;
+    sender = scribe.newSenderBuilder().asyncSend(true).metrics(metrics).build();
+
+    sendSpans(CLIENT_SPAN);
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN);
+    sendSpans(CLIENT_SPAN);
+
+    assertThat(sender.inFlight.awaitCompletion(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(scribe.seqids).containsExactly(1, 2, 3);
+    assertThat(scribe.connectionCount).hasValue(1);
+    assertThat(metrics.messagesDropped()).isZero();
+  }
+
+  @Test void asyncSend_tryLaterIncrementsMetrics() throws Exception {
+    scribe.resultCode = 1; // TRY_LATER
+    sender = scribe.newSenderBuilder().asyncSend(true).metrics(metrics).build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(sender.inFlight.awaitCompletion(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(metrics.messagesDropped()).isEqualTo(1);
+    assertThat(metrics.spansDropped()).isEqualTo(2);
+  }
+
+  @Test void asyncSend_disconnectIncrementsMetrics() throws Exception {
+    scribe.requestsPerResponse = Integer.MAX_VALUE; // never respond
+    sender = scribe.newSenderBuilder().asyncSend(true).metrics(metrics).build();
+
+    sendSpans(CLIENT_SPAN, CLIENT_SPAN);
+    while (scribe.seqids.isEmpty()) Thread.sleep(10);
+    scribe.close();
+
+    assertThat(sender.inFlight.awaitCompletion(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(metrics.messagesDropped()).isEqualTo(1);
+    assertThat(metrics.spansDropped()).isEqualTo(2);
+  }
+
+  @Test void sendFailsWhenScribeIsDown() throws Exception {
+    scribe.close();
+    sender = scribe.newSenderBuilder().asyncSend(true).build();
+
+    assertThatThrownBy(() -> sendSpans(CLIENT_SPAN))
+      .isInstanceOf(IOException.class);
+    assertThat(sender.inFlight.inFlight()).isZero();
+  }
+
+  @Test void toBuilder_retainsPoolSettings() {
+    sender = scribe.newSenderBuilder()
+      .maxConnections(2)
+      .asyncSend(true)
+      .maxInFlightMessages(8)
+      .metrics(metrics)
+      .build();
+
+    LibthriftSender copy = sender.toBuilder().build();
+    assertThat(copy.clients).hasSize(2);
+    assertThat(copy.inFlight).isNotNull();
+    assertThat(copy.maxInFlightMessages).isEqualTo(8);
+    assertThat(copy.metrics).isSameAs(metrics);
+  }
+
+  @Test void messageFraming_matchesMessageSizeInBytes() {
+    sender = scribe.newSenderBuilder().build();
+    List<byte[]> encodedSpans = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      int sizeInBytes = sender.emptyMessageSizeInBytes();
+      for (int j = 0; j < encodedSpans.size(); j++) {
+        sizeInBytes += sender.spanSizeInBytes(j, encodedSpans.get(j).length);
+      }
+      assertThat(sizeInBytes).isEqualTo(sender.messageSizeInBytes(encodedSpans));
+
+      encodedSpans.add(new byte[i * 10]); // vary the base64 padding
+    }
+  }
+
+  @Test void asyncReporter_sizesMessagesExactly() throws Exception {
+    sender = scribe.newSenderBuilder().build();
+    byte[] span = SpanBytesEncoder.THRIFT.encode(CLIENT_SPAN);
+    int messageMaxBytes = sender.messageSizeInBytes(List.of(span, span));
+
+    try (AsyncReporter<Span> reporter = AsyncReporter.builder(sender)
+      .messageMaxBytes(messageMaxBytes)
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .metrics(metrics)
+      .build(SpanBytesEncoder.THRIFT)) {
+      reporter.report(CLIENT_SPAN);
+      reporter.report(CLIENT_SPAN);
+      reporter.report(CLIENT_SPAN);
+      reporter.flush();
+
+      assertThat(metrics.messageBytes()).isEqualTo(messageMaxBytes);
+      assertThat(metrics.spansDropped()).isZero();
+      assertThat(scribe.seqids).hasSize(1);
+
+      reporter.flush();
+      assertThat(scribe.seqids).hasSize(2);
+    }
+  }
+
+  void sendSpans(Span... spans) throws IOException {
+    sender.send(Stream.of(spans).map(SpanBytesEncoder.THRIFT::encode).collect(toList()));
+  }
+
+  /** Accepts Scribe Log requests, responding after every {@link #requestsPerResponse}. */
+  static final class FakeScribe {
+    final List<Integer> seqids = new CopyOnWriteArrayList<>();
+    final AtomicInteger connectionCount = new AtomicInteger();
+    final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    volatile int resultCode, requestsPerResponse = 1;
+    ServerSocket server;
+
+    void start() throws IOException {
+      server = new ServerSocket(0);
+      new Thread(() -> {
+        try {
+          while (true) {
+            Socket socket = server.accept();
+            sockets.add(socket);
+            connectionCount.incrementAndGet();
+            new Thread(() -> serve(socket)).start();
+          }
+        } catch (IOException ignored) {
+          // closed
+        }
+      }).start();
+    }
+
+    LibthriftSender.Builder newSenderBuilder() {
+      return LibthriftSender.newBuilder().host("127.0.0.1").port(server.getLocalPort());
+    }
+
+    void serve(Socket socket) {
+      try {
+        TSocket transport = new TSocket(socket);
+        TBinaryProtocol iprot = new TBinaryProtocol(new TFramedTransport(transport));
+        TBinaryProtocol oprot = new TBinaryProtocol(new TFramedTransport(transport));
+        List<Integer> unanswered = new ArrayList<>();
+        while (true) {
+          TMessage request = iprot.readMessageBegin();
+          TProtocolUtil.skip(iprot, TType.STRUCT);
+          iprot.readMessageEnd();
+          seqids.add(request.seqid);
+          unanswered.add(request.seqid);
+          if (unanswered.size() < requestsPerResponse) continue;
+          for (int seqid : unanswered) writeResponse(oprot, seqid);
+          unanswered.clear();
+        }
+      } catch (TException e) {
+        // closed
+      }
+    }
+
+    void writeResponse(TBinaryProtocol oprot, int seqid) throws TException {
+      oprot.writeMessageBegin(new TMessage("Log", TMessageType.REPLY, seqid));
+      oprot.writeStructBegin(new TStruct("Log_result"));
+      oprot.writeFieldBegin(new TField("success", TType.I32, (short) 0));
+      oprot.writeI32(resultCode);
+      oprot.writeFieldEnd();
+      oprot.writeFieldStop();
+      oprot.writeStructEnd();
+      oprot.writeMessageEnd();
+      oprot.getTransport().flush();
+    }
+
+    void close() throws IOException {
+      server.close();
+      for (Socket socket : sockets) socket.close();
+    }
+  }
+}
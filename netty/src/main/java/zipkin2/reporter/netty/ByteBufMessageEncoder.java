@@ -0,0 +1,111 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.DefaultByteBufHolder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import zipkin2.reporter.Encoding;
+
+/**
+ * Writes encoded spans as a list directly into a pooled buffer, optionally through gzip. This
+ * avoids the heap copy made when concatenating spans into a byte array first.
+ */
+enum ByteBufMessageEncoder {
+  JSON {
+    @Override void write(List<byte[]> encodedSpans, OutputStream out) throws IOException {
+      out.write('[');
+      for (int i = 0, length = encodedSpans.size(); i < length; ) {
+        out.write(encodedSpans.get(i++));
+        if (i < length) out.write(',');
+      }
+      out.write(']');
+    }
+  },
+  @Deprecated
+  THRIFT {
+    @Override void write(List<byte[]> encodedSpans, OutputStream out) throws IOException {
+      // TBinaryProtocol List header is element type followed by count
+      int length = encodedSpans.size();
+      out.write(12); // TYPE_STRUCT
+      out.write((length >>> 24) & 0xff);
+      out.write((length >>> 16) & 0xff);
+      out.write((length >>> 8) & 0xff);
+      out.write(length & 0xff);
+      // Then each struct is written one-at-a-time with no delimiters until done.
+      for (int i = 0; i < length; i++) {
+        out.write(encodedSpans.get(i));
+      }
+    }
+  },
+  PROTO3 {
+    @Override void write(List<byte[]> encodedSpans, OutputStream out) throws IOException {
+      // repeated fields are already length-prefixed
+      for (int i = 0, length = encodedSpans.size(); i < length; i++) {
+        out.write(encodedSpans.get(i));
+      }
+    }
+  },
+  OTLP_PROTO3 {
+    @Override void write(List<byte[]> encodedSpans, OutputStream out) throws IOException {
+      // spans with the same resource are combined, so this can't be written as-is
+      out.write(Encoding.OTLP_PROTO3.encode(encodedSpans));
+    }
+  };
+
+  static ByteBufMessageEncoder forEncoding(Encoding encoding) {
+    switch (encoding) {
+      case JSON:
+        return ByteBufMessageEncoder.JSON;
+      case THRIFT:
+        return ByteBufMessageEncoder.THRIFT;
+      case PROTO3:
+        return ByteBufMessageEncoder.PROTO3;
+      case OTLP_PROTO3:
+        return ByteBufMessageEncoder.OTLP_PROTO3;
+      default:
+        throw new UnsupportedOperationException("Unsupported encoding: " + encoding.name());
+    }
+  }
+
+  abstract void write(List<byte[]> encodedSpans, OutputStream out) throws IOException;
+
+  /** The caller owns the result, and must release it. */
+  SpansBody encode(ByteBufAllocator alloc, Encoding encoding, List<byte[]> encodedSpans,
+    boolean compressionEnabled) throws IOException {
+    int contentLength = encoding.listSizeInBytes(encodedSpans);
+    // Compressed size isn't known up front, but it is almost always smaller than the input.
+    ByteBuf buf = alloc.directBuffer(contentLength);
+    try {
+      ByteBufOutputStream out = new ByteBufOutputStream(buf);
+      if (compressionEnabled) {
+        GZIPOutputStream compressor = new GZIPOutputStream(out);
+        write(encodedSpans, compressor);
+        compressor.close();
+      } else {
+        write(encodedSpans, out);
+      }
+    } catch (IOException | RuntimeException e) {
+      buf.release();
+      throw e;
+    }
+    return new SpansBody(buf, encodedSpans.size());
+  }
+
+  /** Remembers the count of spans, so that it can be added to metrics on failure. */
+  static final class SpansBody extends DefaultByteBufHolder {
+    final int spanCount;
+
+    SpansBody(ByteBuf content, int spanCount) {
+      super(content);
+      this.spanCount = spanCount;
+    }
+  }
+}
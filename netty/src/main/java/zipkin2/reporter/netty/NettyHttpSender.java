@@ -0,0 +1,501 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLException;
+import zipkin2.reporter.BaseHttpSender;
+import zipkin2.reporter.BytesMessageSender;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.HttpEndpointSupplier;
+import zipkin2.reporter.HttpEndpointSupplier.Factory;
+import zipkin2.reporter.HttpEndpointSuppliers;
+import zipkin2.reporter.ReporterMetrics;
+import zipkin2.reporter.internal.InFlightMessages;
+import zipkin2.reporter.netty.ByteBufMessageEncoder.SpansBody;
+
+import static zipkin2.reporter.HttpEndpointSuppliers.constantFactory;
+
+/**
+ * Reports spans to Zipkin, using its <a href="https://zipkin.io/zipkin-api/#/">POST</a> endpoint,
+ * via Netty.
+ *
+ * <p>Messages are written directly into pooled direct buffers, and sent over keep-alive
+ * connections pooled per host. Requests are written and responses read on the event loop, so
+ * there's no dispatcher thread per request.
+ *
+ * <p>One sender can be shared by multiple reporters, in which case they share its connections. To
+ * share threads with your application, pass its {@linkplain Builder#eventLoopGroup(EventLoopGroup,
+ * Class) event loop group}.
+ *
+ * <p>By default, {@link #send(List)} blocks until the response is read. When {@linkplain
+ * Builder#asyncSend(boolean) async}, it returns once the request is queued, so that up to {@link
+ * Builder#maxRequests(int)} messages can be in flight.
+ *
+ * <p>This sender is thread-safe.
+ *
+ * @since 3.6
+ */
+public final class NettyHttpSender extends BaseHttpSender<URI, ByteBufHolder> {
+  static final Logger logger = Logger.getLogger(NettyHttpSender.class.getName());
+  /** Responses from Zipkin are empty, but errors from proxies may have a body. */
+  static final int MAX_RESPONSE_BYTES = 64 * 1024;
+
+  /** Creates a sender that posts {@link Encoding#JSON} messages. */
+  public static NettyHttpSender create(String endpoint) {
+    return newBuilder().endpoint(endpoint).build();
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    Factory endpointSupplierFactory = constantFactory();
+    String endpoint;
+    Encoding encoding = Encoding.JSON;
+    int messageMaxBytes = 500000;
+    int connectTimeout = 10 * 1000, readTimeout = 60 * 1000;
+    boolean compressionEnabled = true, asyncSend;
+    int maxRequests = 64;
+    ReporterMetrics metrics = ReporterMetrics.NOOP_METRICS;
+    EventLoopGroup eventLoopGroup; // null means the sender owns one
+    Class<? extends SocketChannel> channelType = NioSocketChannel.class;
+
+    Builder(NettyHttpSender sender) {
+      this.endpointSupplierFactory = sender.endpointSupplierFactory;
+      this.endpoint = sender.endpointString;
+      this.encoding = sender.encoding;
+      this.messageMaxBytes = sender.messageMaxBytes;
+      this.connectTimeout = sender.connectTimeout;
+      this.readTimeout = sender.readTimeout;
+      this.compressionEnabled = sender.compressionEnabled;
+      this.asyncSend = sender.asyncSend;
+      this.maxRequests = sender.maxRequests;
+      this.metrics = sender.metrics;
+      if (!sender.ownsEventLoopGroup) {
+        this.eventLoopGroup = sender.eventLoopGroup;
+        this.channelType = sender.channelType;
+      }
+    }
+
+    /**
+     * Defaults to {@link HttpEndpointSuppliers#constantFactory()}.
+     *
+     * <p>See JavaDoc on {@link HttpEndpointSupplier} for implementation notes.
+     */
+    public Builder endpointSupplierFactory(Factory endpointSupplierFactory) {
+      if (endpointSupplierFactory == null) {
+        throw new NullPointerException("endpointSupplierFactory == null");
+      }
+      this.endpointSupplierFactory = endpointSupplierFactory;
+      return this;
+    }
+
+    /**
+     * No default. The POST URL for zipkin's <a href="https://zipkin.io/zipkin-api/#/">v2 api</a>,
+     * usually "http://zipkinhost:9411/api/v2/spans"
+     */
+    // customizable so that users can re-map /api/v2/spans ex for browser-originated traces
+    public Builder endpoint(String endpoint) {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      this.endpoint = endpoint;
+      return this;
+    }
+
+    public Builder endpoint(URI endpoint) {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      this.endpoint = endpoint.toString();
+      return this;
+    }
+
+    /** Default 10 * 1000 milliseconds. 0 implies no timeout. */
+    public Builder connectTimeout(int connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+    }
+
+    /** Default 60 * 1000 milliseconds. 0 implies no timeout. */
+    public Builder readTimeout(int readTimeout) {
+      this.readTimeout = readTimeout;
+      return this;
+    }
+
+    /** Default true. true implies that spans will be gzipped before transport. */
+    public Builder compressionEnabled(boolean compressionEnabled) {
+      this.compressionEnabled = compressionEnabled;
+      return this;
+    }
+
+    /** Maximum size of a message. Default 500KB */
+    public Builder messageMaxBytes(int messageMaxBytes) {
+      this.messageMaxBytes = messageMaxBytes;
+      return this;
+    }
+
+    /**
+     * Use this to change the encoding used in messages. Default is {@linkplain Encoding#JSON}
+     * This also controls the "Content-Type" header when sending spans.
+     *
+     * <p>Note: If ultimately sending to Zipkin, version 2.8+ is required to process protobuf.
+     */
+    public Builder encoding(Encoding encoding) {
+      if (encoding == null) throw new NullPointerException("encoding == null");
+      this.encoding = encoding;
+      return this;
+    }
+
+    /**
+     * When true, {@link BytesMessageSender#send(List)} returns as soon as the request is queued,
+     * instead of waiting for the response. Defaults to false.
+     *
+     * <p>This allows the reporting thread to encode the next message while prior ones are in
+     * flight. Failures that occur after {@code send} returns are reported to {@link
+     * #metrics(ReporterMetrics)} instead of the caller.
+     */
+    public Builder asyncSend(boolean asyncSend) {
+      this.asyncSend = asyncSend;
+      return this;
+    }
+
+    /**
+     * Maximum connections per host, which is also the maximum in-flight requests when {@link
+     * #asyncSend(boolean) async}. Once reached, {@link BytesMessageSender#send(List)} blocks until
+     * a request completes. Default 64
+     */
+    public Builder maxRequests(int maxRequests) {
+      if (maxRequests <= 0) throw new IllegalArgumentException("maxRequests <= 0");
+      this.maxRequests = maxRequests;
+      return this;
+    }
+
+    /**
+     * Records messages and spans dropped after {@link BytesMessageSender#send(List)} returns,
+     * which only happens when {@link #asyncSend(boolean) async}. Use the same instance as passed
+     * to the reporter. Defaults to no-op.
+     */
+    public Builder metrics(ReporterMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Sets the event loop group to share, and the type of channel it supports, such as {@code
+     * EpollSocketChannel.class}. The caller is responsible for shutting it down after the sender
+     * is closed.
+     *
+     * <p>By default, the sender creates a single-threaded {@link NioEventLoopGroup}, and shuts it
+     * down on close.
+     */
+    public Builder eventLoopGroup(EventLoopGroup eventLoopGroup,
+      Class<? extends SocketChannel> channelType) {
+      if (eventLoopGroup == null) throw new NullPointerException("eventLoopGroup == null");
+      if (channelType == null) throw new NullPointerException("channelType == null");
+      this.eventLoopGroup = eventLoopGroup;
+      this.channelType = channelType;
+      return this;
+    }
+
+    public NettyHttpSender build() {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      return new NettyHttpSender(this);
+    }
+
+    Builder() {
+    }
+  }
+
+  final ByteBufMessageEncoder encoder;
+  final int messageMaxBytes, connectTimeout, readTimeout, maxRequests;
+  final boolean compressionEnabled, asyncSend;
+  final ReporterMetrics metrics;
+  final InFlightMessages inFlight; // null unless asyncSend
+  final EventLoopGroup eventLoopGroup;
+  final Class<? extends SocketChannel> channelType;
+  final boolean ownsEventLoopGroup;
+  final ChannelPools pools;
+  final ByteBufAllocator alloc = ByteBufAllocator.DEFAULT;
+  final Factory endpointSupplierFactory; // for toBuilder()
+  final String endpointString; // for toBuilder()
+
+  NettyHttpSender(Builder builder) {
+    super(builder.encoding, builder.endpointSupplierFactory, builder.endpoint);
+    this.encoder = ByteBufMessageEncoder.forEncoding(builder.encoding);
+    this.messageMaxBytes = builder.messageMaxBytes;
+    this.connectTimeout = builder.connectTimeout;
+    this.readTimeout = builder.readTimeout;
+    this.compressionEnabled = builder.compressionEnabled;
+    this.asyncSend = builder.asyncSend;
+    this.maxRequests = builder.maxRequests;
+    this.metrics = builder.metrics;
+    this.inFlight = asyncSend ? new InFlightMessages(maxRequests, metrics, logger) : null;
+    this.endpointSupplierFactory = builder.endpointSupplierFactory;
+    this.endpointString = builder.endpoint;
+
+    this.ownsEventLoopGroup = builder.eventLoopGroup == null;
+    this.eventLoopGroup = ownsEventLoopGroup
+      ? new NioEventLoopGroup(1, new DefaultThreadFactory("zipkin-netty-sender", true))
+      : builder.eventLoopGroup;
+    this.channelType = builder.channelType;
+    Bootstrap bootstrap = new Bootstrap().group(eventLoopGroup).channel(channelType)
+      .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+      .option(ChannelOption.TCP_NODELAY, true)
+      .option(ChannelOption.SO_KEEPALIVE, true);
+    this.pools = new ChannelPools(bootstrap, maxRequests);
+  }
+
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  @Override public int messageMaxBytes() {
+    return messageMaxBytes;
+  }
+
+  @Override protected URI newEndpoint(String endpoint) {
+    URI result;
+    try {
+      result = URI.create(endpoint);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(e.getMessage());
+    }
+    String scheme = result.getScheme();
+    if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)
+      || result.getHost() == null) {
+      throw new IllegalArgumentException("invalid POST url: " + endpoint);
+    }
+    return result;
+  }
+
+  /** The result is released when the request is written, or fails. */
+  @Override protected ByteBufHolder newBody(List<byte[]> encodedSpans) throws IOException {
+    return encoder.encode(alloc, encoding, encodedSpans, compressionEnabled);
+  }
+
+  @Override protected void postSpans(URI endpoint, ByteBufHolder body) throws IOException {
+    awaitResponse(start(endpoint, body));
+  }
+
+  @Override protected void postSpans(URI endpoint, ByteBufHolder body, Completion completion)
+    throws IOException {
+    if (!asyncSend) {
+      super.postSpans(endpoint, body, completion);
+      return;
+    }
+
+    int spanCount = ((SpansBody) body).spanCount;
+    try {
+      inFlight.acquire();
+    } catch (InterruptedIOException e) {
+      body.release();
+      throw e;
+    }
+    Future<Void> result;
+    try {
+      result = start(endpoint, body);
+    } catch (IOException | RuntimeException | Error e) {
+      inFlight.release();
+      throw e;
+    }
+    result.addListener(f -> {
+      if (f.isSuccess()) {
+        completion.onSuccess();
+        inFlight.release();
+      } else {
+        completion.onError(f.cause());
+        inFlight.dropped(f.cause(), spanCount);
+      }
+    });
+  }
+
+  /** Starts the request, releasing the body when it is written or fails. */
+  Future<Void> start(URI endpoint, ByteBufHolder body) throws IOException {
+    FullHttpRequest request = newRequest(endpoint, body.content());
+    ChannelPool pool;
+    try {
+      pool = pools.get(new Origin(endpoint));
+    } catch (UncheckedIOException e) {
+      request.release();
+      throw e.getCause();
+    }
+
+    // Use an executor outside the group, so that send() can block even when called from it.
+    Promise<Void> result = new DefaultPromise<>(GlobalEventExecutor.INSTANCE);
+    pool.acquire().addListener((FutureListener<Channel>) f -> {
+      if (!f.isSuccess()) {
+        request.release();
+        result.tryFailure(f.cause());
+        return;
+      }
+      Channel channel = f.getNow();
+      if (channel.eventLoop().inEventLoop()) {
+        write(channel, pool, endpoint, request, result);
+      } else {
+        channel.eventLoop().execute(() -> write(channel, pool, endpoint, request, result));
+      }
+    });
+    return result;
+  }
+
+  void write(Channel channel, ChannelPool pool, URI endpoint, FullHttpRequest request,
+    Promise<Void> result) {
+    PendingResponse pending = new PendingResponse(channel, pool, endpoint, result, readTimeout);
+    pending.start();
+    channel.writeAndFlush(request).addListener(pending);
+  }
+
+  static void awaitResponse(Future<Void> result) throws IOException {
+    try {
+      result.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+    Throwable cause = result.cause();
+    if (cause == null) return;
+    if (cause instanceof IOException) throw (IOException) cause;
+    if (cause instanceof Error) throw (Error) cause;
+    throw new IOException(cause);
+  }
+
+  FullHttpRequest newRequest(URI endpoint, ByteBuf content) {
+    String path = endpoint.getRawPath();
+    if (path == null || path.isEmpty()) path = "/";
+    if (endpoint.getRawQuery() != null) path += "?" + endpoint.getRawQuery();
+
+    FullHttpRequest request =
+      new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, path, content);
+    HttpHeaders headers = request.headers();
+    headers.set(HttpHeaderNames.HOST, endpoint.getPort() == -1
+      ? endpoint.getHost() : endpoint.getHost() + ":" + endpoint.getPort());
+    // Amplification can occur when the Zipkin endpoint is proxied, and the proxy is instrumented.
+    // This prevents that in proxies, such as Envoy, that understand B3 single format,
+    headers.set("b3", "0");
+    headers.set(HttpHeaderNames.CONTENT_TYPE, encoding.mediaType());
+    headers.setInt(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+    if (compressionEnabled) headers.set(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+    return request;
+  }
+
+  /** Waits up to a second for in-flight requests to finish. */
+  @Override protected void doClose() {
+    if (inFlight != null && !inFlight.awaitCompletion(1, TimeUnit.SECONDS)) {
+      logger.warning("Timed out waiting for " + inFlight.inFlight() + " in-flight requests");
+    }
+    pools.close();
+    if (ownsEventLoopGroup) eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+  }
+
+  /** Connections are pooled by scheme, host and port, as paths can differ per request. */
+  static final class Origin {
+    final boolean ssl;
+    final String host;
+    final int port;
+
+    Origin(URI endpoint) {
+      this.ssl = "https".equalsIgnoreCase(endpoint.getScheme());
+      this.host = endpoint.getHost();
+      this.port = endpoint.getPort() != -1 ? endpoint.getPort() : ssl ? 443 : 80;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Origin)) return false;
+      Origin that = (Origin) o;
+      return ssl == that.ssl && host.equals(that.host) && port == that.port;
+    }
+
+    @Override public int hashCode() {
+      int h = 1000003;
+      h ^= ssl ? 1231 : 1237;
+      h *= 1000003;
+      h ^= host.hashCode();
+      h *= 1000003;
+      h ^= port;
+      return h;
+    }
+  }
+
+  static final class ChannelPools extends AbstractChannelPoolMap<Origin, FixedChannelPool> {
+    final Bootstrap bootstrap;
+    final int maxConnections;
+    volatile SslContext sslContext; // lazy as most deployments use plaintext
+
+    ChannelPools(Bootstrap bootstrap, int maxConnections) {
+      this.bootstrap = bootstrap;
+      this.maxConnections = maxConnections;
+    }
+
+    @Override protected FixedChannelPool newPool(Origin origin) {
+      SslContext sslContext = origin.ssl ? sslContext() : null;
+      Bootstrap originBootstrap = bootstrap.clone().remoteAddress(origin.host, origin.port);
+      return new FixedChannelPool(originBootstrap, new AbstractChannelPoolHandler() {
+        @Override public void channelCreated(Channel channel) {
+          ChannelPipeline pipeline = channel.pipeline();
+          if (sslContext != null) {
+            pipeline.addLast(sslContext.newHandler(channel.alloc(), origin.host, origin.port));
+          }
+          pipeline.addLast(new HttpClientCodec());
+          pipeline.addLast(new HttpObjectAggregator(MAX_RESPONSE_BYTES));
+          pipeline.addLast(ResponseHandler.INSTANCE);
+        }
+      }, maxConnections);
+    }
+
+    SslContext sslContext() {
+      SslContext result = sslContext;
+      if (result != null) return result;
+      synchronized (this) {
+        if (sslContext == null) {
+          try {
+            sslContext = SslContextBuilder.forClient().build();
+          } catch (SSLException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+        return sslContext;
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Tracks the request in flight on a pooled channel. Whichever of the response, a write failure,
+ * the channel closing or the read timeout happens first completes the request and returns the
+ * channel to the pool.
+ */
+final class PendingResponse implements ChannelFutureListener, Runnable {
+  static final AttributeKey<PendingResponse> PENDING =
+    AttributeKey.valueOf(PendingResponse.class, "PENDING");
+
+  final Channel channel;
+  final ChannelPool pool;
+  final URI endpoint;
+  final Promise<Void> result;
+  ScheduledFuture<?> timeout; // null unless readTimeout > 0
+  final int readTimeout;
+
+  PendingResponse(Channel channel, ChannelPool pool, URI endpoint, Promise<Void> result,
+    int readTimeout) {
+    this.channel = channel;
+    this.pool = pool;
+    this.endpoint = endpoint;
+    this.result = result;
+    this.readTimeout = readTimeout;
+  }
+
+  /** Attaches to the channel. Call on its event loop before writing the request. */
+  void start() {
+    channel.attr(PENDING).set(this);
+    if (readTimeout > 0) timeout = channel.eventLoop().schedule(this, readTimeout, MILLISECONDS);
+  }
+
+  /** Called when the request write completes. */
+  @Override public void operationComplete(ChannelFuture future) {
+    if (!future.isSuccess()) complete(future.cause());
+  }
+
+  /** Called when the read timeout fires. */
+  @Override public void run() {
+    complete(new SocketTimeoutException(
+      "no response from " + endpoint + " within " + readTimeout + "ms"));
+  }
+
+  /** Completes the request, if it wasn't already. A null cause means success. */
+  void complete(Throwable cause) {
+    if (!channel.attr(PENDING).compareAndSet(this, null)) return; // already complete
+    if (timeout != null) timeout.cancel(false);
+    // A channel isn't reused after an error, as we don't know the state of its response stream.
+    if (cause != null) channel.close();
+    pool.release(channel);
+    if (cause == null) {
+      result.trySuccess(null);
+    } else {
+      result.tryFailure(cause);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.netty;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static zipkin2.reporter.netty.PendingResponse.PENDING;
+
+/** Completes the {@link PendingResponse} of a channel. */
+@Sharable
+final class ResponseHandler extends SimpleChannelInboundHandler<FullHttpResponse> {
+  static final ResponseHandler INSTANCE = new ResponseHandler();
+
+  @Override protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+    PendingResponse pending = ctx.channel().attr(PENDING).get();
+    if (pending == null) return; // unsolicited, or arrived after the read timeout
+    int status = response.status().code();
+    if (status < 200 || status >= 300) {
+      pending.complete(new IOException("response for " + pending.endpoint + " failed: "
+        + status + " " + response.content().toString(UTF_8)));
+      return;
+    }
+    if (!HttpUtil.isKeepAlive(response)) ctx.close(); // the pool discards inactive channels
+    pending.complete(null);
+  }
+
+  @Override public void channelInactive(ChannelHandlerContext ctx) {
+    PendingResponse pending = ctx.channel().attr(PENDING).get();
+    if (pending != null) {
+      pending.complete(new IOException("connection to " + pending.endpoint + " closed"));
+    }
+    ctx.fireChannelInactive();
+  }
+
+  @Override public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    PendingResponse pending = ctx.channel().attr(PENDING).get();
+    if (pending != null) pending.complete(cause);
+    ctx.close();
+  }
+}
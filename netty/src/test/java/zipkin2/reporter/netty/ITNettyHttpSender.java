@@ -0,0 +1,226 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.netty;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.GzipSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.reporter.BytesMessageSender;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.HttpEndpointSupplier;
+import zipkin2.reporter.InMemoryReporterMetrics;
+import zipkin2.reporter.netty.NettyHttpSenderTest.BaseHttpEndpointSupplier;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+import static zipkin2.reporter.netty.NettyHttpSenderTest.sendSpans;
+
+class ITNettyHttpSender {
+  MockWebServer server = new MockWebServer();
+
+  @AfterEach void closeServer() throws IOException {
+    sender.close();
+    server.close();
+  }
+
+  String endpoint = server.url("/api/v2/spans").toString();
+  NettyHttpSender sender =
+    NettyHttpSender.newBuilder().endpoint(endpoint).compressionEnabled(false).build();
+
+  @Test void send() throws Exception {
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+    // Ensure only one request was sent
+    assertThat(server.getRequestCount()).isEqualTo(1);
+
+    // Now, let's read back the spans we sent!
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Content-Length"))
+      .isEqualTo(String.valueOf(request.getBodySize()));
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(request.getBody().readByteArray()))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void reusesConnection() throws Exception {
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN);
+    sendSpans(sender, CLIENT_SPAN);
+
+    assertThat(server.takeRequest().getSequenceNumber()).isZero();
+    assertThat(server.takeRequest().getSequenceNumber()).isOne();
+  }
+
+  @Test void readTimeout() {
+    sender.close();
+    sender = sender.toBuilder().readTimeout(100).build();
+    server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+
+    assertThatThrownBy(() -> sendSpans(sender, CLIENT_SPAN))
+      .isInstanceOf(SocketTimeoutException.class);
+  }
+
+  @Test void emptyOk() throws Exception {
+    server.enqueue(new MockResponse());
+
+    sender.send(Collections.emptyList());
+
+    assertThat(server.getRequestCount()).isEqualTo(1);
+  }
+
+  /**
+   * This tests that the {@linkplain HttpEndpointSupplier} is only called once per
+   * {@link BytesMessageSender#send(List)}.
+   */
+  @Test void dynamicEndpoint() throws Exception {
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+
+    AtomicInteger suffix = new AtomicInteger();
+    sender.close();
+    sender = sender.toBuilder()
+      .endpointSupplierFactory(e -> new BaseHttpEndpointSupplier() {
+          @Override public String get() {
+            return e + "/" + suffix.incrementAndGet();
+          }
+        }
+      )
+      .build();
+
+    sender.send(Collections.emptyList());
+    sender.send(Collections.emptyList());
+
+    assertThat(server.takeRequest().getPath()).endsWith("/1");
+    assertThat(server.takeRequest().getPath()).endsWith("/2");
+  }
+
+  @Test void sendFailsOnDisconnect() {
+    server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+
+    assertThatThrownBy(() -> sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN))
+      .isInstanceOf(IOException.class);
+  }
+
+  @Test void sendFailsOnServerError() {
+    server.enqueue(new MockResponse().setResponseCode(500).setBody("oops"));
+
+    assertThatThrownBy(() -> sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN))
+      .isInstanceOf(IOException.class)
+      .hasMessage("response for " + endpoint + " failed: 500 oops");
+  }
+
+  @Test void send_PROTO3() throws Exception {
+    sender = sender.toBuilder().encoding(Encoding.PROTO3).build();
+
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(server.takeRequest().getBody().readByteArray()))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void send_THRIFT() throws Exception {
+    sender = sender.toBuilder().encoding(Encoding.THRIFT).build();
+
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(SpanBytesDecoder.THRIFT.decodeList(server.takeRequest().getBody().readByteArray()))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void compression() throws Exception {
+    List<RecordedRequest> requests = new ArrayList<>();
+    for (boolean compressionEnabled : asList(true, false)) {
+      sender = sender.toBuilder().compressionEnabled(compressionEnabled).build();
+
+      server.enqueue(new MockResponse());
+
+      sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+      // block until the request arrived
+      requests.add(server.takeRequest());
+    }
+
+    // we expect the first compressed request to be smaller than the uncompressed one.
+    assertThat(requests.get(0).getBodySize())
+      .isLessThan(requests.get(1).getBodySize());
+
+    RecordedRequest compressed = requests.get(0);
+    assertThat(compressed.getHeader("Content-Encoding")).isEqualTo("gzip");
+    Buffer uncompressed = new Buffer();
+    uncompressed.writeAll(new GzipSource(compressed.getBody()));
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(uncompressed.readByteArray()))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void ensuresProxiesDontTrace() throws Exception {
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+    // If the Zipkin endpoint is proxied and instrumented, it will know "0" means don't trace.
+    assertThat(server.takeRequest().getHeader("b3")).isEqualTo("0");
+  }
+
+  @Test void mediaTypeBasedOnSpanEncoding() throws Exception {
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+    // block until the request arrived
+    assertThat(server.takeRequest().getHeader("Content-Type"))
+      .isEqualTo("application/json");
+  }
+
+  @Test void asyncSend() throws Exception {
+    sender.close();
+    sender = sender.toBuilder().asyncSend(true).build();
+
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN);
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(server.takeRequest(1, TimeUnit.SECONDS)).isNotNull();
+    assertThat(server.takeRequest(1, TimeUnit.SECONDS)).isNotNull();
+    assertThat(sender.inFlight.awaitCompletion(1, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test void asyncSend_failuresIncrementMetrics() throws Exception {
+    InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+    sender.close();
+    sender = sender.toBuilder().asyncSend(true).metrics(metrics).build();
+
+    server.enqueue(new MockResponse().setResponseCode(500));
+
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN); // doesn't throw
+
+    assertThat(sender.inFlight.awaitCompletion(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(metrics.messagesDropped()).isEqualTo(1);
+    assertThat(metrics.spansDropped()).isEqualTo(2);
+  }
+}
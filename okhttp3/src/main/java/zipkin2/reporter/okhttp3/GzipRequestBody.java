@@ -0,0 +1,148 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.okhttp3;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * Compresses another body as it is written to the socket, so that the compressed message is never
+ * held in memory. As the compressed size isn't known up front, this uses chunked encoding.
+ *
+ * <p>Unlike {@link okio.GzipSink}, deflaters are pooled, as they hold native memory that is costly
+ * to allocate per request.
+ */
+final class GzipRequestBody extends RequestBody {
+  /** Magic number, deflate, no flags, no modification time, no extra flags, unknown OS. */
+  static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+  final RequestBody body;
+  final DeflaterPool deflaters;
+
+  GzipRequestBody(RequestBody body, DeflaterPool deflaters) {
+    this.body = body;
+    this.deflaters = deflaters;
+  }
+
+  @Override public MediaType contentType() {
+    return body.contentType();
+  }
+
+  @Override public long contentLength() {
+    return -1L; // unknown until compressed
+  }
+
+  @Override public void writeTo(BufferedSink sink) throws IOException {
+    Deflater deflater = deflaters.acquire();
+    try {
+      sink.write(GZIP_HEADER);
+      DeflatingSink deflating = new DeflatingSink(sink, deflater);
+      BufferedSink buffered = Okio.buffer(deflating);
+      body.writeTo(buffered);
+      buffered.emit();
+      deflating.finish();
+    } finally {
+      deflaters.release(deflater);
+    }
+  }
+
+  /** Writes deflated input to the sink, without closing it. */
+  static final class DeflatingSink implements Sink {
+    final BufferedSink sink;
+    final Deflater deflater;
+    final CRC32 crc = new CRC32();
+    final byte[] chunk = new byte[8192], deflated = new byte[8192];
+
+    DeflatingSink(BufferedSink sink, Deflater deflater) {
+      this.sink = sink;
+      this.deflater = deflater;
+    }
+
+    @Override public void write(Buffer source, long byteCount) throws IOException {
+      while (byteCount > 0) {
+        int read = source.read(chunk, 0, (int) Math.min(byteCount, chunk.length));
+        if (read == -1) throw new IllegalStateException("source exhausted");
+        byteCount -= read;
+        crc.update(chunk, 0, read);
+        deflater.setInput(chunk, 0, read);
+        while (!deflater.needsInput()) deflate();
+      }
+    }
+
+    /** Writes the remaining compressed data and the gzip trailer. */
+    void finish() throws IOException {
+      deflater.finish();
+      while (!deflater.finished()) deflate();
+      writeIntLe((int) crc.getValue());
+      writeIntLe((int) deflater.getBytesRead());
+    }
+
+    void deflate() throws IOException {
+      int count = deflater.deflate(deflated);
+      if (count > 0) {
+        sink.write(deflated, 0, count);
+        sink.emitCompleteSegments();
+      }
+    }
+
+    void writeIntLe(int i) throws IOException {
+      sink.writeByte(i & 0xff);
+      sink.writeByte((i >>> 8) & 0xff);
+      sink.writeByte((i >>> 16) & 0xff);
+      sink.writeByte((i >>> 24) & 0xff);
+    }
+
+    @Override public void flush() throws IOException {
+      sink.flush();
+    }
+
+    @Override public Timeout timeout() {
+      return sink.timeout();
+    }
+
+    @Override public void close() {
+      throw new UnsupportedOperationException("call finish() instead");
+    }
+  }
+
+  /**
+   * Pools up to the max in-flight requests worth of deflaters. Each is reset before reuse, and
+   * ended when the pool is full or closed.
+   */
+  static final class DeflaterPool {
+    final ArrayBlockingQueue<Deflater> pool;
+    volatile boolean closed;
+
+    DeflaterPool(int maxDeflaters) {
+      this.pool = new ArrayBlockingQueue<Deflater>(maxDeflaters);
+    }
+
+    Deflater acquire() {
+      Deflater deflater = pool.poll();
+      return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    void release(Deflater deflater) {
+      deflater.reset();
+      if (closed || !pool.offer(deflater)) deflater.end();
+    }
+
+    void close() {
+      closed = true;
+      for (Deflater deflater; (deflater = pool.poll()) != null; ) {
+        deflater.end();
+      }
+    }
+  }
+}
@@ -10,7 +10,9 @@ import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Dispatcher;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
@@ -22,23 +24,31 @@ import okhttp3.ResponseBody;
 import okio.Buffer;
 import okio.BufferedSink;
 import okio.BufferedSource;
-import okio.GzipSink;
 import okio.GzipSource;
 import okio.Okio;
 import zipkin2.reporter.BaseHttpSender;
 import zipkin2.reporter.Component;
 import zipkin2.reporter.Encoding;
+import zipkin2.reporter.ReporterMetrics;
+import zipkin2.reporter.internal.InFlightMessages;
+import zipkin2.reporter.okhttp3.GzipRequestBody.DeflaterPool;
+import zipkin2.reporter.okhttp3.RequestBodyMessageEncoder.StreamingRequestBody;
 
 /**
  * We have to nest this class until v4 when {@linkplain OkHttpSender} no longer needs to extend
  * {@linkplain Component}.
  */
 final class InternalOkHttpSender extends BaseHttpSender<HttpUrl, RequestBody> {
+  static final Logger logger = Logger.getLogger(OkHttpSender.class.getName());
+
   final OkHttpClient client;
   final RequestBodyMessageEncoder encoder;
   final Encoding encoding;
   final int messageMaxBytes, maxRequests;
-  final boolean compressionEnabled;
+  final boolean compressionEnabled, precomputeContentLength, asyncSend;
+  final ReporterMetrics metrics;
+  final DeflaterPool deflaters; // null unless compressionEnabled
+  final InFlightMessages inFlight; // null unless asyncSend
 
   InternalOkHttpSender(OkHttpSender.Builder builder) {
     super(builder.encoding, builder.endpointSupplierFactory, builder.endpoint);
@@ -47,6 +57,11 @@ final class InternalOkHttpSender extends BaseHttpSender<HttpUrl, RequestBody> {
     maxRequests = builder.maxRequests;
     messageMaxBytes = builder.messageMaxBytes;
     compressionEnabled = builder.compressionEnabled;
+    precomputeContentLength = builder.precomputeContentLength;
+    asyncSend = builder.asyncSend;
+    metrics = builder.metrics;
+    deflaters = compressionEnabled ? new DeflaterPool(maxRequests) : null;
+    inFlight = asyncSend ? new InFlightMessages(maxRequests, metrics, logger) : null;
     Dispatcher dispatcher = newDispatcher(maxRequests);
 
     // doing the extra "build" here prevents us from leaking our dispatcher to the builder
@@ -68,9 +83,64 @@ final class InternalOkHttpSender extends BaseHttpSender<HttpUrl, RequestBody> {
   }
 
   @Override protected void postSpans(HttpUrl endpoint, RequestBody body) throws IOException {
-    Request request = newRequest(endpoint, body);
-    Call call = client.newCall(request);
-    parseResponse(call.execute());
+    parseResponse(client.newCall(newRequest(endpoint, body)).execute());
+  }
+
+  @Override protected void postSpans(HttpUrl endpoint, RequestBody body, Completion completion)
+    throws IOException {
+    if (!asyncSend) {
+      super.postSpans(endpoint, body, completion);
+      return;
+    }
+
+    int spanCount = ((StreamingRequestBody) body).values.size();
+    Call call = client.newCall(newRequest(endpoint, body));
+    // The permit bounds enqueued calls to maxRequests, so none wait in the dispatcher's queue.
+    inFlight.acquire();
+    try {
+      call.enqueue(new InFlightCallback(inFlight, completion, spanCount));
+    } catch (RuntimeException e) {
+      inFlight.release();
+      throw e;
+    } catch (Error e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  static final class InFlightCallback implements Callback {
+    final InFlightMessages inFlight;
+    final Completion completion;
+    final int spanCount;
+
+    InFlightCallback(InFlightMessages inFlight, Completion completion, int spanCount) {
+      this.inFlight = inFlight;
+      this.completion = completion;
+      this.spanCount = spanCount;
+    }
+
+    @Override public void onFailure(Call call, IOException e) {
+      dropped(e);
+    }
+
+    @Override public void onResponse(Call call, Response response) {
+      try {
+        parseResponse(response);
+      } catch (IOException e) {
+        dropped(e);
+        return;
+      } catch (RuntimeException e) {
+        dropped(e);
+        return;
+      }
+      completion.onSuccess();
+      inFlight.release();
+    }
+
+    void dropped(Throwable e) {
+      completion.onError(e);
+      inFlight.dropped(e, spanCount);
+    }
   }
 
   Request newRequest(HttpUrl endpoint, RequestBody body)
@@ -81,11 +151,12 @@ final class InternalOkHttpSender extends BaseHttpSender<HttpUrl, RequestBody> {
     request.addHeader("b3", "0");
     if (compressionEnabled) {
       request.addHeader("Content-Encoding", "gzip");
-      Buffer gzipped = new Buffer();
-      BufferedSink gzipSink = Okio.buffer(new GzipSink(gzipped));
-      body.writeTo(gzipSink);
-      gzipSink.close();
-      body = new BufferRequestBody(body.contentType(), gzipped);
+      body = new GzipRequestBody(body, deflaters);
+      if (precomputeContentLength) {
+        Buffer gzipped = new Buffer();
+        body.writeTo(gzipped);
+        body = new BufferRequestBody(body.contentType(), gzipped);
+      }
     }
     request.post(body);
     return request.build();
@@ -147,6 +218,7 @@ final class InternalOkHttpSender extends BaseHttpSender<HttpUrl, RequestBody> {
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
     }
+    if (deflaters != null) deflaters.close();
   }
 
   static Dispatcher newDispatcher(int maxRequests) {
@@ -4,6 +4,7 @@
  */
 package zipkin2.reporter.okhttp3;
 
+import java.util.List;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import zipkin2.reporter.AsyncReporter;
@@ -11,6 +12,7 @@ import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.Encoding;
 import zipkin2.reporter.HttpEndpointSupplier;
 import zipkin2.reporter.HttpEndpointSuppliers;
+import zipkin2.reporter.ReporterMetrics;
 import zipkin2.reporter.internal.SenderAdapter;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -53,6 +55,10 @@ import static zipkin2.reporter.HttpEndpointSuppliers.constantFactory;
  *
  * <h3>Implementation Notes</h3>
  *
+ * <p>By default, {@link #send(List)} blocks until the response is read. When {@linkplain
+ * Builder#asyncSend(boolean) async}, the request is enqueued on OkHttp's dispatcher instead, so
+ * that up to {@link Builder#maxRequests(int)} messages can be in flight.
+ *
  * <p>This sender is thread-safe.
  */
 public final class OkHttpSender extends SenderAdapter {
@@ -70,8 +76,9 @@ public final class OkHttpSender extends SenderAdapter {
     HttpEndpointSupplier.Factory endpointSupplierFactory = constantFactory();
     String endpoint;
     Encoding encoding = Encoding.JSON;
-    boolean compressionEnabled = true;
+    boolean compressionEnabled = true, precomputeContentLength, asyncSend;
     int maxRequests = 64;
+    ReporterMetrics metrics = ReporterMetrics.NOOP_METRICS;
     int messageMaxBytes = 500_000;
 
     Builder(OkHttpClient.Builder clientBuilder) {
@@ -84,6 +91,9 @@ public final class OkHttpSender extends SenderAdapter {
       endpoint = sender.endpoint;
       maxRequests = sender.delegate.client.dispatcher().getMaxRequests();
       compressionEnabled = sender.delegate.compressionEnabled;
+      precomputeContentLength = sender.delegate.precomputeContentLength;
+      asyncSend = sender.delegate.asyncSend;
+      metrics = sender.delegate.metrics;
       encoding = sender.delegate.encoding;
       messageMaxBytes = sender.delegate.messageMaxBytes;
     }
@@ -124,18 +134,58 @@ public final class OkHttpSender extends SenderAdapter {
       return this;
     }
 
+    /**
+     * Default false, which compresses spans as they are written to the socket, using chunked
+     * transfer encoding. This avoids holding the compressed message in memory.
+     *
+     * <p>Set true when a proxy in front of Zipkin requires a "Content-Length" header. This
+     * compresses the message in memory first. This has no effect unless {@link
+     * #compressionEnabled(boolean) compression is enabled}.
+     */
+    public Builder precomputeContentLength(boolean precomputeContentLength) {
+      this.precomputeContentLength = precomputeContentLength;
+      return this;
+    }
+
     /** Maximum size of a message. Default 500KB */
     public Builder messageMaxBytes(int messageMaxBytes) {
       this.messageMaxBytes = messageMaxBytes;
       return this;
     }
 
-    /** Maximum in-flight requests. Default 64 */
+    /**
+     * Maximum in-flight requests. When {@link #asyncSend(boolean) async}, {@link
+     * BytesMessageSender#send(List)} blocks once reached, until a request completes. Default 64
+     */
     public Builder maxRequests(int maxRequests) {
       this.maxRequests = maxRequests;
       return this;
     }
 
+    /**
+     * When true, {@link BytesMessageSender#send(List)} enqueues the request and returns, instead of
+     * waiting for the response. Defaults to false.
+     *
+     * <p>This allows the reporting thread to encode the next message while up to {@link
+     * #maxRequests(int)} prior ones are in flight. Failures that occur after {@code send} returns
+     * are reported to {@link #metrics(ReporterMetrics)} instead of the caller.
+     */
+    public Builder asyncSend(boolean asyncSend) {
+      this.asyncSend = asyncSend;
+      return this;
+    }
+
+    /**
+     * Records messages and spans dropped after {@link BytesMessageSender#send(List)} returns,
+     * which only happens when {@link #asyncSend(boolean) async}. Use the same instance as passed
+     * to the reporter. Defaults to no-op.
+     */
+    public Builder metrics(ReporterMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
     /**
      * Use this to change the encoding used in messages. Default is {@linkplain Encoding#JSON} This
      * also controls the "Content-Type" header when sending spans.
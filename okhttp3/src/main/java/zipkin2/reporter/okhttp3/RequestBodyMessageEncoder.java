@@ -27,6 +27,11 @@ enum RequestBodyMessageEncoder {
     @Override RequestBody encode(List<byte[]> encodedSpans) {
       return new Protobuf3RequestBody(encodedSpans);
     }
+  },
+  OTLP_PROTO3 {
+    @Override RequestBody encode(List<byte[]> encodedSpans) {
+      return new OtlpProto3RequestBody(encodedSpans);
+    }
   };
 
   static RequestBodyMessageEncoder forEncoding(Encoding encoding) {
@@ -37,6 +42,8 @@ enum RequestBodyMessageEncoder {
         return RequestBodyMessageEncoder.THRIFT;
       case PROTO3:
         return RequestBodyMessageEncoder.PROTO3;
+      case OTLP_PROTO3:
+        return RequestBodyMessageEncoder.OTLP_PROTO3;
       default:
         throw new UnsupportedOperationException("Unsupported encoding: " + encoding.name());
     }
@@ -114,5 +121,16 @@ enum RequestBodyMessageEncoder {
     }
   }
 
+  static final class OtlpProto3RequestBody extends StreamingRequestBody {
+    OtlpProto3RequestBody(List<byte[]> values) {
+      super(Encoding.OTLP_PROTO3, values);
+    }
+
+    @Override public void writeTo(BufferedSink sink) throws IOException {
+      // spans with the same resource are combined, so this can't be written as-is
+      sink.write(Encoding.OTLP_PROTO3.encode(values));
+    }
+  }
+
   abstract RequestBody encode(List<byte[]> encodedSpans);
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.okhttp3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.GzipSource;
+import org.junit.jupiter.api.Test;
+import zipkin2.reporter.okhttp3.GzipRequestBody.DeflaterPool;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GzipRequestBodyTest {
+  DeflaterPool deflaters = new DeflaterPool(1);
+
+  @Test void writeTo_isValidGzip() throws Exception {
+    List<byte[]> spans = new ArrayList<>();
+    Random random = new Random(1L);
+    for (int i = 0; i < 100; i++) { // larger than a segment, and partly incompressible
+      byte[] span = new byte[1024];
+      random.nextBytes(span);
+      spans.add(span);
+    }
+    RequestBody body = RequestBodyMessageEncoder.PROTO3.encode(spans);
+
+    assertThat(gunzip(new GzipRequestBody(body, deflaters)))
+      .isEqualTo(toByteArray(body));
+  }
+
+  @Test void writeTo_empty() throws Exception {
+    RequestBody body = RequestBodyMessageEncoder.PROTO3.encode(new ArrayList<>());
+
+    assertThat(gunzip(new GzipRequestBody(body, deflaters))).isEmpty();
+  }
+
+  @Test void writeTo_reusesDeflater() throws Exception {
+    RequestBody body = RequestBodyMessageEncoder.JSON.encode(asList(new byte[] {'{', '}'}));
+
+    gunzip(new GzipRequestBody(body, deflaters));
+    Deflater deflater = deflaters.pool.peek();
+    assertThat(deflater).isNotNull();
+
+    // The deflater is reset on release, so it produces the same output again.
+    assertThat(gunzip(new GzipRequestBody(body, deflaters))).isEqualTo(toByteArray(body));
+    assertThat(deflaters.pool).containsExactly(deflater);
+  }
+
+  @Test void contentLength_unknown() {
+    RequestBody body = RequestBodyMessageEncoder.JSON.encode(new ArrayList<>());
+
+    assertThat(new GzipRequestBody(body, deflaters).contentLength()).isEqualTo(-1L);
+  }
+
+  @Test void close_endsPooledDeflaters() throws Exception {
+    RequestBody body = RequestBodyMessageEncoder.JSON.encode(new ArrayList<>());
+    gunzip(new GzipRequestBody(body, deflaters));
+
+    deflaters.close();
+
+    assertThat(deflaters.pool).isEmpty();
+  }
+
+  static byte[] gunzip(RequestBody body) throws Exception {
+    Buffer gzipped = new Buffer();
+    body.writeTo(gzipped);
+    Buffer result = new Buffer();
+    result.writeAll(new GzipSource(gzipped));
+    return result.readByteArray();
+  }
+
+  static byte[] toByteArray(RequestBody body) throws Exception {
+    Buffer result = new Buffer();
+    body.writeTo(result);
+    return result.readByteArray();
+  }
+}
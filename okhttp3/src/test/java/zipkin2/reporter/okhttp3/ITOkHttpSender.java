@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import okhttp3.mockwebserver.Dispatcher;
@@ -15,6 +16,8 @@ import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.GzipSource;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import zipkin2.codec.SpanBytesDecoder;
@@ -24,6 +27,7 @@ import zipkin2.reporter.Call;
 import zipkin2.reporter.Callback;
 import zipkin2.reporter.Encoding;
 import zipkin2.reporter.HttpEndpointSupplier;
+import zipkin2.reporter.InMemoryReporterMetrics;
 import zipkin2.reporter.SpanBytesEncoder;
 import zipkin2.reporter.okhttp3.OkHttpSenderTest.BaseHttpEndpointSupplier;
 
@@ -163,6 +167,40 @@ public class ITOkHttpSender { // public for use in src/it
       .isLessThan(requests.get(1).getBodySize());
   }
 
+  @Test void compression_streams() throws Exception {
+    sender = sender.toBuilder().compressionEnabled(true).build();
+
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(request.getHeader("Transfer-Encoding")).isEqualTo("chunked");
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(gunzip(request)))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void compression_precomputeContentLength() throws Exception {
+    sender = sender.toBuilder().compressionEnabled(true).precomputeContentLength(true).build();
+
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+    RecordedRequest request = server.takeRequest();
+    assertThat(request.getHeader("Content-Length"))
+      .isEqualTo(String.valueOf(request.getBodySize()));
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(gunzip(request)))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  static byte[] gunzip(RecordedRequest request) throws IOException {
+    Buffer result = new Buffer();
+    result.writeAll(new GzipSource(request.getBody()));
+    return result.readByteArray();
+  }
+
   @Test void ensuresProxiesDontTrace() throws Exception {
     server.enqueue(new MockResponse());
 
@@ -182,6 +220,49 @@ public class ITOkHttpSender { // public for use in src/it
       .isEqualTo("application/json");
   }
 
+  @Test void asyncSend() throws Exception {
+    sender.close();
+    sender = sender.toBuilder().asyncSend(true).build();
+
+    server.enqueue(new MockResponse());
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN);
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(server.takeRequest(1, TimeUnit.SECONDS)).isNotNull();
+    assertThat(server.takeRequest(1, TimeUnit.SECONDS)).isNotNull();
+    assertThat(sender.delegate.inFlight.awaitCompletion(1, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test void asyncSend_failuresIncrementMetrics() throws Exception {
+    InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+    sender.close();
+    sender = sender.toBuilder().asyncSend(true).metrics(metrics).build();
+
+    server.enqueue(new MockResponse().setResponseCode(500));
+
+    sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN); // doesn't throw
+
+    assertThat(sender.delegate.inFlight.awaitCompletion(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(metrics.messagesDropped()).isEqualTo(1);
+    assertThat(metrics.spansDropped()).isEqualTo(2);
+  }
+
+  @Test void asyncSend_disconnectIncrementsMetrics() throws Exception {
+    InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+    sender.close();
+    sender = sender.toBuilder().asyncSend(true).metrics(metrics).build();
+
+    server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+
+    sendSpans(sender, CLIENT_SPAN); // doesn't throw
+
+    assertThat(sender.delegate.inFlight.awaitCompletion(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(metrics.messagesDropped()).isEqualTo(1);
+    assertThat(metrics.messagesDroppedByCause()).containsOnlyKeys(IOException.class);
+  }
+
   @Deprecated
   @Test void closeWhileRequestInFlight_graceful() throws Exception {
     server.shutdown(); // shutdown the normal zipkin rule
@@ -5,6 +5,9 @@
 package zipkin2.reporter.okhttp3;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import zipkin2.Span;
@@ -12,6 +15,7 @@ import zipkin2.codec.SpanBytesEncoder;
 import zipkin2.reporter.AsyncReporter;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.HttpEndpointSupplier;
+import zipkin2.reporter.HttpEndpointSupplier.Feedback;
 
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -48,6 +52,10 @@ class OkHttpSenderTest {
       .build();
     assertThat(sender)
       .hasToString("OkHttpSender{http://localhost:29092/}");
+
+    // Async settings are retained.
+    sender = sender.toBuilder().asyncSend(true).build();
+    assertThat(sender.toBuilder().build().delegate.inFlight).isNotNull();
   }
 
   @Test void sendFailsWhenEndpointIsDown() {
@@ -57,6 +65,40 @@ class OkHttpSenderTest {
       .isInstanceOf(IOException.class);
   }
 
+  @Test void asyncSend_feedbackOnCompletion() throws IOException {
+    List<Throwable> errors = new CopyOnWriteArrayList<>();
+    sender.close();
+    sender = sender.toBuilder().asyncSend(true).endpointSupplierFactory(e -> new Feedback() {
+      @Override public Attempt next() {
+        return new Attempt() {
+          @Override public String endpoint() {
+            return get();
+          }
+
+          @Override public void onSuccess(long durationNanos) {
+            throw new AssertionError("endpoint is down");
+          }
+
+          @Override public void onError(Throwable error) {
+            errors.add(error);
+          }
+        };
+      }
+
+      @Override public String get() {
+        return "http://localhost:19092";
+      }
+
+      @Override public void close() {
+      }
+    }).build();
+
+    sendSpans(sender, CLIENT_SPAN); // returns before the connection fails
+
+    assertThat(sender.delegate.inFlight.awaitCompletion(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(errors).singleElement().isInstanceOf(IOException.class);
+  }
+
   /**
    * The output of toString() on {@link BytesMessageSender} implementations appears in thread names
    * created by {@link AsyncReporter}. Since thread names are likely to be exposed in logs and other
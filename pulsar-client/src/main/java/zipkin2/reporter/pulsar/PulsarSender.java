@@ -5,9 +5,15 @@
 package zipkin2.reporter.pulsar;
 
 import io.opentelemetry.api.internal.StringUtils;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerBuilder;
 import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.PulsarClientException.AlreadyClosedException;
+import org.apache.pulsar.client.api.PulsarClientException.ProducerFencedException;
+import org.apache.pulsar.client.api.PulsarClientException.TopicTerminatedException;
 import zipkin2.reporter.AsyncReporter;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.Call;
@@ -15,13 +21,19 @@ import zipkin2.reporter.Callback;
 import zipkin2.reporter.CheckResult;
 import zipkin2.reporter.ClosedSenderException;
 import zipkin2.reporter.Encoding;
+import zipkin2.reporter.ReporterMetrics;
 import zipkin2.reporter.Sender;
+import zipkin2.reporter.internal.InFlightMessages;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * This sends (usually json v2) encoded spans to a Pulsar topic.
@@ -63,6 +75,11 @@ import java.util.concurrent.TimeUnit;
  *
  * <h3>Implementation Notes</h3>
  *
+ * <p>{@link #send(List)} returns once the message is handed to the producer, so that up to {@link
+ * Builder#maxInFlightMessages(int)} messages can be in flight. Failures that occur after that are
+ * reported to {@link Builder#metrics(ReporterMetrics)}. If a failure means the producer is no
+ * longer usable, such as when it was fenced, the next message creates a new one.
+ *
  * <p>This sender is thread-safe.<p>
  * <p>clientProps {@link org.apache.pulsar.client.impl.conf.ClientConfigurationData}<p>
  * <p>producerProps {@link org.apache.pulsar.client.impl.conf.ProducerConfigurationData}<p>
@@ -71,6 +88,8 @@ import java.util.concurrent.TimeUnit;
  * @since 3.5
  */
 public final class PulsarSender extends Sender {
+  static final Logger logger = Logger.getLogger(PulsarSender.class.getName());
+
   /** Creates a sender that sends {@link Encoding#JSON} messages. */
   public static PulsarSender create(String serviceUrl) {
     return newBuilder().serviceUrl(serviceUrl).build();
@@ -85,7 +104,9 @@ public final class PulsarSender extends Sender {
       producerProps = new HashMap<>(), messageProps = new HashMap<>();
     String topic = "zipkin";
     Encoding encoding = Encoding.JSON;
-    int messageMaxBytes = 500_000;
+    int messageMaxBytes = 500_000, maxInFlightMessages = 64;
+    boolean nativeBatching;
+    ReporterMetrics metrics = ReporterMetrics.NOOP_METRICS;
 
     public PulsarSender build() {
       return new PulsarSender(this);
@@ -129,6 +150,49 @@ public final class PulsarSender extends Sender {
       return this;
     }
 
+    /**
+     * Maximum messages sent, but not yet acknowledged by the broker. Once reached, {@link
+     * PulsarSender#send(List)} blocks until a message completes. Default 64.
+     *
+     * <p>When {@link #nativeBatching(boolean) natively batching}, this counts calls to {@code
+     * send}, not the per-span Pulsar messages each call produces.
+     *
+     * @since 3.6
+     */
+    public Builder maxInFlightMessages(int maxInFlightMessages) {
+      if (maxInFlightMessages <= 0) throw new IllegalArgumentException("maxInFlightMessages <= 0");
+      this.maxInFlightMessages = maxInFlightMessages;
+      return this;
+    }
+
+    /**
+     * When true, {@link PulsarSender#send(List)} sends each span as its own Pulsar message, and
+     * the producer batches them, compressed with LZ4. Defaults to false, which sends all spans as
+     * one message, without producer batching or compression.
+     *
+     * <p>The compression type can be changed via {@link #producerProps(Map)}, for example
+     * "compressionType" of "ZSTD". All spans passed to {@code send} count as one {@linkplain
+     * #maxInFlightMessages(int) in-flight message}.
+     *
+     * @since 3.6
+     */
+    public Builder nativeBatching(boolean nativeBatching) {
+      this.nativeBatching = nativeBatching;
+      return this;
+    }
+
+    /**
+     * Records messages and spans dropped after {@link PulsarSender#send(List)} returns. Use the
+     * same instance as passed to the reporter. Defaults to no-op.
+     *
+     * @since 3.6
+     */
+    public Builder metrics(ReporterMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
     /**
      * Load the configuration from provided <tt>config</tt> map.
      * Any properties set here will override the previous Pulsar client configuration.
@@ -155,7 +219,8 @@ public final class PulsarSender extends Sender {
      * Any properties set here will override the previous Pulsar producer configuration.
      * <p>
      * Consider not overriding batching properties `enableBatching=false` as it will
-     * duplicate buffering effort that is already handled by Sender.
+     * duplicate buffering effort that is already handled by Sender. Instead, use {@link
+     * #nativeBatching(boolean)}.
      *
      * <p>For example: Config the producerName.
      * <pre>{@code
@@ -201,6 +266,8 @@ public final class PulsarSender extends Sender {
   final String topic;
   final Encoding encoding;
   final int messageMaxBytes;
+  final boolean nativeBatching;
+  final InFlightMessages inFlight;
 
   PulsarSender(Builder builder) {
     clientProps = builder.clientProps;
@@ -209,6 +276,8 @@ public final class PulsarSender extends Sender {
     topic = builder.topic;
     encoding = builder.encoding;
     messageMaxBytes = builder.messageMaxBytes;
+    nativeBatching = builder.nativeBatching;
+    inFlight = new InFlightMessages(builder.maxInFlightMessages, builder.metrics, logger);
   }
 
   volatile boolean closeCalled;
@@ -235,62 +304,140 @@ public final class PulsarSender extends Sender {
   @Override @Deprecated public Call<Void> sendSpans(List<byte[]> encodedSpans) {
     if (closeCalled) throw new ClosedSenderException();
     byte[] message = encoding.encode(encodedSpans);
-    return new PulsarCall(message);
+    return new PulsarCall(message, encodedSpans.size());
   }
 
-  @Override public void send(List<byte[]> encodedSpans) {
+  @Override public void send(List<byte[]> encodedSpans) throws IOException {
     if (closeCalled) throw new ClosedSenderException();
-    sender(encoding.encode(encodedSpans));
+    if (nativeBatching) {
+      sendEach(encodedSpans);
+    } else {
+      sender(encoding.encode(encodedSpans), encodedSpans.size());
+    }
   }
 
-  void sender(byte[] message) {
+  void sender(byte[] message, int spanCount) throws IOException {
     if (closeCalled) throw new ClosedSenderException();
+    Producer<byte[]> producer = get();
+    inFlight.acquire();
+    CompletableFuture<MessageId> future;
     try {
-      get().newMessage()
-        .value(message)
-        .loadConf(messageProps)
-        .sendAsync();
+      future = sendAsync(producer, message);
     } catch (Exception e) {
-      cleanup();
+      inFlight.release();
+      resetProducer(producer);
+      throw new RuntimeException("Pulsar producer send message failed." + e.getMessage(), e);
+    }
+    future.whenComplete((messageId, error) -> onComplete(producer, spanCount, error));
+  }
+
+  /**
+   * Sends each span as a message, so that the producer can batch them. The messages share one
+   * in-flight permit, released when the last completes, as they are one message to the reporter.
+   */
+  void sendEach(List<byte[]> encodedSpans) throws IOException {
+    if (encodedSpans.isEmpty()) return;
+    Producer<byte[]> producer = get();
+    inFlight.acquire();
+    CompletableFuture<?>[] futures = new CompletableFuture<?>[encodedSpans.size()];
+    try {
+      for (int i = 0; i < futures.length; i++) {
+        futures[i] = sendAsync(producer, message(encodedSpans.get(i)));
+      }
+    } catch (Exception e) {
+      inFlight.release();
+      resetProducer(producer);
       throw new RuntimeException("Pulsar producer send message failed." + e.getMessage(), e);
     }
+    CompletableFuture.allOf(futures).whenComplete((ignored, error) -> {
+      int droppedSpans = 0;
+      for (CompletableFuture<?> future : futures) {
+        if (future.isCompletedExceptionally()) droppedSpans++;
+      }
+      onComplete(producer, droppedSpans, error);
+    });
   }
 
+  /**
+   * Returns a message of one span, without copying it when the encoding has no list framing, such
+   * as {@link Encoding#PROTO3}. This is safe as the reporter doesn't reuse encoded spans, and the
+   * bytes schema sends the array as-is.
+   */
+  byte[] message(byte[] encodedSpan) {
+    if (encoding.listSizeInBytes(encodedSpan.length) == encodedSpan.length) return encodedSpan;
+    return encoding.encode(Collections.singletonList(encodedSpan));
+  }
+
+  CompletableFuture<MessageId> sendAsync(Producer<byte[]> producer, byte[] message) {
+    return producer.newMessage().value(message).loadConf(messageProps).sendAsync();
+  }
+
+  void onComplete(Producer<byte[]> producer, int spanCount, Throwable error) {
+    if (error == null) {
+      inFlight.release();
+      return;
+    }
+    if (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    if (isProducerUnusable(error)) resetProducer(producer);
+    inFlight.dropped(error, spanCount);
+  }
+
+  /** Transient failures, such as disconnects, are retried by the producer itself. */
+  static boolean isProducerUnusable(Throwable error) {
+    return error instanceof AlreadyClosedException
+      || error instanceof ProducerFencedException
+      || error instanceof TopicTerminatedException;
+  }
+
+  /** Makes the next message create a new producer, unless that already happened. */
+  void resetProducer(Producer<byte[]> failed) {
+    synchronized (this) {
+      if (producer != failed) return;
+      producer = null;
+    }
+    failed.closeAsync();
+  }
+
+  /** Only locks when there's no producer, such as before the first message or after a failure. */
   Producer<byte[]> get() {
-    if (client == null) {
-      synchronized (this) {
-        if (client == null) {
-          client = createClient();
-          producer = createProducer(client);
-        }
+    Producer<byte[]> result = producer;
+    if (result != null) return result;
+    synchronized (this) {
+      if (closeCalled) throw new ClosedSenderException();
+      if (producer == null) {
+        if (client == null) client = createClient();
+        producer = createProducer(client);
       }
+      return producer;
     }
-    return producer;
   }
 
   Producer<byte[]> createProducer(PulsarClient client) {
     try {
-      producer = client.newProducer()
-        .topic(topic)
-        .enableBatching(false) // disabling batching as duplicates effort covered by sender buffering.
-        .loadConf(producerProps)
-        .create();
+      ProducerBuilder<byte[]> builder = client.newProducer().topic(topic);
+      if (nativeBatching) {
+        builder.enableBatching(true).compressionType(CompressionType.LZ4);
+      } else {
+        // disabling batching as duplicates effort covered by sender buffering.
+        builder.enableBatching(false);
+      }
+      return builder.loadConf(producerProps).create();
     } catch (Exception e) {
       cleanup();
       throw new RuntimeException("Pulsar producer creation failed." + e.getMessage(), e);
     }
-    return producer;
   }
 
   PulsarClient createClient() {
     try {
-      client = PulsarClient.builder()
+      return PulsarClient.builder()
         .loadConf(clientProps)
         .build();
     } catch (PulsarClientException e) {
       throw new RuntimeException("Pulsar client creation failed. " + e.getMessage(), e);
     }
-    return client;
   }
 
   void cleanup() {
@@ -338,19 +485,21 @@ public final class PulsarSender extends Sender {
 
   class PulsarCall extends Call.Base<Void> {  // PulsarCall is not cancelable
     private final byte[] message;
+    private final int spanCount;
 
-    PulsarCall(byte[] message) {
+    PulsarCall(byte[] message, int spanCount) {
       this.message = message;
+      this.spanCount = spanCount;
     }
 
     @Override protected Void doExecute() throws IOException {
-      sender(message);
+      sender(message, spanCount);
       return null;
     }
 
     @Override protected void doEnqueue(Callback<Void> callback) {
       try {
-        sender(message);
+        sender(message, spanCount);
         callback.onSuccess(null);
       } catch (Throwable t) {
         Call.propagateIfFatal(t);
@@ -359,7 +508,7 @@ public final class PulsarSender extends Sender {
     }
 
     @Override public Call<Void> clone() {
-      return new PulsarCall(message);
+      return new PulsarCall(message, spanCount);
     }
   }
 }
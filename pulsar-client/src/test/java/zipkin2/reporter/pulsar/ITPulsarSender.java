@@ -19,6 +19,7 @@ import zipkin2.codec.SpanBytesDecoder;
 import zipkin2.reporter.AsyncReporter;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.Encoding;
+import zipkin2.reporter.InMemoryReporterMetrics;
 import zipkin2.reporter.SpanBytesEncoder;
 
 import java.io.IOException;
@@ -120,6 +121,32 @@ class ITPulsarSender {
     }
   }
 
+  @Test void send_awaitsAcknowledgement() throws Exception {
+    InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+    try (PulsarSender sender = pulsar.newSenderBuilder(testName)
+        .maxInFlightMessages(1)
+        .metrics(metrics)
+        .build()) {
+      send(sender, CLIENT_SPAN);
+      send(sender, CLIENT_SPAN); // waits for the first message to complete
+
+      assertThat(sender.inFlight.awaitCompletion(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(metrics.messagesDropped()).isZero();
+    }
+  }
+
+  @Test void send_nativeBatching() throws Exception {
+    try (PulsarSender sender = pulsar.newSenderBuilder(testName)
+        .nativeBatching(true)
+        .build()) {
+      send(sender, CLIENT_SPAN, CLIENT_SPAN);
+
+      assertThat(sender.inFlight.awaitCompletion(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(SpanBytesDecoder.JSON_V2.decodeList(readMessage(sender)))
+        .containsExactly(CLIENT_SPAN);
+    }
+  }
+
   @Test void illegalToSendWhenClosed() throws IOException {
     try (PulsarSender sender = pulsar.newSenderBuilder(testName).build()) {
       sender.close();
@@ -145,7 +172,7 @@ class ITPulsarSender {
     }
   }
 
-  void send(PulsarSender sender, Span... spans) {
+  void send(PulsarSender sender, Span... spans) throws IOException {
     SpanBytesEncoder bytesEncoder;
     switch (sender.encoding()) {
       case JSON:
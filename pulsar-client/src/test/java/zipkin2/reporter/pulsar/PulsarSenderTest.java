@@ -0,0 +1,183 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.pulsar;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerBuilder;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.PulsarClientException.AlreadyClosedException;
+import org.apache.pulsar.client.api.PulsarClientException.ProducerFencedException;
+import org.apache.pulsar.client.api.PulsarClientException.TopicTerminatedException;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.InMemoryReporterMetrics;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+
+/** Tests failure handling with a mock producer. See {@link ITPulsarSender} for a real broker. */
+class PulsarSenderTest {
+  InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+  PulsarSender.Builder builder = PulsarSender.newBuilder()
+    .serviceUrl("pulsar://localhost:6650").metrics(metrics);
+  PulsarSender sender = builder.build();
+  @SuppressWarnings("unchecked")
+  Producer<byte[]> producer = mock(Producer.class);
+  @SuppressWarnings("unchecked")
+  TypedMessageBuilder<byte[]> message = mock(TypedMessageBuilder.class, RETURNS_SELF);
+  byte[] span = SpanBytesEncoder.JSON_V2.encode(CLIENT_SPAN);
+
+  @AfterEach void close() throws IOException {
+    sender.close();
+  }
+
+  @Test void isProducerUnusable() {
+    assertThat(PulsarSender.isProducerUnusable(new AlreadyClosedException("closed")))
+      .isTrue();
+    assertThat(PulsarSender.isProducerUnusable(new ProducerFencedException("fenced")))
+      .isTrue();
+    assertThat(PulsarSender.isProducerUnusable(new TopicTerminatedException("terminated")))
+      .isTrue();
+    assertThat(PulsarSender.isProducerUnusable(new PulsarClientException.TimeoutException("slow")))
+      .isFalse(); // the producer retries transient failures itself
+  }
+
+  /** A send that failed on an old producer must not discard the one that replaced it. */
+  @Test void resetProducer_ignoresStaleProducer() {
+    @SuppressWarnings("unchecked")
+    Producer<byte[]> replacement = mock(Producer.class);
+    sender.producer = replacement;
+
+    sender.resetProducer(producer);
+
+    assertThat(sender.get()).isSameAs(replacement);
+    verify(producer, never()).closeAsync();
+  }
+
+  @Test void resetProducer_nextGetCreatesProducer() throws Exception {
+    @SuppressWarnings("unchecked")
+    Producer<byte[]> replacement = mock(Producer.class);
+    @SuppressWarnings("unchecked")
+    ProducerBuilder<byte[]> producerBuilder = mock(ProducerBuilder.class, RETURNS_SELF);
+    when(producerBuilder.create()).thenReturn(replacement);
+    PulsarClient client = mock(PulsarClient.class);
+    when(client.newProducer()).thenReturn(producerBuilder);
+    sender.client = client;
+    sender.producer = producer;
+
+    sender.resetProducer(producer);
+    sender.resetProducer(producer); // racing callers close the failed producer once
+
+    assertThat(sender.get()).isSameAs(replacement);
+    verify(producer, times(1)).closeAsync();
+  }
+
+  @Test void send_syncFailure_releasesPermit() {
+    sender.producer = producer;
+    when(producer.newMessage()).thenThrow(new IllegalStateException("boom"));
+
+    assertThatThrownBy(() -> sender.send(List.of(span)))
+      .isInstanceOf(RuntimeException.class)
+      .hasMessageContaining("boom");
+
+    assertThat(sender.inFlight.inFlight()).isZero();
+    assertThat(sender.producer).isNull();
+  }
+
+  @Test void send_asyncFailure_releasesPermit() throws Exception {
+    sender.producer = producer;
+    when(producer.newMessage()).thenReturn(message);
+    CompletableFuture<MessageId> future = new CompletableFuture<>();
+    when(message.sendAsync()).thenReturn(future);
+
+    sender.send(List.of(span, span));
+    assertThat(sender.inFlight.inFlight()).isOne();
+
+    future.completeExceptionally(new AlreadyClosedException("closed"));
+
+    assertThat(sender.inFlight.inFlight()).isZero();
+    assertThat(metrics.messagesDropped()).isOne();
+    assertThat(metrics.spansDropped()).isEqualTo(2);
+    assertThat(sender.producer).isNull();
+  }
+
+  @Test void send_asyncTransientFailure_keepsProducer() throws Exception {
+    sender.producer = producer;
+    when(producer.newMessage()).thenReturn(message);
+    when(message.sendAsync()).thenReturn(
+      CompletableFuture.failedFuture(new PulsarClientException.TimeoutException("slow")));
+
+    sender.send(List.of(span));
+
+    assertThat(sender.inFlight.inFlight()).isZero();
+    assertThat(metrics.messagesDropped()).isOne();
+    assertThat(sender.producer).isSameAs(producer);
+  }
+
+  @Test void nativeBatching_syncFailure_releasesPermit() {
+    sender = builder.nativeBatching(true).build();
+    sender.producer = producer;
+    when(producer.newMessage()).thenReturn(message).thenThrow(new IllegalStateException("boom"));
+    when(message.sendAsync()).thenReturn(new CompletableFuture<>());
+
+    assertThatThrownBy(() -> sender.send(List.of(span, span)))
+      .isInstanceOf(RuntimeException.class)
+      .hasMessageContaining("boom");
+
+    assertThat(sender.inFlight.inFlight()).isZero();
+    assertThat(sender.producer).isNull();
+  }
+
+  /** All messages from one send share a permit, released once the last completes. */
+  @Test void nativeBatching_asyncFailure_releasesPermit() throws Exception {
+    sender = builder.nativeBatching(true).build();
+    sender.producer = producer;
+    when(producer.newMessage()).thenReturn(message);
+    CompletableFuture<MessageId> first = new CompletableFuture<>(), second =
+      new CompletableFuture<>();
+    when(message.sendAsync()).thenReturn(first, second);
+
+    sender.send(List.of(span, span));
+    first.complete(mock(MessageId.class));
+    assertThat(sender.inFlight.inFlight()).isOne();
+
+    second.completeExceptionally(new ProducerFencedException("fenced"));
+
+    assertThat(sender.inFlight.inFlight()).isZero();
+    assertThat(metrics.spansDropped()).isOne();
+    assertThat(sender.producer).isNull();
+  }
+
+  /** PROTO3 has no list framing, so each span is sent as-is. */
+  @Test void nativeBatching_PROTO3_doesntCopySpans() throws Exception {
+    sender = builder.nativeBatching(true).encoding(Encoding.PROTO3).build();
+    sender.producer = producer;
+    when(producer.newMessage()).thenReturn(message);
+    when(message.sendAsync()).thenReturn(new CompletableFuture<>());
+    byte[] span = SpanBytesEncoder.PROTO3.encode(CLIENT_SPAN);
+
+    sender.send(List.of(span));
+
+    ArgumentCaptor<byte[]> value = ArgumentCaptor.forClass(byte[].class);
+    verify(message).value(value.capture());
+    assertThat(value.getValue()).isSameAs(span);
+  }
+}
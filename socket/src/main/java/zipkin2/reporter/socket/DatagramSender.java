@@ -0,0 +1,201 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.BytesMessageSender;
+import zipkin2.reporter.ClosedSenderException;
+import zipkin2.reporter.Encoding;
+
+/**
+ * Sends each message as one UDP datagram, for example to a collector agent on the same host.
+ *
+ * <h3>Usage</h3>
+ * <p>
+ * This type is designed for {@link AsyncReporter.Builder#builder(BytesMessageSender) the async
+ * reporter}.
+ *
+ * <p>Here's a simple configuration, configured for protocol buffers:
+ *
+ * <pre>{@code
+ * sender = DatagramSender.newBuilder()
+ *   .endpoint("127.0.0.1:9411")
+ *   .encoding(Encoding.PROTO3)
+ *   .build();
+ * }</pre>
+ *
+ * <h3>Implementation Notes</h3>
+ *
+ * <p>UDP has no acknowledgement, so {@link #send(List)} returns once the datagram is handed to the
+ * operating system. Datagrams lost in transit are not reported. When nothing listens on the port,
+ * the operating system may report that on a later send, which raises a {@link
+ * PortUnreachableException}.
+ *
+ * <p>The channel and a direct buffer of {@link #messageMaxBytes()} are allocated on the first send,
+ * then reused. Each message is copied once, into that buffer. A host name endpoint is resolved when
+ * the channel is opened, not when the sender is built.
+ *
+ * <p>This sender is thread-safe, but sends one message at a time.
+ *
+ * @since 3.6
+ */
+public final class DatagramSender extends BytesMessageSender.Base {
+  /** The largest UDP payload over IPv4, which is also the default {@link #messageMaxBytes()}. */
+  public static final int MAX_DATAGRAM_BYTES = 65507;
+
+  /** Creates a sender that sends {@link Encoding#JSON} messages to the given "host:port". */
+  public static DatagramSender create(String endpoint) {
+    return newBuilder().endpoint(endpoint).build();
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    InetSocketAddress endpoint;
+    Encoding encoding = Encoding.JSON;
+    int messageMaxBytes = MAX_DATAGRAM_BYTES;
+
+    Builder(DatagramSender sender) {
+      this.endpoint = sender.endpoint;
+      this.encoding = sender.encoding;
+      this.messageMaxBytes = sender.messageMaxBytes;
+    }
+
+    /** No default. The "host:port" to send datagrams to. ex "127.0.0.1:9411" */
+    public Builder endpoint(String endpoint) {
+      return endpoint(Endpoints.parse(endpoint));
+    }
+
+    /** No default. The address to send datagrams to. */
+    public Builder endpoint(InetSocketAddress endpoint) {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      this.endpoint = endpoint;
+      return this;
+    }
+
+    /**
+     * Use this to change the encoding used in messages. Default is {@linkplain Encoding#JSON}
+     *
+     * <p>Consider {@linkplain Encoding#PROTO3}, which fits more spans into each datagram.
+     */
+    public Builder encoding(Encoding encoding) {
+      if (encoding == null) throw new NullPointerException("encoding == null");
+      this.encoding = encoding;
+      return this;
+    }
+
+    /**
+     * Maximum size of a message, which must fit in one datagram. Default and maximum is {@value
+     * #MAX_DATAGRAM_BYTES}.
+     *
+     * <p>Consider lowering this when the path to the collector has a lower MTU than the loopback
+     * interface, to avoid IP fragmentation.
+     */
+    public Builder messageMaxBytes(int messageMaxBytes) {
+      if (messageMaxBytes <= 0) throw new IllegalArgumentException("messageMaxBytes <= 0");
+      if (messageMaxBytes > MAX_DATAGRAM_BYTES) {
+        throw new IllegalArgumentException("messageMaxBytes > " + MAX_DATAGRAM_BYTES);
+      }
+      this.messageMaxBytes = messageMaxBytes;
+      return this;
+    }
+
+    public DatagramSender build() {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      return new DatagramSender(this);
+    }
+
+    Builder() {
+    }
+  }
+
+  final InetSocketAddress endpoint;
+  final int messageMaxBytes;
+
+  // guarded by this
+  DatagramChannel channel; // null until the first send or after an error
+  ByteBuffer buffer; // null until the first send
+  boolean closeCalled;
+
+  DatagramSender(Builder builder) {
+    super(builder.encoding);
+    this.endpoint = builder.endpoint;
+    this.messageMaxBytes = builder.messageMaxBytes;
+  }
+
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  @Override public int messageMaxBytes() {
+    return messageMaxBytes;
+  }
+
+  /** Writes the spans as one datagram, opening the channel if needed. */
+  @Override public synchronized void send(List<byte[]> encodedSpans) throws IOException {
+    if (closeCalled) throw new ClosedSenderException();
+    DatagramChannel channel = channel();
+    if (encodedSpans.isEmpty()) return; // initialized eagerly
+
+    int messageSizeInBytes = messageSizeInBytes(encodedSpans);
+    if (messageSizeInBytes > messageMaxBytes) {
+      throw new IllegalArgumentException(
+        "Message size " + messageSizeInBytes + " > messageMaxBytes " + messageMaxBytes);
+    }
+    buffer.clear();
+    SpanListWriter.write(encoding, encodedSpans, buffer);
+    buffer.flip();
+    try {
+      channel.write(buffer);
+    } catch (PortUnreachableException e) {
+      throw e; // the channel is still usable once something listens
+    } catch (IOException | RuntimeException e) {
+      closeChannel();
+      throw e;
+    }
+  }
+
+  DatagramChannel channel() throws IOException {
+    if (channel != null) return channel;
+    if (buffer == null) buffer = ByteBuffer.allocateDirect(messageMaxBytes);
+    DatagramChannel result = DatagramChannel.open();
+    try {
+      // Connecting avoids an address lookup and security check per send.
+      result.connect(Endpoints.resolve(endpoint));
+    } catch (IOException | RuntimeException e) {
+      result.close();
+      throw e;
+    }
+    return channel = result;
+  }
+
+  void closeChannel() {
+    DatagramChannel channel = this.channel;
+    this.channel = null;
+    if (channel == null) return;
+    try {
+      channel.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  @Override public synchronized void close() {
+    if (closeCalled) return;
+    closeCalled = true;
+    closeChannel();
+  }
+
+  @Override public String toString() {
+    return "DatagramSender{" + endpoint.getHostString() + ":" + endpoint.getPort() + "}";
+  }
+}
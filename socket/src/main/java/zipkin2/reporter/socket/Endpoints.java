@@ -0,0 +1,45 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.socket;
+
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+/** Parses "host:port" endpoints, shared by senders in this package. */
+final class Endpoints {
+  /**
+   * Parses a "host:port" endpoint, where an IPv6 host is in brackets. ex "[::1]:9411"
+   *
+   * <p>The result is unresolved, so that building a sender doesn't block on DNS. Senders
+   * {@linkplain #resolve(InetSocketAddress) resolve} it when connecting.
+   */
+  static InetSocketAddress parse(String endpoint) {
+    if (endpoint == null) throw new NullPointerException("endpoint == null");
+    int colon = endpoint.lastIndexOf(':');
+    if (colon == -1) throw new IllegalArgumentException("endpoint should be host:port");
+    int port;
+    try {
+      port = Integer.parseInt(endpoint.substring(colon + 1));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("endpoint should be host:port");
+    }
+    String host = endpoint.substring(0, colon);
+    if (host.startsWith("[") && host.endsWith("]")) { // IPv6 literal
+      host = host.substring(1, host.length() - 1);
+    }
+    return InetSocketAddress.createUnresolved(host, port);
+  }
+
+  /** Looks up the host of an unresolved endpoint, raising an exception if that fails. */
+  static InetSocketAddress resolve(InetSocketAddress endpoint) throws UnknownHostException {
+    if (!endpoint.isUnresolved()) return endpoint;
+    InetSocketAddress result = new InetSocketAddress(endpoint.getHostString(), endpoint.getPort());
+    if (result.isUnresolved()) throw new UnknownHostException(endpoint.getHostString());
+    return result;
+  }
+
+  Endpoints() {
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.socket;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import zipkin2.reporter.Encoding;
+
+/**
+ * Writes the same bytes as {@link Encoding#encode(List)}, but into a buffer the caller reuses, or
+ * as buffers for a gathering write, instead of a new array per message.
+ */
+final class SpanListWriter {
+  static final byte[] LEFT_BRACKET = {'['}, COMMA = {','}, RIGHT_BRACKET = {']'};
+
+  /**
+   * Writes the encoded list into the buffer, which must have at least {@link
+   * Encoding#listSizeInBytes(List)} remaining.
+   */
+  static void write(Encoding encoding, List<byte[]> encodedSpans, ByteBuffer out) {
+    int length = encodedSpans.size();
+    switch (encoding) {
+      case JSON:
+        out.put((byte) '[');
+        for (int i = 0; i < length; i++) {
+          if (i > 0) out.put((byte) ',');
+          out.put(encodedSpans.get(i));
+        }
+        out.put((byte) ']');
+        return;
+      case THRIFT:
+        // TBinaryProtocol List header is element type followed by count
+        out.put((byte) 12); // TYPE_STRUCT
+        out.putInt(length);
+        for (int i = 0; i < length; i++) out.put(encodedSpans.get(i));
+        return;
+      case PROTO3:
+        for (int i = 0; i < length; i++) out.put(encodedSpans.get(i));
+        return;
+      case OTLP_PROTO3:
+        out.put(encoding.encode(encodedSpans)); // spans with the same resource are combined
+        return;
+      default:
+        throw new UnsupportedOperationException("encoding: " + encoding);
+    }
+  }
+
+  /**
+   * Returns buffers that wrap the encoded spans and the bytes between them, for use in {@link
+   * java.nio.channels.GatheringByteChannel#write(ByteBuffer[])}. No span is copied, except in
+   * {@link Encoding#OTLP_PROTO3}, where spans with the same resource are combined.
+   */
+  static ByteBuffer[] wrap(Encoding encoding, List<byte[]> encodedSpans) {
+    int length = encodedSpans.size(), i = 0;
+    ByteBuffer[] result;
+    switch (encoding) {
+      case JSON:
+        result = new ByteBuffer[length == 0 ? 2 : length * 2 + 1];
+        result[i++] = ByteBuffer.wrap(LEFT_BRACKET);
+        for (int j = 0; j < length; j++) {
+          if (j > 0) result[i++] = ByteBuffer.wrap(COMMA);
+          result[i++] = ByteBuffer.wrap(encodedSpans.get(j));
+        }
+        result[i] = ByteBuffer.wrap(RIGHT_BRACKET);
+        return result;
+      case THRIFT:
+        result = new ByteBuffer[length + 1];
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.put((byte) 12).putInt(length).flip(); // TYPE_STRUCT, count
+        result[i++] = header;
+        for (int j = 0; j < length; j++) result[i++] = ByteBuffer.wrap(encodedSpans.get(j));
+        return result;
+      case PROTO3:
+        result = new ByteBuffer[length];
+        for (int j = 0; j < length; j++) result[i++] = ByteBuffer.wrap(encodedSpans.get(j));
+        return result;
+      case OTLP_PROTO3:
+        return new ByteBuffer[] {ByteBuffer.wrap(encoding.encode(encodedSpans))};
+      default:
+        throw new UnsupportedOperationException("encoding: " + encoding);
+    }
+  }
+
+  SpanListWriter() {
+  }
+}
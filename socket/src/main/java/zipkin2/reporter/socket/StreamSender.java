@@ -0,0 +1,268 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.socket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.BytesMessageSender;
+import zipkin2.reporter.ClosedSenderException;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.internal.MessageFraming;
+
+/**
+ * Writes each message as a length-prefixed frame on one long-lived TCP stream, for example to a
+ * collector agent on the same host. Messages are {@link Encoding#PROTO3} {@code ListOfSpans}.
+ *
+ * <h3>Usage</h3>
+ * <p>
+ * This type is designed for {@link AsyncReporter.Builder#builder(BytesMessageSender) the async
+ * reporter}.
+ *
+ * <pre>{@code
+ * sender = StreamSender.create("127.0.0.1:9412");
+ * }</pre>
+ *
+ * <h3>Wire format</h3>
+ *
+ * <p>Frames use the same layout as gRPC messages: a zero byte (uncompressed), the length of the
+ * message as a 4-byte big-endian integer, then the message. The collector does not respond. If it
+ * writes anything, that is read and ignored.
+ *
+ * <h3>Implementation Notes</h3>
+ *
+ * <p>Unlike HTTP senders, there is no request per message: {@link #send(List)} returns once the
+ * frame is handed to the operating system. The frame header and encoded spans are written with one
+ * gathering write, so spans aren't concatenated into a message first.
+ *
+ * <p>When the collector reads slower than spans are reported, the socket's send buffer fills and
+ * {@link #send(List)} blocks, up to the {@linkplain Builder#writeTimeout(int) write timeout}. While
+ * blocked, the {@link AsyncReporter} queue fills and drops spans, which are counted as {@link
+ * zipkin2.reporter.ReporterMetrics#incrementSpansDropped(int) dropped}. Interrupting or timing out
+ * a write closes the stream, as a partially written frame cannot be recovered. The next send opens
+ * a new stream.
+ *
+ * <p>This sender is thread-safe, but sends one message at a time.
+ *
+ * @since 3.6
+ */
+public final class StreamSender extends BytesMessageSender.Base implements MessageFraming {
+  /** The bytes before each message: a compressed flag and the message length. */
+  static final int FRAME_HEADER_BYTES = 5;
+
+  /** Creates a sender that writes to the given "host:port". */
+  public static StreamSender create(String endpoint) {
+    return newBuilder().endpoint(endpoint).build();
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    InetSocketAddress endpoint;
+    int messageMaxBytes = 500000;
+    int connectTimeout = 10 * 1000, writeTimeout = 60 * 1000;
+
+    Builder(StreamSender sender) {
+      this.endpoint = sender.endpoint;
+      this.messageMaxBytes = sender.messageMaxBytes;
+      this.connectTimeout = sender.connectTimeout;
+      this.writeTimeout = sender.writeTimeout;
+    }
+
+    /** No default. The "host:port" of the collector. ex "127.0.0.1:9412" */
+    public Builder endpoint(String endpoint) {
+      return endpoint(Endpoints.parse(endpoint));
+    }
+
+    /** No default. The address of the collector. */
+    public Builder endpoint(InetSocketAddress endpoint) {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      this.endpoint = endpoint;
+      return this;
+    }
+
+    /** Maximum size of a message, including its frame header. Default 500KB */
+    public Builder messageMaxBytes(int messageMaxBytes) {
+      if (messageMaxBytes <= FRAME_HEADER_BYTES) {
+        throw new IllegalArgumentException("messageMaxBytes <= " + FRAME_HEADER_BYTES);
+      }
+      this.messageMaxBytes = messageMaxBytes;
+      return this;
+    }
+
+    /** Default 10 * 1000 milliseconds. 0 implies no timeout. */
+    public Builder connectTimeout(int connectTimeout) {
+      this.connectTimeout = connectTimeout;
+      return this;
+    }
+
+    /**
+     * How long {@link #send(List)} blocks when the collector isn't reading. Default 60 * 1000
+     * milliseconds. 0 implies no timeout.
+     */
+    public Builder writeTimeout(int writeTimeout) {
+      this.writeTimeout = writeTimeout;
+      return this;
+    }
+
+    public StreamSender build() {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      return new StreamSender(this);
+    }
+
+    Builder() {
+    }
+  }
+
+  final InetSocketAddress endpoint;
+  final int messageMaxBytes, connectTimeout, writeTimeout;
+
+  // guarded by this
+  SocketChannel channel; // null until the first send or after an error
+  Selector selector; // null when channel is null
+  final ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+  final ByteBuffer discard = ByteBuffer.allocate(1024); // for anything the collector writes
+  int connectCount;
+  boolean closeCalled;
+
+  StreamSender(Builder builder) {
+    super(Encoding.PROTO3);
+    this.endpoint = builder.endpoint;
+    this.messageMaxBytes = builder.messageMaxBytes;
+    this.connectTimeout = builder.connectTimeout;
+    this.writeTimeout = builder.writeTimeout;
+  }
+
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  @Override public int messageMaxBytes() {
+    return messageMaxBytes;
+  }
+
+  @Override public int messageSizeInBytes(List<byte[]> encodedSpans) {
+    return FRAME_HEADER_BYTES + super.messageSizeInBytes(encodedSpans);
+  }
+
+  @Override public int messageSizeInBytes(int encodedSizeInBytes) {
+    return FRAME_HEADER_BYTES + super.messageSizeInBytes(encodedSizeInBytes);
+  }
+
+  /** The frame header, as proto3 spans are concatenated without overhead. */
+  @Override public int emptyMessageSizeInBytes() {
+    return FRAME_HEADER_BYTES;
+  }
+
+  @Override public int spanSizeInBytes(int index, int encodedSizeInBytes) {
+    return encodedSizeInBytes;
+  }
+
+  /** Writes the spans as one frame, opening the stream if needed. */
+  @Override public synchronized void send(List<byte[]> encodedSpans) throws IOException {
+    if (closeCalled) throw new ClosedSenderException();
+    SocketChannel channel = channel();
+    if (encodedSpans.isEmpty()) return; // initialized eagerly
+
+    int messageSizeInBytes = messageSizeInBytes(encodedSpans);
+    if (messageSizeInBytes > messageMaxBytes) {
+      throw new IllegalArgumentException(
+        "Message size " + messageSizeInBytes + " > messageMaxBytes " + messageMaxBytes);
+    }
+    ByteBuffer[] spans = SpanListWriter.wrap(encoding, encodedSpans);
+    ByteBuffer[] frame = new ByteBuffer[spans.length + 1];
+    header.clear();
+    header.put((byte) 0).putInt(messageSizeInBytes - FRAME_HEADER_BYTES).flip();
+    frame[0] = header;
+    System.arraycopy(spans, 0, frame, 1, spans.length);
+
+    try {
+      long remaining = messageSizeInBytes;
+      while (remaining > 0) {
+        long written = channel.write(frame);
+        if (written == 0) awaitWritable();
+        remaining -= written;
+      }
+    } catch (IOException e) {
+      closeChannel(); // the stream may end in a partial frame
+      throw e;
+    }
+  }
+
+  /** Returns the open stream, reconnecting if the collector closed it. */
+  SocketChannel channel() throws IOException {
+    if (channel != null) {
+      try {
+        int read;
+        do {
+          discard.clear();
+        } while ((read = channel.read(discard)) > 0);
+        if (read == 0) return channel;
+      } catch (IOException ignored) {
+        // reset by the collector
+      }
+      closeChannel(); // end of stream
+    }
+    SocketChannel result = SocketChannel.open();
+    Selector selector = null;
+    try {
+      result.socket().setTcpNoDelay(true); // each write is a complete frame
+      result.socket().connect(Endpoints.resolve(endpoint), connectTimeout);
+      result.configureBlocking(false); // so that writes can time out
+      selector = Selector.open();
+      result.register(selector, SelectionKey.OP_WRITE);
+    } catch (IOException | RuntimeException e) {
+      if (selector != null) selector.close();
+      result.close();
+      throw e;
+    }
+    this.selector = selector;
+    connectCount++;
+    return channel = result;
+  }
+
+  /** Blocks until the collector reads enough that the channel is writable again. */
+  void awaitWritable() throws IOException {
+    int ready = selector.select(writeTimeout);
+    selector.selectedKeys().clear();
+    if (ready > 0) return;
+    if (Thread.interrupted()) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted writing to " + this);
+    }
+    if (writeTimeout > 0) throw new SocketTimeoutException("timed out writing to " + this);
+  }
+
+  void closeChannel() {
+    SocketChannel channel = this.channel;
+    Selector selector = this.selector;
+    this.channel = null;
+    this.selector = null;
+    try {
+      if (channel != null) channel.close();
+      if (selector != null) selector.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  @Override public synchronized void close() {
+    if (closeCalled) return;
+    closeCalled = true;
+    closeChannel();
+  }
+
+  @Override public String toString() {
+    return "StreamSender{" + endpoint.getHostString() + ":" + endpoint.getPort() + "}";
+  }
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.socket;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import zipkin2.reporter.BaseHttpSender;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.HttpEndpointSupplier;
+import zipkin2.reporter.HttpEndpointSupplier.Factory;
+import zipkin2.reporter.HttpEndpointSuppliers;
+import zipkin2.reporter.socket.UnixDomainSocketSender.HttpTarget;
+
+import static zipkin2.reporter.HttpEndpointSuppliers.constantFactory;
+
+/**
+ * Reports spans to Zipkin, using its <a href="https://zipkin.io/zipkin-api/#/">POST</a> endpoint,
+ * over a Unix domain socket. This requires JDK 16+ at runtime.
+ *
+ * <p>This is for a collector agent on the same host: unlike the TCP loopback interface, a Unix
+ * domain socket doesn't need an ephemeral port, and has a shorter path through the kernel.
+ *
+ * <h3>Usage</h3>
+ *
+ * <pre>{@code
+ * sender = UnixDomainSocketSender.newBuilder()
+ *   .socketPath("/var/run/zipkin/collector.sock")
+ *   .encoding(Encoding.PROTO3)
+ *   .build();
+ * }</pre>
+ *
+ * <h3>Implementation Notes</h3>
+ *
+ * <p>Requests use HTTP/1.1 over one persistent connection, which is reopened when the server
+ * closes it. The request head and encoded spans are written with one gathering write, so spans
+ * aren't concatenated into a message first.
+ *
+ * <p>This sender is thread-safe, but sends one message at a time.
+ *
+ * @since 3.6
+ */
+public final class UnixDomainSocketSender extends BaseHttpSender<HttpTarget, ByteBuffer[]> {
+  /** Creates a sender that posts {@link Encoding#JSON} messages to the given socket. */
+  public static UnixDomainSocketSender create(String socketPath) {
+    return newBuilder().socketPath(socketPath).build();
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    Factory endpointSupplierFactory = constantFactory();
+    String endpoint = "http://localhost/api/v2/spans", socketPath;
+    Encoding encoding = Encoding.JSON;
+    int messageMaxBytes = 500000;
+    int readTimeout = 60 * 1000;
+
+    Builder(UnixDomainSocketSender sender) {
+      this.endpointSupplierFactory = sender.endpointSupplierFactory;
+      this.endpoint = sender.endpointString;
+      this.socketPath = sender.socketPath;
+      this.encoding = sender.encoding();
+      this.messageMaxBytes = sender.messageMaxBytes;
+      this.readTimeout = sender.readTimeout;
+    }
+
+    /** No default. The path of the Unix domain socket the collector listens on. */
+    public Builder socketPath(String socketPath) {
+      if (socketPath == null) throw new NullPointerException("socketPath == null");
+      this.socketPath = socketPath;
+      return this;
+    }
+
+    /**
+     * Defaults to {@link HttpEndpointSuppliers#constantFactory()}.
+     *
+     * <p>See JavaDoc on {@link HttpEndpointSupplier} for implementation notes.
+     */
+    public Builder endpointSupplierFactory(Factory endpointSupplierFactory) {
+      if (endpointSupplierFactory == null) {
+        throw new NullPointerException("endpointSupplierFactory == null");
+      }
+      this.endpointSupplierFactory = endpointSupplierFactory;
+      return this;
+    }
+
+    /**
+     * The POST URL for zipkin's <a href="https://zipkin.io/zipkin-api/#/">v2 api</a>. Only its host
+     * and path are used, in the "Host" header and request line. Default
+     * "http://localhost/api/v2/spans"
+     */
+    public Builder endpoint(String endpoint) {
+      if (endpoint == null) throw new NullPointerException("endpoint == null");
+      this.endpoint = endpoint;
+      return this;
+    }
+
+    /** Default 60 * 1000 milliseconds. 0 implies no timeout. */
+    public Builder readTimeout(int readTimeout) {
+      this.readTimeout = readTimeout;
+      return this;
+    }
+
+    /** Maximum size of a message. Default 500KB */
+    public Builder messageMaxBytes(int messageMaxBytes) {
+      this.messageMaxBytes = messageMaxBytes;
+      return this;
+    }
+
+    /**
+     * Use this to change the encoding used in messages. Default is {@linkplain Encoding#JSON}
+     * This also controls the "Content-Type" header when sending spans.
+     *
+     * <p>Note: If ultimately sending to Zipkin, version 2.8+ is required to process protobuf.
+     */
+    public Builder encoding(Encoding encoding) {
+      if (encoding == null) throw new NullPointerException("encoding == null");
+      this.encoding = encoding;
+      return this;
+    }
+
+    /** @throws UnsupportedOperationException if not running on JDK 16+ */
+    public UnixDomainSocketSender build() {
+      if (socketPath == null) throw new NullPointerException("socketPath == null");
+      if (!UnixDomainSockets.isSupported()) {
+        throw new UnsupportedOperationException("Unix domain sockets require JDK 16+");
+      }
+      return new UnixDomainSocketSender(this);
+    }
+
+    Builder() {
+    }
+  }
+
+  static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+  /** Maximum length of a line in the response head. */
+  static final int MAX_LINE_LENGTH = 8192;
+
+  final String socketPath;
+  final int messageMaxBytes, readTimeout;
+  final Factory endpointSupplierFactory; // for toBuilder()
+  final String endpointString; // for toBuilder()
+
+  // guarded by this
+  SocketChannel channel; // null until the first send or after the connection closes
+  Selector selector; // null when channel is null
+  final ByteBuffer readBuffer = ByteBuffer.allocate(MAX_LINE_LENGTH);
+  boolean responseStarted;
+  int connectCount;
+
+  UnixDomainSocketSender(Builder builder) {
+    super(builder.encoding, builder.endpointSupplierFactory, builder.endpoint);
+    this.socketPath = builder.socketPath;
+    this.messageMaxBytes = builder.messageMaxBytes;
+    this.readTimeout = builder.readTimeout;
+    this.endpointSupplierFactory = builder.endpointSupplierFactory;
+    this.endpointString = builder.endpoint;
+  }
+
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
+
+  @Override public int messageMaxBytes() {
+    return messageMaxBytes;
+  }
+
+  @Override protected HttpTarget newEndpoint(String endpoint) {
+    URI uri;
+    try {
+      uri = URI.create(endpoint);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(e.getMessage());
+    }
+    if (!"http".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+      throw new IllegalArgumentException("invalid POST url: " + endpoint);
+    }
+    return new HttpTarget(endpoint, uri, encoding.mediaType());
+  }
+
+  @Override protected ByteBuffer[] newBody(List<byte[]> encodedSpans) {
+    return SpanListWriter.wrap(encoding, encodedSpans);
+  }
+
+  @Override protected synchronized void postSpans(HttpTarget target, ByteBuffer[] body)
+    throws IOException {
+    long contentLength = 0;
+    for (ByteBuffer buffer : body) contentLength += buffer.remaining();
+    ByteBuffer[] request = new ByteBuffer[body.length + 1];
+    request[0] = target.head(contentLength);
+    System.arraycopy(body, 0, request, 1, body.length);
+
+    boolean reused = channel != null;
+    String error;
+    try {
+      error = post(request);
+    } catch (IOException e) {
+      closeChannel();
+      // The server may have closed the idle connection. Retry once, as it didn't respond.
+      if (!reused || responseStarted || e instanceof SocketTimeoutException) throw e;
+      for (ByteBuffer buffer : request) buffer.rewind();
+      try {
+        error = post(request);
+      } catch (IOException e2) {
+        closeChannel();
+        throw e2;
+      }
+    }
+    // The error response was read fully, so the connection can be reused.
+    if (error != null) throw new IOException("response for " + target + " failed: " + error);
+  }
+
+  /** Returns the status and body of an error response, or null on success. */
+  String post(ByteBuffer[] request) throws IOException {
+    if (channel == null) connect();
+    responseStarted = false;
+    long remaining = 0;
+    for (ByteBuffer buffer : request) remaining += buffer.remaining();
+    while (remaining > 0) {
+      long written = channel.write(request);
+      if (written == 0) await(SelectionKey.OP_WRITE);
+      remaining -= written;
+    }
+    return readResponse();
+  }
+
+  void connect() throws IOException {
+    SocketChannel channel = UnixDomainSockets.connect(socketPath);
+    try {
+      channel.configureBlocking(false); // so that reads can time out
+      Selector selector = Selector.open();
+      channel.register(selector, 0);
+      this.selector = selector;
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    this.channel = channel;
+    readBuffer.clear().flip(); // empty
+    connectCount++;
+  }
+
+  /** Reads the response, closing the connection unless it can be reused. */
+  String readResponse() throws IOException {
+    String statusLine = readLine();
+    int space = statusLine.indexOf(' ');
+    int status;
+    try {
+      status = Integer.parseInt(statusLine.substring(space + 1, space + 4));
+    } catch (RuntimeException e) {
+      throw new IOException("invalid status line: " + statusLine);
+    }
+    boolean close = statusLine.startsWith("HTTP/1.0"), chunked = false;
+    long contentLength = -1;
+    for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+      int colon = line.indexOf(':');
+      if (colon == -1) continue;
+      String name = line.substring(0, colon).trim(), value = line.substring(colon + 1).trim();
+      if (name.equalsIgnoreCase("Content-Length")) {
+        contentLength = parseLong(value, 10);
+      } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+        chunked = value.equalsIgnoreCase("chunked");
+      } else if (name.equalsIgnoreCase("Connection")) {
+        close = value.equalsIgnoreCase("close");
+      }
+    }
+
+    boolean success = status >= 200 && status < 300;
+    // Only the body of an error is read into a string, for the exception message.
+    StringBuilder errorBody = success ? null : new StringBuilder();
+    if (status == 204 || status == 304) {
+      // no body
+    } else if (chunked) {
+      for (long size; (size = parseLong(chunkSize(readLine()), 16)) > 0; ) {
+        readBody(size, errorBody);
+        readLine(); // CRLF after the chunk
+      }
+      while (!readLine().isEmpty()) ; // trailers
+    } else if (contentLength >= 0) {
+      readBody(contentLength, errorBody);
+    } else {
+      readBody(Long.MAX_VALUE, errorBody); // until the server closes the connection
+      close = true;
+    }
+
+    if (close) closeChannel();
+    return success ? null : status + " " + errorBody;
+  }
+
+  static long parseLong(String value, int radix) throws IOException {
+    try {
+      return Long.parseLong(value, radix);
+    } catch (NumberFormatException e) {
+      throw new IOException("invalid number in response: " + value);
+    }
+  }
+
+  static String chunkSize(String line) {
+    int semicolon = line.indexOf(';'); // chunk extension
+    return (semicolon == -1 ? line : line.substring(0, semicolon)).trim();
+  }
+
+  String readLine() throws IOException {
+    StringBuilder result = new StringBuilder();
+    while (true) {
+      int b = readByte();
+      if (b == '\n') break;
+      if (result.length() == MAX_LINE_LENGTH) {
+        throw new IOException("response line longer than " + MAX_LINE_LENGTH);
+      }
+      result.append((char) b);
+    }
+    int length = result.length();
+    if (length > 0 && result.charAt(length - 1) == '\r') result.setLength(length - 1);
+    return result.toString();
+  }
+
+  void readBody(long length, StringBuilder errorBody) throws IOException {
+    for (long i = 0; i < length; i++) {
+      int b;
+      try {
+        b = readByte();
+      } catch (EOFException e) {
+        if (length == Long.MAX_VALUE) return; // read until close
+        throw e;
+      }
+      if (errorBody != null && errorBody.length() < 1024) errorBody.append((char) b);
+    }
+  }
+
+  int readByte() throws IOException {
+    if (!readBuffer.hasRemaining()) {
+      readBuffer.clear();
+      int read;
+      while ((read = channel.read(readBuffer)) == 0) await(SelectionKey.OP_READ);
+      readBuffer.flip();
+      if (read == -1) throw new EOFException("connection closed by " + socketPath);
+    }
+    responseStarted = true;
+    return readBuffer.get() & 0xff;
+  }
+
+  /** Blocks until the channel is ready for the operation or the read timeout. */
+  void await(int op) throws IOException {
+    SelectionKey key = channel.keyFor(selector);
+    key.interestOps(op);
+    int ready = selector.select(readTimeout);
+    selector.selectedKeys().clear();
+    if (ready > 0) return;
+    if (Thread.interrupted()) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for " + socketPath);
+    }
+    if (readTimeout > 0) throw new SocketTimeoutException("timed out waiting for " + socketPath);
+  }
+
+  void closeChannel() {
+    SocketChannel channel = this.channel;
+    Selector selector = this.selector;
+    this.channel = null;
+    this.selector = null;
+    try {
+      if (channel != null) channel.close();
+      if (selector != null) selector.close();
+    } catch (IOException ignored) {
+    }
+  }
+
+  @Override protected synchronized void doClose() {
+    closeChannel();
+  }
+
+  /** The parsed endpoint, which precomputes the request head except "Content-Length". */
+  static final class HttpTarget {
+    final String url;
+    final byte[] head;
+
+    HttpTarget(String url, URI uri, String mediaType) {
+      this.url = url;
+      String path = uri.getRawPath();
+      if (path == null || path.isEmpty()) path = "/";
+      if (uri.getRawQuery() != null) path += "?" + uri.getRawQuery();
+      String host = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+      this.head = ("POST " + path + " HTTP/1.1\r\n"
+        + "Host: " + host + "\r\n"
+        + "Content-Type: " + mediaType + "\r\n"
+        + "Content-Length: ").getBytes(LATIN_1);
+    }
+
+    ByteBuffer head(long contentLength) {
+      byte[] suffix = (contentLength + "\r\n\r\n").getBytes(LATIN_1);
+      ByteBuffer result = ByteBuffer.allocate(head.length + suffix.length);
+      result.put(head).put(suffix).flip();
+      return result;
+    }
+
+    @Override public String toString() {
+      return url;
+    }
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.socket;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Unix domain socket channels were added in JDK 16. This uses reflection, so that the module can
+ * compile to Java 8 bytecode, like the others.
+ */
+final class UnixDomainSockets {
+  static final ProtocolFamily UNIX; // null unless JDK 16+
+  static final Method ADDRESS_OF, OPEN_CHANNEL; // null unless JDK 16+
+
+  static {
+    ProtocolFamily unix = null;
+    Method addressOf = null, openChannel = null;
+    try {
+      unix = StandardProtocolFamily.valueOf("UNIX");
+      addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+      openChannel = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+    } catch (Exception e) {
+      unix = null;
+    }
+    UNIX = unix;
+    ADDRESS_OF = addressOf;
+    OPEN_CHANNEL = openChannel;
+  }
+
+  static boolean isSupported() {
+    return UNIX != null;
+  }
+
+  /** Returns a blocking channel connected to the socket at the given path. */
+  static SocketChannel connect(String path) throws IOException {
+    SocketChannel channel = (SocketChannel) invoke(OPEN_CHANNEL, UNIX);
+    try {
+      channel.connect((SocketAddress) invoke(ADDRESS_OF, path));
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    } catch (RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    return channel;
+  }
+
+  static Object invoke(Method method, Object arg) throws IOException {
+    try {
+      return method.invoke(null, arg);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e); // the methods are public
+    }
+  }
+
+  UnixDomainSockets() {
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.ClosedSenderException;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+
+@Timeout(10)
+class DatagramSenderTest {
+  DatagramChannel collector;
+  DatagramSender sender;
+
+  @BeforeEach void bind() throws IOException {
+    collector = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+    sender = newSenderBuilder().build();
+  }
+
+  @AfterEach void close() throws IOException {
+    sender.close();
+    collector.close();
+  }
+
+  DatagramSender.Builder newSenderBuilder() throws IOException {
+    InetSocketAddress address = (InetSocketAddress) collector.getLocalAddress();
+    return DatagramSender.newBuilder().endpoint("127.0.0.1:" + address.getPort());
+  }
+
+  @Test void emptyOk() throws Exception {
+    sender.send(Collections.emptyList());
+
+    assertThat(sender.channel.isConnected()).isTrue();
+  }
+
+  @Test void send() throws Exception {
+    send(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(receive()))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void send_PROTO3() throws Exception {
+    sender.close();
+    sender = newSenderBuilder().encoding(Encoding.PROTO3).build();
+
+    send(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(receive()))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void send_reusesChannelAndBuffer() throws Exception {
+    send(CLIENT_SPAN);
+    DatagramChannel channel = sender.channel;
+    ByteBuffer buffer = sender.buffer;
+    send(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(sender.channel).isSameAs(channel);
+    assertThat(sender.buffer).isSameAs(buffer);
+    assertThat(buffer.isDirect()).isTrue();
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(receive())).containsExactly(CLIENT_SPAN);
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(receive()))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void send_tooLarge() throws Exception {
+    sender.close();
+    byte[] span = SpanBytesEncoder.JSON_V2.encode(CLIENT_SPAN);
+    sender = newSenderBuilder().messageMaxBytes(span.length).build();
+
+    assertThatThrownBy(() -> sender.send(Arrays.asList(span)))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessageContaining("> messageMaxBytes");
+  }
+
+  @Test void asyncReporter() throws Exception {
+    try (AsyncReporter<Span> reporter = AsyncReporter.builder(sender)
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .build(SpanBytesEncoder.JSON_V2)) {
+      reporter.report(CLIENT_SPAN);
+      reporter.flush();
+    }
+
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(receive())).containsExactly(CLIENT_SPAN);
+  }
+
+  @Test void messageMaxBytes_limitedToDatagram() {
+    assertThat(sender.messageMaxBytes()).isEqualTo(DatagramSender.MAX_DATAGRAM_BYTES);
+    assertThatThrownBy(() -> DatagramSender.newBuilder().messageMaxBytes(65508))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test void endpoint_invalid() {
+    assertThatThrownBy(() -> DatagramSender.create("localhost"))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> DatagramSender.create("localhost:port"))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test void endpoint_ipv6() {
+    assertThat(DatagramSender.create("[::1]:9411").endpoint)
+      .isEqualTo(InetSocketAddress.createUnresolved("::1", 9411));
+  }
+
+  /** DNS is looked up when connecting, so a bad host fails the send instead of the build. */
+  @Test void endpoint_resolvedWhenConnecting() {
+    sender.close();
+    sender = DatagramSender.create("zipkin.invalid:9411");
+    assertThat(sender.endpoint.isUnresolved()).isTrue();
+
+    assertThatThrownBy(() -> send(CLIENT_SPAN)).isInstanceOf(UnknownHostException.class);
+    assertThat(sender.channel).isNull(); // the channel was closed, not leaked
+  }
+
+  @Test void illegalToSendWhenClosed() {
+    sender.close();
+
+    assertThatThrownBy(() -> send(CLIENT_SPAN)).isInstanceOf(ClosedSenderException.class);
+  }
+
+  @Test void toBuilder() {
+    DatagramSender copy = sender.toBuilder().messageMaxBytes(1024).build();
+
+    assertThat(copy.endpoint).isEqualTo(sender.endpoint);
+    assertThat(copy.messageMaxBytes()).isEqualTo(1024);
+  }
+
+  @Test void toStringContainsOnlySummaryInformation() throws IOException {
+    InetSocketAddress address = (InetSocketAddress) collector.getLocalAddress();
+    assertThat(sender).hasToString("DatagramSender{127.0.0.1:" + address.getPort() + "}");
+  }
+
+  void send(Span... spans) throws IOException {
+    sender.send(Stream.of(spans)
+      .map(SpanBytesEncoder.forEncoding(sender.encoding())::encode)
+      .collect(toList()));
+  }
+
+  byte[] receive() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(DatagramSender.MAX_DATAGRAM_BYTES);
+    collector.receive(buffer);
+    buffer.flip();
+    byte[] result = new byte[buffer.remaining()];
+    buffer.get(result);
+    return result;
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.socket;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.EnumSource.Mode.EXCLUDE;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+
+class SpanListWriterTest {
+  @ParameterizedTest @EnumSource(value = Encoding.class, names = "OTLP_PROTO3", mode = EXCLUDE)
+  void write_matchesEncode(Encoding encoding) {
+    byte[] span = SpanBytesEncoder.forEncoding(encoding).encode(CLIENT_SPAN);
+    for (List<byte[]> encodedSpans : Arrays.asList(
+      Collections.<byte[]>emptyList(), Arrays.asList(span), Arrays.asList(span, span, span))) {
+      ByteBuffer buffer = ByteBuffer.allocate(encoding.listSizeInBytes(encodedSpans));
+
+      SpanListWriter.write(encoding, encodedSpans, buffer);
+
+      assertThat(buffer.hasRemaining()).isFalse();
+      assertThat(buffer.array()).containsExactly(encoding.encode(encodedSpans));
+    }
+  }
+
+  @ParameterizedTest @EnumSource(value = Encoding.class, names = "OTLP_PROTO3", mode = EXCLUDE)
+  void wrap_matchesEncode(Encoding encoding) {
+    byte[] span = SpanBytesEncoder.forEncoding(encoding).encode(CLIENT_SPAN);
+    for (List<byte[]> encodedSpans : Arrays.asList(
+      Collections.<byte[]>emptyList(), Arrays.asList(span), Arrays.asList(span, span, span))) {
+      ByteBuffer buffer = ByteBuffer.allocate(encoding.listSizeInBytes(encodedSpans));
+
+      for (ByteBuffer wrapped : SpanListWriter.wrap(encoding, encodedSpans)) buffer.put(wrapped);
+
+      assertThat(buffer.hasRemaining()).isFalse();
+      assertThat(buffer.array()).containsExactly(encoding.encode(encodedSpans));
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.socket;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.ClosedSenderException;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.InMemoryReporterMetrics;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+
+@Timeout(10)
+class StreamSenderTest {
+  FakeCollector collector;
+  StreamSender sender;
+
+  @BeforeEach void start() throws IOException {
+    collector = new FakeCollector();
+    sender = StreamSender.create("127.0.0.1:" + collector.port());
+  }
+
+  @AfterEach void close() throws IOException {
+    sender.close();
+    collector.close();
+  }
+
+  @Test void emptyOk() throws Exception {
+    sender.send(List.of());
+
+    assertThat(sender.channel.isConnected()).isTrue();
+  }
+
+  @Test void send() throws Exception {
+    send(CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(collector.take()))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void send_framesOnOneStream() throws Exception {
+    send(CLIENT_SPAN);
+    send(CLIENT_SPAN, CLIENT_SPAN);
+    send(CLIENT_SPAN, CLIENT_SPAN, CLIENT_SPAN);
+
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(collector.take())).hasSize(1);
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(collector.take())).hasSize(2);
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(collector.take())).hasSize(3);
+    assertThat(collector.connections).isEqualTo(1);
+    assertThat(sender.connectCount).isEqualTo(1);
+  }
+
+  @Test void send_reconnectsWhenCollectorClosesStream() throws Exception {
+    send(CLIENT_SPAN);
+    collector.take();
+    collector.closeConnections();
+
+    // The sender notices the end of stream before writing the next frame
+    assertThat(collector.awaitDisconnect()).isTrue();
+    Thread.sleep(100); // for the FIN to arrive
+    send(CLIENT_SPAN);
+
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(collector.take())).containsExactly(CLIENT_SPAN);
+    assertThat(sender.connectCount).isEqualTo(2);
+  }
+
+  @Test void send_backpressureTimesOut() throws Exception {
+    sender.close();
+    sender = sender.toBuilder().writeTimeout(100).build();
+    collector.read = false;
+
+    byte[] span = new byte[100_000];
+    span[0] = 0x0a; // not a valid span, but the sender doesn't decode it
+    assertThatThrownBy(() -> {
+      while (true) sender.send(List.of(span));
+    }).isInstanceOf(SocketTimeoutException.class);
+    assertThat(sender.channel).isNull(); // the stream may end in a partial frame
+  }
+
+  @Test void send_tooLarge() throws Exception {
+    sender.close();
+    byte[] span = SpanBytesEncoder.PROTO3.encode(CLIENT_SPAN);
+    sender = sender.toBuilder().messageMaxBytes(span.length + 4).build();
+
+    assertThatThrownBy(() -> sender.send(Arrays.asList(span)))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessageContaining("> messageMaxBytes");
+  }
+
+  @Test void send_noCollector() throws Exception {
+    collector.close();
+
+    assertThatThrownBy(() -> send(CLIENT_SPAN)).isInstanceOf(IOException.class);
+  }
+
+  /** DNS is looked up when connecting, so a bad host fails the send instead of the build. */
+  @Test void send_unknownHost() {
+    sender.close();
+    sender = StreamSender.create("zipkin.invalid:9411");
+
+    assertThatThrownBy(() -> send(CLIENT_SPAN)).isInstanceOf(UnknownHostException.class);
+    assertThat(sender.channel).isNull();
+  }
+
+  @Test void messageSizeInBytes_includesFrameHeader() {
+    byte[] span = SpanBytesEncoder.PROTO3.encode(CLIENT_SPAN);
+
+    assertThat(sender.messageSizeInBytes(List.of(span, span)))
+      .isEqualTo(5 + Encoding.PROTO3.listSizeInBytes(List.of(span, span)));
+    assertThat(sender.messageSizeInBytes(span.length))
+      .isEqualTo(5 + Encoding.PROTO3.listSizeInBytes(span.length));
+  }
+
+  @Test void asyncReporter() throws Exception {
+    InMemoryReporterMetrics metrics = new InMemoryReporterMetrics();
+    try (AsyncReporter<Span> reporter = AsyncReporter.builder(sender)
+      .metrics(metrics)
+      .messageTimeout(0, TimeUnit.MILLISECONDS)
+      .build(SpanBytesEncoder.PROTO3)) {
+      reporter.report(CLIENT_SPAN);
+      reporter.flush();
+      reporter.report(CLIENT_SPAN);
+      reporter.flush();
+    }
+
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(collector.take())).containsExactly(CLIENT_SPAN);
+    assertThat(SpanBytesDecoder.PROTO3.decodeList(collector.take())).containsExactly(CLIENT_SPAN);
+    assertThat(metrics.messages()).isEqualTo(2);
+    byte[] span = SpanBytesEncoder.PROTO3.encode(CLIENT_SPAN);
+    assertThat(metrics.messageBytes()) // includes the frame header
+      .isEqualTo(2 * sender.messageSizeInBytes(List.of(span)));
+    assertThat(metrics.spansDropped()).isZero();
+  }
+
+  @Test void illegalToSendWhenClosed() {
+    sender.close();
+
+    assertThatThrownBy(() -> send(CLIENT_SPAN)).isInstanceOf(ClosedSenderException.class);
+  }
+
+  @Test void toBuilder() {
+    StreamSender copy = sender.toBuilder().messageMaxBytes(1024).writeTimeout(5).build();
+
+    assertThat(copy.endpoint).isEqualTo(sender.endpoint);
+    assertThat(copy.messageMaxBytes()).isEqualTo(1024);
+    assertThat(copy.connectTimeout).isEqualTo(sender.connectTimeout);
+    assertThat(copy.writeTimeout).isEqualTo(5);
+  }
+
+  @Test void toStringContainsOnlySummaryInformation() {
+    assertThat(sender).hasToString("StreamSender{127.0.0.1:" + collector.port() + "}");
+  }
+
+  void send(Span... spans) throws IOException {
+    sender.send(Stream.of(spans).map(SpanBytesEncoder.PROTO3::encode).collect(toList()));
+  }
+
+  /** Reads length-prefixed frames, like a gRPC server would, but without HTTP/2. */
+  static final class FakeCollector implements AutoCloseable, Runnable {
+    final ServerSocketChannel server;
+    final BlockingQueue<byte[]> messages = new LinkedBlockingQueue<>();
+    final BlockingQueue<SocketChannel> open = new LinkedBlockingQueue<>();
+    final BlockingQueue<Object> disconnects = new LinkedBlockingQueue<>();
+    volatile boolean read = true;
+    volatile int connections;
+
+    FakeCollector() throws IOException {
+      server = ServerSocketChannel.open();
+      server.setOption(StandardSocketOptions.SO_RCVBUF, 4096); // fill quickly when not reading
+      server.bind(new InetSocketAddress("127.0.0.1", 0));
+      Thread thread = new Thread(this, "FakeCollector");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    int port() {
+      return server.socket().getLocalPort();
+    }
+
+    byte[] take() throws InterruptedException {
+      return messages.poll(5, TimeUnit.SECONDS);
+    }
+
+    boolean awaitDisconnect() throws InterruptedException {
+      return disconnects.poll(5, TimeUnit.SECONDS) != null;
+    }
+
+    void closeConnections() throws IOException {
+      for (SocketChannel channel; (channel = open.poll()) != null; ) channel.close();
+    }
+
+    @Override public void run() {
+      try {
+        while (true) {
+          SocketChannel channel = server.accept();
+          connections++;
+          open.add(channel);
+          Thread thread = new Thread(() -> serve(channel), "FakeCollector-" + connections);
+          thread.setDaemon(true);
+          thread.start();
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    void serve(SocketChannel channel) {
+      try {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        while (read) {
+          if (in.readByte() != 0) throw new IOException("compression not supported");
+          byte[] message = new byte[in.readInt()];
+          in.readFully(message);
+          messages.add(message);
+        }
+      } catch (IOException e) {
+        // disconnected
+      } finally {
+        disconnects.add(channel);
+      }
+    }
+
+    @Override public void close() throws IOException {
+      server.close();
+      closeConnections();
+    }
+  }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.socket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.junit.jupiter.api.io.TempDir;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.reporter.BytesEncoder;
+import zipkin2.reporter.ClosedSenderException;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static zipkin2.TestObjects.CLIENT_SPAN;
+
+@Timeout(10)
+@EnabledForJreRange(min = JRE.JAVA_16)
+class UnixDomainSocketSenderTest {
+  @TempDir Path tempDir;
+  FakeCollector collector;
+  UnixDomainSocketSender sender;
+
+  @BeforeEach void start() throws Exception {
+    collector = new FakeCollector(tempDir.resolve("collector.sock"));
+    sender = UnixDomainSocketSender.create(collector.path.toString());
+  }
+
+  @AfterEach void close() throws Exception {
+    sender.close();
+    collector.close();
+  }
+
+  @Test void send() throws Exception {
+    send(CLIENT_SPAN, CLIENT_SPAN);
+
+    Request request = collector.take();
+    assertThat(request.requestLine).isEqualTo("POST /api/v2/spans HTTP/1.1");
+    assertThat(request.headers)
+      .containsEntry("host", "localhost")
+      .containsEntry("content-type", "application/json");
+    assertThat(SpanBytesDecoder.JSON_V2.decodeList(request.body))
+      .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+  }
+
+  @Test void send_encodings() throws Exception {
+    for (Encoding encoding : List.of(Encoding.JSON, Encoding.THRIFT, Encoding.PROTO3)) {
+      sender.close();
+      sender = sender.toBuilder().encoding(encoding).build();
+
+      send(CLIENT_SPAN, CLIENT_SPAN);
+
+      Request request = collector.take();
+      assertThat(request.headers).containsEntry("content-type", encoding.mediaType());
+      assertThat(decodeList(encoding, request.body))
+        .containsExactly(CLIENT_SPAN, CLIENT_SPAN);
+    }
+  }
+
+  @Test void send_customEndpoint() throws Exception {
+    sender.close();
+    sender = sender.toBuilder().endpoint("http://zipkin:9411/custom?q=1").build();
+
+    send(CLIENT_SPAN);
+
+    Request request = collector.take();
+    assertThat(request.requestLine).isEqualTo("POST /custom?q=1 HTTP/1.1");
+    assertThat(request.headers).containsEntry("host", "zipkin:9411");
+  }
+
+  @Test void send_reusesConnection() throws Exception {
+    send(CLIENT_SPAN);
+    send(CLIENT_SPAN);
+    send(CLIENT_SPAN);
+
+    assertThat(collector.requests).hasSize(3);
+    assertThat(collector.connections).isEqualTo(1);
+    assertThat(sender.connectCount).isEqualTo(1);
+  }
+
+  @Test void send_reconnectsWhenServerClosesConnection() throws Exception {
+    collector.connectionClose = true;
+
+    send(CLIENT_SPAN);
+    assertThat(sender.channel).isNull();
+    send(CLIENT_SPAN);
+
+    assertThat(collector.requests).hasSize(2);
+    assertThat(sender.connectCount).isEqualTo(2);
+  }
+
+  @Test void send_retriesWhenIdleConnectionClosed() throws Exception {
+    collector.closeAfterResponse = 1; // close without telling the client
+
+    send(CLIENT_SPAN);
+    collector.awaitDisconnect();
+    send(CLIENT_SPAN);
+
+    assertThat(collector.requests).hasSize(2);
+    assertThat(sender.connectCount).isEqualTo(2);
+  }
+
+  @Test void send_chunkedResponse() throws Exception {
+    collector.chunked = true;
+
+    send(CLIENT_SPAN);
+    send(CLIENT_SPAN);
+
+    assertThat(collector.requests).hasSize(2);
+    assertThat(sender.connectCount).isEqualTo(1);
+  }
+
+  @Test void send_failsOnErrorStatus() throws Exception {
+    collector.status = "500 Internal Server Error";
+    collector.responseBody = "oops";
+
+    assertThatThrownBy(() -> send(CLIENT_SPAN))
+      .isInstanceOf(IOException.class)
+      .hasMessage("response for http://localhost/api/v2/spans failed: 500 oops");
+
+    // The response was read fully, so the connection is reused
+    collector.status = "202 Accepted";
+    collector.responseBody = "";
+    send(CLIENT_SPAN);
+    assertThat(sender.connectCount).isEqualTo(1);
+  }
+
+  @Test void send_readTimeout() throws Exception {
+    sender.close();
+    sender = sender.toBuilder().readTimeout(100).build();
+    collector.respond = false;
+
+    assertThatThrownBy(() -> send(CLIENT_SPAN))
+      .isInstanceOf(SocketTimeoutException.class);
+    assertThat(sender.channel).isNull();
+  }
+
+  @Test void send_noServer() throws Exception {
+    collector.close();
+
+    assertThatThrownBy(() -> send(CLIENT_SPAN))
+      .isInstanceOf(IOException.class);
+  }
+
+  @Test void illegalToSendWhenClosed() throws Exception {
+    sender.close();
+
+    assertThatThrownBy(() -> send(CLIENT_SPAN))
+      .isInstanceOf(ClosedSenderException.class);
+  }
+
+  @Test void badEndpoint() {
+    assertThatThrownBy(() -> sender.toBuilder().endpoint("https://localhost/api/v2/spans").build())
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("invalid POST url: https://localhost/api/v2/spans");
+  }
+
+  @Test void toStringContainsEndpoint() {
+    assertThat(sender).hasToString("UnixDomainSocketSender{http://localhost/api/v2/spans}");
+  }
+
+  @Test void toBuilder() {
+    UnixDomainSocketSender copy = sender.toBuilder().messageMaxBytes(1024).readTimeout(5).build();
+    try {
+      assertThat(copy.socketPath).isEqualTo(sender.socketPath);
+      assertThat(copy.messageMaxBytes()).isEqualTo(1024);
+      assertThat(copy.readTimeout).isEqualTo(5);
+    } finally {
+      copy.close();
+    }
+  }
+
+  void send(Span... spans) throws IOException {
+    BytesEncoder<Span> bytesEncoder = SpanBytesEncoder.forEncoding(sender.encoding());
+    sender.send(Stream.of(spans).map(bytesEncoder::encode).collect(toList()));
+  }
+
+  static List<Span> decodeList(Encoding encoding, byte[] body) {
+    switch (encoding) {
+      case JSON:
+        return SpanBytesDecoder.JSON_V2.decodeList(body);
+      case THRIFT:
+        return SpanBytesDecoder.THRIFT.decodeList(body);
+      case PROTO3:
+        return SpanBytesDecoder.PROTO3.decodeList(body);
+      default:
+        throw new UnsupportedOperationException("encoding: " + encoding);
+    }
+  }
+
+  static final class Request {
+    final String requestLine;
+    final Map<String, String> headers;
+    final byte[] body;
+
+    Request(String requestLine, Map<String, String> headers, byte[] body) {
+      this.requestLine = requestLine;
+      this.headers = headers;
+      this.body = body;
+    }
+  }
+
+  /** A minimal HTTP/1.1 server, bound to a Unix domain socket using reflection. */
+  static final class FakeCollector implements AutoCloseable, Runnable {
+    final Path path;
+    final ServerSocketChannel server;
+    final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    final BlockingQueue<Object> disconnects = new LinkedBlockingQueue<>();
+    volatile String status = "202 Accepted", responseBody = "";
+    volatile boolean connectionClose, chunked, respond = true;
+    volatile int closeAfterResponse, connections;
+
+    FakeCollector(Path path) throws Exception {
+      this.path = path;
+      ProtocolFamily unix = UnixDomainSockets.UNIX;
+      server = (ServerSocketChannel)
+        ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+      server.bind((SocketAddress) UnixDomainSockets.ADDRESS_OF.invoke(null, path.toString()));
+      Thread thread = new Thread(this, "FakeCollector");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    Request take() throws InterruptedException {
+      return requests.poll(5, TimeUnit.SECONDS);
+    }
+
+    void awaitDisconnect() throws InterruptedException {
+      disconnects.poll(5, TimeUnit.SECONDS);
+    }
+
+    @Override public void run() {
+      try {
+        while (true) {
+          SocketChannel channel = server.accept();
+          connections++;
+          Thread thread = new Thread(() -> serve(channel), "FakeCollector-" + connections);
+          thread.setDaemon(true);
+          thread.start();
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    void serve(SocketChannel channel) {
+      try (SocketChannel c = channel) {
+        InputStream in = Channels.newInputStream(c);
+        OutputStream out = Channels.newOutputStream(c);
+        for (int count = 1; ; count++) {
+          String requestLine = readLine(in);
+          if (requestLine == null) return;
+          Map<String, String> headers = new LinkedHashMap<>();
+          for (String line = readLine(in); line != null && !line.isEmpty(); line = readLine(in)) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(),
+              line.substring(colon + 1).trim());
+          }
+          byte[] body = in.readNBytes(Integer.parseInt(headers.get("content-length")));
+          requests.add(new Request(requestLine, headers, body));
+          if (!respond) continue;
+
+          byte[] responseBody = this.responseBody.getBytes(StandardCharsets.UTF_8);
+          StringBuilder response = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+          if (connectionClose) response.append("Connection: close\r\n");
+          if (chunked) {
+            response.append("Transfer-Encoding: chunked\r\n\r\n");
+            if (responseBody.length > 0) {
+              response.append(Integer.toHexString(responseBody.length)).append("\r\n")
+                .append(this.responseBody).append("\r\n");
+            }
+            response.append("0\r\n\r\n");
+          } else {
+            response.append("Content-Length: ").append(responseBody.length).append("\r\n\r\n")
+              .append(this.responseBody);
+          }
+          out.write(response.toString().getBytes(StandardCharsets.UTF_8));
+          out.flush();
+          if (connectionClose || count == closeAfterResponse) return;
+        }
+      } catch (IOException e) {
+        // client disconnected
+      } finally {
+        disconnects.add(channel);
+      }
+    }
+
+    static String readLine(InputStream in) throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      for (int b; (b = in.read()) != '\n'; ) {
+        if (b == -1) return null;
+        if (b != '\r') line.write(b);
+      }
+      return line.toString(StandardCharsets.UTF_8);
+    }
+
+    @Override public void close() throws IOException {
+      server.close();
+      Files.deleteIfExists(path);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright The OpenZipkin Authors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package zipkin2.reporter.urlconnection;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Counts TLS sockets, as each one implies a handshake. Connections reused from the JDK keep-alive
+ * cache don't create a socket, so this is the count of TLS connections opened.
+ */
+final class CountingSSLSocketFactory extends SSLSocketFactory {
+  final SSLSocketFactory delegate;
+  final AtomicLong socketCount = new AtomicLong();
+
+  CountingSSLSocketFactory(SSLSocketFactory delegate) {
+    this.delegate = delegate;
+  }
+
+  /** Counts after creation, as unconnected sockets aren't supported by all implementations. */
+  Socket count(Socket socket) {
+    socketCount.incrementAndGet();
+    return socket;
+  }
+
+  @Override public String[] getDefaultCipherSuites() {
+    return delegate.getDefaultCipherSuites();
+  }
+
+  @Override public String[] getSupportedCipherSuites() {
+    return delegate.getSupportedCipherSuites();
+  }
+
+  @Override public Socket createSocket() throws IOException {
+    return count(delegate.createSocket());
+  }
+
+  @Override public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+    throws IOException {
+    return count(delegate.createSocket(socket, host, port, autoClose));
+  }
+
+  @Override public Socket createSocket(String host, int port) throws IOException {
+    return count(delegate.createSocket(host, port));
+  }
+
+  @Override public Socket createSocket(String host, int port, InetAddress localHost,
+    int localPort) throws IOException {
+    return count(delegate.createSocket(host, port, localHost, localPort));
+  }
+
+  @Override public Socket createSocket(InetAddress host, int port) throws IOException {
+    return count(delegate.createSocket(host, port));
+  }
+
+  @Override public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+    int localPort) throws IOException {
+    return count(delegate.createSocket(address, port, localAddress, localPort));
+  }
+}
@@ -7,11 +7,15 @@ package zipkin2.reporter.urlconnection;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPOutputStream;
+import javax.net.ssl.HttpsURLConnection;
 import zipkin2.reporter.BaseHttpSender;
 import zipkin2.reporter.Component;
 
@@ -24,14 +28,20 @@ final class InternalURLConnectionSender extends BaseHttpSender<URL, byte[]> {
   final int messageMaxBytes;
   final int connectTimeout;
   final int readTimeout;
+  final int maxConnections;
   final boolean compressionEnabled;
+  final Semaphore connections; // null unless maxConnections > 0
+  final AtomicLong messageCount = new AtomicLong(), reconnectCount = new AtomicLong();
+  volatile CountingSSLSocketFactory sslSocketFactory; // lazy as most endpoints are plaintext
 
   InternalURLConnectionSender(URLConnectionSender.Builder builder) {
     super(builder.encoding, builder.endpointSupplierFactory, builder.endpoint);
     this.messageMaxBytes = builder.messageMaxBytes;
     this.connectTimeout = builder.connectTimeout;
     this.readTimeout = builder.readTimeout;
+    this.maxConnections = builder.maxConnections;
     this.compressionEnabled = builder.compressionEnabled;
+    this.connections = maxConnections > 0 ? new Semaphore(maxConnections) : null;
   }
 
   @Override public int messageMaxBytes() {
@@ -51,10 +61,53 @@ final class InternalURLConnectionSender extends BaseHttpSender<URL, byte[]> {
   }
 
   @Override protected void postSpans(URL endpoint, byte[] body) throws IOException {
-    // intentionally not closing the connection, to use keep-alives
+    if (connections == null) {
+      send(endpoint, body);
+      return;
+    }
+    try {
+      connections.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for a connection");
+    }
+    try {
+      send(endpoint, body);
+    } finally {
+      connections.release();
+    }
+  }
+
+  /**
+   * Connections are never disconnected here. Instead, the response is fully read, so that the JDK
+   * can return the connection to its keep-alive cache for the next message.
+   */
+  void send(URL endpoint, byte[] body) throws IOException {
+    messageCount.incrementAndGet();
+    boolean reusable = false;
+    try {
+      HttpURLConnection connection = openConnection(endpoint);
+      writeRequest(connection, body);
+      skipAllContent(connection);
+      // The JDK closes the connection after the response when the server asks it to.
+      reusable = !"close".equalsIgnoreCase(connection.getHeaderField("Connection"));
+    } finally {
+      if (!reusable) reconnectCount.incrementAndGet();
+    }
+  }
+
+  HttpURLConnection openConnection(URL endpoint) throws IOException {
     HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+    if (connection instanceof HttpsURLConnection) {
+      // The keep-alive cache only reuses connections made by the same factory instance.
+      ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory());
+    }
     connection.setConnectTimeout(connectTimeout);
     connection.setReadTimeout(readTimeout);
+    return connection;
+  }
+
+  void writeRequest(HttpURLConnection connection, byte[] body) throws IOException {
     connection.setRequestMethod("POST");
     // Amplification can occur when the Zipkin endpoint is proxied, and the proxy is instrumented.
     // This prevents that in proxies, such as Envoy, that understand B3 single format,
@@ -74,8 +127,26 @@ final class InternalURLConnectionSender extends BaseHttpSender<URL, byte[]> {
     connection.setDoOutput(true);
     connection.setFixedLengthStreamingMode(body.length);
     connection.getOutputStream().write(body);
+  }
 
-    skipAllContent(connection);
+  CountingSSLSocketFactory sslSocketFactory() {
+    CountingSSLSocketFactory result = sslSocketFactory;
+    if (result == null) {
+      synchronized (this) {
+        result = sslSocketFactory;
+        if (result == null) {
+          // Read lazily, in case the default was changed after this sender was built.
+          sslSocketFactory = result =
+            new CountingSSLSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+        }
+      }
+    }
+    return result;
+  }
+
+  long tlsHandshakeCount() {
+    CountingSSLSocketFactory factory = sslSocketFactory;
+    return factory != null ? factory.socketCount.get() : 0L;
   }
 
   /** This utility is verbose as we have a minimum java version of 6 */
@@ -88,9 +159,17 @@ final class InternalURLConnectionSender extends BaseHttpSender<URL, byte[]> {
     throw thrown;
   }
 
+  /** Reused across messages as skipping is bulk, but usually there's no response body. */
+  static final ThreadLocal<byte[]> SKIP_BUFFER = new ThreadLocal<byte[]>() {
+    @Override protected byte[] initialValue() {
+      return new byte[4096];
+    }
+  };
+
   static IOException skipAndSuppress(InputStream in) {
     try {
-      while (in.read() != -1) ; // skip
+      byte[] buffer = SKIP_BUFFER.get();
+      while (in.read(buffer) != -1) ; // skip
       return null;
     } catch (IOException e) {
       return e;
@@ -5,6 +5,7 @@
 package zipkin2.reporter.urlconnection;
 
 import java.net.URL;
+import java.util.List;
 import zipkin2.reporter.BytesMessageSender;
 import zipkin2.reporter.Encoding;
 import zipkin2.reporter.HttpEndpointSupplier;
@@ -17,6 +18,14 @@ import static zipkin2.reporter.HttpEndpointSuppliers.constantFactory;
 /**
  * Reports spans to Zipkin, using its <a href="https://zipkin.io/zipkin-api/#/">POST</a> endpoint.
  *
+ * <h3>Connection reuse</h3>
+ *
+ * <p>Connections are reused via the JDK's keep-alive cache, which holds up to 5 idle connections
+ * per endpoint, unless overridden by the system property "http.maxConnections". When more messages
+ * are sent concurrently than that, extra connections are closed after use, so later messages pay
+ * for new connections and TLS handshakes again. Set {@link Builder#maxConnections(int)} to avoid
+ * this, and watch {@link #reconnectCount()} and {@link #tlsHandshakeCount()} to confirm.
+ *
  * <p>This sender is thread-safe.
  */
 public final class URLConnectionSender extends SenderAdapter {
@@ -35,7 +44,7 @@ public final class URLConnectionSender extends SenderAdapter {
     String endpoint;
     Encoding encoding = Encoding.JSON;
     int messageMaxBytes = 500000;
-    int connectTimeout = 10 * 1000, readTimeout = 60 * 1000;
+    int connectTimeout = 10 * 1000, readTimeout = 60 * 1000, maxConnections;
     boolean compressionEnabled = true;
 
     Builder(URLConnectionSender sender) {
@@ -45,6 +54,7 @@ public final class URLConnectionSender extends SenderAdapter {
       this.messageMaxBytes = sender.delegate.messageMaxBytes;
       this.connectTimeout = sender.delegate.connectTimeout;
       this.readTimeout = sender.delegate.readTimeout;
+      this.maxConnections = sender.delegate.maxConnections;
       this.compressionEnabled = sender.delegate.compressionEnabled;
     }
 
@@ -90,6 +100,21 @@ public final class URLConnectionSender extends SenderAdapter {
       return this;
     }
 
+    /**
+     * Maximum concurrent connections. Once reached, {@link BytesMessageSender#send(List)} blocks
+     * until another message completes. Default 0, which is unlimited.
+     *
+     * <p>Set this no higher than the system property "http.maxConnections" (default 5), so that
+     * every connection can return to the JDK's keep-alive cache.
+     *
+     * @since 3.6
+     */
+    public Builder maxConnections(int maxConnections) {
+      if (maxConnections < 0) throw new IllegalArgumentException("maxConnections < 0");
+      this.maxConnections = maxConnections;
+      return this;
+    }
+
     /** Default true. true implies that spans will be gzipped before transport. */
     public Builder compressionEnabled(boolean compressionEnabled) {
       this.compressionEnabled = compressionEnabled;
@@ -137,6 +162,35 @@ public final class URLConnectionSender extends SenderAdapter {
     return new Builder(this);
   }
 
+  /**
+   * Returns the count of messages sent, including failures.
+   *
+   * @since 3.6
+   */
+  public long messageCount() {
+    return delegate.messageCount.get();
+  }
+
+  /**
+   * Returns the count of messages whose connection could not be kept alive, due to an error or
+   * the server closing it. The next message sent to the same endpoint opens a new connection.
+   *
+   * @since 3.6
+   */
+  public long reconnectCount() {
+    return delegate.reconnectCount.get();
+  }
+
+  /**
+   * Returns the count of TLS connections opened, each of which implies a handshake. This is zero
+   * unless the endpoint is https.
+   *
+   * @since 3.6
+   */
+  public long tlsHandshakeCount() {
+    return delegate.tlsHandshakeCount();
+  }
+
   @Override protected BytesMessageSender delegate() {
     return delegate;
   }
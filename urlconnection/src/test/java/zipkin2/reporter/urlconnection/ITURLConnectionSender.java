@@ -95,6 +95,50 @@ class ITURLConnectionSender {
 
     assertThatThrownBy(() -> sendSpans(sender, CLIENT_SPAN, CLIENT_SPAN)).isInstanceOf(
       IOException.class);
+
+    assertThat(sender.messageCount()).isEqualTo(1);
+    assertThat(sender.reconnectCount()).isEqualTo(1);
+  }
+
+  @Test void reusesConnection() throws Exception {
+    server.enqueue(new MockResponse().setBody("ignored"));
+    server.enqueue(new MockResponse().setResponseCode(202));
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN);
+    sendSpans(sender, CLIENT_SPAN);
+    sendSpans(sender, CLIENT_SPAN);
+
+    // A sequence number is the index of the request on its connection.
+    assertThat(server.takeRequest().getSequenceNumber()).isZero();
+    assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(1);
+    assertThat(server.takeRequest().getSequenceNumber()).isEqualTo(2);
+    assertThat(sender.messageCount()).isEqualTo(3);
+    assertThat(sender.reconnectCount()).isZero();
+    assertThat(sender.tlsHandshakeCount()).isZero();
+  }
+
+  @Test void reconnectsWhenServerClosesConnection() throws Exception {
+    server.enqueue(new MockResponse().addHeader("Connection", "close"));
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN);
+    sendSpans(sender, CLIENT_SPAN);
+
+    assertThat(server.takeRequest().getSequenceNumber()).isZero();
+    assertThat(server.takeRequest().getSequenceNumber()).isZero();
+    assertThat(sender.reconnectCount()).isEqualTo(1);
+  }
+
+  @Test void maxConnections() throws Exception {
+    sender.close();
+    sender = sender.toBuilder().maxConnections(1).build();
+    server.enqueue(new MockResponse());
+
+    sendSpans(sender, CLIENT_SPAN);
+
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    assertThat(sender.delegate.connections.availablePermits()).isEqualTo(1);
   }
 
   @Test void send_PROTO3() throws Exception {
@@ -48,6 +48,16 @@ class URLConnectionSenderTest {
       .hasToString("URLConnectionSender{http://localhost:29092}");
   }
 
+  @Test void tlsHandshakeCount() throws Exception {
+    assertThat(sender.tlsHandshakeCount()).isZero();
+
+    CountingSSLSocketFactory factory = sender.delegate.sslSocketFactory();
+    assertThat(sender.delegate.sslSocketFactory()).isSameAs(factory);
+
+    factory.createSocket().close();
+    assertThat(sender.tlsHandshakeCount()).isEqualTo(1);
+  }
+
   /**
    * The output of toString() on {@link BytesMessageSender} implementations appears in thread names
    * created by {@link AsyncReporter}. Since thread names are likely to be exposed in logs and other